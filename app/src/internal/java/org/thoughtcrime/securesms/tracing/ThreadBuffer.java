@@ -0,0 +1,149 @@
+package org.thoughtcrime.securesms.tracing;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+
+import java.lang.ref.WeakReference;
+
+/**
+ * A fixed-size ring of trace events for a single thread. Only the owning thread writes to it.
+ * Readers use {@link #count} to detect and skip events that were overwritten while reading.
+ *
+ * Top-level slices are sampled with the given rate. Everything nested inside a sampled slice is
+ * recorded, and nothing nested inside an unsampled one is, so begin and end events always stay
+ * balanced.
+ */
+final class ThreadBuffer {
+
+  static final byte TYPE_BEGIN = 1;
+  static final byte TYPE_END   = 2;
+
+  final WeakReference<Thread> thread;
+  final long                  threadId;
+  final String                threadName;
+
+  private final int   capacity;
+  private final float sampleRate;
+
+  private final long[]   timestamps;
+  private final int[]    nameIds;
+  private final byte[]   types;
+  private final String[] annotationKeys;
+  private final String[] annotationValues;
+
+  private volatile long count;
+
+  private int     depth;
+  private boolean sampled;
+  private long    randomState;
+
+  ThreadBuffer(@NonNull Thread thread, int capacity, float sampleRate) {
+    this(thread, capacity, sampleRate, System.nanoTime() ^ (thread.getId() * 0x9E3779B97F4A7C15L));
+  }
+
+  ThreadBuffer(@NonNull Thread thread, int capacity, float sampleRate, long seed) {
+    this.thread           = new WeakReference<>(thread);
+    this.threadId         = thread.getId();
+    this.threadName       = thread.getName();
+    this.capacity         = capacity;
+    this.sampleRate       = sampleRate;
+    this.timestamps       = new long[capacity];
+    this.nameIds          = new int[capacity];
+    this.types            = new byte[capacity];
+    this.annotationKeys   = new String[capacity];
+    this.annotationValues = new String[capacity];
+    this.randomState      = seed != 0 ? seed : 1;
+  }
+
+  boolean shouldRecordStart() {
+    if (depth == 0) {
+      sampled = sampleRate >= 1f || nextRandomFloat() < sampleRate;
+    }
+
+    depth++;
+    return sampled;
+  }
+
+  boolean shouldRecordEnd() {
+    if (depth == 0) {
+      return false;
+    }
+
+    depth--;
+    return sampled;
+  }
+
+  void record(byte type, long time, int nameId, @Nullable String key, @Nullable String value) {
+    long position = count;
+    int  index    = (int) (position % capacity);
+
+    timestamps[index]       = time;
+    nameIds[index]          = nameId;
+    types[index]            = type;
+    annotationKeys[index]   = key;
+    annotationValues[index] = value;
+
+    count = position + 1;
+  }
+
+  /**
+   * Passes every event that is still in the buffer and not older than startTimeNanos to the
+   * writer, oldest first. END events whose BEGIN was overwritten or filtered out are dropped so the
+   * output stays well-formed.
+   */
+  void writeTo(@NonNull EventWriter writer, long startTimeNanos) {
+    long end   = count;
+    long start = Math.max(0, end - capacity);
+    int  size  = (int) (end - start);
+
+    long[]   timestampsCopy = new long[size];
+    int[]    nameIdsCopy    = new int[size];
+    byte[]   typesCopy      = new byte[size];
+    String[] keysCopy       = new String[size];
+    String[] valuesCopy     = new String[size];
+
+    for (int i = 0; i < size; i++) {
+      int index = (int) ((start + i) % capacity);
+
+      timestampsCopy[i] = timestamps[index];
+      nameIdsCopy[i]    = nameIds[index];
+      typesCopy[i]      = types[index];
+      keysCopy[i]       = annotationKeys[index];
+      valuesCopy[i]     = annotationValues[index];
+    }
+
+    // The owning thread may have overwritten the oldest slots while we copied, including the slot
+    // it is writing right now, which hasn't been counted yet.
+    long firstValid = Math.max(start, count - capacity + 1);
+    int  openSlices = 0;
+
+    for (int i = (int) (firstValid - start); i < size; i++) {
+      long time = timestampsCopy[i];
+
+      if (time < startTimeNanos) {
+        continue;
+      }
+
+      if (typesCopy[i] == TYPE_BEGIN) {
+        openSlices++;
+        writer.begin(time, nameIdsCopy[i], keysCopy[i], valuesCopy[i]);
+      } else if (openSlices > 0) {
+        openSlices--;
+        writer.end(time, nameIdsCopy[i]);
+      }
+    }
+  }
+
+  private float nextRandomFloat() {
+    randomState ^= randomState << 13;
+    randomState ^= randomState >>> 7;
+    randomState ^= randomState << 17;
+
+    return (randomState >>> 40) / (float) (1 << 24);
+  }
+
+  interface EventWriter {
+    void begin(long time, int nameId, @Nullable String key, @Nullable String value);
+    void end(long time, int nameId);
+  }
+}
@@ -2,6 +2,7 @@ package org.thoughtcrime.securesms.tracing;
 
 import android.os.SystemClock;
 import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
 
 import com.google.protobuf.ByteString;
 
@@ -13,16 +14,18 @@ import org.thoughtcrime.securesms.trace.TraceProtos.TrackDescriptor;
 import org.thoughtcrime.securesms.trace.TraceProtos.TrackEvent;
 import org.whispersystems.signalservice.api.util.UuidUtil;
 
+import java.util.Arrays;
+import java.util.Iterator;
 import java.util.Map;
-import java.util.Queue;
 import java.util.UUID;
 import java.util.concurrent.ConcurrentHashMap;
-import java.util.concurrent.ConcurrentLinkedQueue;
-import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
 
 /**
- * A class to create Perfetto-compatible traces. Currently keeps the entire trace in memory to
- * avoid weirdness with synchronizing to disk.
+ * A class to create Perfetto-compatible traces. Keeps a bounded amount of recent trace data in
+ * memory so that it can be left on all the time.
  *
  * Some general info on how the Perfetto format works:
  * - The file format is just a Trace proto (see Trace.proto)
@@ -33,33 +36,45 @@ import java.util.concurrent.atomic.AtomicInteger;
  *   - End of a method
  *   - (And a bunch of other stuff that's not relevant to use at this point)
  *
- * We keep a circular buffer of TracePackets for method calls, and we keep a separate list of
- * TracePackets for threads so we don't lose any of those.
+ * Every thread records into its own fixed-size {@link ThreadBuffer}, which stores events in
+ * primitive arrays and overwrites the oldest events when full. Method names are interned to int
+ * ids. Nothing is converted into TracePackets until we serialize.
  *
- * Serializing is just a matter of throwing all the TracePackets we have into a proto.
+ * Top-level slices are sampled with probability {@link BuildConfig#TRACE_SAMPLE_RATE}, which
+ * defaults to 1 and can be lowered for a build with the traceSampleRate Gradle property, e.g.
+ * -PtraceSampleRate=0.1. Slices nested inside a top-level slice follow its sampling decision.
  *
  * Note: This class aims to be largely-thread-safe, but prioritizes speed and memory efficiency
  * above all else. These methods are going to be called very quickly from every thread imaginable,
- * and we want to create as little overhead as possible. The idea being that it's ok if we don't,
- * for example, keep a perfect circular buffer size if it allows us to reduce overhead. The only
- * cost of screwing up would be dropping a trace packet or something, which, while sad, won't affect
- * how the app functions.
+ * and we want to create as little overhead as possible. Buffers are only ever written by their
+ * owning thread, and serialization takes a best-effort snapshot, discarding anything that was
+ * overwritten while it was being read.
  */
 public final class TracerImpl implements Tracer {
 
   private static final int    TRUSTED_SEQUENCE_ID    = 1;
   private static final byte[] SYNCHRONIZATION_MARKER = UuidUtil.toByteArray(UUID.fromString("82477a76-b28d-42ba-81dc-33326d57a079"));
 
-  private final Clock                  clock;
-  private final Map<Long, TracePacket> threadPackets;
-  private final Queue<TracePacket>     eventPackets;
-  private final AtomicInteger          eventCount;
+  private static final int  THREAD_BUFFER_CAPACITY   = Math.max(256, BuildConfig.TRACE_EVENT_MAX / 8);
+  private static final int  MAX_THREAD_BUFFERS       = 64;
+  private static final long SNAPSHOT_DURATION_MILLIS = TimeUnit.SECONDS.toMillis(10);
+  private static final long MIN_SNAPSHOT_INTERVAL    = TimeUnit.SECONDS.toNanos(30);
+  private static final long SNAPSHOT_TRACK_UUID      = -1;
+
+  private final Clock                      clock;
+  private final Map<Long, ThreadBuffer>    threadBuffers;
+  private final ThreadLocal<ThreadBuffer>  localBuffer;
+  private final NameTable                  names;
+  private final AtomicLong                 lastSnapshotTime;
+  private final AtomicReference<byte[]>    lastSnapshot;
 
   TracerImpl() {
-    this.clock         = SystemClock::elapsedRealtimeNanos;
-    this.threadPackets = new ConcurrentHashMap<>();
-    this.eventPackets  = new ConcurrentLinkedQueue<>();
-    this.eventCount    = new AtomicInteger(0);
+    this.clock            = SystemClock::elapsedRealtimeNanos;
+    this.threadBuffers    = new ConcurrentHashMap<>();
+    this.localBuffer      = new ThreadLocal<>();
+    this.names            = new NameTable();
+    this.lastSnapshotTime = new AtomicLong(0);
+    this.lastSnapshot     = new AtomicReference<>(null);
   }
 
   @Override
@@ -69,79 +84,153 @@ public final class TracerImpl implements Tracer {
 
   @Override
   public void start(@NonNull String methodName) {
-    long   time          = clock.getTimeNanos();
-    Thread currentThread = Thread.currentThread();
+    ThreadBuffer buffer = getOrCreateBuffer();
 
-    if (!threadPackets.containsKey(currentThread.getId())) {
-      threadPackets.put(currentThread.getId(), forThread(currentThread));
+    if (buffer != null && buffer.shouldRecordStart()) {
+      buffer.record(ThreadBuffer.TYPE_BEGIN, clock.getTimeNanos(), names.getId(methodName), null, null);
     }
-
-    addPacket(forMethodStart(methodName, time, currentThread.getId()));
   }
 
   @Override
   public void start(@NonNull String methodName, @NonNull String key, @NonNull String value) {
-    long   time          = clock.getTimeNanos();
-    Thread currentThread = Thread.currentThread();
+    ThreadBuffer buffer = getOrCreateBuffer();
 
-    if (!threadPackets.containsKey(currentThread.getId())) {
-      threadPackets.put(currentThread.getId(), forThread(currentThread));
+    if (buffer != null && buffer.shouldRecordStart()) {
+      buffer.record(ThreadBuffer.TYPE_BEGIN, clock.getTimeNanos(), names.getId(methodName), key, value);
     }
-
-    addPacket(forMethodStart(methodName, time, currentThread.getId(), key, value));
   }
 
   @Override
   public void end(@NonNull String methodName) {
-    addPacket(forMethodEnd(methodName, clock.getTimeNanos(), Thread.currentThread().getId()));
+    ThreadBuffer buffer = localBuffer.get();
+
+    if (buffer != null && buffer.shouldRecordEnd()) {
+      buffer.record(ThreadBuffer.TYPE_END, clock.getTimeNanos(), names.getId(methodName), null, null);
+    }
   }
 
+  @Override
   public @NonNull byte[] serialize() {
+    return serializeSince(Long.MIN_VALUE, null);
+  }
+
+  @Override
+  public @NonNull byte[] serialize(long durationMillis) {
+    return serializeSince(clock.getTimeNanos() - TimeUnit.MILLISECONDS.toNanos(durationMillis), null);
+  }
+
+  @Override
+  public void onSlowEvent(@NonNull String reason) {
+    long now  = clock.getTimeNanos();
+    long last = lastSnapshotTime.get();
+
+    if (last != 0 && now - last < MIN_SNAPSHOT_INTERVAL) {
+      return;
+    }
+
+    if (lastSnapshotTime.compareAndSet(last, now)) {
+      lastSnapshot.set(serializeSince(now - TimeUnit.MILLISECONDS.toNanos(SNAPSHOT_DURATION_MILLIS), reason));
+    }
+  }
+
+  @Override
+  public @Nullable byte[] getLastSnapshot() {
+    return lastSnapshot.get();
+  }
+
+  private @NonNull byte[] serializeSince(long startTimeNanos, @Nullable String snapshotReason) {
     Trace.Builder trace = Trace.newBuilder();
 
-    for (TracePacket thread : threadPackets.values()) {
-      trace.addPacket(thread);
+    for (ThreadBuffer buffer : threadBuffers.values()) {
+      long threadId = buffer.threadId;
+
+      trace.addPacket(forThread(threadId, buffer.threadName));
+      buffer.writeTo(new ThreadBuffer.EventWriter() {
+        @Override
+        public void begin(long time, int nameId, @Nullable String key, @Nullable String value) {
+          if (key != null && value != null) {
+            trace.addPacket(forMethodStart(names.getName(nameId), time, threadId, key, value));
+          } else {
+            trace.addPacket(forMethodStart(names.getName(nameId), time, threadId));
+          }
+        }
+
+        @Override
+        public void end(long time, int nameId) {
+          trace.addPacket(forMethodEnd(names.getName(nameId), time, threadId));
+        }
+      }, startTimeNanos);
     }
 
-    for (TracePacket event : eventPackets) {
-      trace.addPacket(event);
+    long now = clock.getTimeNanos();
+
+    if (snapshotReason != null) {
+      trace.addPacket(forSnapshotTrack());
+      trace.addPacket(forInstant(snapshotReason, now, SNAPSHOT_TRACK_UUID));
     }
 
-    trace.addPacket(forSynchronization(clock.getTimeNanos()));
+    trace.addPacket(forSynchronization(now));
 
     return trace.build().toByteArray();
   }
 
   /**
-   * Attempts to add a packet to our list while keeping the size of our circular buffer in-check.
-   * The tracking of the event count is not perfectly thread-safe, but doing it in a thread-safe
-   * way would likely involve adding a lock, which we really don't want to do, since it'll add
-   * unnecessary overhead.
-   *
-   * Note that we keep track of the event count separately because
-   * {@link ConcurrentLinkedQueue#size()} is NOT a constant-time operation.
+   * @return The buffer for the current thread, or null if we're already tracking the maximum
+   *         number of live threads.
    */
-  private void addPacket(@NonNull TracePacket packet) {
-    eventPackets.add(packet);
+  private @Nullable ThreadBuffer getOrCreateBuffer() {
+    ThreadBuffer buffer = localBuffer.get();
+
+    if (buffer == null) {
+      Thread currentThread = Thread.currentThread();
+
+      if (threadBuffers.size() >= MAX_THREAD_BUFFERS) {
+        removeDeadThreadBuffers();
+
+        if (threadBuffers.size() >= MAX_THREAD_BUFFERS) {
+          return null;
+        }
+      }
+
+      buffer = new ThreadBuffer(currentThread, THREAD_BUFFER_CAPACITY, BuildConfig.TRACE_SAMPLE_RATE);
+      threadBuffers.put(currentThread.getId(), buffer);
+      localBuffer.set(buffer);
+    }
+
+    return buffer;
+  }
+
+  private void removeDeadThreadBuffers() {
+    Iterator<ThreadBuffer> iterator = threadBuffers.values().iterator();
 
-    int size = eventCount.incrementAndGet();
+    while (iterator.hasNext()) {
+      Thread thread = iterator.next().thread.get();
 
-    for (int i = size; i > BuildConfig.TRACE_EVENT_MAX; i--) {
-      eventPackets.poll();
-      eventCount.decrementAndGet();
+      if (thread == null || !thread.isAlive()) {
+        iterator.remove();
+      }
     }
   }
 
-  private static TracePacket forThread(@NonNull Thread thread) {
+  private static TracePacket forThread(long threadId, @NonNull String threadName) {
     return TracePacket.newBuilder()
                       .setTrustedPacketSequenceId(TRUSTED_SEQUENCE_ID)
                       .setTrackDescriptor(TrackDescriptor.newBuilder()
-                                                         .setUuid(thread.getId())
-                                                         .setName(thread.getName()))
+                                                         .setUuid(threadId)
+                                                         .setName(threadName))
                       .build();
 
   }
 
+  private static TracePacket forSnapshotTrack() {
+    return TracePacket.newBuilder()
+                      .setTrustedPacketSequenceId(TRUSTED_SEQUENCE_ID)
+                      .setTrackDescriptor(TrackDescriptor.newBuilder()
+                                                         .setUuid(SNAPSHOT_TRACK_UUID)
+                                                         .setName("Snapshot"))
+                      .build();
+  }
+
   private static TracePacket forMethodStart(@NonNull String name, long time, long threadId) {
     return TracePacket.newBuilder()
                       .setTrustedPacketSequenceId(TRUSTED_SEQUENCE_ID)
@@ -179,6 +268,17 @@ public final class TracerImpl implements Tracer {
                       .build();
   }
 
+  private static TracePacket forInstant(@NonNull String name, long time, long trackUuid) {
+    return TracePacket.newBuilder()
+                      .setTrustedPacketSequenceId(TRUSTED_SEQUENCE_ID)
+                      .setTimestamp(time)
+                      .setTrackEvent(TrackEvent.newBuilder()
+                                               .setTrackUuid(trackUuid)
+                                               .setName(name)
+                                               .setType(TrackEvent.Type.TYPE_INSTANT))
+                      .build();
+  }
+
   private static TracePacket forSynchronization(long time) {
     return TracePacket.newBuilder()
                       .setTrustedPacketSequenceId(TRUSTED_SEQUENCE_ID)
@@ -187,6 +287,51 @@ public final class TracerImpl implements Tracer {
                       .build();
   }
 
+  /**
+   * Interns method names to small int ids. Lookups are lock-free; only adding a new name locks.
+   */
+  private static final class NameTable {
+
+    private final Map<String, Integer> ids = new ConcurrentHashMap<>();
+
+    private volatile String[] names = new String[256];
+
+    int getId(@NonNull String name) {
+      Integer id = ids.get(name);
+
+      if (id != null) {
+        return id;
+      }
+
+      synchronized (this) {
+        id = ids.get(name);
+
+        if (id == null) {
+          id = ids.size();
+
+          String[] current = names;
+          if (id >= current.length) {
+            current = Arrays.copyOf(current, current.length * 2);
+          }
+
+          current[id] = name;
+          names       = current;
+
+          ids.put(name, id);
+        }
+
+        return id;
+      }
+    }
+
+    @NonNull String getName(int id) {
+      String[] current = names;
+      String   name    = id < current.length ? current[id] : null;
+
+      return name != null ? name : "unknown";
+    }
+  }
+
   private interface Clock {
     long getTimeNanos();
   }
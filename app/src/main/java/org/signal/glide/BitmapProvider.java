@@ -0,0 +1,34 @@
+package org.signal.glide;
+
+import android.graphics.Bitmap;
+
+import androidx.annotation.NonNull;
+
+/**
+ * Where frame decoders get their working bitmaps from, and give them back to when they stop, so
+ * that bitmaps can be reused across decoders instead of being allocated for each one.
+ */
+public interface BitmapProvider {
+
+  /**
+   * @return A mutable, transparent ARGB_8888 bitmap of the given size.
+   */
+  @NonNull Bitmap obtain(int width, int height);
+
+  /**
+   * Hands back a bitmap that the decoder no longer uses.
+   */
+  void recycle(@NonNull Bitmap bitmap);
+
+  BitmapProvider DEFAULT = new BitmapProvider() {
+    @Override
+    public @NonNull Bitmap obtain(int width, int height) {
+      return Bitmap.createBitmap(width, height, Bitmap.Config.ARGB_8888);
+    }
+
+    @Override
+    public void recycle(@NonNull Bitmap bitmap) {
+      bitmap.recycle();
+    }
+  };
+}
@@ -4,7 +4,8 @@ import androidx.annotation.NonNull;
 
 public final class SignalGlideCodecs {
 
-  private static Log.Provider logProvider = Log.Provider.EMPTY;
+  private static Log.Provider   logProvider    = Log.Provider.EMPTY;
+  private static BitmapProvider bitmapProvider = BitmapProvider.DEFAULT;
 
   private SignalGlideCodecs() {}
 
@@ -15,4 +16,12 @@ public final class SignalGlideCodecs {
   public static @NonNull Log.Provider getLogProvider() {
     return logProvider;
   }
+
+  public static void setBitmapProvider(@NonNull BitmapProvider provider) {
+    bitmapProvider = provider;
+  }
+
+  public static @NonNull BitmapProvider getBitmapProvider() {
+    return bitmapProvider;
+  }
 }
@@ -16,6 +16,7 @@ import androidx.annotation.Nullable;
 import androidx.annotation.WorkerThread;
 
 import org.signal.glide.Log;
+import org.signal.glide.SignalGlideCodecs;
 import org.signal.glide.common.executor.FrameDecoderExecutor;
 import org.signal.glide.common.io.Reader;
 import org.signal.glide.common.io.Writer;
@@ -129,8 +130,7 @@ public abstract class FrameSeqDecoder<R extends Reader, W extends Writer> {
         }
 
         try {
-            Bitmap.Config config = Bitmap.Config.ARGB_8888;
-            ret = Bitmap.createBitmap(width, height, config);
+            ret = SignalGlideCodecs.getBitmapProvider().obtain(width, height);
         } catch (OutOfMemoryError e) {
             e.printStackTrace();
         }
@@ -319,7 +319,7 @@ public abstract class FrameSeqDecoder<R extends Reader, W extends Writer> {
         frames.clear();
         for (Bitmap bitmap : cacheBitmaps) {
             if (bitmap != null && !bitmap.isRecycled()) {
-                bitmap.recycle();
+                SignalGlideCodecs.getBitmapProvider().recycle(bitmap);
             }
         }
         cacheBitmaps.clear();
@@ -117,6 +117,7 @@ public class ApplicationContext extends MultiDexApplication implements DefaultLi
     initializeCrashHandling();
     initializeAppDependencies();
     initializeFirstEverAppLaunch();
+    initializeKeyValueStore();
     initializeApplicationMigrations();
     initializeMessageRetrieval();
     initializeExpiringMessageManager();
@@ -244,6 +245,10 @@ public class ApplicationContext extends MultiDexApplication implements DefaultLi
     ApplicationDependencies.init(this, new ApplicationDependencyProvider(this, new SignalServiceNetworkAccess(this)));
   }
 
+  private void initializeKeyValueStore() {
+    SignalExecutors.BOUNDED.execute(SignalStore::warm);
+  }
+
   private void initializeFirstEverAppLaunch() {
     if (TextSecurePreferences.getFirstInstallVersion(this) == -1) {
       if (!SQLCipherOpenHelper.databaseFileExists(this)) {
@@ -0,0 +1,36 @@
+package org.thoughtcrime.securesms.attachments;
+
+/**
+ * A reduced size copy of an image or video attachment, generated in one of the
+ * {@link ThumbnailBuckets} so that it can be loaded instead of the full attachment.
+ */
+public final class AttachmentThumbnail {
+
+  private final long id;
+  private final int  bucket;
+  private final int  width;
+  private final int  height;
+
+  public AttachmentThumbnail(long id, int bucket, int width, int height) {
+    this.id     = id;
+    this.bucket = bucket;
+    this.width  = width;
+    this.height = height;
+  }
+
+  public long getId() {
+    return id;
+  }
+
+  public int getBucket() {
+    return bucket;
+  }
+
+  public int getWidth() {
+    return width;
+  }
+
+  public int getHeight() {
+    return height;
+  }
+}
@@ -0,0 +1,73 @@
+package org.thoughtcrime.securesms.attachments;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * The sizes that {@link AttachmentThumbnail}s are generated at, and which of them to load for a
+ * given target size.
+ * <p>
+ * Buckets are measured on the short side, so that a thumbnail covers a square of its bucket size
+ * whatever the aspect ratio of the media, which is what a center cropped grid cell needs. The long
+ * side is capped so that panoramas don't produce thumbnails as large as the original.
+ */
+public final class ThumbnailBuckets {
+
+  private static final int[] BUCKETS          = { 384, 768, 1280 };
+  private static final int   MAX_ASPECT_RATIO = 4;
+
+  private ThumbnailBuckets() {}
+
+  public static int getLargestBucket() {
+    return BUCKETS[BUCKETS.length - 1];
+  }
+
+  /**
+   * @return The buckets to generate for media of the given size, largest first. Buckets larger than
+   *         the media are left out, as the media can be loaded as is for those.
+   */
+  public static @NonNull List<Integer> getBuckets(int width, int height) {
+    List<Integer> buckets   = new ArrayList<>(BUCKETS.length);
+    int           shortSide = Math.min(width, height);
+
+    for (int i = BUCKETS.length - 1; i >= 0; i--) {
+      if (BUCKETS[i] <= shortSide) {
+        buckets.add(BUCKETS[i]);
+      }
+    }
+
+    return buckets;
+  }
+
+  /**
+   * @return The factor to scale media of the given size by to fit the bucket, never more than 1.
+   */
+  public static float getScale(int width, int height, int bucket) {
+    float shortSideScale = bucket / (float) Math.max(1, Math.min(width, height));
+    float longSideScale  = bucket * MAX_ASPECT_RATIO / (float) Math.max(1, Math.max(width, height));
+
+    return Math.min(1f, Math.min(shortSideScale, longSideScale));
+  }
+
+  /**
+   * @param thumbnails Available thumbnails, smallest first.
+   * @return The smallest thumbnail that covers the target size in both dimensions, or null if none
+   *         does and the full attachment should be loaded.
+   */
+  public static @Nullable AttachmentThumbnail select(@NonNull List<AttachmentThumbnail> thumbnails, int targetWidth, int targetHeight) {
+    if (targetWidth <= 0 || targetHeight <= 0) {
+      return null;
+    }
+
+    for (AttachmentThumbnail thumbnail : thumbnails) {
+      if (thumbnail.getWidth() >= targetWidth && thumbnail.getHeight() >= targetHeight) {
+        return thumbnail;
+      }
+    }
+
+    return null;
+  }
+}
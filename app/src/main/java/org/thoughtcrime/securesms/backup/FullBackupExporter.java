@@ -23,12 +23,14 @@ import org.thoughtcrime.securesms.crypto.ClassicDecryptingPartInputStream;
 import org.thoughtcrime.securesms.crypto.IdentityKeyUtil;
 import org.thoughtcrime.securesms.crypto.ModernDecryptingPartInputStream;
 import org.thoughtcrime.securesms.database.AttachmentDatabase;
+import org.thoughtcrime.securesms.database.AttachmentThumbnailDatabase;
 import org.thoughtcrime.securesms.database.GroupReceiptDatabase;
 import org.thoughtcrime.securesms.database.JobDatabase;
 import org.thoughtcrime.securesms.database.KeyValueDatabase;
 import org.thoughtcrime.securesms.database.MmsDatabase;
 import org.thoughtcrime.securesms.database.MmsSmsColumns;
 import org.thoughtcrime.securesms.database.OneTimePreKeyDatabase;
+import org.thoughtcrime.securesms.database.RecipientDatabase;
 import org.thoughtcrime.securesms.database.SearchDatabase;
 import org.thoughtcrime.securesms.database.SessionDatabase;
 import org.thoughtcrime.securesms.database.SignedPreKeyDatabase;
@@ -75,10 +77,12 @@ public class FullBackupExporter extends FullBackupBase {
     SessionDatabase.TABLE_NAME,
     SearchDatabase.SMS_FTS_TABLE_NAME,
     SearchDatabase.MMS_FTS_TABLE_NAME,
+    RecipientDatabase.FTS_TABLE_NAME,
     JobDatabase.JOBS_TABLE_NAME,
     JobDatabase.CONSTRAINTS_TABLE_NAME,
     JobDatabase.DEPENDENCIES_TABLE_NAME,
-    KeyValueDatabase.TABLE_NAME
+    KeyValueDatabase.TABLE_NAME,
+    AttachmentThumbnailDatabase.TABLE_NAME
   );
 
   public static void export(@NonNull Context context,
@@ -179,8 +183,9 @@ public class FullBackupExporter extends FullBackupBase {
 
           boolean isSmsFtsSecretTable = name != null && !name.equals(SearchDatabase.SMS_FTS_TABLE_NAME) && name.startsWith(SearchDatabase.SMS_FTS_TABLE_NAME);
           boolean isMmsFtsSecretTable = name != null && !name.equals(SearchDatabase.MMS_FTS_TABLE_NAME) && name.startsWith(SearchDatabase.MMS_FTS_TABLE_NAME);
+          boolean isRecipientFtsSecretTable = name != null && !name.equals(RecipientDatabase.FTS_TABLE_NAME) && name.startsWith(RecipientDatabase.FTS_TABLE_NAME);
 
-          if (!isSmsFtsSecretTable && !isMmsFtsSecretTable) {
+          if (!isSmsFtsSecretTable && !isMmsFtsSecretTable && !isRecipientFtsSecretTable) {
             if ("table".equals(type)) {
               tables.add(name);
             }
@@ -0,0 +1,51 @@
+package org.thoughtcrime.securesms.blurhash;
+
+import androidx.annotation.NonNull;
+
+import org.thoughtcrime.securesms.util.LRUCache;
+
+import java.util.Map;
+
+/**
+ * Tables of the cosine basis values used by the BlurHash encoder and decoder, so that they don't
+ * have to call {@link Math#cos(double)} for every pixel and component.
+ * <p>
+ * Placeholders in a conversation tend to be decoded at a handful of sizes, so recent tables are
+ * kept around.
+ */
+final class BlurHashCosines {
+
+  private static final int MAX_CACHED = 16;
+
+  private static final Map<Long, double[]> CACHE = new LRUCache<>(MAX_CACHED);
+
+  private BlurHashCosines() {
+  }
+
+  /**
+   * @return A table where [p * components + c] is cos(PI * p * c / size) for p in [0, size) and c in
+   *         [0, components). Callers must not modify it.
+   */
+  static @NonNull double[] get(int size, int components) {
+    Long key = ((long) size << 32) | components;
+
+    synchronized (CACHE) {
+      double[] cached = CACHE.get(key);
+      if (cached != null) return cached;
+    }
+
+    double[] table = new double[size * components];
+
+    for (int p = 0; p < size; p++) {
+      for (int c = 0; c < components; c++) {
+        table[p * components + c] = Math.cos(Math.PI * p * c / size);
+      }
+    }
+
+    synchronized (CACHE) {
+      CACHE.put(key, table);
+    }
+
+    return table;
+  }
+}
@@ -21,11 +21,13 @@
 package org.thoughtcrime.securesms.blurhash;
 
 import android.graphics.Bitmap;
-import android.graphics.Color;
 
+import androidx.annotation.NonNull;
 import androidx.annotation.Nullable;
 
-import static org.thoughtcrime.securesms.blurhash.BlurHashUtil.linearTosRGB;
+import java.util.Arrays;
+
+import static org.thoughtcrime.securesms.blurhash.BlurHashUtil.linearTosRGBFast;
 import static org.thoughtcrime.securesms.blurhash.BlurHashUtil.sRGBToLinear;
 import static org.thoughtcrime.securesms.blurhash.BlurHashUtil.signPow;
 
@@ -36,78 +38,111 @@ class BlurHashDecoder {
   }
 
   static @Nullable Bitmap decode(@Nullable String blurHash, int width, int height, double punch) {
+    int[] pixels = new int[width * height];
 
-    if (blurHash == null || blurHash.length() < 6) {
+    if (!decode(blurHash, width, height, punch, pixels)) {
       return null;
     }
 
+    return Bitmap.createBitmap(pixels, width, height, Bitmap.Config.ARGB_8888);
+  }
+
+  /**
+   * Decodes into an ARGB pixel buffer of width * height, row by row.
+   *
+   * @return False if the hash is invalid, in which case pixels is left untouched.
+   */
+  static boolean decode(@Nullable String blurHash, int width, int height, double punch, @NonNull int[] pixels) {
+    if (blurHash == null || blurHash.length() < 6) {
+      return false;
+    }
+
     int numCompEnc = Base83.decode(blurHash, 0, 1);
     int numCompX   = (numCompEnc % 9) + 1;
     int numCompY   = (numCompEnc / 9) + 1;
 
     if (blurHash.length() != 4 + 2 * numCompX * numCompY) {
-      return null;
+      return false;
     }
 
-    int        maxAcEnc = Base83.decode(blurHash, 1, 2);
-    double     maxAc    = (maxAcEnc + 1) / 166f;
-    double[][] colors   = new double[numCompX * numCompY][];
-    for (int i = 0; i < colors.length; i++) {
-      if (i == 0) {
-        int colorEnc = Base83.decode(blurHash, 2, 6);
-        colors[i] = decodeDc(colorEnc);
-      } else {
-        int from = 4 + i * 2;
-        int colorEnc = Base83.decode(blurHash, from, from + 2);
-        colors[i] = decodeAc(colorEnc, maxAc * punch);
-      }
+    if (pixels.length < width * height) {
+      throw new IllegalArgumentException("Pixel buffer is too small");
+    }
+
+    int      maxAcEnc = Base83.decode(blurHash, 1, 2);
+    double   maxAc    = (maxAcEnc + 1) / 166f;
+    double[] colors   = new double[numCompX * numCompY * 3];
+
+    decodeDc(Base83.decode(blurHash, 2, 6), colors);
+
+    for (int i = 1; i < numCompX * numCompY; i++) {
+      int from = 4 + i * 2;
+      decodeAc(Base83.decode(blurHash, from, from + 2), maxAc * punch, colors, i * 3);
     }
 
-    return composeBitmap(width, height, numCompX, numCompY, colors);
+    composePixels(width, height, numCompX, numCompY, colors, pixels);
+
+    return true;
   }
 
-  private static double[] decodeDc(int colorEnc) {
+  private static void decodeDc(int colorEnc, double[] colors) {
     int r = colorEnc >> 16;
     int g = (colorEnc >> 8) & 255;
     int b = colorEnc & 255;
-    return new double[] {sRGBToLinear(r),
-                         sRGBToLinear(g),
-                         sRGBToLinear(b)};
+
+    colors[0] = sRGBToLinear(r);
+    colors[1] = sRGBToLinear(g);
+    colors[2] = sRGBToLinear(b);
   }
 
-  private static double[] decodeAc(int value, double maxAc) {
+  private static void decodeAc(int value, double maxAc, double[] colors, int offset) {
     int r = value / (19 * 19);
     int g = (value / 19) % 19;
     int b = value % 19;
-    return new double[]{
-        signPow((r - 9) / 9.0f, 2f) * maxAc,
-        signPow((g - 9) / 9.0f, 2f) * maxAc,
-        signPow((b - 9) / 9.0f, 2f) * maxAc
-    };
+
+    colors[offset]     = signPow((r - 9) / 9.0f, 2f) * maxAc;
+    colors[offset + 1] = signPow((g - 9) / 9.0f, 2f) * maxAc;
+    colors[offset + 2] = signPow((b - 9) / 9.0f, 2f) * maxAc;
   }
 
-  private static Bitmap composeBitmap(int width, int height, int numCompX, int numCompY, double[][] colors) {
-    Bitmap bitmap = Bitmap.createBitmap(width, height, Bitmap.Config.ARGB_8888);
+  /**
+   * The basis is separable, so for each row the vertical components are first folded into one
+   * color per horizontal component, leaving numCompX terms to sum per pixel rather than
+   * numCompX * numCompY.
+   */
+  private static void composePixels(int width, int height, int numCompX, int numCompY, double[] colors, int[] pixels) {
+    double[] cosX = BlurHashCosines.get(width, numCompX);
+    double[] cosY = BlurHashCosines.get(height, numCompY);
+    double[] row  = new double[numCompX * 3];
+
     for (int y = 0; y < height; y++) {
-      for (int x = 0; x < width; x++) {
+      Arrays.fill(row, 0);
+
+      for (int j = 0; j < numCompY; j++) {
+        double basisY = cosY[y * numCompY + j];
 
-        double r = 0f;
-        double g = 0f;
-        double b = 0f;
-
-        for (int j = 0; j < numCompY; j++) {
-          for (int i = 0; i < numCompX; i++) {
-            double basis = (Math.cos(Math.PI * x * i / width) * Math.cos(Math.PI * y * j / height));
-            double[] color = colors[j * numCompX + i];
-            r += color[0] * basis;
-            g += color[1] * basis;
-            b += color[2] * basis;
-          }
+        for (int i = 0; i < numCompX; i++) {
+          int color = (j * numCompX + i) * 3;
+          row[i * 3]     += colors[color]     * basisY;
+          row[i * 3 + 1] += colors[color + 1] * basisY;
+          row[i * 3 + 2] += colors[color + 2] * basisY;
         }
-        bitmap.setPixel(x, y, Color.rgb((int) linearTosRGB(r), (int) linearTosRGB(g), (int) linearTosRGB(b)));
       }
-    }
 
-    return bitmap;
+      for (int x = 0; x < width; x++) {
+        double r = 0;
+        double g = 0;
+        double b = 0;
+
+        for (int i = 0; i < numCompX; i++) {
+          double basisX = cosX[x * numCompX + i];
+          r += row[i * 3]     * basisX;
+          g += row[i * 3 + 1] * basisX;
+          b += row[i * 3 + 2] * basisX;
+        }
+
+        pixels[y * width + x] = 0xff000000 | (linearTosRGBFast(r) << 16) | (linearTosRGBFast(g) << 8) | linearTosRGBFast(b);
+      }
+    }
   }
 }
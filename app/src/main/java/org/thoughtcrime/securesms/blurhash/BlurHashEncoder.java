@@ -31,7 +31,7 @@ import java.io.InputStream;
 
 import static org.thoughtcrime.securesms.blurhash.BlurHashUtil.linearTosRGB;
 import static org.thoughtcrime.securesms.blurhash.BlurHashUtil.max;
-import static org.thoughtcrime.securesms.blurhash.BlurHashUtil.sRGBToLinear;
+import static org.thoughtcrime.securesms.blurhash.BlurHashUtil.sRGBToLinearFast;
 import static org.thoughtcrime.securesms.blurhash.BlurHashUtil.signPow;
 
 public final class BlurHashEncoder {
@@ -65,7 +65,7 @@ public final class BlurHashEncoder {
     return encode(pixels, width, height, componentX, componentY);
   }
 
-  private static String encode(int[] pixels, int width, int height, int componentX, int componentY) {
+  static String encode(int[] pixels, int width, int height, int componentX, int componentY) {
 
     if (componentX < 1 || componentX > 9 || componentY < 1 || componentY > 9) {
       throw new IllegalArgumentException("Blur hash must have between 1 and 9 components");
@@ -74,24 +74,19 @@ public final class BlurHashEncoder {
       throw new IllegalArgumentException("Width and height must match the pixels array");
     }
 
-    double[][] factors = new double[componentX * componentY][3];
-    for (int j = 0; j < componentY; j++) {
-      for (int i = 0; i < componentX; i++) {
-        double normalisation = i == 0 && j == 0 ? 1 : 2;
-        applyBasisFunction(pixels, width, height,
-            normalisation, i, j,
-            factors, j * componentX + i);
-      }
-    }
+    int      components = componentX * componentY;
+    double[] factors    = new double[components * 3];
+
+    applyBasisFunctions(pixels, width, height, componentX, componentY, factors);
 
-    char[] hash = new char[1 + 1 + 4 + 2 * (factors.length - 1)]; // size flag + max AC + DC + 2 * AC components
+    char[] hash = new char[1 + 1 + 4 + 2 * (components - 1)]; // size flag + max AC + DC + 2 * AC components
 
     long sizeFlag = componentX - 1 + (componentY - 1) * 9;
     Base83.encode(sizeFlag, 1, hash, 0);
 
     double maximumValue;
-    if (factors.length > 1) {
-      double actualMaximumValue    = max(factors, 1, factors.length);
+    if (components > 1) {
+      double actualMaximumValue    = max(factors, 3, factors.length);
       double quantisedMaximumValue = Math.floor(Math.max(0, Math.min(82, Math.floor(actualMaximumValue * 166 - 0.5))));
       maximumValue = (quantisedMaximumValue + 1) / 166;
       Base83.encode(Math.round(quantisedMaximumValue), 1, hash, 1);
@@ -100,48 +95,66 @@ public final class BlurHashEncoder {
       Base83.encode(0, 1, hash, 1);
     }
 
-    double[] dc = factors[0];
-    Base83.encode(encodeDC(dc), 4, hash, 2);
+    Base83.encode(encodeDC(factors), 4, hash, 2);
 
-    for (int i = 1; i < factors.length; i++) {
-      Base83.encode(encodeAC(factors[i], maximumValue), 2, hash, 6 + 2 * (i - 1));
+    for (int i = 1; i < components; i++) {
+      Base83.encode(encodeAC(factors, i * 3, maximumValue), 2, hash, 6 + 2 * (i - 1));
     }
     return new String(hash);
   }
 
-  private static void applyBasisFunction(int[] pixels, int width, int height,
-                                         double normalisation, int i, int j,
-                                         double[][] factors, int index)
+  /**
+   * Accumulates every component in a single pass over the pixels, with the cosines and sRGB
+   * conversions coming from tables. factors holds r, g, b for each component in turn.
+   */
+  private static void applyBasisFunctions(int[] pixels, int width, int height,
+                                          int componentX, int componentY,
+                                          double[] factors)
   {
-    double r = 0, g = 0, b = 0;
-    for (int x = 0; x < width; x++) {
-      for (int y = 0; y < height; y++) {
-        double basis = normalisation
-                     * Math.cos((Math.PI * i * x) / width)
-                     * Math.cos((Math.PI * j * y) / height);
-        int pixel = pixels[y * width + x];
-        r += basis * sRGBToLinear((pixel >> 16) & 0xff);
-        g += basis * sRGBToLinear((pixel >> 8)  & 0xff);
-        b += basis * sRGBToLinear( pixel        & 0xff);
+    double[] cosX = BlurHashCosines.get(width, componentX);
+    double[] cosY = BlurHashCosines.get(height, componentY);
+
+    for (int y = 0; y < height; y++) {
+      for (int x = 0; x < width; x++) {
+        int    pixel = pixels[y * width + x];
+        double r     = sRGBToLinearFast((pixel >> 16) & 0xff);
+        double g     = sRGBToLinearFast((pixel >> 8)  & 0xff);
+        double b     = sRGBToLinearFast( pixel        & 0xff);
+
+        for (int j = 0; j < componentY; j++) {
+          double basisY = cosY[y * componentY + j];
+
+          for (int i = 0; i < componentX; i++) {
+            double basis  = cosX[x * componentX + i] * basisY;
+            int    factor = (j * componentX + i) * 3;
+
+            factors[factor]     += basis * r;
+            factors[factor + 1] += basis * g;
+            factors[factor + 2] += basis * b;
+          }
+        }
       }
     }
+
     double scale = 1.0 / (width * height);
-    factors[index][0] = r * scale;
-    factors[index][1] = g * scale;
-    factors[index][2] = b * scale;
+
+    for (int i = 0; i < factors.length; i++) {
+      double normalisation = i < 3 ? 1 : 2;
+      factors[i] *= normalisation * scale;
+    }
   }
 
-  private static long encodeDC(double[] value) {
-    long r = linearTosRGB(value[0]);
-    long g = linearTosRGB(value[1]);
-    long b = linearTosRGB(value[2]);
+  private static long encodeDC(double[] factors) {
+    long r = linearTosRGB(factors[0]);
+    long g = linearTosRGB(factors[1]);
+    long b = linearTosRGB(factors[2]);
     return (r << 16) + (g << 8) + b;
   }
 
-  private static long encodeAC(double[] value, double maximumValue) {
-    double quantR = Math.floor(Math.max(0, Math.min(18, Math.floor(signPow(value[0] / maximumValue, 0.5) * 9 + 9.5))));
-    double quantG = Math.floor(Math.max(0, Math.min(18, Math.floor(signPow(value[1] / maximumValue, 0.5) * 9 + 9.5))));
-    double quantB = Math.floor(Math.max(0, Math.min(18, Math.floor(signPow(value[2] / maximumValue, 0.5) * 9 + 9.5))));
+  private static long encodeAC(double[] factors, int offset, double maximumValue) {
+    double quantR = Math.floor(Math.max(0, Math.min(18, Math.floor(signPow(factors[offset]     / maximumValue, 0.5) * 9 + 9.5))));
+    double quantG = Math.floor(Math.max(0, Math.min(18, Math.floor(signPow(factors[offset + 1] / maximumValue, 0.5) * 9 + 9.5))));
+    double quantB = Math.floor(Math.max(0, Math.min(18, Math.floor(signPow(factors[offset + 2] / maximumValue, 0.5) * 9 + 9.5))));
     return Math.round(quantR * 19 * 19 + quantG * 19 + quantB);
   }
 
@@ -22,6 +22,66 @@ package org.thoughtcrime.securesms.blurhash;
 
 final class BlurHashUtil {
 
+  private static final int LINEAR_TABLE_SIZE = 1024;
+
+  /** sRGBToLinear for every 8-bit channel value. */
+  private static final double[] SRGB_TO_LINEAR = new double[256];
+
+  /** The smallest linear value that maps to each sRGB value. */
+  private static final double[] SRGB_THRESHOLDS = new double[256];
+
+  /** linearTosRGB at each step of {@link #LINEAR_TABLE_SIZE}, a lower bound for values up to the next step. */
+  private static final int[] LINEAR_TO_SRGB_FLOOR = new int[LINEAR_TABLE_SIZE + 1];
+
+  static {
+    for (int i = 0; i < 256; i++) {
+      SRGB_TO_LINEAR[i] = sRGBToLinear(i);
+    }
+
+    for (int i = 1; i < 256; i++) {
+      double low  = 0;
+      double high = 1;
+
+      while (true) {
+        double mid = (low + high) / 2;
+
+        if (mid <= low || mid >= high) break;
+
+        if (linearTosRGB(mid) >= i) high = mid;
+        else                        low  = mid;
+      }
+
+      SRGB_THRESHOLDS[i] = high;
+    }
+
+    for (int i = 0; i <= LINEAR_TABLE_SIZE; i++) {
+      LINEAR_TO_SRGB_FLOOR[i] = (int) linearTosRGB(i / (double) LINEAR_TABLE_SIZE);
+    }
+  }
+
+  /**
+   * Table based {@link #sRGBToLinear(long)} for a value in [0, 255].
+   */
+  static double sRGBToLinearFast(int value) {
+    return SRGB_TO_LINEAR[value];
+  }
+
+  /**
+   * Table based {@link #linearTosRGB(double)}, giving exactly the same results.
+   */
+  static int linearTosRGBFast(double value) {
+    if (!(value > 0)) return 0;
+    if (value >= 1)   return 255;
+
+    int result = LINEAR_TO_SRGB_FLOOR[(int) (value * LINEAR_TABLE_SIZE)];
+
+    while (result < 255 && value >= SRGB_THRESHOLDS[result + 1]) {
+      result++;
+    }
+
+    return result;
+  }
+
   static double sRGBToLinear(long value) {
     double v = value / 255.0;
     if (v <= 0.04045) {
@@ -44,14 +104,11 @@ final class BlurHashUtil {
     return Math.copySign(Math.pow(Math.abs(val), exp), val);
   }
 
-  static double max(double[][] values, int from, int endExclusive) {
+  static double max(double[] values, int from, int endExclusive) {
     double result = Double.NEGATIVE_INFINITY;
     for (int i = from; i < endExclusive; i++) {
-      for (int j = 0; j < values[i].length; j++) {
-        double value = values[i][j];
-        if (value > result) {
-          result = value;
-        }
+      if (values[i] > result) {
+        result = values[i];
       }
     }
     return result;
@@ -23,6 +23,7 @@ import org.thoughtcrime.securesms.components.emoji.parsing.EmojiPageBitmap;
 import org.thoughtcrime.securesms.components.emoji.parsing.EmojiParser;
 import org.thoughtcrime.securesms.components.emoji.parsing.EmojiTree;
 import org.thoughtcrime.securesms.logging.Log;
+import org.thoughtcrime.securesms.util.ClockCache;
 import org.thoughtcrime.securesms.util.FutureTaskListener;
 import org.thoughtcrime.securesms.util.Util;
 import org.whispersystems.libsignal.util.Pair;
@@ -36,13 +37,17 @@ class EmojiProvider {
   private static volatile EmojiProvider instance = null;
   private static final    Paint         paint    = new Paint(Paint.FILTER_BITMAP_FLAG | Paint.ANTI_ALIAS_FLAG);
 
-  private final EmojiTree emojiTree = new EmojiTree();
+  private final EmojiTree                                    emojiTree      = new EmojiTree();
+  private final ClockCache<String, EmojiParser.CandidateList> candidateCache = new ClockCache<>(CANDIDATE_CACHE_SIZE);
 
   private static final int EMOJI_RAW_HEIGHT = 64;
   private static final int EMOJI_RAW_WIDTH  = 64;
   private static final int EMOJI_VERT_PAD   = 0;
   private static final int EMOJI_PER_ROW    = 16;
 
+  private static final int CANDIDATE_CACHE_SIZE       = 256;
+  private static final int CANDIDATE_CACHE_MAX_LENGTH = 2048;
+
   private final float decodeScale;
   private final float verticalPad;
 
@@ -77,9 +82,26 @@ class EmojiProvider {
     }
   }
 
+  /**
+   * The same message bodies get bound over and over while scrolling a conversation, so the results
+   * for shorter texts are cached. Candidates only depend on the characters, not on any spans.
+   */
   @Nullable EmojiParser.CandidateList getCandidates(@Nullable CharSequence text) {
     if (text == null) return null;
-    return new EmojiParser(emojiTree).findCandidates(text);
+
+    if (text.length() > CANDIDATE_CACHE_MAX_LENGTH) {
+      return new EmojiParser(emojiTree).findCandidates(text);
+    }
+
+    String                    key        = text.toString();
+    EmojiParser.CandidateList candidates = candidateCache.get(key);
+
+    if (candidates == null) {
+      candidates = new EmojiParser(emojiTree).findCandidates(key);
+      candidateCache.put(key, candidates);
+    }
+
+    return candidates;
   }
 
   @Nullable Spannable emojify(@Nullable CharSequence text, @NonNull TextView tv) {
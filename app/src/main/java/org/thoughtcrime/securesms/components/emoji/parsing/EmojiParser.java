@@ -24,8 +24,9 @@ package org.thoughtcrime.securesms.components.emoji.parsing;
 import androidx.annotation.NonNull;
 import androidx.annotation.Nullable;
 
+import java.util.ArrayList;
+import java.util.Collections;
 import java.util.Iterator;
-import java.util.LinkedList;
 import java.util.List;
 
 /**
@@ -40,7 +41,7 @@ public class EmojiParser {
   }
 
   public @NonNull CandidateList findCandidates(@Nullable CharSequence text) {
-    List<Candidate> results = new LinkedList<>();
+    List<Candidate> results = new ArrayList<>();
 
     if (text == null) {
       return new CandidateList(results, false);
@@ -49,7 +50,7 @@ public class EmojiParser {
     boolean allEmojis = text.length() > 0;
 
     for (int i = 0; i < text.length(); i++) {
-      int emojiEnd = getEmojiEndPos(text, i);
+      int emojiEnd = emojiTree.getLongestEmojiEnd(text, i);
 
       if (emojiEnd != -1) {
         EmojiDrawInfo drawInfo = emojiTree.getEmoji(text, i, emojiEnd);
@@ -73,22 +74,6 @@ public class EmojiParser {
     return new CandidateList(results, allEmojis);
   }
 
-  private int getEmojiEndPos(CharSequence text, int startPos) {
-    int best = -1;
-
-    for (int j = startPos + 1; j <= text.length(); j++) {
-      EmojiTree.Matches status = emojiTree.isEmoji(text, startPos, j);
-
-      if (status.exactMatch()) {
-        best = j;
-      } else if (status.impossibleMatch()) {
-        return best;
-      }
-    }
-
-    return best;
-  }
-
   public static class Candidate {
 
     private final int           startIndex;
@@ -119,7 +104,7 @@ public class EmojiParser {
     public final boolean                     allEmojis;
 
     public CandidateList(List<EmojiParser.Candidate> candidates, boolean allEmojis) {
-      this.list = candidates;
+      this.list = Collections.unmodifiableList(candidates);
       this.allEmojis = allEmojis;
     }
 
@@ -22,27 +22,33 @@ package org.thoughtcrime.securesms.components.emoji.parsing;
 
 import androidx.annotation.Nullable;
 
-import java.util.HashMap;
-import java.util.Map;
+import java.util.Arrays;
 
 /**
  * Based in part on code from emoji-java
  */
 public class EmojiTree {
 
-  private final EmojiTreeNode root = new EmojiTreeNode();
+  private final EmojiTreeNode root = new EmojiTreeNode((char) 0);
+
+  /**
+   * A bit per char saying whether any emoji starts with it. Almost every character in a message
+   * doesn't, and this rejects those without searching the root's children.
+   */
+  private final long[] startCharacters = new long[(Character.MAX_VALUE + 1) / 64];
 
   private static final char TERMINATOR = '\ufe0f';
 
   public void add(String emojiEncoding, EmojiDrawInfo emoji) {
     EmojiTreeNode tree = root;
 
-    for (char c: emojiEncoding.toCharArray()) {
-      if (!tree.hasChild(c)) {
-        tree.addChild(c);
-      }
+    if (emojiEncoding.length() > 0) {
+      char first = emojiEncoding.charAt(0);
+      startCharacters[first >>> 6] |= 1L << first;
+    }
 
-      tree = tree.getChild(c);
+    for (int i = 0; i < emojiEncoding.length(); i++) {
+      tree = tree.getOrAddChild(emojiEncoding.charAt(i));
     }
 
     tree.setEmoji(emoji);
@@ -53,50 +59,77 @@ public class EmojiTree {
       return Matches.POSSIBLY;
     }
 
-    EmojiTreeNode tree = root;
+    EmojiTreeNode tree = walk(sequence, startPosition, endPosition);
 
-    for (int i=startPosition; i<endPosition; i++) {
-      char character = sequence.charAt(i);
+    if      (tree == null)                   return Matches.IMPOSSIBLE;
+    else if (tree.getMatchedEmoji() != null) return Matches.EXACTLY;
+    else                                     return Matches.POSSIBLY;
+  }
 
-      if (!tree.hasChild(character)) {
-        return Matches.IMPOSSIBLE;
-      }
+  public @Nullable EmojiDrawInfo getEmoji(CharSequence unicode, int startPosition, int endPostiion) {
+    EmojiTreeNode tree = walk(unicode, startPosition, endPostiion);
 
-      tree = tree.getChild(character);
-    }
+    return tree != null ? tree.getMatchedEmoji() : null;
+  }
 
-    if (tree.isEndOfEmoji()) {
-      return Matches.EXACTLY;
-    } else if (sequence.charAt(endPosition-1) != TERMINATOR && tree.hasChild(TERMINATOR) && tree.getChild(TERMINATOR).isEndOfEmoji()) {
-      return Matches.EXACTLY;
-    } else {
-      return Matches.POSSIBLY;
+  /**
+   * Finds the longest emoji starting at startPosition in a single walk down the tree, giving the
+   * same result as trying {@link #isEmoji(CharSequence, int, int)} with every end position.
+   *
+   * @return The end of the longest emoji, or -1 if no emoji starts there.
+   */
+  public int getLongestEmojiEnd(CharSequence sequence, int startPosition) {
+    char first = sequence.charAt(startPosition);
+
+    if ((startCharacters[first >>> 6] & (1L << first)) == 0) {
+      return -1;
     }
-  }
 
-  public @Nullable EmojiDrawInfo getEmoji(CharSequence unicode, int startPosition, int endPostiion) {
     EmojiTreeNode tree = root;
+    int           best = -1;
 
-    for (int i=startPosition; i<endPostiion; i++) {
-      char character = unicode.charAt(i);
+    for (int i = startPosition; i < sequence.length(); i++) {
+      tree = tree.getChild(sequence.charAt(i));
 
-      if (!tree.hasChild(character)) {
-        return null;
+      if (tree == null) {
+        break;
       }
 
-      tree = tree.getChild(character);
+      if (tree.getMatchedEmoji() != null) {
+        best = i + 1;
+      }
     }
 
-    if      (tree.getEmoji() != null)                                                  return tree.getEmoji();
-    else if (unicode.charAt(endPostiion-1) != TERMINATOR && tree.hasChild(TERMINATOR)) return tree.getChild(TERMINATOR).getEmoji();
-    else    return null;
+    return best;
   }
 
+  private @Nullable EmojiTreeNode walk(CharSequence sequence, int startPosition, int endPosition) {
+    EmojiTreeNode tree = root;
+
+    for (int i = startPosition; i < endPosition && tree != null; i++) {
+      tree = tree.getChild(sequence.charAt(i));
+    }
 
+    return tree;
+  }
+
+  /**
+   * Children are kept in parallel arrays sorted by character, so a lookup is a binary search over a
+   * char[] rather than a map lookup on a boxed Character. Most nodes have only a few children.
+   */
   private static class EmojiTreeNode {
 
-    private Map<Character, EmojiTreeNode> children = new HashMap<>();
-    private EmojiDrawInfo emoji;
+    private static final char[]          NO_KEYS     = new char[0];
+    private static final EmojiTreeNode[] NO_CHILDREN = new EmojiTreeNode[0];
+
+    private final char            character;
+    private       char[]          keys     = NO_KEYS;
+    private       EmojiTreeNode[] children = NO_CHILDREN;
+    private       EmojiDrawInfo   emoji;
+
+    EmojiTreeNode(char character) {
+      this.character = character;
+    }
 
     public void setEmoji(EmojiDrawInfo emoji) {
       this.emoji = emoji;
@@ -106,20 +139,54 @@ public class EmojiTree {
       return emoji;
     }
 
-    boolean hasChild(char child) {
-      return children.containsKey(child);
-    }
+    /**
+     * @return The emoji for the sequence ending at this node. An emoji written without its trailing
+     *         variation selector also matches, unless the sequence already ends with one.
+     */
+    @Nullable EmojiDrawInfo getMatchedEmoji() {
+      if (emoji != null) {
+        return emoji;
+      }
+
+      if (character != TERMINATOR) {
+        EmojiTreeNode terminator = getChild(TERMINATOR);
+
+        if (terminator != null) {
+          return terminator.getEmoji();
+        }
+      }
 
-    void addChild(char child) {
-      children.put(child, new EmojiTreeNode());
+      return null;
     }
 
-    EmojiTreeNode getChild(char child) {
-      return children.get(child);
+    @Nullable EmojiTreeNode getChild(char child) {
+      int index = Arrays.binarySearch(keys, child);
+      return index >= 0 ? children[index] : null;
     }
 
-    boolean isEndOfEmoji() {
-      return emoji != null;
+    EmojiTreeNode getOrAddChild(char child) {
+      int index = Arrays.binarySearch(keys, child);
+
+      if (index >= 0) {
+        return children[index];
+      }
+
+      int             insertAt    = -index - 1;
+      char[]          newKeys     = new char[keys.length + 1];
+      EmojiTreeNode[] newChildren = new EmojiTreeNode[children.length + 1];
+
+      System.arraycopy(keys, 0, newKeys, 0, insertAt);
+      System.arraycopy(keys, insertAt, newKeys, insertAt + 1, keys.length - insertAt);
+      System.arraycopy(children, 0, newChildren, 0, insertAt);
+      System.arraycopy(children, insertAt, newChildren, insertAt + 1, children.length - insertAt);
+
+      newKeys[insertAt]     = child;
+      newChildren[insertAt] = new EmojiTreeNode(child);
+
+      keys     = newKeys;
+      children = newChildren;
+
+      return newChildren[insertAt];
     }
   }
 
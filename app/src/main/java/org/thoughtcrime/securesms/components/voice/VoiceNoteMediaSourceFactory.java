@@ -22,10 +22,12 @@ import org.thoughtcrime.securesms.video.exo.AttachmentDataSourceFactory;
  */
 final class VoiceNoteMediaSourceFactory {
 
-  private final Context context;
+  private final AttachmentDataSourceFactory attachmentDataSourceFactory;
 
   VoiceNoteMediaSourceFactory(Context context) {
-    this.context = context;
+    DefaultDataSourceFactory defaultDataSourceFactory = new DefaultDataSourceFactory(context, "GenericUserAgent", null);
+
+    this.attachmentDataSourceFactory = new AttachmentDataSourceFactory(context, defaultDataSourceFactory, null);
   }
 
   /**
@@ -36,12 +38,18 @@ final class VoiceNoteMediaSourceFactory {
    * @return A preparable MediaSource
    */
   public @Nullable MediaSource createMediaSource(MediaDescriptionCompat description) {
-    DefaultDataSourceFactory    defaultDataSourceFactory    = new DefaultDataSourceFactory(context, "GenericUserAgent", null);
-    AttachmentDataSourceFactory attachmentDataSourceFactory = new AttachmentDataSourceFactory(context, defaultDataSourceFactory, null);
-    ExtractorsFactory           extractorsFactory           = new DefaultExtractorsFactory().setConstantBitrateSeekingEnabled(true);
+    ExtractorsFactory extractorsFactory = new DefaultExtractorsFactory().setConstantBitrateSeekingEnabled(true);
 
     return new ExtractorMediaSource.Factory(attachmentDataSourceFactory)
                                    .setExtractorsFactory(extractorsFactory)
                                    .createMediaSource(description.getMediaUri());
   }
+
+  /**
+   * Releases the data sources of every MediaSource created so far. To be called once the player
+   * is released.
+   */
+  void release() {
+    attachmentDataSourceFactory.release();
+  }
 }
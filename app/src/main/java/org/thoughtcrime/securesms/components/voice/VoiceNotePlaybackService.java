@@ -61,6 +61,7 @@ public class VoiceNotePlaybackService extends MediaBrowserServiceCompat {
   private VoiceNoteNotificationManager voiceNoteNotificationManager;
   private VoiceNoteQueueDataAdapter    queueDataAdapter;
   private VoiceNotePlaybackPreparer    voiceNotePlaybackPreparer;
+  private VoiceNoteMediaSourceFactory  mediaSourceFactory;
   private VoiceNoteProximityManager    voiceNoteProximityManager;
   private boolean                      isForegroundService;
 
@@ -87,8 +88,7 @@ public class VoiceNotePlaybackService extends MediaBrowserServiceCompat {
                                                                     new VoiceNoteNotificationManagerListener(),
                                                                     queueDataAdapter);
 
-    VoiceNoteMediaSourceFactory mediaSourceFactory = new VoiceNoteMediaSourceFactory(this);
-
+    mediaSourceFactory        = new VoiceNoteMediaSourceFactory(this);
     voiceNotePlaybackPreparer = new VoiceNotePlaybackPreparer(this, player, queueDataAdapter, mediaSourceFactory);
     voiceNoteProximityManager = new VoiceNoteProximityManager(this, player, queueDataAdapter);
 
@@ -122,6 +122,7 @@ public class VoiceNotePlaybackService extends MediaBrowserServiceCompat {
     mediaSession.release();
     becomingNoisyReceiver.unregister();
     player.release();
+    mediaSourceFactory.release();
   }
 
   @Override
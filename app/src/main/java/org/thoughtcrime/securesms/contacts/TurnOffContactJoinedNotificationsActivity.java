@@ -17,6 +17,7 @@ import org.thoughtcrime.securesms.notifications.MarkReadReceiver;
 import org.thoughtcrime.securesms.util.TextSecurePreferences;
 import org.thoughtcrime.securesms.util.concurrent.SimpleTask;
 
+import java.util.Collections;
 import java.util.List;
 
 /**
@@ -53,11 +54,13 @@ public class TurnOffContactJoinedNotificationsActivity extends AppCompatActivity
   private void handlePositiveAction(@NonNull DialogInterface dialog) {
     SimpleTask.run(getLifecycle(), () -> {
       ThreadDatabase threadDatabase = DatabaseFactory.getThreadDatabase(this);
+      long           threadId       = getIntent().getLongExtra(EXTRA_THREAD_ID, -1);
 
-      List<MessageDatabase.MarkedMessageInfo> marked = threadDatabase.setRead(getIntent().getLongExtra(EXTRA_THREAD_ID, -1), false);
+      List<MessageDatabase.MarkedMessageInfo> marked = threadDatabase.setRead(threadId, false);
       MarkReadReceiver.process(this, marked);
 
       TextSecurePreferences.setNewContactsNotificationEnabled(this, false);
+      ApplicationDependencies.getMessageNotifier().invalidateThreads(Collections.singleton(threadId));
       ApplicationDependencies.getMessageNotifier().updateNotification(this);
 
       return null;
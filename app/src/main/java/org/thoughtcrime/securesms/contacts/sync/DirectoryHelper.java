@@ -37,6 +37,7 @@ import org.thoughtcrime.securesms.keyvalue.SignalStore;
 import org.thoughtcrime.securesms.logging.Log;
 import org.thoughtcrime.securesms.notifications.NotificationChannels;
 import org.thoughtcrime.securesms.permissions.Permissions;
+import org.thoughtcrime.securesms.phonenumbers.NumberUtil;
 import org.thoughtcrime.securesms.phonenumbers.PhoneNumberFormatter;
 import org.thoughtcrime.securesms.registration.RegistrationUtil;
 import org.thoughtcrime.securesms.storage.StorageSyncHelper;
@@ -58,9 +59,11 @@ import org.whispersystems.signalservice.api.util.UuidUtil;
 import org.whispersystems.signalservice.internal.util.concurrent.ListenableFuture;
 
 import java.io.IOException;
+import java.util.ArrayList;
 import java.util.Calendar;
 import java.util.Collection;
 import java.util.Collections;
+import java.util.HashMap;
 import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
@@ -96,9 +99,16 @@ public class DirectoryHelper {
       return;
     }
 
+    Stopwatch         stopwatch         = new Stopwatch("full");
     RecipientDatabase recipientDatabase = DatabaseFactory.getRecipientDatabase(context);
     Set<String>       databaseNumbers   = sanitizeNumbers(recipientDatabase.getAllPhoneNumbers());
-    Set<String>       systemNumbers     = sanitizeNumbers(ContactAccessor.getInstance().getAllContactsWithNumbers(context));
+
+    stopwatch.split("db-numbers");
+
+    Set<String> systemNumbers = sanitizeNumbers(ContactAccessor.getInstance().getAllContactsWithNumbers(context));
+
+    stopwatch.split("system-numbers");
+    stopwatch.stop(TAG);
 
     refreshNumbers(context, databaseNumbers, systemNumbers, notifyOfNewUsers);
 
@@ -188,7 +198,9 @@ public class DirectoryHelper {
     }
 
     if (Permissions.hasAll(context, Manifest.permission.WRITE_CONTACTS)) {
-      updateContactsDatabase(context, Collections.singletonList(recipient.getId()), false, result.getNumberRewrites());
+      Optional<String> e164 = Recipient.resolved(recipient.getId()).getE164();
+
+      updateContactsDatabase(context, e164.isPresent() ? Collections.singletonList(e164.get()) : Collections.emptyList(), false, result.getNumberRewrites());
     }
 
     newRegisteredState = result.getRegisteredNumbers().size() > 0 ? RegisteredState.REGISTERED : RegisteredState.NOT_REGISTERED;
@@ -231,18 +243,23 @@ public class DirectoryHelper {
       recipientDatabase.updatePhoneNumbers(result.getNumberRewrites());
     }
 
-    Map<RecipientId, String> uuidMap       = recipientDatabase.bulkProcessCdsResult(result.getRegisteredNumbers());
-    Set<String>              activeNumbers = result.getRegisteredNumbers().keySet();
-    Set<RecipientId>         activeIds     = uuidMap.keySet();
-    Set<RecipientId>         inactiveIds   = Stream.of(allNumbers)
-                                                   .filterNot(activeNumbers::contains)
-                                                   .filterNot(n -> result.getNumberRewrites().containsKey(n))
-                                                   .filterNot(n -> result.getIgnoredNumbers().contains(n))
-                                                   .map(recipientDatabase::getOrInsertFromE164)
-                                                   .collect(Collectors.toSet());
+    Map<RecipientId, String> uuidMap         = recipientDatabase.bulkProcessCdsResult(result.getRegisteredNumbers());
+    Set<String>              activeNumbers   = result.getRegisteredNumbers().keySet();
+    Set<RecipientId>         activeIds       = uuidMap.keySet();
+    List<String>             inactiveNumbers = new ArrayList<>(allNumbers.size() - activeNumbers.size());
 
     stopwatch.split("process-cds");
 
+    for (String number : allNumbers) {
+      if (!activeNumbers.contains(number) && !result.getNumberRewrites().containsKey(number) && !result.getIgnoredNumbers().contains(number)) {
+        inactiveNumbers.add(number);
+      }
+    }
+
+    Set<RecipientId> inactiveIds = new HashSet<>(recipientDatabase.getOrInsertFromE164s(inactiveNumbers).values());
+
+    stopwatch.split("inactive-ids");
+
     UnlistedResult unlistedResult = filterForUnlistedUsers(context, inactiveIds);
 
     inactiveIds.removeAll(unlistedResult.getPossiblyActive());
@@ -258,7 +275,7 @@ public class DirectoryHelper {
 
     stopwatch.split("update-registered");
 
-    updateContactsDatabase(context, activeIds, true, result.getNumberRewrites());
+    updateContactsDatabase(context, activeNumbers, true, result.getNumberRewrites());
 
     stopwatch.split("contacts-db");
 
@@ -293,7 +310,7 @@ public class DirectoryHelper {
   }
 
   private static void updateContactsDatabase(@NonNull Context context,
-                                             @NonNull Collection<RecipientId> activeIds,
+                                             @NonNull Collection<String> activeE164s,
                                              boolean removeMissing,
                                              @NonNull Map<String, String> rewrites)
   {
@@ -305,42 +322,34 @@ public class DirectoryHelper {
     }
 
     try {
-      RecipientDatabase recipientDatabase = DatabaseFactory.getRecipientDatabase(context);
-      ContactsDatabase  contactsDatabase  = DatabaseFactory.getContactsDatabase(context);
-      List<String>      activeAddresses   = Stream.of(activeIds)
-                                                  .map(Recipient::resolved)
-                                                  .filter(Recipient::hasE164)
-                                                  .map(Recipient::requireE164)
-                                                  .toList();
+      RecipientDatabase   recipientDatabase = DatabaseFactory.getRecipientDatabase(context);
+      ContactsDatabase    contactsDatabase  = DatabaseFactory.getContactsDatabase(context);
+      Stopwatch           stopwatch         = new Stopwatch("contacts-db");
+      List<SystemContact> systemContacts    = getSystemContacts(context, rewrites);
+
+      stopwatch.split("read-system");
 
       contactsDatabase.removeDeletedRawContacts(account.getAccount());
-      contactsDatabase.setRegisteredUsers(account.getAccount(), activeAddresses, removeMissing);
+      contactsDatabase.setRegisteredUsers(account.getAccount(), new ArrayList<>(activeE164s), removeMissing);
+
+      stopwatch.split("raw-contacts");
+
+      Map<String, RecipientId> recipientIds = getOrInsertRecipientIds(recipientDatabase, systemContacts);
+
+      stopwatch.split("resolve-ids");
 
-      Cursor               cursor = ContactAccessor.getInstance().getAllSystemContacts(context);
       BulkOperationsHandle handle = recipientDatabase.beginBulkSystemContactUpdate();
 
       try {
-        while (cursor != null && cursor.moveToNext()) {
-          String number = cursor.getString(cursor.getColumnIndexOrThrow(ContactsContract.CommonDataKinds.Phone.NUMBER));
-
-          if (isValidContactNumber(number)) {
-            String      formattedNumber = PhoneNumberFormatter.get(context).format(number);
-            String      realNumber      = Util.getFirstNonEmpty(rewrites.get(formattedNumber), formattedNumber);
-            RecipientId recipientId     = Recipient.externalContact(context, realNumber).getId();
-            String      displayName     = cursor.getString(cursor.getColumnIndexOrThrow(ContactsContract.CommonDataKinds.Phone.DISPLAY_NAME));
-            String      contactPhotoUri = cursor.getString(cursor.getColumnIndexOrThrow(ContactsContract.CommonDataKinds.Phone.PHOTO_URI));
-            String      contactLabel    = cursor.getString(cursor.getColumnIndexOrThrow(ContactsContract.CommonDataKinds.Phone.LABEL));
-            int         phoneType       = cursor.getInt(cursor.getColumnIndexOrThrow(ContactsContract.CommonDataKinds.Phone.TYPE));
-            Uri         contactUri      = ContactsContract.Contacts.getLookupUri(cursor.getLong(cursor.getColumnIndexOrThrow(ContactsContract.CommonDataKinds.Phone._ID)),
-                                                                                 cursor.getString(cursor.getColumnIndexOrThrow(ContactsContract.CommonDataKinds.Phone.LOOKUP_KEY)));
-
-            handle.setSystemContactInfo(recipientId, displayName, contactPhotoUri, contactLabel, phoneType, contactUri.toString());
-          }
+        for (SystemContact contact : systemContacts) {
+          handle.setSystemContactInfo(recipientIds.get(contact.number), contact.displayName, contact.photoUri, contact.label, contact.phoneType, contact.contactUri);
         }
       } finally {
         handle.finish();
       }
 
+      stopwatch.split("apply");
+
       if (NotificationChannels.supported()) {
         try (RecipientDatabase.RecipientReader recipients = DatabaseFactory.getRecipientDatabase(context).getRecipientsWithNotificationChannels()) {
           Recipient recipient;
@@ -349,11 +358,65 @@ public class DirectoryHelper {
           }
         }
       }
+
+      stopwatch.split("channels");
+      stopwatch.stop(TAG);
     } catch (RemoteException | OperationApplicationException e) {
       Log.w(TAG, "Failed to update contacts.", e);
     }
   }
 
+  /**
+   * Reads every system contact with a valid number in a single pass, with numbers already formatted
+   * and rewritten.
+   */
+  private static @NonNull List<SystemContact> getSystemContacts(@NonNull Context context, @NonNull Map<String, String> rewrites) {
+    List<SystemContact>  contacts  = new ArrayList<>();
+    PhoneNumberFormatter formatter = PhoneNumberFormatter.get(context);
+
+    try (Cursor cursor = ContactAccessor.getInstance().getAllSystemContacts(context)) {
+      while (cursor != null && cursor.moveToNext()) {
+        String number = cursor.getString(cursor.getColumnIndexOrThrow(ContactsContract.CommonDataKinds.Phone.NUMBER));
+
+        if (isValidContactNumber(number)) {
+          String formattedNumber = formatter.format(number);
+          String realNumber      = Util.getFirstNonEmpty(rewrites.get(formattedNumber), formattedNumber);
+          String displayName     = cursor.getString(cursor.getColumnIndexOrThrow(ContactsContract.CommonDataKinds.Phone.DISPLAY_NAME));
+          String contactPhotoUri = cursor.getString(cursor.getColumnIndexOrThrow(ContactsContract.CommonDataKinds.Phone.PHOTO_URI));
+          String contactLabel    = cursor.getString(cursor.getColumnIndexOrThrow(ContactsContract.CommonDataKinds.Phone.LABEL));
+          int    phoneType       = cursor.getInt(cursor.getColumnIndexOrThrow(ContactsContract.CommonDataKinds.Phone.TYPE));
+          Uri    contactUri      = ContactsContract.Contacts.getLookupUri(cursor.getLong(cursor.getColumnIndexOrThrow(ContactsContract.CommonDataKinds.Phone._ID)),
+                                                                         cursor.getString(cursor.getColumnIndexOrThrow(ContactsContract.CommonDataKinds.Phone.LOOKUP_KEY)));
+
+          contacts.add(new SystemContact(realNumber, displayName, contactPhotoUri, contactLabel, phoneType, contactUri.toString()));
+        }
+      }
+    }
+
+    return contacts;
+  }
+
+  /**
+   * Resolves the recipient for every system contact, looking up phone numbers in bulk. Emails are
+   * rare enough that they're still resolved individually.
+   */
+  private static @NonNull Map<String, RecipientId> getOrInsertRecipientIds(@NonNull RecipientDatabase recipientDatabase, @NonNull List<SystemContact> systemContacts) {
+    Map<String, RecipientId> recipientIds = new HashMap<>(systemContacts.size());
+    Set<String>              e164s        = new HashSet<>(systemContacts.size());
+
+    for (SystemContact contact : systemContacts) {
+      if (!NumberUtil.isValidEmail(contact.number)) {
+        e164s.add(contact.number);
+      } else if (!recipientIds.containsKey(contact.number)) {
+        recipientIds.put(contact.number, recipientDatabase.getOrInsertFromEmail(contact.number));
+      }
+    }
+
+    recipientIds.putAll(recipientDatabase.getOrInsertFromE164s(e164s));
+
+    return recipientIds;
+  }
+
   private static boolean isValidContactNumber(@Nullable String number) {
     return !TextUtils.isEmpty(number) && !UuidUtil.isUuid(number);
   }
@@ -415,13 +478,37 @@ public class DirectoryHelper {
   }
 
   private static Set<String> sanitizeNumbers(@NonNull Set<String> numbers) {
-    return Stream.of(numbers).filter(number -> {
-      try {
-        return number.startsWith("+") && number.length() > 1 && number.charAt(1) != '0' && Long.parseLong(number.substring(1)) > 0;
-      } catch (NumberFormatException e) {
+    Set<String> sanitized = new HashSet<>(numbers.size());
+
+    for (String number : numbers) {
+      if (isSanitaryNumber(number)) {
+        sanitized.add(number);
+      }
+    }
+
+    return sanitized;
+  }
+
+  /**
+   * Equivalent to checking that the number is a '+' followed by a positive long with no leading
+   * zero, without parsing or allocating.
+   */
+  static boolean isSanitaryNumber(@NonNull String number) {
+    int length = number.length();
+
+    if (length < 2 || length > 20 || number.charAt(0) != '+' || number.charAt(1) == '0') {
+      return false;
+    }
+
+    for (int i = 1; i < length; i++) {
+      char c = number.charAt(i);
+
+      if (c < '0' || c > '9') {
         return false;
       }
-    }).collect(Collectors.toSet());
+    }
+
+    return length < 20 || number.compareTo("+9223372036854775807") <= 0;
   }
 
   /**
@@ -431,12 +518,15 @@ public class DirectoryHelper {
    * so we will also only check for users that have a thread.
    */
   private static UnlistedResult filterForUnlistedUsers(@NonNull Context context, @NonNull Set<RecipientId> inactiveIds) {
-    List<Recipient> possiblyUnlisted = Stream.of(inactiveIds)
-                                             .map(Recipient::resolved)
-                                             .filter(Recipient::isRegistered)
-                                             .filter(Recipient::hasUuid)
-                                             .filter(r -> hasCommunicatedWith(context, r))
-                                             .toList();
+    List<Recipient> registered = Stream.of(Recipient.resolvedList(inactiveIds))
+                                       .filter(Recipient::isRegistered)
+                                       .filter(Recipient::hasUuid)
+                                       .toList();
+
+    Set<RecipientId> communicatedWith = getCommunicatedWith(context, Stream.of(registered).map(Recipient::getId).toList());
+    List<Recipient>  possiblyUnlisted = Stream.of(registered)
+                                              .filter(r -> communicatedWith.contains(r.getId()))
+                                              .toList();
 
     List<Pair<Recipient, ListenableFuture<ProfileAndCredential>>> futures = Stream.of(possiblyUnlisted)
                                                                                   .map(r -> new Pair<>(r, ProfileUtil.retrieveProfile(context, r, SignalServiceProfile.RequestType.PROFILE)))
@@ -468,6 +558,17 @@ public class DirectoryHelper {
            DatabaseFactory.getSessionDatabase(context).hasSessionFor(recipient.getId());
   }
 
+  /**
+   * Bulk version of {@link #hasCommunicatedWith(Context, Recipient)}.
+   */
+  private static @NonNull Set<RecipientId> getCommunicatedWith(@NonNull Context context, @NonNull Collection<RecipientId> ids) {
+    Set<RecipientId> results = new HashSet<>(DatabaseFactory.getThreadDatabase(context).getThreadIdsFor(ids).keySet());
+
+    results.addAll(DatabaseFactory.getSessionDatabase(context).getRecipientsWithSessions(ids));
+
+    return results;
+  }
+
   static class DirectoryResult {
     private final Map<String, UUID>   registeredNumbers;
     private final Map<String, String> numberRewrites;
@@ -482,7 +583,6 @@ public class DirectoryHelper {
       this.ignoredNumbers    = ignoredNumbers;
     }
 
-
     @NonNull Map<String, UUID> getRegisteredNumbers() {
       return registeredNumbers;
     }
@@ -514,6 +614,30 @@ public class DirectoryHelper {
     }
   }
 
+  private static class SystemContact {
+    private final String number;
+    private final String displayName;
+    private final String photoUri;
+    private final String label;
+    private final int    phoneType;
+    private final String contactUri;
+
+    private SystemContact(@NonNull String number,
+                          @Nullable String displayName,
+                          @Nullable String photoUri,
+                          @Nullable String label,
+                          int phoneType,
+                          @NonNull String contactUri)
+    {
+      this.number      = number;
+      this.displayName = displayName;
+      this.photoUri    = photoUri;
+      this.label       = label;
+      this.phoneType   = phoneType;
+      this.contactUri  = contactUri;
+    }
+  }
+
   private static class AccountHolder {
     private final boolean fresh;
     private final Account account;
@@ -14,6 +14,7 @@ import org.thoughtcrime.securesms.util.Debouncer;
 import org.thoughtcrime.securesms.util.concurrent.SerialMonoLifoExecutor;
 import org.thoughtcrime.securesms.util.concurrent.SignalExecutors;
 
+import java.util.Collections;
 import java.util.List;
 import java.util.concurrent.Executor;
 
@@ -47,6 +48,7 @@ class MarkReadHelper {
 
         Log.d(TAG, "Marking " + infos.size() + " messages as read.");
 
+        ApplicationDependencies.getMessageNotifier().invalidateThreads(Collections.singleton(threadId));
         ApplicationDependencies.getMessageNotifier().updateNotification(context);
         MarkReadReceiver.process(context, infos);
       });
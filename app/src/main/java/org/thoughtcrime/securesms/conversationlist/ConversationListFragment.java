@@ -632,6 +632,7 @@ public class ConversationListFragment extends MainFragment implements ActionMode
     SignalExecutors.BOUNDED.execute(() -> {
       List<MarkedMessageInfo> messageIds = DatabaseFactory.getThreadDatabase(context).setAllThreadsRead();
 
+      ApplicationDependencies.getMessageNotifier().invalidateAllThreads();
       ApplicationDependencies.getMessageNotifier().updateNotification(context);
       MarkReadReceiver.process(context, messageIds);
     });
@@ -644,6 +645,7 @@ public class ConversationListFragment extends MainFragment implements ActionMode
     SimpleTask.run(getViewLifecycleOwner().getLifecycle(), () -> {
       List<MarkedMessageInfo> messageIds = DatabaseFactory.getThreadDatabase(context).setRead(selectedConversations, false);
 
+      ApplicationDependencies.getMessageNotifier().invalidateThreads(selectedConversations);
       ApplicationDependencies.getMessageNotifier().updateNotification(context);
       MarkReadReceiver.process(context, messageIds);
 
@@ -745,6 +747,7 @@ public class ConversationListFragment extends MainFragment implements ActionMode
           @Override
           protected Void doInBackground(Void... params) {
             DatabaseFactory.getThreadDatabase(getActivity()).deleteConversations(selectedConversations);
+            ApplicationDependencies.getMessageNotifier().invalidateThreads(selectedConversations);
             ApplicationDependencies.getMessageNotifier().updateNotification(getActivity());
             return null;
           }
@@ -1017,6 +1020,7 @@ public class ConversationListFragment extends MainFragment implements ActionMode
 
         if (unreadCount > 0) {
           List<MarkedMessageInfo> messageIds = DatabaseFactory.getThreadDatabase(getActivity()).setRead(threadId, false);
+          ApplicationDependencies.getMessageNotifier().invalidateThreads(Collections.singleton(threadId));
           ApplicationDependencies.getMessageNotifier().updateNotification(getActivity());
           MarkReadReceiver.process(getActivity(), messageIds);
         }
@@ -1028,6 +1032,7 @@ public class ConversationListFragment extends MainFragment implements ActionMode
 
         if (unreadCount > 0) {
           DatabaseFactory.getThreadDatabase(getActivity()).incrementUnread(threadId, unreadCount);
+          ApplicationDependencies.getMessageNotifier().invalidateThreads(Collections.singleton(threadId));
           ApplicationDependencies.getMessageNotifier().updateNotification(getActivity());
         }
       }
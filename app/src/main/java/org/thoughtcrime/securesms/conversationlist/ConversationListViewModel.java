@@ -1,8 +1,10 @@
 package org.thoughtcrime.securesms.conversationlist;
 
+import android.Manifest;
 import android.app.Application;
 import android.database.ContentObserver;
 import android.os.Handler;
+import android.provider.ContactsContract;
 import android.text.TextUtils;
 
 import androidx.annotation.NonNull;
@@ -24,6 +26,7 @@ import org.thoughtcrime.securesms.logging.Log;
 import org.thoughtcrime.securesms.megaphone.Megaphone;
 import org.thoughtcrime.securesms.megaphone.MegaphoneRepository;
 import org.thoughtcrime.securesms.megaphone.Megaphones;
+import org.thoughtcrime.securesms.permissions.Permissions;
 import org.thoughtcrime.securesms.search.SearchRepository;
 import org.thoughtcrime.securesms.util.Debouncer;
 import org.thoughtcrime.securesms.util.Util;
@@ -60,6 +63,8 @@ class ConversationListViewModel extends ViewModel {
     this.observer            = new ContentObserver(new Handler()) {
       @Override
       public void onChange(boolean selfChange) {
+        searchRepository.clearCache();
+
         if (!TextUtils.isEmpty(getLastQuery())) {
           searchRepository.query(getLastQuery(), searchResult::postValue);
         }
@@ -78,6 +83,11 @@ class ConversationListViewModel extends ViewModel {
                                                                                                     .build();
 
     application.getContentResolver().registerContentObserver(DatabaseContentProviders.ConversationList.CONTENT_URI, true, observer);
+    application.getContentResolver().registerContentObserver(DatabaseContentProviders.Recipient.CONTENT_URI, true, observer);
+
+    if (Permissions.hasAll(application, Manifest.permission.READ_CONTACTS)) {
+      application.getContentResolver().registerContentObserver(ContactsContract.Contacts.CONTENT_URI, true, observer);
+    }
 
     this.conversationList = Transformations.switchMap(conversationList, conversation -> {
       if (conversation.getDataSource().isInvalid()) {
@@ -42,8 +42,8 @@ public class ClassicDecryptingPartInputStream {
 
   private static final String TAG = ClassicDecryptingPartInputStream.class.getSimpleName();
 
-  private static final int IV_LENGTH  = 16;
-  private static final int MAC_LENGTH = 20;
+  static final int IV_LENGTH  = 16;
+  static final int MAC_LENGTH = 20;
 
   public static InputStream createFor(@NonNull AttachmentSecret attachmentSecret, @NonNull File file)
       throws IOException
@@ -69,7 +69,7 @@ public class ClassicDecryptingPartInputStream {
     }
   }
 
-  private static void verifyMac(AttachmentSecret attachmentSecret, File file) throws IOException {
+  static void verifyMac(AttachmentSecret attachmentSecret, File file) throws IOException {
     Mac             mac        = initializeMac(new SecretKeySpec(attachmentSecret.getClassicMacKey(), "HmacSHA1"));
     FileInputStream macStream  = new FileInputStream(file);
     InputStream     dataStream = new LimitedInputStream(new FileInputStream(file), file.length() - MAC_LENGTH);
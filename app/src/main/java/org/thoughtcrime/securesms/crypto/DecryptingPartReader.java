@@ -0,0 +1,318 @@
+package org.thoughtcrime.securesms.crypto;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+
+import org.thoughtcrime.securesms.util.Conversions;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.security.GeneralSecurityException;
+import java.util.Arrays;
+
+import javax.crypto.Cipher;
+import javax.crypto.spec.IvParameterSpec;
+import javax.crypto.spec.SecretKeySpec;
+
+/**
+ * Random-access reader for an encrypted attachment file.
+ * <p>
+ * Unlike the decrypting input streams, which have to be rebuilt (and re-keyed) for every seek, this
+ * keeps the file open and the key derived for its whole lifetime, and decrypts the file in fixed
+ * size blocks that are kept in a small cache. This suits readers like MediaExtractor and ExoPlayer
+ * that jump back and forth between nearby positions with many small reads.
+ */
+public abstract class DecryptingPartReader implements Closeable {
+
+  static final int BLOCK_SIZE = 8192;
+  static final int CACHE_SIZE = 8;
+
+  private static final int AES_BLOCK_SIZE = 16;
+
+  private final FileInputStream inputStream;
+  private final FileChannel     channel;
+  private final long            dataOffset;
+  private final long            dataLength;
+  private final ByteBuffer      ciphertext;
+
+  private final long[]   cachedIndexes = new long[CACHE_SIZE];
+  private final long[]   cachedUses    = new long[CACHE_SIZE];
+  private final int[]    cachedLengths = new int[CACHE_SIZE];
+  private final byte[][] cachedBlocks  = new byte[CACHE_SIZE][];
+
+  private long uses;
+
+  /**
+   * @param random The random used to derive the key, or null if it's stored at the start of the file.
+   */
+  public static @NonNull DecryptingPartReader createModern(@NonNull AttachmentSecret attachmentSecret, @NonNull File file, @Nullable byte[] random)
+      throws IOException
+  {
+    FileInputStream inputStream = new FileInputStream(file);
+
+    try {
+      long dataOffset = 0;
+
+      if (random == null) {
+        random     = new byte[32];
+        dataOffset = random.length;
+
+        readFully(inputStream.getChannel(), ByteBuffer.wrap(random), 0);
+      }
+
+      return new Modern(inputStream, dataOffset, file.length() - dataOffset, ModernDecryptingPartInputStream.deriveKey(attachmentSecret, random));
+    } catch (IOException | RuntimeException e) {
+      inputStream.close();
+      throw e;
+    }
+  }
+
+  /**
+   * Verifies the file's MAC up front, which the classic stream would otherwise do on every open.
+   */
+  public static @NonNull DecryptingPartReader createClassic(@NonNull AttachmentSecret attachmentSecret, @NonNull File file)
+      throws IOException
+  {
+    if (file.length() <= ClassicDecryptingPartInputStream.IV_LENGTH + ClassicDecryptingPartInputStream.MAC_LENGTH) {
+      throw new IOException("File too short");
+    }
+
+    ClassicDecryptingPartInputStream.verifyMac(attachmentSecret, file);
+
+    FileInputStream inputStream = new FileInputStream(file);
+
+    try {
+      byte[] iv = new byte[ClassicDecryptingPartInputStream.IV_LENGTH];
+
+      readFully(inputStream.getChannel(), ByteBuffer.wrap(iv), 0);
+
+      return new Classic(inputStream,
+                         iv.length,
+                         file.length() - iv.length - ClassicDecryptingPartInputStream.MAC_LENGTH,
+                         attachmentSecret.getClassicCipherKey(),
+                         iv);
+    } catch (IOException | RuntimeException e) {
+      inputStream.close();
+      throw e;
+    }
+  }
+
+  DecryptingPartReader(@NonNull FileInputStream inputStream, long dataOffset, long dataLength) {
+    this.inputStream = inputStream;
+    this.channel     = inputStream.getChannel();
+    this.dataOffset  = dataOffset;
+    this.dataLength  = dataLength;
+    this.ciphertext  = ByteBuffer.allocate(BLOCK_SIZE);
+
+    Arrays.fill(cachedIndexes, -1);
+  }
+
+  /**
+   * Reads up to length bytes of plaintext starting at position. Fewer bytes are only returned when
+   * the end of the file is reached.
+   *
+   * @return The number of bytes read, or -1 if position is at or past the end of the plaintext.
+   */
+  public synchronized int readAt(long position, @NonNull byte[] buffer, int offset, int length) throws IOException {
+    if (length == 0) {
+      return 0;
+    }
+
+    int totalRead = 0;
+
+    while (length > 0) {
+      int slot = getBlock(position / BLOCK_SIZE);
+
+      if (slot == -1) {
+        break;
+      }
+
+      int blockOffset = (int) (position % BLOCK_SIZE);
+      int available   = cachedLengths[slot] - blockOffset;
+
+      if (available <= 0) {
+        break;
+      }
+
+      int read = Math.min(available, length);
+
+      System.arraycopy(cachedBlocks[slot], blockOffset, buffer, offset, read);
+
+      position  += read;
+      offset    += read;
+      length    -= read;
+      totalRead += read;
+    }
+
+    return totalRead > 0 ? totalRead : -1;
+  }
+
+  @Override
+  public synchronized void close() throws IOException {
+    inputStream.close();
+  }
+
+  /**
+   * Decrypts a block. Every block but the last is a full {@link #BLOCK_SIZE} bytes of ciphertext.
+   *
+   * @return The number of bytes of plaintext written to output.
+   */
+  abstract int decryptBlock(long blockIndex, @NonNull byte[] input, int inputLength, @NonNull byte[] output, boolean last)
+      throws IOException, GeneralSecurityException;
+
+  /**
+   * Reads ciphertext directly from the file, relative to the start of the encrypted data.
+   */
+  void readCiphertext(long position, @NonNull byte[] buffer) throws IOException {
+    readFully(channel, ByteBuffer.wrap(buffer), dataOffset + position);
+  }
+
+  /**
+   * @return The cache slot holding the decrypted block, or -1 if the block is past the end of the file.
+   */
+  private int getBlock(long blockIndex) throws IOException {
+    int leastRecentlyUsed = 0;
+
+    for (int i = 0; i < CACHE_SIZE; i++) {
+      if (cachedIndexes[i] == blockIndex) {
+        cachedUses[i] = ++uses;
+        return i;
+      }
+
+      if (cachedUses[i] < cachedUses[leastRecentlyUsed]) {
+        leastRecentlyUsed = i;
+      }
+    }
+
+    long blockStart = blockIndex * BLOCK_SIZE;
+
+    if (blockStart >= dataLength) {
+      return -1;
+    }
+
+    int     slot        = leastRecentlyUsed;
+    int     inputLength = (int) Math.min(BLOCK_SIZE, dataLength - blockStart);
+    boolean last        = blockStart + inputLength == dataLength;
+
+    if (cachedBlocks[slot] == null) {
+      cachedBlocks[slot] = new byte[BLOCK_SIZE];
+    }
+
+    ciphertext.clear();
+    ciphertext.limit(inputLength);
+    readFully(channel, ciphertext, dataOffset + blockStart);
+
+    cachedIndexes[slot] = -1;
+
+    try {
+      cachedLengths[slot] = decryptBlock(blockIndex, ciphertext.array(), inputLength, cachedBlocks[slot], last);
+    } catch (GeneralSecurityException e) {
+      throw new IOException(e);
+    }
+
+    cachedIndexes[slot] = blockIndex;
+    cachedUses[slot]    = ++uses;
+
+    return slot;
+  }
+
+  private static void readFully(@NonNull FileChannel channel, @NonNull ByteBuffer buffer, long position) throws IOException {
+    while (buffer.hasRemaining()) {
+      int read = channel.read(buffer, position + buffer.position());
+
+      if (read == -1) {
+        throw new IOException("Prematurely reached end of file!");
+      }
+    }
+  }
+
+  /**
+   * AES/CTR, where the counter for any block can be computed directly from its offset.
+   */
+  private static final class Modern extends DecryptingPartReader {
+
+    private final SecretKeySpec key;
+    private final Cipher        cipher;
+    private final byte[]        counter = new byte[AES_BLOCK_SIZE];
+
+    private Modern(@NonNull FileInputStream inputStream, long dataOffset, long dataLength, @NonNull byte[] key) {
+      super(inputStream, dataOffset, dataLength);
+      this.key    = new SecretKeySpec(key, "AES");
+      this.cipher = getCipher("AES/CTR/NoPadding");
+    }
+
+    @Override
+    int decryptBlock(long blockIndex, @NonNull byte[] input, int inputLength, @NonNull byte[] output, boolean last)
+        throws GeneralSecurityException
+    {
+      Conversions.longToByteArray(counter, 8, blockIndex * (BLOCK_SIZE / AES_BLOCK_SIZE));
+
+      cipher.init(Cipher.DECRYPT_MODE, key, new IvParameterSpec(counter));
+
+      return cipher.doFinal(input, 0, inputLength, output, 0);
+    }
+  }
+
+  /**
+   * AES/CBC, where a block is decrypted using the last AES block of ciphertext before it as the IV.
+   * Padding is removed from the final block.
+   */
+  private static final class Classic extends DecryptingPartReader {
+
+    private final SecretKeySpec key;
+    private final Cipher        cipher;
+    private final byte[]        initialIv;
+    private final byte[]        iv = new byte[AES_BLOCK_SIZE];
+
+    private Classic(@NonNull FileInputStream inputStream, long dataOffset, long dataLength, @NonNull byte[] key, @NonNull byte[] initialIv) throws IOException {
+      super(inputStream, dataOffset, dataLength);
+
+      if (dataLength % AES_BLOCK_SIZE != 0) {
+        throw new IOException("Ciphertext isn't a multiple of the block size!");
+      }
+
+      this.key       = new SecretKeySpec(key, "AES");
+      this.cipher    = getCipher("AES/CBC/NoPadding");
+      this.initialIv = initialIv;
+    }
+
+    @Override
+    int decryptBlock(long blockIndex, @NonNull byte[] input, int inputLength, @NonNull byte[] output, boolean last)
+        throws IOException, GeneralSecurityException
+    {
+      if (blockIndex == 0) {
+        System.arraycopy(initialIv, 0, iv, 0, iv.length);
+      } else {
+        readCiphertext(blockIndex * BLOCK_SIZE - AES_BLOCK_SIZE, iv);
+      }
+
+      cipher.init(Cipher.DECRYPT_MODE, key, new IvParameterSpec(iv));
+
+      int length = cipher.doFinal(input, 0, inputLength, output, 0);
+
+      if (last) {
+        int padding = output[length - 1] & 0xFF;
+
+        if (padding < 1 || padding > AES_BLOCK_SIZE || padding > length) {
+          throw new IOException("Bad padding!");
+        }
+
+        length -= padding;
+      }
+
+      return length;
+    }
+  }
+
+  private static @NonNull Cipher getCipher(@NonNull String transformation) {
+    try {
+      return Cipher.getInstance(transformation);
+    } catch (GeneralSecurityException e) {
+      throw new AssertionError(e);
+    }
+  }
+}
@@ -0,0 +1,149 @@
+package org.thoughtcrime.securesms.crypto;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+import androidx.annotation.VisibleForTesting;
+
+import java.nio.ByteBuffer;
+import java.security.InvalidKeyException;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import javax.crypto.Mac;
+import javax.crypto.spec.SecretKeySpec;
+
+/**
+ * Remembers the per-file keys derived as HmacSHA256(masterKey, random) for files encrypted at rest,
+ * so that reopening a recently used attachment or Glide cache file does not have to set up a new
+ * Mac and derive its key again.
+ * <p>
+ * Entries are keyed by the file's random. The cache holds a single copy of the master key they were
+ * all derived from, and starts over if it is asked about a different one. The cache is bounded, and
+ * a key is zeroed when its entry is evicted or the cache is cleared.
+ */
+public final class DerivedKeyCache {
+
+  @VisibleForTesting
+  static final int MAX_ENTRIES = 256;
+
+  private static final DerivedKeyCache INSTANCE = new DerivedKeyCache(MAX_ENTRIES);
+
+  private final Map<ByteBuffer, byte[]> entries;
+
+  private byte[] masterKey;
+
+  public static @NonNull DerivedKeyCache getInstance() {
+    return INSTANCE;
+  }
+
+  @VisibleForTesting
+  DerivedKeyCache(int maxEntries) {
+    this.entries = new LinkedHashMap<ByteBuffer, byte[]>(16, 0.75f, true) {
+      @Override
+      protected boolean removeEldestEntry(Map.Entry<ByteBuffer, byte[]> eldest) {
+        if (size() > maxEntries) {
+          Arrays.fill(eldest.getValue(), (byte) 0);
+          return true;
+        }
+        return false;
+      }
+    };
+  }
+
+  /**
+   * @return A copy of the key derived from masterKey and random, which the caller owns.
+   */
+  public @NonNull byte[] getKey(@NonNull byte[] masterKey, @NonNull byte[] random) {
+    ByteBuffer lookup = ByteBuffer.wrap(random);
+
+    synchronized (this) {
+      byte[] key = isCurrentMasterKey(masterKey) ? entries.get(lookup) : null;
+
+      if (key != null) {
+        return key.clone();
+      }
+    }
+
+    byte[] key = derive(masterKey, random);
+
+    put(masterKey, random, key);
+
+    return key;
+  }
+
+  /**
+   * Adds a key that the caller has just derived itself, e.g. for a file that is about to be written.
+   */
+  public void put(@NonNull byte[] masterKey, @NonNull byte[] random, @NonNull byte[] key) {
+    synchronized (this) {
+      if (!isCurrentMasterKey(masterKey)) {
+        clear();
+        this.masterKey = masterKey.clone();
+      }
+
+      byte[] previous = entries.put(ByteBuffer.wrap(random.clone()), key.clone());
+
+      if (previous != null) {
+        Arrays.fill(previous, (byte) 0);
+      }
+    }
+  }
+
+  /**
+   * Zeroes and forgets every key. Called when the app is locked.
+   */
+  public synchronized void clear() {
+    Iterator<byte[]> iterator = entries.values().iterator();
+
+    while (iterator.hasNext()) {
+      Arrays.fill(iterator.next(), (byte) 0);
+      iterator.remove();
+    }
+
+    if (masterKey != null) {
+      Arrays.fill(masterKey, (byte) 0);
+      masterKey = null;
+    }
+  }
+
+  @VisibleForTesting
+  synchronized int size() {
+    return entries.size();
+  }
+
+  /**
+   * @return The cached key itself rather than a copy, so tests can check that it gets zeroed. Does
+   *         not count as a use of the entry.
+   */
+  @VisibleForTesting
+  synchronized @Nullable byte[] peek(@NonNull byte[] random) {
+    ByteBuffer lookup = ByteBuffer.wrap(random);
+
+    for (Map.Entry<ByteBuffer, byte[]> entry : entries.entrySet()) {
+      if (entry.getKey().equals(lookup)) {
+        return entry.getValue();
+      }
+    }
+
+    return null;
+  }
+
+  private boolean isCurrentMasterKey(@NonNull byte[] masterKey) {
+    return this.masterKey != null && MessageDigest.isEqual(this.masterKey, masterKey);
+  }
+
+  static @NonNull byte[] derive(@NonNull byte[] masterKey, @NonNull byte[] random) {
+    try {
+      Mac mac = Mac.getInstance("HmacSHA256");
+      mac.init(new SecretKeySpec(masterKey, "HmacSHA256"));
+
+      return mac.doFinal(random);
+    } catch (NoSuchAlgorithmException | InvalidKeyException e) {
+      throw new AssertionError(e);
+    }
+  }
+}
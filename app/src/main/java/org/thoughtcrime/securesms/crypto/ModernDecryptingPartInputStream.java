@@ -15,7 +15,6 @@ import java.security.NoSuchAlgorithmException;
 
 import javax.crypto.Cipher;
 import javax.crypto.CipherInputStream;
-import javax.crypto.Mac;
 import javax.crypto.NoSuchPaddingException;
 import javax.crypto.spec.IvParameterSpec;
 import javax.crypto.spec.SecretKeySpec;
@@ -41,14 +40,11 @@ public class ModernDecryptingPartInputStream {
 
   private static InputStream createFor(@NonNull AttachmentSecret attachmentSecret, @NonNull byte[] random, @NonNull InputStream inputStream, long offset) throws IOException {
     try {
-      Mac mac  = Mac.getInstance("HmacSHA256");
-      mac.init(new SecretKeySpec(attachmentSecret.getModernKey(), "HmacSHA256"));
-
       byte[] iv        = new byte[16];
       int    remainder = (int) (offset % 16);
       Conversions.longTo4ByteArray(iv, 12, offset / 16);
 
-      byte[] key    = mac.doFinal(random);
+      byte[] key    = deriveKey(attachmentSecret, random);
       Cipher cipher = Cipher.getInstance("AES/CTR/NoPadding");
       cipher.init(Cipher.DECRYPT_MODE, new SecretKeySpec(key, "AES"), new IvParameterSpec(iv));
 
@@ -69,6 +65,10 @@ public class ModernDecryptingPartInputStream {
     }
   }
 
+  static byte[] deriveKey(@NonNull AttachmentSecret attachmentSecret, @NonNull byte[] random) {
+    return DerivedKeyCache.getInstance().getKey(attachmentSecret.getModernKey(), random);
+  }
+
   private static void readFully(InputStream in, byte[] buffer) throws IOException {
     int offset = 0;
 
@@ -4,10 +4,13 @@ package org.thoughtcrime.securesms.crypto;
 import androidx.annotation.NonNull;
 import android.util.Pair;
 
+import org.thoughtcrime.securesms.util.Conversions;
+
 import java.io.File;
 import java.io.FileOutputStream;
 import java.io.IOException;
 import java.io.OutputStream;
+import java.io.RandomAccessFile;
 import java.security.InvalidAlgorithmParameterException;
 import java.security.InvalidKeyException;
 import java.security.NoSuchAlgorithmException;
@@ -15,7 +18,6 @@ import java.security.SecureRandom;
 
 import javax.crypto.Cipher;
 import javax.crypto.CipherOutputStream;
-import javax.crypto.Mac;
 import javax.crypto.NoSuchPaddingException;
 import javax.crypto.spec.IvParameterSpec;
 import javax.crypto.spec.SecretKeySpec;
@@ -34,12 +36,11 @@ public class ModernEncryptingPartOutputStream {
     new SecureRandom().nextBytes(random);
 
     try {
-      Mac mac = Mac.getInstance("HmacSHA256");
-      mac.init(new SecretKeySpec(attachmentSecret.getModernKey(), "HmacSHA256"));
-
       FileOutputStream fileOutputStream = new FileOutputStream(file);
       byte[]           iv               = new byte[16];
-      byte[]           key              = mac.doFinal(random);
+      byte[]           key              = DerivedKeyCache.derive(attachmentSecret.getModernKey(), random);
+
+      DerivedKeyCache.getInstance().put(attachmentSecret.getModernKey(), random, key);
 
       Cipher cipher = Cipher.getInstance("AES/CTR/NoPadding");
       cipher.init(Cipher.ENCRYPT_MODE, new SecretKeySpec(key, "AES"), new IvParameterSpec(iv));
@@ -54,6 +55,37 @@ public class ModernEncryptingPartOutputStream {
     }
   }
 
+  /**
+   * Reopens a file written by {@link #createFor(AttachmentSecret, File, boolean)} without its random
+   * inline, discarding everything after the first offset bytes and continuing the encryption from there.
+   */
+  public static OutputStream createForAppend(@NonNull AttachmentSecret attachmentSecret, @NonNull byte[] random, @NonNull File file, long offset)
+      throws IOException
+  {
+    if (offset < 0 || offset > file.length()) {
+      throw new IOException("Offset " + offset + " is outside of the file");
+    }
+
+    try (RandomAccessFile randomAccessFile = new RandomAccessFile(file, "rw")) {
+      randomAccessFile.setLength(offset);
+    }
+
+    try {
+      byte[] key     = DerivedKeyCache.getInstance().getKey(attachmentSecret.getModernKey(), random);
+      byte[] counter = new byte[16];
+
+      Conversions.longToByteArray(counter, 8, offset / 16);
+
+      Cipher cipher = Cipher.getInstance("AES/CTR/NoPadding");
+      cipher.init(Cipher.ENCRYPT_MODE, new SecretKeySpec(key, "AES"), new IvParameterSpec(counter));
+      cipher.update(new byte[(int) (offset % 16)]);
+
+      return new CipherOutputStream(new FileOutputStream(file, true), cipher);
+    } catch (NoSuchAlgorithmException | InvalidKeyException | InvalidAlgorithmParameterException | NoSuchPaddingException e) {
+      throw new AssertionError(e);
+    }
+  }
+
   public static long getPlaintextLength(long cipherTextLength) {
     return cipherTextLength - 32;
   }
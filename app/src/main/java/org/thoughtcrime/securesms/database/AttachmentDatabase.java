@@ -45,6 +45,7 @@ import org.thoughtcrime.securesms.audio.AudioHash;
 import org.thoughtcrime.securesms.blurhash.BlurHash;
 import org.thoughtcrime.securesms.crypto.AttachmentSecret;
 import org.thoughtcrime.securesms.crypto.ClassicDecryptingPartInputStream;
+import org.thoughtcrime.securesms.crypto.DecryptingPartReader;
 import org.thoughtcrime.securesms.crypto.ModernDecryptingPartInputStream;
 import org.thoughtcrime.securesms.crypto.ModernEncryptingPartOutputStream;
 import org.thoughtcrime.securesms.database.helpers.SQLCipherOpenHelper;
@@ -67,7 +68,9 @@ import org.thoughtcrime.securesms.video.EncryptedMediaDataSource;
 import org.whispersystems.libsignal.util.guava.Optional;
 import org.whispersystems.signalservice.internal.util.JsonUtil;
 
+import java.io.Closeable;
 import java.io.File;
+import java.io.FilterOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStream;
@@ -208,6 +211,26 @@ public class AttachmentDatabase extends Database {
     else                    return dataStream;
   }
 
+  /**
+   * A random-access alternative to {@link #getAttachmentStream(AttachmentId, long)}, for readers
+   * that seek often. The caller is responsible for closing it.
+   */
+  public @NonNull DecryptingPartReader getAttachmentReader(AttachmentId attachmentId)
+      throws IOException
+  {
+    DataInfo dataInfo = getAttachmentDataFileInfo(attachmentId, DATA);
+
+    if (dataInfo == null) {
+      throw new IOException("No data for: " + attachmentId);
+    }
+
+    if (dataInfo.random != null && dataInfo.random.length == 32) {
+      return DecryptingPartReader.createModern(attachmentSecret, dataInfo.file, dataInfo.random);
+    } else {
+      return DecryptingPartReader.createClassic(attachmentSecret, dataInfo.file);
+    }
+  }
+
   public boolean containsStickerPackId(@NonNull String stickerPackId) {
     String   selection = STICKER_PACK_ID + " = ?";
     String[] args      = new String[] { stickerPackId };
@@ -468,6 +491,8 @@ public class AttachmentDatabase extends Database {
       //noinspection ResultOfMethodCallIgnored
       new File(filePath).delete();
     }
+
+    DatabaseFactory.getAttachmentThumbnailDatabase(context).deleteAbandonedThumbnails();
   }
 
   @SuppressWarnings("ResultOfMethodCallIgnored")
@@ -476,6 +501,7 @@ public class AttachmentDatabase extends Database {
     database.delete(TABLE_NAME, null, null);
 
     FileUtils.deleteDirectoryContents(context.getDir(DIRECTORY, Context.MODE_PRIVATE));
+    DatabaseFactory.getAttachmentThumbnailDatabase(context).deleteAllThumbnails();
 
     notifyAttachmentListeners();
   }
@@ -497,6 +523,8 @@ public class AttachmentDatabase extends Database {
       if (new File(data).delete()) {
         Log.i(TAG, "[deleteAttachmentOnDisk] Deleted attachment file. " + data + " " + attachmentId);
 
+        DatabaseFactory.getAttachmentThumbnailDatabase(context).deleteThumbnails(data);
+
         List<AttachmentId> removableWeakReferences = dataUsage.getRemovableWeakReferences();
 
         if (removableWeakReferences.size() > 0) {
@@ -792,6 +820,113 @@ public class AttachmentDatabase extends Database {
 
     int updateCount = updateAttachmentAndMatchingHashes(database, databaseAttachment.getAttachmentId(), oldDataInfo.hash, contentValues);
     Log.i(TAG, "[updateAttachmentData] Updated " + updateCount + " rows.");
+
+    if (destination.equals(oldDataInfo.file)) {
+      DatabaseFactory.getAttachmentThumbnailDatabase(context).deleteThumbnails(destination.getAbsolutePath());
+    }
+  }
+
+  /**
+   * Opens a new encrypted data file for attachment data that is produced a piece at a time, like a
+   * video as it is transcoded, rather than read from an existing stream. Once it's complete, it's
+   * attached with {@link #updateAttachmentData(DatabaseAttachment, DataFileOutput, String)}.
+   */
+  public @NonNull DataFileOutput newDataFileOutput() throws IOException {
+    File                       file = newFile();
+    Pair<byte[], OutputStream> out  = ModernEncryptingPartOutputStream.createFor(attachmentSecret, file, false);
+
+    return new DataFileOutput(file, out.first, out.second, newDataDigest(), 0);
+  }
+
+  /**
+   * Reopens a data file from {@link #newDataFileOutput()} that was only partly written, keeping its
+   * first length bytes and discarding the rest.
+   */
+  public @NonNull DataFileOutput resumeDataFileOutput(@NonNull File file, @NonNull byte[] random, long length) throws IOException {
+    if (!context.getDir(DIRECTORY, Context.MODE_PRIVATE).equals(file.getParentFile())) {
+      throw new IOException("Not an attachment data file: " + file);
+    }
+
+    MessageDigest digest = newDataDigest();
+
+    try (InputStream in = ModernDecryptingPartInputStream.createFor(attachmentSecret, random, file, 0)) {
+      byte[] buffer    = new byte[8192];
+      long   remaining = length;
+
+      while (remaining > 0) {
+        int read = in.read(buffer, 0, (int) Math.min(buffer.length, remaining));
+
+        if (read == -1) {
+          throw new IOException("Data file is shorter than expected");
+        }
+
+        digest.update(buffer, 0, read);
+        remaining -= read;
+      }
+    }
+
+    OutputStream out = ModernEncryptingPartOutputStream.createForAppend(attachmentSecret, random, file, length);
+
+    return new DataFileOutput(file, random, out, digest, length);
+  }
+
+  /**
+   * Points the attachment, and any attachments sharing its data, at a data file that has been
+   * completely written, or at an existing file with the same data. The previous data file is
+   * removed once nothing refers to it.
+   */
+  public void updateAttachmentData(@NonNull DatabaseAttachment databaseAttachment,
+                                   @NonNull DataFileOutput output,
+                                   @NonNull String contentType)
+      throws MmsException, IOException
+  {
+    SQLiteDatabase database    = databaseHelper.getWritableDatabase();
+    DataInfo       oldDataInfo = getAttachmentDataFileInfo(databaseAttachment.getAttachmentId(), DATA);
+
+    if (oldDataInfo == null) {
+      throw new MmsException("No attachment data found!");
+    }
+
+    output.close();
+
+    String             hash           = Base64.encodeBytes(output.digest.digest());
+    Optional<DataInfo> sharedDataInfo = findDuplicateDataFileInfo(database, hash, databaseAttachment.getAttachmentId());
+    DataInfo           dataInfo;
+
+    if (sharedDataInfo.isPresent()) {
+      Log.i(TAG, "[updateAttachmentData] Duplicate data file found! " + sharedDataInfo.get().file.getAbsolutePath());
+      output.delete();
+      dataInfo = sharedDataInfo.get();
+    } else {
+      dataInfo = new DataInfo(output.file, output.length, output.random, hash);
+    }
+
+    ContentValues contentValues = new ContentValues();
+    contentValues.put(SIZE, dataInfo.length);
+    contentValues.put(CONTENT_TYPE, contentType);
+    contentValues.put(WIDTH, 0);
+    contentValues.put(HEIGHT, 0);
+    contentValues.put(DATA, dataInfo.file.getAbsolutePath());
+    contentValues.put(DATA_RANDOM, dataInfo.random);
+    contentValues.put(DATA_HASH, dataInfo.hash);
+
+    int updateCount = updateAttachmentAndMatchingHashes(database, databaseAttachment.getAttachmentId(), oldDataInfo.hash, contentValues);
+    Log.i(TAG, "[updateAttachmentData] Updated " + updateCount + " rows.");
+
+    if (!oldDataInfo.file.equals(dataInfo.file) && !fileReferencedByAnyAttachment(oldDataInfo.file) && oldDataInfo.file.delete()) {
+      Log.i(TAG, "[updateAttachmentData] Deleted previous data file.");
+      DatabaseFactory.getAttachmentThumbnailDatabase(context).deleteThumbnails(oldDataInfo.file.getAbsolutePath());
+    }
+  }
+
+  private boolean fileReferencedByAnyAttachment(@NonNull File file) {
+    SQLiteDatabase database  = databaseHelper.getReadableDatabase();
+    String         selection = DATA + " = ?";
+    String[]       args      = new String[]{file.getAbsolutePath()};
+
+    try (Cursor cursor = database.query(TABLE_NAME, null, selection, args, null, null, null, "1")) {
+      return cursor != null && cursor.moveToFirst();
+    }
   }
 
   /**
@@ -1343,6 +1478,92 @@ public class AttachmentDatabase extends Database {
     return EncryptedMediaDataSource.createFor(attachmentSecret, dataInfo.file, dataInfo.random, dataInfo.length);
   }
 
+  private static @NonNull MessageDigest newDataDigest() {
+    try {
+      return MessageDigest.getInstance("SHA-256");
+    } catch (NoSuchAlgorithmException e) {
+      throw new AssertionError(e);
+    }
+  }
+
+  /**
+   * An encrypted attachment data file that is being written. Its hash and length are tracked as
+   * it's written, so it doesn't need to be read back to be attached.
+   */
+  public static final class DataFileOutput implements Closeable {
+    private final File          file;
+    private final byte[]        random;
+    private final MessageDigest digest;
+    private final OutputStream  outputStream;
+
+    private long    length;
+    private boolean closed;
+
+    private DataFileOutput(@NonNull File file, @NonNull byte[] random, @NonNull OutputStream encryptingStream, @NonNull MessageDigest digest, long length) {
+      this.file         = file;
+      this.random       = random;
+      this.digest       = digest;
+      this.length       = length;
+      this.outputStream = new FilterOutputStream(encryptingStream) {
+        @Override
+        public void write(int b) throws IOException {
+          out.write(b);
+          DataFileOutput.this.digest.update((byte) b);
+          DataFileOutput.this.length++;
+        }
+
+        @Override
+        public void write(@NonNull byte[] b, int off, int len) throws IOException {
+          out.write(b, off, len);
+          DataFileOutput.this.digest.update(b, off, len);
+          DataFileOutput.this.length += len;
+        }
+      };
+    }
+
+    public @NonNull File getFile() {
+      return file;
+    }
+
+    public @NonNull byte[] getRandom() {
+      return random;
+    }
+
+    /**
+     * @return The number of bytes written, including any kept when the file was resumed.
+     */
+    public long getLength() {
+      return length;
+    }
+
+    public @NonNull OutputStream getOutputStream() {
+      return outputStream;
+    }
+
+    @Override
+    public void close() throws IOException {
+      if (!closed) {
+        closed = true;
+        outputStream.close();
+      }
+    }
+
+    /**
+     * Closes and deletes the file, for when it will not be attached.
+     */
+    public void delete() {
+      try {
+        close();
+      } catch (IOException e) {
+        Log.w(TAG, "Failed to close data file", e);
+      }
+
+      if (!file.delete()) {
+        Log.w(TAG, "Failed to delete data file " + file);
+      }
+    }
+  }
+
   private static class DataInfo {
     private final File   file;
     private final long   length;
@@ -0,0 +1,260 @@
+package org.thoughtcrime.securesms.database;
+
+import android.content.ContentValues;
+import android.content.Context;
+import android.database.Cursor;
+import android.graphics.Bitmap;
+import android.util.Pair;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+
+import net.sqlcipher.database.SQLiteDatabase;
+
+import org.thoughtcrime.securesms.attachments.AttachmentId;
+import org.thoughtcrime.securesms.attachments.AttachmentThumbnail;
+import org.thoughtcrime.securesms.crypto.AttachmentSecret;
+import org.thoughtcrime.securesms.crypto.ModernDecryptingPartInputStream;
+import org.thoughtcrime.securesms.crypto.ModernEncryptingPartOutputStream;
+import org.thoughtcrime.securesms.database.helpers.SQLCipherOpenHelper;
+import org.thoughtcrime.securesms.logging.Log;
+import org.thoughtcrime.securesms.tracing.Trace;
+import org.thoughtcrime.securesms.util.CursorUtil;
+import org.thoughtcrime.securesms.util.FileUtils;
+import org.thoughtcrime.securesms.util.SetUtil;
+import org.thoughtcrime.securesms.util.SqlUtil;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.HashSet;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * Reduced size copies of image and video attachments, see {@link AttachmentThumbnail}.
+ * <p>
+ * Thumbnails belong to an attachment data file rather than to an attachment, so attachments that
+ * share a data file share its thumbnails too. They're removed along with the data file, or when the
+ * data in it is replaced.
+ */
+@Trace
+public class AttachmentThumbnailDatabase extends Database {
+
+  private static final String TAG = Log.tag(AttachmentThumbnailDatabase.class);
+
+  public  static final String TABLE_NAME  = "attachment_thumbnail";
+  private static final String ID          = "_id";
+  private static final String DATA_FILE   = "data_file";
+  private static final String BUCKET      = "bucket";
+  private static final String WIDTH       = "width";
+  private static final String HEIGHT      = "height";
+  private static final String FILE_PATH   = "file_path";
+  private static final String FILE_RANDOM = "file_random";
+
+  public static final String CREATE_TABLE = "CREATE TABLE " + TABLE_NAME + " (" + ID          + " INTEGER PRIMARY KEY AUTOINCREMENT, " +
+                                                                                  DATA_FILE   + " TEXT NOT NULL, " +
+                                                                                  BUCKET      + " INTEGER NOT NULL, " +
+                                                                                  WIDTH       + " INTEGER NOT NULL, " +
+                                                                                  HEIGHT      + " INTEGER NOT NULL, " +
+                                                                                  FILE_PATH   + " TEXT NOT NULL, " +
+                                                                                  FILE_RANDOM + " BLOB NOT NULL, " +
+                                                                                  "UNIQUE(" + DATA_FILE + ", " + BUCKET + "))";
+
+  public static final String DIRECTORY = "attachment_thumbnails";
+
+  private static final int JPEG_QUALITY = 85;
+
+  private final AttachmentSecret attachmentSecret;
+
+  public AttachmentThumbnailDatabase(Context context, SQLCipherOpenHelper databaseHelper, AttachmentSecret attachmentSecret) {
+    super(context, databaseHelper);
+    this.attachmentSecret = attachmentSecret;
+  }
+
+  /**
+   * @return The thumbnails of the attachment's data, smallest first.
+   */
+  public @NonNull List<AttachmentThumbnail> getThumbnails(@NonNull AttachmentId attachmentId) {
+    List<AttachmentThumbnail> thumbnails = new LinkedList<>();
+    String                    query      = "SELECT t." + ID + ", t." + BUCKET + ", t." + WIDTH + ", t." + HEIGHT +
+                                           " FROM " + TABLE_NAME + " AS t" +
+                                           " INNER JOIN " + AttachmentDatabase.TABLE_NAME + " AS p ON t." + DATA_FILE + " = p." + AttachmentDatabase.DATA +
+                                           " WHERE p." + AttachmentDatabase.ROW_ID + " = ? AND p." + AttachmentDatabase.UNIQUE_ID + " = ?" +
+                                           " ORDER BY t." + BUCKET + " ASC";
+
+    try (Cursor cursor = databaseHelper.getReadableDatabase().rawQuery(query, attachmentId.toStrings())) {
+      while (cursor != null && cursor.moveToNext()) {
+        thumbnails.add(new AttachmentThumbnail(CursorUtil.requireLong(cursor, ID),
+                                               CursorUtil.requireInt(cursor, BUCKET),
+                                               CursorUtil.requireInt(cursor, WIDTH),
+                                               CursorUtil.requireInt(cursor, HEIGHT)));
+      }
+    }
+
+    return thumbnails;
+  }
+
+  public @NonNull InputStream getThumbnailStream(long thumbnailId) throws IOException {
+    String   selection = ID + " = ?";
+    String[] args      = SqlUtil.buildArgs(thumbnailId);
+
+    try (Cursor cursor = databaseHelper.getReadableDatabase().query(TABLE_NAME, new String[] { FILE_PATH, FILE_RANDOM }, selection, args, null, null, null)) {
+      if (cursor != null && cursor.moveToFirst()) {
+        File   file   = new File(CursorUtil.requireString(cursor, FILE_PATH));
+        byte[] random = CursorUtil.requireBlob(cursor, FILE_RANDOM);
+
+        return ModernDecryptingPartInputStream.createFor(attachmentSecret, random, file, 0);
+      }
+    }
+
+    throw new IOException("No thumbnail: " + thumbnailId);
+  }
+
+  /**
+   * Stores a thumbnail of the attachment's data, replacing any in the same bucket.
+   *
+   * @param dataFile The attachment's data file, as read by {@link #getDataFile(AttachmentId)} before
+   *                 the thumbnail was decoded from it.
+   * @return False if the attachment's data has changed since, in which case nothing is stored.
+   */
+  public boolean insertThumbnail(@NonNull AttachmentId attachmentId, @NonNull String dataFile, int bucket, @NonNull Bitmap bitmap) throws IOException {
+    File                       file = File.createTempFile("thumbnail", ".mms", context.getDir(DIRECTORY, Context.MODE_PRIVATE));
+    Pair<byte[], OutputStream> out  = ModernEncryptingPartOutputStream.createFor(attachmentSecret, file, false);
+
+    try (OutputStream outputStream = out.second) {
+      if (bitmap.hasAlpha()) {
+        bitmap.compress(Bitmap.CompressFormat.PNG, 100, outputStream);
+      } else {
+        bitmap.compress(Bitmap.CompressFormat.JPEG, JPEG_QUALITY, outputStream);
+      }
+    } catch (IOException e) {
+      deleteFile(file.getAbsolutePath());
+      throw e;
+    }
+
+    SQLiteDatabase db = databaseHelper.getWritableDatabase();
+
+    db.beginTransaction();
+    try {
+      if (!dataFile.equals(getDataFile(attachmentId))) {
+        Log.i(TAG, "Data changed while generating a thumbnail for " + attachmentId + ", discarding it");
+        deleteFile(file.getAbsolutePath());
+        return false;
+      }
+
+      String   selection = DATA_FILE + " = ? AND " + BUCKET + " = ?";
+      String[] args      = SqlUtil.buildArgs(dataFile, bucket);
+
+      deleteThumbnails(db, selection, args);
+
+      ContentValues values = new ContentValues();
+      values.put(DATA_FILE, dataFile);
+      values.put(BUCKET, bucket);
+      values.put(WIDTH, bitmap.getWidth());
+      values.put(HEIGHT, bitmap.getHeight());
+      values.put(FILE_PATH, file.getAbsolutePath());
+      values.put(FILE_RANDOM, out.first);
+
+      db.insert(TABLE_NAME, null, values);
+      db.setTransactionSuccessful();
+    } finally {
+      db.endTransaction();
+    }
+
+    return true;
+  }
+
+  /**
+   * Removes the thumbnails of a data file, for when it's deleted or its data is replaced.
+   */
+  void deleteThumbnails(@NonNull String dataFile) {
+    SQLiteDatabase db = databaseHelper.getWritableDatabase();
+
+    db.beginTransaction();
+    try {
+      deleteThumbnails(db, DATA_FILE + " = ?", SqlUtil.buildArgs(dataFile));
+      db.setTransactionSuccessful();
+    } finally {
+      db.endTransaction();
+    }
+  }
+
+  /**
+   * Removes thumbnails of data files no attachment refers to, and thumbnail files that are not in
+   * the database.
+   */
+  void deleteAbandonedThumbnails() {
+    SQLiteDatabase db              = databaseHelper.getWritableDatabase();
+    String         selectDataInUse = "SELECT DISTINCT " + AttachmentDatabase.DATA + " FROM " + AttachmentDatabase.TABLE_NAME + " WHERE " + AttachmentDatabase.DATA + " NOT NULL";
+
+    db.beginTransaction();
+    try {
+      deleteThumbnails(db, DATA_FILE + " NOT IN (" + selectDataInUse + ")", null);
+      db.setTransactionSuccessful();
+    } finally {
+      db.endTransaction();
+    }
+
+    Set<String> filesOnDisk = new HashSet<>();
+    Set<String> filesInDb   = new HashSet<>();
+
+    File[] files = context.getDir(DIRECTORY, Context.MODE_PRIVATE).listFiles();
+
+    if (files != null) {
+      for (File file : files) {
+        filesOnDisk.add(file.getAbsolutePath());
+      }
+    }
+
+    try (Cursor cursor = db.query(TABLE_NAME, new String[] { FILE_PATH }, null, null, null, null, null)) {
+      while (cursor != null && cursor.moveToNext()) {
+        filesInDb.add(CursorUtil.requireString(cursor, FILE_PATH));
+      }
+    }
+
+    for (String filePath : SetUtil.difference(filesOnDisk, filesInDb)) {
+      deleteFile(filePath);
+    }
+  }
+
+  void deleteAllThumbnails() {
+    databaseHelper.getWritableDatabase().delete(TABLE_NAME, null, null);
+    FileUtils.deleteDirectoryContents(context.getDir(DIRECTORY, Context.MODE_PRIVATE));
+  }
+
+  /**
+   * @return The path of the attachment's data file, or null if it has no data.
+   */
+  public @Nullable String getDataFile(@NonNull AttachmentId attachmentId) {
+    String selection = AttachmentDatabase.ROW_ID + " = ? AND " + AttachmentDatabase.UNIQUE_ID + " = ?";
+
+    try (Cursor cursor = databaseHelper.getReadableDatabase().query(AttachmentDatabase.TABLE_NAME, new String[] { AttachmentDatabase.DATA }, selection, attachmentId.toStrings(), null, null, null)) {
+      if (cursor != null && cursor.moveToFirst()) {
+        return CursorUtil.getString(cursor, AttachmentDatabase.DATA).orNull();
+      }
+    }
+
+    return null;
+  }
+
+  private void deleteThumbnails(@NonNull SQLiteDatabase db, @NonNull String selection, @Nullable String[] args) {
+    try (Cursor cursor = db.query(TABLE_NAME, new String[] { FILE_PATH }, selection, args, null, null, null)) {
+      while (cursor != null && cursor.moveToNext()) {
+        deleteFile(CursorUtil.requireString(cursor, FILE_PATH));
+      }
+    }
+
+    db.delete(TABLE_NAME, selection, args);
+  }
+
+  private static void deleteFile(@NonNull String path) {
+    File file = new File(path);
+
+    if (!file.delete() && file.exists()) {
+      Log.w(TAG, "Unable to delete thumbnail " + file.getName());
+    }
+  }
+}
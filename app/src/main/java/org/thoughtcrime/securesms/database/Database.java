@@ -47,6 +47,10 @@ public abstract class Database {
     notifyVerboseConversationListeners(threadId);
   }
 
+  protected void notifyAllConversationListeners() {
+    context.getContentResolver().notifyChange(DatabaseContentProviders.Conversation.getUriForAllThreads(), null);
+  }
+
   protected void notifyVerboseConversationListeners(long threadId) {
     context.getContentResolver().notifyChange(DatabaseContentProviders.Conversation.getVerboseUriForThread(threadId), null);
   }
@@ -61,6 +61,13 @@ public class DatabaseContentProviders {
     public static final Uri CONTENT_URI = Uri.parse(CONTENT_URI_STRING);
   }
 
+  public static class Recipient extends NoopContentProvider {
+    private static final String CONTENT_AUTHORITY  = BuildConfig.APPLICATION_ID + ".database.recipient";
+    private static final String CONTENT_URI_STRING = "content://" + CONTENT_AUTHORITY;
+
+    public static final Uri CONTENT_URI = Uri.parse(CONTENT_URI_STRING);
+  }
+
   private static abstract class NoopContentProvider extends ContentProvider {
 
     @Override
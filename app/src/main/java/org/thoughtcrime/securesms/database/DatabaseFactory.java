@@ -39,31 +39,32 @@ public class DatabaseFactory {
 
   private static DatabaseFactory instance;
 
-  private final SQLCipherOpenHelper     databaseHelper;
-  private final SmsDatabase             sms;
-  private final MmsDatabase             mms;
-  private final AttachmentDatabase      attachments;
-  private final MediaDatabase           media;
-  private final ThreadDatabase          thread;
-  private final MmsSmsDatabase          mmsSmsDatabase;
-  private final IdentityDatabase        identityDatabase;
-  private final DraftDatabase           draftDatabase;
-  private final PushDatabase            pushDatabase;
-  private final GroupDatabase           groupDatabase;
-  private final RecipientDatabase       recipientDatabase;
-  private final ContactsDatabase        contactsDatabase;
-  private final GroupReceiptDatabase    groupReceiptDatabase;
-  private final OneTimePreKeyDatabase   preKeyDatabase;
-  private final SignedPreKeyDatabase    signedPreKeyDatabase;
-  private final SessionDatabase         sessionDatabase;
-  private final SearchDatabase          searchDatabase;
-  private final JobDatabase             jobDatabase;
-  private final StickerDatabase         stickerDatabase;
-  private final StorageKeyDatabase      storageKeyDatabase;
-  private final KeyValueDatabase        keyValueDatabase;
-  private final MegaphoneDatabase       megaphoneDatabase;
-  private final RemappedRecordsDatabase remappedRecordsDatabase;
-  private final MentionDatabase         mentionDatabase;
+  private final SQLCipherOpenHelper         databaseHelper;
+  private final SmsDatabase                 sms;
+  private final MmsDatabase                 mms;
+  private final AttachmentDatabase          attachments;
+  private final AttachmentThumbnailDatabase attachmentThumbnails;
+  private final MediaDatabase               media;
+  private final ThreadDatabase              thread;
+  private final MmsSmsDatabase              mmsSmsDatabase;
+  private final IdentityDatabase            identityDatabase;
+  private final DraftDatabase               draftDatabase;
+  private final PushDatabase                pushDatabase;
+  private final GroupDatabase               groupDatabase;
+  private final RecipientDatabase           recipientDatabase;
+  private final ContactsDatabase            contactsDatabase;
+  private final GroupReceiptDatabase        groupReceiptDatabase;
+  private final OneTimePreKeyDatabase       preKeyDatabase;
+  private final SignedPreKeyDatabase        signedPreKeyDatabase;
+  private final SessionDatabase             sessionDatabase;
+  private final SearchDatabase              searchDatabase;
+  private final JobDatabase                 jobDatabase;
+  private final StickerDatabase             stickerDatabase;
+  private final StorageKeyDatabase          storageKeyDatabase;
+  private final KeyValueDatabase            keyValueDatabase;
+  private final MegaphoneDatabase           megaphoneDatabase;
+  private final RemappedRecordsDatabase     remappedRecordsDatabase;
+  private final MentionDatabase             mentionDatabase;
 
   public static DatabaseFactory getInstance(Context context) {
     synchronized (lock) {
@@ -94,6 +95,10 @@ public class DatabaseFactory {
     return getInstance(context).attachments;
   }
 
+  public static AttachmentThumbnailDatabase getAttachmentThumbnailDatabase(Context context) {
+    return getInstance(context).attachmentThumbnails;
+  }
+
   public static MediaDatabase getMediaDatabase(Context context) {
     return getInstance(context).media;
   }
@@ -199,6 +204,7 @@ public class DatabaseFactory {
     this.sms                     = new SmsDatabase(context, databaseHelper);
     this.mms                     = new MmsDatabase(context, databaseHelper);
     this.attachments             = new AttachmentDatabase(context, databaseHelper, attachmentSecret);
+    this.attachmentThumbnails    = new AttachmentThumbnailDatabase(context, databaseHelper, attachmentSecret);
     this.media                   = new MediaDatabase(context, databaseHelper);
     this.thread                  = new ThreadDatabase(context, databaseHelper);
     this.mmsSmsDatabase          = new MmsSmsDatabase(context, databaseHelper);
@@ -47,6 +47,7 @@ import java.util.LinkedList;
 import java.util.List;
 import java.util.Locale;
 import java.util.Map;
+import java.util.Set;
 import java.util.UUID;
 
 @Trace
@@ -99,12 +100,40 @@ public final class GroupDatabase extends Database {
                                                                                   EXPECTED_V2_ID      + " TEXT DEFAULT NULL, " +
                                                                                   FORMER_V1_MEMBERS   + " TEXT DEFAULT NULL);";
 
+  public static final String CREATE_MEMBERSHIP_TABLE = Membership.CREATE_TABLE;
+
   public static final String[] CREATE_INDEXS = {
       "CREATE UNIQUE INDEX IF NOT EXISTS group_id_index ON " + TABLE_NAME + " (" + GROUP_ID + ");",
       "CREATE UNIQUE INDEX IF NOT EXISTS group_recipient_id_index ON " + TABLE_NAME + " (" + RECIPIENT_ID + ");",
-      "CREATE UNIQUE INDEX IF NOT EXISTS expected_v2_id_index ON " + TABLE_NAME + " (" + EXPECTED_V2_ID + ");"
+      "CREATE UNIQUE INDEX IF NOT EXISTS expected_v2_id_index ON " + TABLE_NAME + " (" + EXPECTED_V2_ID + ");",
+      Membership.CREATE_GROUP_INDEX,
+      Membership.CREATE_RECIPIENT_INDEX
   };
 
+  /**
+   * A normalized copy of {@link #MEMBERS}, one row per member, so that we can find a recipient's
+   * groups with an index rather than scanning every group's member list. Kept in sync wherever
+   * {@link #MEMBERS} is written.
+   */
+  static final class Membership {
+            static final String TABLE_NAME   = "group_membership";
+    private static final String ID           = "_id";
+            static final String GROUP_ID     = "group_id";
+            static final String RECIPIENT_ID = "recipient_id";
+    private static final String ROLE         = "role";
+
+    static final int ROLE_MEMBER = 0;
+    static final int ROLE_ADMIN  = 1;
+
+    private static final String CREATE_TABLE = "CREATE TABLE " + TABLE_NAME + " (" + ID           + " INTEGER PRIMARY KEY, " +
+                                                                                     GROUP_ID     + " TEXT NOT NULL, " +
+                                                                                     RECIPIENT_ID + " INTEGER NOT NULL, " +
+                                                                                     ROLE         + " INTEGER DEFAULT " + ROLE_MEMBER + ");";
+
+    private static final String CREATE_GROUP_INDEX     = "CREATE UNIQUE INDEX IF NOT EXISTS group_membership_group_recipient_index ON " + TABLE_NAME + " (" + GROUP_ID + ", " + RECIPIENT_ID + ");";
+    private static final String CREATE_RECIPIENT_INDEX = "CREATE INDEX IF NOT EXISTS group_membership_recipient_group_index ON " + TABLE_NAME + " (" + RECIPIENT_ID + ", " + GROUP_ID + ");";
+  }
+
   private static final String[] GROUP_PROJECTION = {
       GROUP_ID, RECIPIENT_ID, TITLE, MEMBERS, FORMER_V1_MEMBERS, AVATAR_ID, AVATAR_KEY, AVATAR_CONTENT_TYPE, AVATAR_RELAY, AVATAR_DIGEST,
       TIMESTAMP, ACTIVE, MMS, V2_MASTER_KEY, V2_REVISION, V2_DECRYPTED_GROUP
@@ -244,22 +273,48 @@ public final class GroupDatabase extends Database {
   public GroupId.Mms getOrCreateMmsGroupForMembers(List<RecipientId> members) {
     Collections.sort(members);
 
-    Cursor cursor = databaseHelper.getReadableDatabase().query(TABLE_NAME, new String[] {GROUP_ID},
-                                                               MEMBERS + " = ? AND " + MMS + " = ?",
-                                                               new String[] {RecipientId.toSerializedList(members), "1"},
-                                                               null, null, null);
-    try {
-      if (cursor != null && cursor.moveToNext()) {
-        return GroupId.parseOrThrow(cursor.getString(cursor.getColumnIndexOrThrow(GROUP_ID)))
-                      .requireMms();
-      } else {
-        GroupId.Mms groupId = GroupId.createMms(new SecureRandom());
-        create(groupId, members);
-        return groupId;
+    Optional<GroupId.Mms> existing = getMmsGroupForMembers(new HashSet<>(members));
+
+    if (existing.isPresent()) {
+      return existing.get();
+    } else {
+      GroupId.Mms groupId = GroupId.createMms(new SecureRandom());
+      create(groupId, members);
+      return groupId;
+    }
+  }
+
+  /**
+   * Finds the MMS group whose members are exactly the provided set, by looking up the groups of each
+   * member rather than comparing every group's serialized member list.
+   */
+  private @NonNull Optional<GroupId.Mms> getMmsGroupForMembers(@NonNull Set<RecipientId> members) {
+    SQLiteDatabase db = databaseHelper.getReadableDatabase();
+
+    if (members.isEmpty()) {
+      try (Cursor cursor = db.query(TABLE_NAME, new String[] { GROUP_ID }, MEMBERS + " = ? AND " + MMS + " = ?", SqlUtil.buildArgs("", 1), null, null, null)) {
+        if (cursor != null && cursor.moveToFirst()) {
+          return Optional.of(GroupId.parseOrThrow(CursorUtil.requireString(cursor, GROUP_ID)).requireMms());
+        }
+      }
+      return Optional.absent();
+    }
+
+    SqlUtil.Query memberQuery = SqlUtil.buildCollectionQuery("m." + Membership.RECIPIENT_ID, members);
+    String        query       = "SELECT m." + Membership.GROUP_ID + " FROM " + Membership.TABLE_NAME + " AS m " +
+                                "INNER JOIN " + TABLE_NAME + " AS g ON g." + GROUP_ID + " = m." + Membership.GROUP_ID + " " +
+                                "WHERE " + memberQuery.getWhere() + " AND g." + MMS + " = 1 " +
+                                "GROUP BY m." + Membership.GROUP_ID + " " +
+                                "HAVING COUNT(*) = " + members.size() + " AND " +
+                                "(SELECT COUNT(*) FROM " + Membership.TABLE_NAME + " WHERE " + Membership.GROUP_ID + " = m." + Membership.GROUP_ID + ") = " + members.size();
+
+    try (Cursor cursor = db.rawQuery(query, memberQuery.getWhereArgs())) {
+      if (cursor != null && cursor.moveToFirst()) {
+        return Optional.of(GroupId.parseOrThrow(cursor.getString(0)).requireMms());
       }
-    } finally {
-      if (cursor != null) cursor.close();
     }
+
+    return Optional.absent();
   }
 
   @WorkerThread
@@ -282,8 +337,8 @@ public final class GroupDatabase extends Database {
   public @NonNull List<GroupRecord> getGroupsContainingMember(@NonNull RecipientId recipientId, boolean pushOnly, boolean includeInactive) {
     SQLiteDatabase database   = databaseHelper.getReadableDatabase();
     String         table      = TABLE_NAME + " INNER JOIN " + ThreadDatabase.TABLE_NAME + " ON " + TABLE_NAME + "." + RECIPIENT_ID + " = " + ThreadDatabase.TABLE_NAME + "." + ThreadDatabase.RECIPIENT_ID;
-    String         query      = MEMBERS + " LIKE ?";
-    String[]       args       = SqlUtil.buildArgs("%" + recipientId.serialize() + "%");
+    String         query      = TABLE_NAME + "." + GROUP_ID + " IN (SELECT " + Membership.GROUP_ID + " FROM " + Membership.TABLE_NAME + " WHERE " + Membership.RECIPIENT_ID + " = ?)";
+    String[]       args       = SqlUtil.buildArgs(recipientId);
     String         orderBy    = ThreadDatabase.TABLE_NAME + "." + ThreadDatabase.DATE + " DESC";
 
     if (pushOnly) {
@@ -300,11 +355,7 @@ public final class GroupDatabase extends Database {
 
     try (Cursor cursor = database.query(table, null, query, args, null, null, orderBy)) {
       while (cursor != null && cursor.moveToNext()) {
-        String serializedMembers = cursor.getString(cursor.getColumnIndexOrThrow(MEMBERS));
-
-        if (RecipientId.serializedListContains(serializedMembers, recipientId)) {
-          groups.add(new Reader(cursor).getCurrent());
-        }
+        groups.add(new Reader(cursor).getCurrent());
       }
     }
 
@@ -397,6 +448,7 @@ public final class GroupDatabase extends Database {
     RecipientDatabase recipientDatabase = DatabaseFactory.getRecipientDatabase(context);
     RecipientId       groupRecipientId  = recipientDatabase.getOrInsertFromGroupId(groupId);
     List<RecipientId> members           = new ArrayList<>(new HashSet<>(memberCollection));
+    Set<RecipientId>  admins            = Collections.emptySet();
 
     Collections.sort(members);
 
@@ -437,14 +489,26 @@ public final class GroupDatabase extends Database {
       contentValues.put(V2_MASTER_KEY, groupMasterKey.serialize());
       contentValues.put(V2_REVISION, groupState.getRevision());
       contentValues.put(V2_DECRYPTED_GROUP, groupState.toByteArray());
-      contentValues.put(MEMBERS, serializeV2GroupMembers(groupState));
+
+      members = getV2GroupMembers(groupState);
+      admins  = getV2GroupAdmins(groupState);
+      contentValues.put(MEMBERS, RecipientId.toSerializedList(members));
     } else {
       if (groupId.isV2()) {
         throw new AssertionError("V2 group id but no master key");
       }
     }
 
-    databaseHelper.getWritableDatabase().insert(TABLE_NAME, null, contentValues);
+    SQLiteDatabase db = databaseHelper.getWritableDatabase();
+
+    db.beginTransaction();
+    try {
+      db.insert(TABLE_NAME, null, contentValues);
+      replaceMembership(db, groupId, members, admins);
+      db.setTransactionSuccessful();
+    } finally {
+      db.endTransaction();
+    }
 
     if (groupState != null && groupState.hasDisappearingMessagesTimer()) {
       recipientDatabase.setExpireMessages(groupRecipientId, groupState.getDisappearingMessagesTimer().getDuration());
@@ -516,6 +580,10 @@ public final class GroupDatabase extends Database {
         throw new AssertionError();
       }
 
+      ContentValues membershipValues = new ContentValues(1);
+      membershipValues.put(Membership.GROUP_ID, groupIdV2.toString());
+      db.update(Membership.TABLE_NAME, membershipValues, Membership.GROUP_ID + " = ?", SqlUtil.buildArgs(groupIdV1.toString()));
+
       DatabaseFactory.getRecipientDatabase(context).updateGroupId(groupIdV1, groupIdV2);
 
       update(groupMasterKey, updateToHaveV1Membership(decryptedGroup, record.getMembers()));
@@ -553,17 +621,26 @@ public final class GroupDatabase extends Database {
     RecipientDatabase recipientDatabase = DatabaseFactory.getRecipientDatabase(context);
     RecipientId       groupRecipientId  = recipientDatabase.getOrInsertFromGroupId(groupId);
     String            title             = decryptedGroup.getTitle();
+    List<RecipientId> members           = getV2GroupMembers(decryptedGroup);
+    Set<RecipientId>  admins            = getV2GroupAdmins(decryptedGroup);
     ContentValues     contentValues     = new ContentValues();
 
     contentValues.put(TITLE, title);
     contentValues.put(V2_REVISION, decryptedGroup.getRevision());
     contentValues.put(V2_DECRYPTED_GROUP, decryptedGroup.toByteArray());
-    contentValues.put(MEMBERS, serializeV2GroupMembers(decryptedGroup));
+    contentValues.put(MEMBERS, RecipientId.toSerializedList(members));
     contentValues.put(ACTIVE, gv2GroupActive(decryptedGroup) ? 1 : 0);
 
-    databaseHelper.getWritableDatabase().update(TABLE_NAME, contentValues,
-                                                GROUP_ID + " = ?",
-                                                new String[]{ groupId.toString() });
+    SQLiteDatabase db = databaseHelper.getWritableDatabase();
+
+    db.beginTransaction();
+    try {
+      db.update(TABLE_NAME, contentValues, GROUP_ID + " = ?", new String[]{ groupId.toString() });
+      replaceMembership(db, groupId, members, admins);
+      db.setTransactionSuccessful();
+    } finally {
+      db.endTransaction();
+    }
 
     if (decryptedGroup.hasDisappearingMessagesTimer()) {
       recipientDatabase.setExpireMessages(groupRecipientId, decryptedGroup.getDisappearingMessagesTimer().getDuration());
@@ -605,8 +682,16 @@ public final class GroupDatabase extends Database {
     contents.put(MEMBERS, RecipientId.toSerializedList(members));
     contents.put(ACTIVE, 1);
 
-    databaseHelper.getWritableDatabase().update(TABLE_NAME, contents, GROUP_ID + " = ?",
-                                                new String[] {groupId.toString()});
+    SQLiteDatabase db = databaseHelper.getWritableDatabase();
+
+    db.beginTransaction();
+    try {
+      db.update(TABLE_NAME, contents, GROUP_ID + " = ?", new String[] {groupId.toString()});
+      replaceMembership(db, groupId, members, Collections.emptySet());
+      db.setTransactionSuccessful();
+    } finally {
+      db.endTransaction();
+    }
 
     RecipientId groupRecipient = DatabaseFactory.getRecipientDatabase(context).getOrInsertFromGroupId(groupId);
     Recipient.live(groupRecipient).refresh();
@@ -619,8 +704,16 @@ public final class GroupDatabase extends Database {
     ContentValues contents = new ContentValues();
     contents.put(MEMBERS, RecipientId.toSerializedList(currentMembers));
 
-    databaseHelper.getWritableDatabase().update(TABLE_NAME, contents, GROUP_ID + " = ?",
-                                                new String[] {groupId.toString()});
+    SQLiteDatabase db = databaseHelper.getWritableDatabase();
+
+    db.beginTransaction();
+    try {
+      db.update(TABLE_NAME, contents, GROUP_ID + " = ?", new String[] {groupId.toString()});
+      db.delete(Membership.TABLE_NAME, Membership.GROUP_ID + " = ? AND " + Membership.RECIPIENT_ID + " = ?", SqlUtil.buildArgs(groupId, source));
+      db.setTransactionSuccessful();
+    } finally {
+      db.endTransaction();
+    }
 
     RecipientId groupRecipient = DatabaseFactory.getRecipientDatabase(context).getOrInsertFromGroupId(groupId);
     Recipient.live(groupRecipient).refresh();
@@ -670,16 +763,11 @@ public final class GroupDatabase extends Database {
   public boolean isCurrentMember(@NonNull GroupId.Push groupId, @NonNull RecipientId recipientId) {
     SQLiteDatabase database = databaseHelper.getReadableDatabase();
 
-    try (Cursor cursor = database.query(TABLE_NAME, new String[] {MEMBERS},
-                                        GROUP_ID + " = ?", new String[] {groupId.toString()},
-                                        null, null, null))
+    try (Cursor cursor = database.query(Membership.TABLE_NAME, new String[] {Membership.ID},
+                                        Membership.GROUP_ID + " = ? AND " + Membership.RECIPIENT_ID + " = ?", SqlUtil.buildArgs(groupId, recipientId),
+                                        null, null, null, "1"))
     {
-      if (cursor.moveToNext()) {
-        String serializedMembers = cursor.getString(cursor.getColumnIndexOrThrow(MEMBERS));
-        return RecipientId.serializedListContains(serializedMembers, recipientId);
-      } else {
-        return false;
-      }
+      return cursor != null && cursor.moveToFirst();
     }
   }
 
@@ -688,7 +776,7 @@ public final class GroupDatabase extends Database {
     return getGroup(groupId).transform(g -> g.isPendingMember(recipient)).or(false);
   }
 
-  private static String serializeV2GroupMembers(@NonNull DecryptedGroup decryptedGroup) {
+  private static @NonNull List<RecipientId> getV2GroupMembers(@NonNull DecryptedGroup decryptedGroup) {
     List<RecipientId> groupMembers  = new ArrayList<>(decryptedGroup.getMembersCount());
 
     for (DecryptedMember member : decryptedGroup.getMembersList()) {
@@ -702,7 +790,47 @@ public final class GroupDatabase extends Database {
 
     Collections.sort(groupMembers);
 
-    return RecipientId.toSerializedList(groupMembers);
+    return groupMembers;
+  }
+
+  private static @NonNull Set<RecipientId> getV2GroupAdmins(@NonNull DecryptedGroup decryptedGroup) {
+    Set<RecipientId> admins = new HashSet<>();
+
+    for (DecryptedMember member : decryptedGroup.getMembersList()) {
+      UUID uuid = UuidUtil.fromByteString(member.getUuid());
+
+      if (member.getRole() == Member.Role.ADMINISTRATOR && !UuidUtil.UNKNOWN_UUID.equals(uuid)) {
+        admins.add(RecipientId.from(uuid, null));
+      }
+    }
+
+    return admins;
+  }
+
+  private static void replaceMembership(@NonNull SQLiteDatabase db,
+                                        @NonNull GroupId groupId,
+                                        @NonNull Collection<RecipientId> members,
+                                        @NonNull Set<RecipientId> admins)
+  {
+    db.delete(Membership.TABLE_NAME, Membership.GROUP_ID + " = ?", SqlUtil.buildArgs(groupId));
+
+    ContentValues values = new ContentValues(3);
+
+    for (RecipientId member : members) {
+      values.put(Membership.GROUP_ID, groupId.toString());
+      values.put(Membership.RECIPIENT_ID, member.serialize());
+      values.put(Membership.ROLE, admins.contains(member) ? Membership.ROLE_ADMIN : Membership.ROLE_MEMBER);
+
+      db.insertWithOnConflict(Membership.TABLE_NAME, null, values, SQLiteDatabase.CONFLICT_IGNORE);
+    }
+  }
+
+  /**
+   * Drops a recipient from the membership of every group. The caller is responsible for updating
+   * each group's {@link #MEMBERS} to match.
+   */
+  void removeFromAllMemberships(@NonNull RecipientId recipientId) {
+    databaseHelper.getWritableDatabase().delete(Membership.TABLE_NAME, Membership.RECIPIENT_ID + " = ?", SqlUtil.buildArgs(recipientId));
   }
 
   public @NonNull List<GroupId.V2> getAllGroupV2Ids() {
@@ -33,13 +33,17 @@ import org.thoughtcrime.securesms.recipients.RecipientId;
 import org.thoughtcrime.securesms.tracing.Trace;
 import org.thoughtcrime.securesms.util.Base64;
 import org.thoughtcrime.securesms.util.IdentityUtil;
+import org.thoughtcrime.securesms.util.SqlUtil;
 import org.whispersystems.libsignal.IdentityKey;
 import org.whispersystems.libsignal.InvalidKeyException;
 import org.whispersystems.libsignal.util.guava.Optional;
 
 import java.io.IOException;
+import java.util.Collection;
+import java.util.HashMap;
 import java.util.LinkedList;
 import java.util.List;
+import java.util.Map;
 
 @Trace
 public class IdentityDatabase extends Database {
@@ -142,6 +146,24 @@ public class IdentityDatabase extends Database {
     return new IdentityRecordList(records);
   }
 
+  public @NonNull Map<RecipientId, IdentityRecord> getIdentities(@NonNull Collection<RecipientId> recipientIds) {
+    Map<RecipientId, IdentityRecord> records  = new HashMap<>(recipientIds.size());
+    SQLiteDatabase                   database = databaseHelper.getReadableDatabase();
+
+    for (SqlUtil.Query query : SqlUtil.buildCollectionQueries(RECIPIENT_ID, recipientIds)) {
+      try (Cursor cursor = database.query(TABLE_NAME, null, query.getWhere(), query.getWhereArgs(), null, null, null)) {
+        while (cursor != null && cursor.moveToNext()) {
+          IdentityRecord record = getIdentityRecord(cursor);
+          records.put(record.getRecipientId(), record);
+        }
+      } catch (InvalidKeyException | IOException e) {
+        throw new AssertionError(e);
+      }
+    }
+
+    return records;
+  }
+
   public void saveIdentity(@NonNull RecipientId recipientId, IdentityKey identityKey, VerifiedStatus verifiedStatus,
                            boolean firstUse, long timestamp, boolean nonBlockingApproval)
   {
@@ -181,13 +203,26 @@ public class IdentityDatabase extends Database {
     boolean keyMatches    = hasMatchingKey(id, identityKey);
     boolean statusMatches = keyMatches && hasMatchingStatus(id, identityKey, verifiedStatus);
 
-    if (!keyMatches || !statusMatches) {
-      saveIdentityInternal(id, identityKey, verifiedStatus, !hadEntry, System.currentTimeMillis(), true);
+    updateIdentityAfterSync(id, identityKey, verifiedStatus, new IdentitySyncUpdate(hadEntry, keyMatches, statusMatches));
+  }
+
+  /**
+   * Same as {@link #updateIdentityAfterSync(RecipientId, IdentityKey, VerifiedStatus)}, but compares
+   * against an identity that was already read (e.g. via {@link #getIdentities(Collection)}) instead
+   * of querying for it again.
+   */
+  public void updateIdentityAfterSync(@NonNull RecipientId id, IdentityKey identityKey, VerifiedStatus verifiedStatus, @NonNull Optional<IdentityRecord> existing) {
+    updateIdentityAfterSync(id, identityKey, verifiedStatus, IdentitySyncUpdate.compare(existing, identityKey, verifiedStatus));
+  }
+
+  private void updateIdentityAfterSync(@NonNull RecipientId id, IdentityKey identityKey, VerifiedStatus verifiedStatus, @NonNull IdentitySyncUpdate update) {
+    if (update.needsSave()) {
+      saveIdentityInternal(id, identityKey, verifiedStatus, update.isFirstUse(), System.currentTimeMillis(), true);
       Optional<IdentityRecord> record = getIdentity(id);
       if (record.isPresent()) EventBus.getDefault().post(record.get());
     }
 
-    if (hadEntry && !keyMatches) {
+    if (update.isKeyChange()) {
       IdentityUtil.markIdentityUpdate(context, id);
     }
   }
@@ -0,0 +1,69 @@
+package org.thoughtcrime.securesms.database;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+
+import org.thoughtcrime.securesms.database.IdentityDatabase.IdentityRecord;
+import org.thoughtcrime.securesms.database.IdentityDatabase.VerifiedStatus;
+import org.whispersystems.libsignal.IdentityKey;
+import org.whispersystems.libsignal.util.guava.Optional;
+
+/**
+ * How an identity from storage sync compares to the identity we already have stored.
+ */
+final class IdentitySyncUpdate {
+
+  private final boolean hadEntry;
+  private final boolean keyMatches;
+  private final boolean statusMatches;
+
+  IdentitySyncUpdate(boolean hadEntry, boolean keyMatches, boolean statusMatches) {
+    this.hadEntry      = hadEntry;
+    this.keyMatches    = keyMatches;
+    this.statusMatches = keyMatches && statusMatches;
+  }
+
+  static @NonNull IdentitySyncUpdate compare(@NonNull Optional<IdentityRecord> existing, @NonNull IdentityKey identityKey, @NonNull VerifiedStatus verifiedStatus) {
+    boolean hadEntry      = existing.isPresent();
+    boolean keyMatches    = hadEntry && existing.get().getIdentityKey().equals(identityKey);
+    boolean statusMatches = keyMatches && existing.get().getVerifiedStatus() == verifiedStatus;
+
+    return new IdentitySyncUpdate(hadEntry, keyMatches, statusMatches);
+  }
+
+  /**
+   * When a synced contact's verified status changes, the conversation shows it like a local
+   * verification would.
+   *
+   * @return True if the contact became verified, false if it is no longer verified, or null if
+   *         neither.
+   */
+  static @Nullable Boolean getVerifiedChange(@NonNull Optional<IdentityRecord> existing, @NonNull Optional<VerifiedStatus> newStatus) {
+    if (!newStatus.isPresent()) {
+      return null;
+    }
+
+    boolean wasVerified = existing.isPresent() && existing.get().getVerifiedStatus() == VerifiedStatus.VERIFIED;
+    boolean isVerified  = newStatus.get() == VerifiedStatus.VERIFIED;
+
+    if (isVerified && !wasVerified) {
+      return true;
+    } else if (!isVerified && wasVerified) {
+      return false;
+    } else {
+      return null;
+    }
+  }
+
+  boolean isFirstUse() {
+    return !hadEntry;
+  }
+
+  boolean needsSave() {
+    return !keyMatches || !statusMatches;
+  }
+
+  boolean isKeyChange() {
+    return hadEntry && !keyMatches;
+  }
+}
@@ -10,13 +10,14 @@ import net.sqlcipher.database.SQLiteDatabase;
 
 import org.thoughtcrime.securesms.database.helpers.SQLCipherOpenHelper;
 import org.thoughtcrime.securesms.keyvalue.KeyValueDataSet;
+import org.thoughtcrime.securesms.keyvalue.KeyValuePersistentStorage;
 import org.thoughtcrime.securesms.tracing.Trace;
 
 import java.util.Collection;
 import java.util.Map;
 
 @Trace
-public class KeyValueDatabase extends Database {
+public class KeyValueDatabase extends Database implements KeyValuePersistentStorage {
 
   public static final String TABLE_NAME = "key_value";
 
@@ -34,6 +35,7 @@ public class KeyValueDatabase extends Database {
     super(context, databaseHelper);
   }
 
+  @Override
   public @NonNull KeyValueDataSet getDataSet() {
     KeyValueDataSet dataSet = new KeyValueDataSet();
 
@@ -68,6 +70,7 @@ public class KeyValueDatabase extends Database {
     return dataSet;
   }
 
+  @Override
   public void writeDataSet(@NonNull KeyValueDataSet dataSet, @NonNull Collection<String> removes) {
     SQLiteDatabase db = databaseHelper.getWritableDatabase();
 
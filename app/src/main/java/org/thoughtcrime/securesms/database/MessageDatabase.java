@@ -73,6 +73,12 @@ public abstract class MessageDatabase extends Database implements MmsSmsColumns
   public abstract int getMessageCountForThread(long threadId);
   public abstract int getMessageCountForThread(long threadId, long beforeTime);
   abstract int getMessageCountForThreadSummary(long threadId);
+
+  /**
+   * @return True if inserting or deleting the message changes {@link #getMessageCountForThreadSummary(long)}
+   *         by exactly one, so that the thread's count can be adjusted without recounting.
+   */
+  abstract boolean changesThreadSummaryCountByOne(long threadId, long messageId);
   public abstract Optional<MmsNotificationInfo> getNotification(long messageId);
 
   public abstract Cursor getExpirationStartedMessages();
@@ -118,7 +124,7 @@ public abstract class MessageDatabase extends Database implements MmsSmsColumns
   public abstract void markIncomingNotificationReceived(long threadId);
 
   public abstract boolean incrementReceiptCount(SyncMessageId messageId, long timestamp, boolean deliveryReceipt);
-  public abstract List<Pair<Long, Long>> setTimestampRead(SyncMessageId messageId, long proposedExpireStarted);
+  public abstract List<Pair<Long, Long>> setTimestampRead(SyncMessageId messageId, long proposedExpireStarted, @NonNull Set<Long> threadsUpdated);
   public abstract List<MarkedMessageInfo> setEntireThreadRead(long threadId);
   public abstract List<MarkedMessageInfo> setMessagesReadSince(long threadId, long timestamp);
   public abstract List<MarkedMessageInfo> setAllMessagesRead();
@@ -166,6 +172,21 @@ public abstract class MessageDatabase extends Database implements MmsSmsColumns
   public abstract void ensureMigration();
 
 
+  /**
+   * @return The time the message was received, or -1 if it doesn't exist.
+   */
+  final long getDateReceived(long messageId) {
+    SQLiteDatabase db = databaseHelper.getReadableDatabase();
+
+    try (Cursor cursor = db.query(getTableName(), new String[] { getDateReceivedColumnName() }, ID + " = ?", SqlUtil.buildArgs(messageId), null, null, null)) {
+      if (cursor != null && cursor.moveToFirst()) {
+        return cursor.getLong(0);
+      }
+    }
+
+    return -1;
+  }
+
   final int getInsecureMessagesSentForThread(long threadId) {
     SQLiteDatabase db         = databaseHelper.getReadableDatabase();
     String[]       projection = new String[]{"COUNT(*)"};
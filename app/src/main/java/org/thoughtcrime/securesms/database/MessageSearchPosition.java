@@ -0,0 +1,52 @@
+package org.thoughtcrime.securesms.database;
+
+import androidx.annotation.NonNull;
+
+/**
+ * Where a page of message search results ended.
+ * <p>
+ * Results from both message tables are ordered by date received, newest first. Messages received
+ * at the same time are ordered MMS first, then by id, newest first. A position is the last
+ * message of a page, and the next page starts with the first message after it in that order.
+ */
+public final class MessageSearchPosition {
+
+  public static final MessageSearchPosition START = new MessageSearchPosition(Long.MAX_VALUE, Long.MAX_VALUE, true);
+
+  private final long    dateReceived;
+  private final long    messageId;
+  private final boolean isMms;
+
+  private MessageSearchPosition(long dateReceived, long messageId, boolean isMms) {
+    this.dateReceived = dateReceived;
+    this.messageId    = messageId;
+    this.isMms        = isMms;
+  }
+
+  /**
+   * @return The position right after the given message, which should be the last one of a page.
+   */
+  public static @NonNull MessageSearchPosition after(long dateReceived, long messageId, boolean isMms) {
+    return new MessageSearchPosition(dateReceived, messageId, isMms);
+  }
+
+  long getDateReceived() {
+    return dateReceived;
+  }
+
+  /**
+   * @return Of the SMS messages received at {@link #getDateReceived()}, those with an id below this
+   *         come after the position.
+   */
+  long getSmsIdBound() {
+    return isMms ? Long.MAX_VALUE : messageId;
+  }
+
+  /**
+   * @return Of the MMS messages received at {@link #getDateReceived()}, those with an id below this
+   *         come after the position.
+   */
+  long getMmsIdBound() {
+    return isMms ? messageId : Long.MIN_VALUE;
+  }
+}
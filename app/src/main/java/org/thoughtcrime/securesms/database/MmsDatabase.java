@@ -283,6 +283,11 @@ public class MmsDatabase extends MessageDatabase {
     return getMessageCountForThread(threadId);
   }
 
+  @Override
+  boolean changesThreadSummaryCountByOne(long threadId, long messageId) {
+    return true;
+  }
+
   @Override
   public Cursor getExpirationStartedMessages() {
     String where = EXPIRE_STARTED + " > 0";
@@ -544,7 +549,7 @@ public class MmsDatabase extends MessageDatabase {
     SQLiteDatabase database = databaseHelper.getWritableDatabase();
     boolean        found    = false;
 
-    try (Cursor cursor = database.query(TABLE_NAME, new String[] {ID, THREAD_ID, MESSAGE_BOX, RECIPIENT_ID, DELIVERY_RECEIPT_COUNT, READ_RECEIPT_COUNT},
+    try (Cursor cursor = database.query(TABLE_NAME, new String[] {ID, THREAD_ID, MESSAGE_BOX, RECIPIENT_ID, DATE_RECEIVED, DELIVERY_RECEIPT_COUNT, READ_RECEIPT_COUNT},
                                         DATE_SENT + " = ?", new String[] {String.valueOf(messageId.getTimetamp())},
                                         null, null, null, null)) {
       while (cursor.moveToNext()) {
@@ -556,6 +561,7 @@ public class MmsDatabase extends MessageDatabase {
           if (ourRecipientId.equals(theirRecipientId) || Recipient.resolved(theirRecipientId).isGroup()) {
             long    id               = cursor.getLong(cursor.getColumnIndexOrThrow(ID));
             long    threadId         = cursor.getLong(cursor.getColumnIndexOrThrow(THREAD_ID));
+            long    dateReceived     = cursor.getLong(cursor.getColumnIndexOrThrow(DATE_RECEIVED));
             int     status           = deliveryReceipt ? GroupReceiptDatabase.STATUS_DELIVERED : GroupReceiptDatabase.STATUS_READ;
             boolean isFirstIncrement = cursor.getLong(cursor.getColumnIndexOrThrow(columnName)) == 0;
 
@@ -566,7 +572,7 @@ public class MmsDatabase extends MessageDatabase {
                              new String[] {String.valueOf(id)});
 
             DatabaseFactory.getGroupReceiptDatabase(context).update(ourRecipientId, id, status, timestamp);
-            DatabaseFactory.getThreadDatabase(context).update(threadId, false);
+            DatabaseFactory.getThreadDatabase(context).updateForChangedMessage(threadId, dateReceived);
 
             if (isFirstIncrement) {
               notifyConversationListeners(threadId);
@@ -742,7 +748,7 @@ public class MmsDatabase extends MessageDatabase {
     DatabaseFactory.getMentionDatabase(context).deleteMentionsForMessage(messageId);
 
     long threadId = getThreadIdForMessage(messageId);
-    DatabaseFactory.getThreadDatabase(context).update(threadId, false);
+    DatabaseFactory.getThreadDatabase(context).updateForChangedMessage(threadId, getDateReceived(messageId));
     notifyConversationListeners(threadId);
   }
 
@@ -782,8 +788,9 @@ public class MmsDatabase extends MessageDatabase {
 
   @Override
   public void markExpireStarted(Collection<Long> ids, long startedAtTimestamp) {
-    SQLiteDatabase db       = databaseHelper.getWritableDatabase();
-    long           threadId = -1;
+    SQLiteDatabase db           = databaseHelper.getWritableDatabase();
+    long           threadId     = -1;
+    long           dateReceived = -1;
 
     db.beginTransaction();
     try {
@@ -798,6 +805,8 @@ public class MmsDatabase extends MessageDatabase {
         if (threadId < 0) {
           threadId = getThreadIdForMessage(id);
         }
+
+        dateReceived = Math.max(dateReceived, getDateReceived(id));
       }
 
       db.setTransactionSuccessful();
@@ -805,7 +814,7 @@ public class MmsDatabase extends MessageDatabase {
       db.endTransaction();
     }
 
-    DatabaseFactory.getThreadDatabase(context).update(threadId, false);
+    DatabaseFactory.getThreadDatabase(context).updateForChangedMessage(threadId, dateReceived);
     notifyConversationListeners(threadId);
   }
 
@@ -877,13 +886,13 @@ public class MmsDatabase extends MessageDatabase {
   }
 
   @Override
-  public List<Pair<Long, Long>> setTimestampRead(SyncMessageId messageId, long proposedExpireStarted) {
+  public List<Pair<Long, Long>> setTimestampRead(SyncMessageId messageId, long proposedExpireStarted, @NonNull Set<Long> threadsUpdated) {
     SQLiteDatabase         database        = databaseHelper.getWritableDatabase();
     List<Pair<Long, Long>> expiring        = new LinkedList<>();
     Cursor                 cursor          = null;
 
     try {
-      cursor = database.query(TABLE_NAME, new String[] {ID, THREAD_ID, MESSAGE_BOX, EXPIRES_IN, EXPIRE_STARTED, RECIPIENT_ID}, DATE_SENT + " = ?", new String[] {String.valueOf(messageId.getTimetamp())}, null, null, null, null);
+      cursor = database.query(TABLE_NAME, new String[] {ID, THREAD_ID, MESSAGE_BOX, READ, EXPIRES_IN, EXPIRE_STARTED, RECIPIENT_ID}, DATE_SENT + " = ?", new String[] {String.valueOf(messageId.getTimetamp())}, null, null, null, null);
 
       while (cursor.moveToNext()) {
         RecipientId theirRecipientId = RecipientId.from(cursor.getLong(cursor.getColumnIndexOrThrow(RECIPIENT_ID)));
@@ -894,6 +903,7 @@ public class MmsDatabase extends MessageDatabase {
           long threadId      = cursor.getLong(cursor.getColumnIndexOrThrow(THREAD_ID));
           long expiresIn     = cursor.getLong(cursor.getColumnIndexOrThrow(EXPIRES_IN));
           long expireStarted = cursor.getLong(cursor.getColumnIndexOrThrow(EXPIRE_STARTED));
+          int  markedRead    = cursor.getInt(cursor.getColumnIndexOrThrow(READ)) == 0 ? 1 : 0;
 
           expireStarted = expireStarted > 0 ? Math.min(proposedExpireStarted, expireStarted) : proposedExpireStarted;
 
@@ -907,9 +917,10 @@ public class MmsDatabase extends MessageDatabase {
 
           database.update(TABLE_NAME, values, ID_WHERE, new String[]{String.valueOf(id)});
 
-          DatabaseFactory.getThreadDatabase(context).updateReadState(threadId);
+          DatabaseFactory.getThreadDatabase(context).updateReadState(threadId, markedRead);
           DatabaseFactory.getThreadDatabase(context).setLastSeen(threadId);
           notifyConversationListeners(threadId);
+          threadsUpdated.add(threadId);
         }
       }
     } finally {
@@ -1224,7 +1235,6 @@ public class MmsDatabase extends MessageDatabase {
 
     if (!Types.isExpirationTimerUpdate(mailbox)) {
       DatabaseFactory.getThreadDatabase(context).incrementUnread(threadId, 1);
-      DatabaseFactory.getThreadDatabase(context).update(threadId, true);
     }
 
     notifyConversationListeners(threadId);
@@ -1448,6 +1458,8 @@ public class MmsDatabase extends MessageDatabase {
     contentValues.put(PART_COUNT, allAttachments.size());
     contentValues.put(MENTIONS_SELF, mentionsSelf ? 1 : 0);
 
+    long insertedMessageId = -1;
+
     db.beginTransaction();
     try {
       long messageId = db.insert(TABLE_NAME, null, contentValues);
@@ -1483,6 +1495,7 @@ public class MmsDatabase extends MessageDatabase {
       }
 
       db.setTransactionSuccessful();
+      insertedMessageId = messageId;
       return messageId;
     } finally {
       db.endTransaction();
@@ -1491,8 +1504,15 @@ public class MmsDatabase extends MessageDatabase {
         insertListener.onComplete();
       }
 
-      notifyConversationListeners(contentValues.getAsLong(THREAD_ID));
-      DatabaseFactory.getThreadDatabase(context).update(contentValues.getAsLong(THREAD_ID), true);
+      long messageThreadId = contentValues.getAsLong(THREAD_ID);
+
+      notifyConversationListeners(messageThreadId);
+
+      if (insertedMessageId > 0) {
+        DatabaseFactory.getThreadDatabase(context).updateForInsertedMessage(this, messageThreadId, insertedMessageId, contentValues.getAsLong(DATE_RECEIVED), true);
+      } else {
+        DatabaseFactory.getThreadDatabase(context).update(messageThreadId, true);
+      }
     }
   }
 
@@ -1501,6 +1521,8 @@ public class MmsDatabase extends MessageDatabase {
     Log.d(TAG, "deleteMessage(" + messageId + ")");
 
     long               threadId           = getThreadIdForMessage(messageId);
+    long               dateReceived       = getDateReceived(messageId);
+    boolean            countByOne         = dateReceived >= 0 && changesThreadSummaryCountByOne(threadId, messageId);
     AttachmentDatabase attachmentDatabase = DatabaseFactory.getAttachmentDatabase(context);
     attachmentDatabase.deleteAttachmentsForMessage(messageId);
 
@@ -1512,7 +1534,7 @@ public class MmsDatabase extends MessageDatabase {
 
     SQLiteDatabase database = databaseHelper.getWritableDatabase();
     database.delete(TABLE_NAME, ID_WHERE, new String[] {messageId+""});
-    boolean threadDeleted = DatabaseFactory.getThreadDatabase(context).update(threadId, false);
+    boolean threadDeleted = DatabaseFactory.getThreadDatabase(context).updateForDeletedMessage(threadId, dateReceived, countByOne);
     notifyConversationListeners(threadId);
     notifyStickerListeners();
     notifyStickerPackListeners();
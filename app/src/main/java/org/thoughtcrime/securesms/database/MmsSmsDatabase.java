@@ -34,14 +34,17 @@ import org.thoughtcrime.securesms.logging.Log;
 import org.thoughtcrime.securesms.recipients.Recipient;
 import org.thoughtcrime.securesms.recipients.RecipientId;
 import org.thoughtcrime.securesms.tracing.Trace;
+import org.thoughtcrime.securesms.util.SqlUtil;
 import org.whispersystems.libsignal.util.Pair;
 
 import java.io.Closeable;
 import java.util.Collection;
 import java.util.Collections;
+import java.util.HashMap;
 import java.util.HashSet;
 import java.util.LinkedList;
 import java.util.List;
+import java.util.Map;
 import java.util.Set;
 
 @Trace
@@ -212,6 +215,21 @@ public class MmsSmsDatabase extends Database {
     return  queryTables(PROJECTION, selection, order, "1");
   }
 
+  /**
+   * @return True if the thread has a message that could be its snippet, as picked by
+   *         {@link #getConversationSnippet(long)}, and that was received after the provided time.
+   */
+  boolean hasSnippetCandidateReceivedAfter(long threadId, long dateReceived) {
+    SQLiteDatabase db    = databaseHelper.getReadableDatabase();
+    String         query = "SELECT EXISTS (SELECT 1 FROM " + SmsDatabase.TABLE_NAME + " WHERE " + SmsDatabase.THREAD_ID + " = ? AND " + SmsDatabase.DATE_RECEIVED + " > ? AND " + SmsDatabase.TYPE + " NOT IN (?, ?)) OR " +
+                                  "EXISTS (SELECT 1 FROM " + MmsDatabase.TABLE_NAME + " WHERE " + MmsDatabase.THREAD_ID + " = ? AND " + MmsDatabase.DATE_RECEIVED + " > ?)";
+    String[]       args  = SqlUtil.buildArgs(threadId, dateReceived, SmsDatabase.Types.PROFILE_CHANGE_TYPE, SmsDatabase.Types.GV1_MIGRATION_TYPE, threadId, dateReceived);
+
+    try (Cursor cursor = db.rawQuery(query, args)) {
+      return cursor != null && cursor.moveToFirst() && cursor.getInt(0) == 1;
+    }
+  }
+
   public Cursor getUnread() {
     String order           = MmsSmsColumns.NORMALIZED_DATE_RECEIVED + " ASC";
     String selection       = MmsSmsColumns.NOTIFIED + " = 0 AND (" + MmsSmsColumns.READ + " = 0 OR " + MmsSmsColumns.REACTIONS_UNREAD + " = 1)";
@@ -219,6 +237,16 @@ public class MmsSmsDatabase extends Database {
     return queryTables(PROJECTION, selection, order, null);
   }
 
+  /**
+   * Like {@link #getUnread()}, but restricted to a single thread.
+   */
+  public Cursor getUnreadInThread(long threadId) {
+    String order     = MmsSmsColumns.NORMALIZED_DATE_RECEIVED + " ASC";
+    String selection = MmsSmsColumns.THREAD_ID + " = " + threadId + " AND " + MmsSmsColumns.NOTIFIED + " = 0 AND (" + MmsSmsColumns.READ + " = 0 OR " + MmsSmsColumns.REACTIONS_UNREAD + " = 1)";
+
+    return queryTables(PROJECTION, selection, order, null);
+  }
+
   public int getUnreadCount(long threadId) {
     String selection = MmsSmsColumns.READ + " = 0 AND " + MmsSmsColumns.NOTIFIED + " = 0 AND " + MmsSmsColumns.THREAD_ID + " = " + threadId;
     Cursor cursor    = queryTables(PROJECTION, selection, null, null);
@@ -230,6 +258,39 @@ public class MmsSmsDatabase extends Database {
     }
   }
 
+  /**
+   * Same as {@link #getUnreadCount(long)}, but for many threads at once. Threads without unread
+   * messages are left out of the result.
+   */
+  public @NonNull Map<Long, Integer> getUnreadCounts(@NonNull Collection<Long> threadIds) {
+    Map<Long, Integer> unreadCounts = new HashMap<>(threadIds.size());
+
+    if (threadIds.isEmpty()) {
+      return unreadCounts;
+    }
+
+    SQLiteDatabase db         = databaseHelper.getReadableDatabase();
+    String[]       projection = new String[] { MmsSmsColumns.THREAD_ID, "COUNT(*)" };
+
+    for (String table : new String[] { SmsDatabase.TABLE_NAME, MmsDatabase.TABLE_NAME }) {
+      for (SqlUtil.Query query : SqlUtil.buildCollectionQueries(MmsSmsColumns.THREAD_ID, threadIds)) {
+        String selection = MmsSmsColumns.READ + " = 0 AND " + MmsSmsColumns.NOTIFIED + " = 0 AND " + query.getWhere();
+
+        try (Cursor cursor = db.query(table, projection, selection, query.getWhereArgs(), MmsSmsColumns.THREAD_ID, null, null)) {
+          while (cursor != null && cursor.moveToNext()) {
+            long threadId = cursor.getLong(0);
+            int  count    = cursor.getInt(1);
+
+            Integer existing = unreadCounts.get(threadId);
+            unreadCounts.put(threadId, existing != null ? existing + count : count);
+          }
+        }
+      }
+    }
+
+    return unreadCounts;
+  }
+
   public boolean checkMessageExists(@NonNull MessageRecord messageRecord) {
     MessageDatabase db = messageRecord.isMms() ? DatabaseFactory.getMmsDatabase(context)
                                                : DatabaseFactory.getSmsDatabase(context);
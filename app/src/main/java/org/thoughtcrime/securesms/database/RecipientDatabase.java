@@ -71,6 +71,7 @@ import java.util.Collection;
 import java.util.Collections;
 import java.util.HashMap;
 import java.util.HashSet;
+import java.util.LinkedHashMap;
 import java.util.LinkedHashSet;
 import java.util.LinkedList;
 import java.util.List;
@@ -171,6 +172,46 @@ public class RecipientDatabase extends Database {
       "CREATE INDEX IF NOT EXISTS recipient_group_type_index ON " + TABLE_NAME + " (" + GROUP_TYPE + ");",
   };
 
+  public  static final String FTS_TABLE_NAME = "recipient_fts";
+  private static final String FTS_NAME       = "name";
+  private static final String FTS_USERNAME   = "username";
+  private static final String FTS_PHONE      = "phone";
+  private static final String FTS_EMAIL      = "email";
+
+  /**
+   * FTS5 only matches word prefixes, and the SQLCipher build we ship predates its trigram tokenizer.
+   * To also match in the middle of a value, each value is indexed a second time as its suffixes
+   * from up to this many characters in, with whitespace removed. A prefix query against those is
+   * then an infix query against the value. Phone numbers are at most 15 digits, so every part of
+   * them can be matched.
+   */
+  private static final int FTS_MAX_INFIX_OFFSET = 16;
+
+  private static final String FTS_COLUMNS = FTS_NAME + ", " + FTS_USERNAME + ", " + FTS_PHONE + ", " + FTS_EMAIL;
+
+  /**
+   * A contentless index over the searchable names, usernames, phone numbers and emails, kept up to
+   * date by triggers. The name is the same name we show in mention search. Phone numbers are indexed
+   * as digits only, so formatted queries like "(555) 123" still match them. See
+   * {@link #FTS_MAX_INFIX_OFFSET} for how matches in the middle of a value are found.
+   */
+  public static final String[] CREATE_FTS_TABLE = {
+      "CREATE VIRTUAL TABLE " + FTS_TABLE_NAME + " USING fts5(" + FTS_COLUMNS + ", content='', tokenize='unicode61 remove_diacritics 1');",
+
+      "CREATE TRIGGER recipient_ai AFTER INSERT ON " + TABLE_NAME + " BEGIN\n" +
+          "  INSERT INTO " + FTS_TABLE_NAME + "(rowid, " + FTS_COLUMNS + ") VALUES (new." + ID + ", " + buildFtsValues("new.") + ");\n" +
+          "END;",
+      "CREATE TRIGGER recipient_ad AFTER DELETE ON " + TABLE_NAME + " BEGIN\n" +
+          "  INSERT INTO " + FTS_TABLE_NAME + "(" + FTS_TABLE_NAME + ", rowid, " + FTS_COLUMNS + ") VALUES ('delete', old." + ID + ", " + buildFtsValues("old.") + ");\n" +
+          "END;",
+      "CREATE TRIGGER recipient_au AFTER UPDATE OF " + SYSTEM_DISPLAY_NAME + ", " + PROFILE_JOINED_NAME + ", " + PROFILE_GIVEN_NAME + ", " + USERNAME + ", " + PHONE + ", " + EMAIL + " ON " + TABLE_NAME + " BEGIN\n" +
+          "  INSERT INTO " + FTS_TABLE_NAME + "(" + FTS_TABLE_NAME + ", rowid, " + FTS_COLUMNS + ") VALUES ('delete', old." + ID + ", " + buildFtsValues("old.") + ");\n" +
+          "  INSERT INTO " + FTS_TABLE_NAME + "(rowid, " + FTS_COLUMNS + ") VALUES (new." + ID + ", " + buildFtsValues("new.") + ");\n" +
+          "END;"
+  };
+
+  public static final String POPULATE_FTS_TABLE = "INSERT INTO " + FTS_TABLE_NAME + "(rowid, " + FTS_COLUMNS + ") SELECT " + ID + ", " + buildFtsValues("") + " FROM " + TABLE_NAME + ";";
+
   public enum VibrateState {
     DEFAULT(0), ENABLED(1), DISABLED(2);
 
@@ -554,6 +595,40 @@ public class RecipientDatabase extends Database {
     return getOrInsertByColumn(PHONE, e164).recipientId;
   }
 
+  /**
+   * Bulk version of {@link #getOrInsertFromE164(String)}. Existing recipients are found with chunked
+   * IN queries, and only numbers that we don't have a recipient for yet are inserted individually.
+   *
+   * @return The recipient for each of the provided numbers.
+   */
+  public @NonNull Map<String, RecipientId> getOrInsertFromE164s(@NonNull Collection<String> e164s) {
+    SQLiteDatabase           db      = databaseHelper.getWritableDatabase();
+    Map<String, RecipientId> results = new HashMap<>(e164s.size());
+
+    db.beginTransaction();
+    try {
+      for (SqlUtil.Query query : SqlUtil.buildCollectionQueries(PHONE, e164s)) {
+        try (Cursor cursor = db.query(TABLE_NAME, new String[] { ID, PHONE }, query.getWhere(), query.getWhereArgs(), null, null, null)) {
+          while (cursor != null && cursor.moveToNext()) {
+            results.put(cursor.getString(cursor.getColumnIndexOrThrow(PHONE)), RecipientId.from(cursor.getLong(cursor.getColumnIndexOrThrow(ID))));
+          }
+        }
+      }
+
+      for (String e164 : e164s) {
+        if (!results.containsKey(e164)) {
+          results.put(e164, getOrInsertFromE164(e164));
+        }
+      }
+
+      db.setTransactionSuccessful();
+    } finally {
+      db.endTransaction();
+    }
+
+    return results;
+  }
+
   public @NonNull RecipientId getOrInsertFromEmail(@NonNull String email) {
     return getOrInsertByColumn(EMAIL, email).recipientId;
   }
@@ -688,6 +763,32 @@ public class RecipientDatabase extends Database {
     }
   }
 
+  /**
+   * Bulk version of {@link #getRecipientSettings(RecipientId)} that reads the recipients in chunked
+   * IN queries. Recipients that can't be found are omitted from the result, so callers can fall
+   * back to {@link #getRecipientSettings(RecipientId)}, which also handles remapped ids.
+   */
+  public @NonNull Map<RecipientId, RecipientSettings> getRecipientSettings(@NonNull Collection<RecipientId> ids) {
+    Map<RecipientId, RecipientSettings> results = new HashMap<>(ids.size());
+
+    if (ids.isEmpty()) {
+      return results;
+    }
+
+    SQLiteDatabase database = databaseHelper.getReadableDatabase();
+
+    for (SqlUtil.Query query : SqlUtil.buildCollectionQueries(ID, ids)) {
+      try (Cursor cursor = database.query(TABLE_NAME, RECIPIENT_PROJECTION, query.getWhere(), query.getWhereArgs(), null, null, null)) {
+        while (cursor != null && cursor.moveToNext()) {
+          RecipientSettings settings = getRecipientSettings(context, cursor);
+          results.put(settings.getId(), settings);
+        }
+      }
+    }
+
+    return results;
+  }
+
   public @NonNull DirtyState getDirtyState(@NonNull RecipientId recipientId) {
     SQLiteDatabase db = databaseHelper.getReadableDatabase();
 
@@ -797,10 +898,12 @@ public class RecipientDatabase extends Database {
                                       @NonNull Collection<SignalGroupV2Record>               groupV2Inserts,
                                       @NonNull Collection<RecordUpdate<SignalGroupV2Record>> groupV2Updates)
   {
-    SQLiteDatabase   db               = databaseHelper.getWritableDatabase();
-    IdentityDatabase identityDatabase = DatabaseFactory.getIdentityDatabase(context);
-    ThreadDatabase   threadDatabase   = DatabaseFactory.getThreadDatabase(context);
-    Set<RecipientId> needsRefresh     = new HashSet<>();
+    SQLiteDatabase                         db               = databaseHelper.getWritableDatabase();
+    ThreadDatabase                         threadDatabase   = DatabaseFactory.getThreadDatabase(context);
+    Set<RecipientId>                       needsRefresh     = new HashSet<>();
+    List<ThreadDatabase.StorageSyncUpdate> threadUpdates    = new LinkedList<>();
+    Map<RecipientId, SignalContactRecord>  insertedContacts = new LinkedHashMap<>();
+    Map<RecipientId, SignalContactRecord>  updatedContacts  = new LinkedHashMap<>();
 
     db.beginTransaction();
 
@@ -853,16 +956,10 @@ public class RecipientDatabase extends Database {
         }
 
         if (insert.getIdentityKey().isPresent()) {
-          try {
-            IdentityKey identityKey = new IdentityKey(insert.getIdentityKey().get(), 0);
-
-            DatabaseFactory.getIdentityDatabase(context).updateIdentityAfterSync(recipientId, identityKey, StorageSyncModels.remoteToLocalIdentityStatus(insert.getIdentityState()));
-          } catch (InvalidKeyException e) {
-            Log.w(TAG, "Failed to process identity key during insert! Skipping.", e);
-          }
+          insertedContacts.put(recipientId, insert);
         }
 
-        threadDatabase.applyStorageSyncUpdate(recipientId, insert);
+        threadUpdates.add(new ThreadDatabase.StorageSyncUpdate(recipientId, insert.isArchived(), insert.isForcedUnread()));
         needsRefresh.add(recipientId);
       }
 
@@ -885,47 +982,34 @@ public class RecipientDatabase extends Database {
 
           db.update(TABLE_NAME, values, ID_WHERE, SqlUtil.buildArgs(recipientId));
         }
+      }
 
-        RecipientId recipientId = getByStorageKeyOrThrow(update.getNew().getId().getRaw());
-
-        if (StorageSyncHelper.profileKeyChanged(update)) {
-          clearProfileKeyCredential(recipientId);
-        }
-
-        try {
-          Optional<IdentityRecord> oldIdentityRecord = identityDatabase.getIdentity(recipientId);
+      Map<String, RecipientId> contactsByStorageId = getByStorageIds(Stream.of(contactUpdates)
+                                                                           .map(update -> Base64.encodeBytes(update.getNew().getId().getRaw()))
+                                                                           .toList());
 
-          if (update.getNew().getIdentityKey().isPresent()) {
-            IdentityKey identityKey = new IdentityKey(update.getNew().getIdentityKey().get(), 0);
-            DatabaseFactory.getIdentityDatabase(context).updateIdentityAfterSync(recipientId, identityKey, StorageSyncModels.remoteToLocalIdentityStatus(update.getNew().getIdentityState()));
-          }
+      for (RecordUpdate<SignalContactRecord> update : contactUpdates) {
+        RecipientId recipientId = contactsByStorageId.get(Base64.encodeBytes(update.getNew().getId().getRaw()));
 
-          Optional<IdentityRecord> newIdentityRecord = identityDatabase.getIdentity(recipientId);
+        if (recipientId == null) {
+          throw new AssertionError("No recipient with that storage key!");
+        }
 
-          if ((newIdentityRecord.isPresent() && newIdentityRecord.get().getVerifiedStatus() == VerifiedStatus.VERIFIED) &&
-              (!oldIdentityRecord.isPresent() || oldIdentityRecord.get().getVerifiedStatus() != VerifiedStatus.VERIFIED))
-          {
-            IdentityUtil.markIdentityVerified(context, Recipient.resolved(recipientId), true, true);
-          } else if ((newIdentityRecord.isPresent() && newIdentityRecord.get().getVerifiedStatus() != VerifiedStatus.VERIFIED) &&
-                     (oldIdentityRecord.isPresent() && oldIdentityRecord.get().getVerifiedStatus() == VerifiedStatus.VERIFIED))
-          {
-            IdentityUtil.markIdentityVerified(context, Recipient.resolved(recipientId), false, true);
-          }
-        } catch (InvalidKeyException e) {
-          Log.w(TAG, "Failed to process identity key during update! Skipping.", e);
+        if (StorageSyncHelper.profileKeyChanged(update)) {
+          clearProfileKeyCredential(recipientId);
         }
 
-        threadDatabase.applyStorageSyncUpdate(recipientId, update.getNew());
+        updatedContacts.put(recipientId, update.getNew());
+        threadUpdates.add(new ThreadDatabase.StorageSyncUpdate(recipientId, update.getNew().isArchived(), update.getNew().isForcedUnread()));
         needsRefresh.add(recipientId);
       }
 
       for (SignalGroupV1Record insert : groupV1Inserts) {
-        db.insertOrThrow(TABLE_NAME, null, getValuesForStorageGroupV1(insert));
-
-        Recipient recipient = Recipient.externalGroupExact(context, GroupId.v1orThrow(insert.getGroupId()));
+        long        id          = db.insertOrThrow(TABLE_NAME, null, getValuesForStorageGroupV1(insert));
+        RecipientId recipientId = RecipientId.from(id);
 
-        threadDatabase.applyStorageSyncUpdate(recipient.getId(), insert);
-        needsRefresh.add(recipient.getId());
+        threadUpdates.add(new ThreadDatabase.StorageSyncUpdate(recipientId, insert.isArchived(), insert.isForcedUnread()));
+        needsRefresh.add(recipientId);
       }
 
       for (RecordUpdate<SignalGroupV1Record> update : groupV1Updates) {
@@ -935,24 +1019,22 @@ public class RecipientDatabase extends Database {
         if (updateCount < 1) {
           throw new AssertionError("Had an update, but it didn't match any rows!");
         }
+      }
 
-        Recipient recipient = Recipient.externalGroupExact(context, GroupId.v1orThrow(update.getOld().getGroupId()));
+      Map<GroupId.V2, RecipientId> insertedGroupsV2 = new LinkedHashMap<>();
 
-        threadDatabase.applyStorageSyncUpdate(recipient.getId(), update.getNew());
-        needsRefresh.add(recipient.getId());
-      }
-      
       for (SignalGroupV2Record insert : groupV2Inserts) {
         GroupMasterKey masterKey = insert.getMasterKeyOrThrow();
         GroupId.V2     groupId   = GroupId.v2(masterKey);
         ContentValues  values    = getValuesForStorageGroupV2(insert);
         long           id        = db.insertWithOnConflict(TABLE_NAME, null, values, SQLiteDatabase.CONFLICT_IGNORE);
-        Recipient      recipient = Recipient.externalGroupExact(context, groupId);
 
         if (id < 0) {
-          Log.w(TAG, String.format("Recipient %s is already linked to group %s", recipient.getId(), groupId));
+          Log.w(TAG, String.format("A recipient is already linked to group %s", groupId));
+          insertedGroupsV2.put(groupId, null);
         } else {
-          Log.i(TAG, String.format("Inserted recipient %s for group %s", recipient.getId(), groupId));
+          Log.i(TAG, String.format("Inserted recipient %s for group %s", id, groupId));
+          insertedGroupsV2.put(groupId, RecipientId.from(id));
         }
 
         Log.i(TAG, "Creating restore placeholder for " + groupId);
@@ -965,9 +1047,6 @@ public class RecipientDatabase extends Database {
         Log.i(TAG, "Scheduling request for latest group info for " + groupId);
 
         ApplicationDependencies.getJobManager().add(new RequestGroupV2InfoJob(groupId));
-
-        threadDatabase.applyStorageSyncUpdate(recipient.getId(), insert);
-        needsRefresh.add(recipient.getId());
       }
 
       for (RecordUpdate<SignalGroupV2Record> update : groupV2Updates) {
@@ -977,21 +1056,114 @@ public class RecipientDatabase extends Database {
         if (updateCount < 1) {
           throw new AssertionError("Had an update, but it didn't match any rows!");
         }
+      }
+
+      List<GroupId> existingGroupIds = new ArrayList<>(groupV1Updates.size() + groupV2Inserts.size() + groupV2Updates.size());
+
+      for (RecordUpdate<SignalGroupV1Record> update : groupV1Updates) {
+        existingGroupIds.add(GroupId.v1orThrow(update.getOld().getGroupId()));
+      }
+
+      for (Map.Entry<GroupId.V2, RecipientId> entry : insertedGroupsV2.entrySet()) {
+        if (entry.getValue() == null) {
+          existingGroupIds.add(entry.getKey());
+        }
+      }
+
+      for (RecordUpdate<SignalGroupV2Record> update : groupV2Updates) {
+        existingGroupIds.add(GroupId.v2(update.getOld().getMasterKeyOrThrow()));
+      }
+
+      Map<GroupId, RecipientId> groupsById = getByGroupIds(existingGroupIds);
+
+      for (RecordUpdate<SignalGroupV1Record> update : groupV1Updates) {
+        RecipientId recipientId = getOrInsertFromGroupId(GroupId.v1orThrow(update.getOld().getGroupId()), groupsById);
+
+        threadUpdates.add(new ThreadDatabase.StorageSyncUpdate(recipientId, update.getNew().isArchived(), update.getNew().isForcedUnread()));
+        needsRefresh.add(recipientId);
+      }
+
+      for (SignalGroupV2Record insert : groupV2Inserts) {
+        GroupId.V2  groupId     = GroupId.v2(insert.getMasterKeyOrThrow());
+        RecipientId recipientId = insertedGroupsV2.get(groupId);
+
+        if (recipientId == null) {
+          recipientId = getOrInsertFromGroupId(groupId, groupsById);
+        }
+
+        threadUpdates.add(new ThreadDatabase.StorageSyncUpdate(recipientId, insert.isArchived(), insert.isForcedUnread()));
+        needsRefresh.add(recipientId);
+      }
 
-        GroupMasterKey masterKey = update.getOld().getMasterKeyOrThrow();
-        Recipient      recipient = Recipient.externalGroupExact(context, GroupId.v2(masterKey));
+      for (RecordUpdate<SignalGroupV2Record> update : groupV2Updates) {
+        RecipientId recipientId = getOrInsertFromGroupId(GroupId.v2(update.getOld().getMasterKeyOrThrow()), groupsById);
 
-        threadDatabase.applyStorageSyncUpdate(recipient.getId(), update.getNew());
-        needsRefresh.add(recipient.getId());
+        threadUpdates.add(new ThreadDatabase.StorageSyncUpdate(recipientId, update.getNew().isArchived(), update.getNew().isForcedUnread()));
+        needsRefresh.add(recipientId);
       }
 
+      applyStorageSyncIdentities(insertedContacts, updatedContacts);
+      threadDatabase.applyStorageSyncUpdates(threadUpdates);
+
       db.setTransactionSuccessful();
     } finally {
       db.endTransaction();
     }
 
-    for (RecipientId id : needsRefresh) {
-      Recipient.live(id).refresh();
+    ApplicationDependencies.getRecipientCache().refreshAll(needsRefresh);
+  }
+
+  /**
+   * Applies the identity keys from synced contacts, comparing them against identities that are read
+   * in bulk. Verification changes are only surfaced for updated contacts, not newly-inserted ones.
+   */
+  private void applyStorageSyncIdentities(@NonNull Map<RecipientId, SignalContactRecord> insertedContacts,
+                                          @NonNull Map<RecipientId, SignalContactRecord> updatedContacts)
+  {
+    IdentityDatabase identityDatabase = DatabaseFactory.getIdentityDatabase(context);
+    Set<RecipientId> ids              = new HashSet<>(insertedContacts.keySet());
+
+    ids.addAll(updatedContacts.keySet());
+
+    Map<RecipientId, IdentityRecord> identities = identityDatabase.getIdentities(ids);
+
+    for (Map.Entry<RecipientId, SignalContactRecord> entry : insertedContacts.entrySet()) {
+      RecipientId         recipientId = entry.getKey();
+      SignalContactRecord insert      = entry.getValue();
+
+      try {
+        IdentityKey identityKey = new IdentityKey(insert.getIdentityKey().get(), 0);
+
+        identityDatabase.updateIdentityAfterSync(recipientId, identityKey, StorageSyncModels.remoteToLocalIdentityStatus(insert.getIdentityState()), Optional.fromNullable(identities.get(recipientId)));
+      } catch (InvalidKeyException e) {
+        Log.w(TAG, "Failed to process identity key during insert! Skipping.", e);
+      }
+    }
+
+    for (Map.Entry<RecipientId, SignalContactRecord> entry : updatedContacts.entrySet()) {
+      RecipientId              recipientId       = entry.getKey();
+      SignalContactRecord      update            = entry.getValue();
+      Optional<IdentityRecord> oldIdentityRecord = Optional.fromNullable(identities.get(recipientId));
+
+      try {
+        Optional<VerifiedStatus> newVerifiedStatus = oldIdentityRecord.transform(IdentityRecord::getVerifiedStatus);
+
+        if (update.getIdentityKey().isPresent()) {
+          IdentityKey    identityKey    = new IdentityKey(update.getIdentityKey().get(), 0);
+          VerifiedStatus verifiedStatus = StorageSyncModels.remoteToLocalIdentityStatus(update.getIdentityState());
+
+          identityDatabase.updateIdentityAfterSync(recipientId, identityKey, verifiedStatus, oldIdentityRecord);
+          newVerifiedStatus = Optional.of(verifiedStatus);
+        }
+
+        Boolean verifiedChange = IdentitySyncUpdate.getVerifiedChange(oldIdentityRecord, newVerifiedStatus);
+
+        if (verifiedChange != null) {
+          IdentityUtil.markIdentityVerified(context, Recipient.resolved(recipientId), verifiedChange, true);
+        }
+      } catch (InvalidKeyException e) {
+        Log.w(TAG, "Failed to process identity key during update! Skipping.", e);
+      }
     }
   }
 
@@ -1057,19 +1229,48 @@ public class RecipientDatabase extends Database {
     }
   }
 
-  private @NonNull RecipientId getByStorageKeyOrThrow(byte[] storageKey) {
-    SQLiteDatabase db    = databaseHelper.getReadableDatabase();
-    String         query = STORAGE_SERVICE_ID + " = ?";
-    String[]       args  = new String[]{Base64.encodeBytes(storageKey)};
+  /**
+   * @return The recipient with each of the provided (base64-encoded) storage ids, for those that exist.
+   */
+  private @NonNull Map<String, RecipientId> getByStorageIds(@NonNull Collection<String> storageIds) {
+    SQLiteDatabase           db      = databaseHelper.getReadableDatabase();
+    Map<String, RecipientId> results = new HashMap<>(storageIds.size());
+
+    for (SqlUtil.Query query : SqlUtil.buildCollectionQueries(STORAGE_SERVICE_ID, storageIds)) {
+      try (Cursor cursor = db.query(TABLE_NAME, new String[] { ID, STORAGE_SERVICE_ID }, query.getWhere(), query.getWhereArgs(), null, null, null)) {
+        while (cursor != null && cursor.moveToNext()) {
+          results.put(cursor.getString(cursor.getColumnIndexOrThrow(STORAGE_SERVICE_ID)),
+                      RecipientId.from(cursor.getLong(cursor.getColumnIndexOrThrow(ID))));
+        }
+      }
+    }
 
-    try (Cursor cursor = db.query(TABLE_NAME, ID_PROJECTION, query, args, null, null, null)) {
-      if (cursor != null && cursor.moveToFirst()) {
-        long id = cursor.getLong(cursor.getColumnIndexOrThrow(ID));
-        return RecipientId.from(id);
-      } else {
-        throw new AssertionError("No recipient with that storage key!");
+    return results;
+  }
+
+  /**
+   * @return The recipient for each of the provided groups, for those that have one.
+   */
+  private @NonNull Map<GroupId, RecipientId> getByGroupIds(@NonNull Collection<GroupId> groupIds) {
+    SQLiteDatabase            db      = databaseHelper.getReadableDatabase();
+    Map<GroupId, RecipientId> results = new HashMap<>(groupIds.size());
+    List<String>              encoded = Stream.of(groupIds).map(GroupId::toString).toList();
+
+    for (SqlUtil.Query query : SqlUtil.buildCollectionQueries(GROUP_ID, encoded)) {
+      try (Cursor cursor = db.query(TABLE_NAME, new String[] { ID, GROUP_ID }, query.getWhere(), query.getWhereArgs(), null, null, null)) {
+        while (cursor != null && cursor.moveToNext()) {
+          results.put(GroupId.parseOrThrow(cursor.getString(cursor.getColumnIndexOrThrow(GROUP_ID))),
+                      RecipientId.from(cursor.getLong(cursor.getColumnIndexOrThrow(ID))));
+        }
       }
     }
+
+    return results;
+  }
+
+  private @NonNull RecipientId getOrInsertFromGroupId(@NonNull GroupId groupId, @NonNull Map<GroupId, RecipientId> knownGroups) {
+    RecipientId recipientId = knownGroups.get(groupId);
+    return recipientId != null ? recipientId : getOrInsertFromGroupId(groupId);
   }
 
   private static @NonNull ContentValues getValuesForStorageContact(@NonNull SignalContactRecord contact, boolean isInsert) {
@@ -2081,24 +2282,18 @@ public class RecipientDatabase extends Database {
   }
 
   public @Nullable Cursor querySignalContacts(@NonNull String query, boolean includeSelf) {
-    query = buildCaseInsensitiveGlobPattern(query);
+    Pair<String, String[]> search = buildSearchSelection(query, new String[] { FTS_NAME, FTS_USERNAME }, true, PHONE, SORT_NAME, USERNAME);
 
     String   selection = BLOCKED     + " = ? AND " +
                          REGISTERED  + " = ? AND " +
                          GROUP_ID    + " IS NULL AND " +
                          "(" + SYSTEM_DISPLAY_NAME + " NOT NULL OR " + PROFILE_SHARING + " = ?) AND " +
-                         "(" +
-                           PHONE     + " GLOB ? OR " +
-                           SORT_NAME + " GLOB ? OR " +
-                           USERNAME  + " GLOB ?" +
-                         ")";
-    String[] args;
+                         search.first();
+    String[] args      = SqlUtil.appendArgs(SqlUtil.buildArgs("0", RegisteredState.REGISTERED.getId(), "1"), search.second());
 
-    if (includeSelf) {
-      args = new String[]{"0", String.valueOf(RegisteredState.REGISTERED.getId()), "1", query, query, query};
-    } else {
+    if (!includeSelf) {
       selection += " AND " + ID + " != ?";
-      args       = new String[] { "0", String.valueOf(RegisteredState.REGISTERED.getId()), "1", query, query, query, String.valueOf(Recipient.self().getId().toLong()) };
+      args       = SqlUtil.appendArg(args, Recipient.self().getId().serialize());
     }
 
     String   orderBy   = SORT_NAME + ", " + SYSTEM_DISPLAY_NAME + ", " + SEARCH_PROFILE_NAME + ", " + PHONE;
@@ -2119,35 +2314,25 @@ public class RecipientDatabase extends Database {
   }
 
   public @Nullable Cursor queryNonSignalContacts(@NonNull String query) {
-    query = buildCaseInsensitiveGlobPattern(query);
+    Pair<String, String[]> search = buildSearchSelection(query, new String[] { FTS_EMAIL, FTS_NAME }, true, PHONE, EMAIL, SYSTEM_DISPLAY_NAME);
 
     String   selection = BLOCKED    + " = ? AND " +
                          REGISTERED + " != ? AND " +
                          GROUP_ID   + " IS NULL AND " +
                          SYSTEM_DISPLAY_NAME + " NOT NULL AND " +
                          "(" + PHONE + " NOT NULL OR " + EMAIL + " NOT NULL) AND " +
-                         "(" +
-                           PHONE               + " GLOB ? OR " +
-                           EMAIL               + " GLOB ? OR " +
-                           SYSTEM_DISPLAY_NAME + " GLOB ?" +
-                         ")";
-    String[] args      = new String[] { "0", String.valueOf(RegisteredState.REGISTERED.getId()), query, query, query };
+                         search.first();
+    String[] args      = SqlUtil.appendArgs(SqlUtil.buildArgs("0", RegisteredState.REGISTERED.getId()), search.second());
     String   orderBy   = SYSTEM_DISPLAY_NAME + ", " + PHONE;
 
     return databaseHelper.getReadableDatabase().query(TABLE_NAME, SEARCH_PROJECTION, selection, args, null, null, orderBy);
   }
 
   public @Nullable Cursor queryAllContacts(@NonNull String query) {
-    query = buildCaseInsensitiveGlobPattern(query);
+    Pair<String, String[]> search = buildSearchSelection(query, new String[] { FTS_NAME, FTS_USERNAME, FTS_EMAIL }, true, SORT_NAME, USERNAME, PHONE, EMAIL);
 
-    String   selection = BLOCKED + " = ? AND " +
-                         "(" +
-                           SORT_NAME + " GLOB ? OR " +
-                           USERNAME  + " GLOB ? OR " +
-                           PHONE     + " GLOB ? OR " +
-                           EMAIL     + " GLOB ?" +
-                         ")";
-    String[] args      = new String[] { "0", query, query, query, query };
+    String   selection = BLOCKED + " = ? AND " + search.first();
+    String[] args      = SqlUtil.appendArgs(SqlUtil.buildArgs("0"), search.second());
 
     return databaseHelper.getReadableDatabase().query(TABLE_NAME, SEARCH_PROJECTION, selection, args, null, null, null);
   }
@@ -2157,7 +2342,7 @@ public class RecipientDatabase extends Database {
   }
 
   public @NonNull List<Recipient> queryRecipientsForMentions(@NonNull String query, @Nullable List<RecipientId> recipientIds) {
-    query = buildCaseInsensitiveGlobPattern(query);
+    Pair<String, String[]> search = buildSearchSelection(query, new String[] { FTS_NAME }, false, SORT_NAME);
 
     String ids = null;
     if (Util.hasItems(recipientIds)) {
@@ -2166,10 +2351,10 @@ public class RecipientDatabase extends Database {
 
     String   selection = BLOCKED + " = 0 AND " +
                          (ids != null ? ID + " IN (" + ids + ") AND " : "") +
-                         SORT_NAME  + " GLOB ?";
+                         search.first();
 
     List<Recipient> recipients = new ArrayList<>();
-    try (RecipientDatabase.RecipientReader reader = new RecipientReader(databaseHelper.getReadableDatabase().query(TABLE_NAME, MENTION_SEARCH_PROJECTION, selection, SqlUtil.buildArgs(query), null, null, SORT_NAME))) {
+    try (RecipientDatabase.RecipientReader reader = new RecipientReader(databaseHelper.getReadableDatabase().query(TABLE_NAME, MENTION_SEARCH_PROJECTION, selection, search.second(), null, null, SORT_NAME))) {
       Recipient recipient;
       while ((recipient = reader.getNext()) != null) {
         recipients.add(recipient);
@@ -2542,6 +2727,8 @@ public class RecipientDatabase extends Database {
       db.update(GroupDatabase.TABLE_NAME, groupValues, GroupDatabase.RECIPIENT_ID + " = ?", SqlUtil.buildArgs(group.getRecipientId()));
     }
 
+    groupDatabase.removeFromAllMemberships(byE164);
+
     // Threads
     ThreadDatabase.MergeResult threadMerge = DatabaseFactory.getThreadDatabase(context).merge(byUuid, byE164);
 
@@ -2613,12 +2800,19 @@ public class RecipientDatabase extends Database {
 
     private final SQLiteDatabase database;
 
-    private final Map<RecipientId, PendingContactInfo> pendingContactInfoMap = new HashMap<>();
+    private final Map<RecipientId, PendingContactInfo>    pendingContactInfoMap = new HashMap<>();
+    private final Map<RecipientId, SystemContactSnapshot> existingContactInfo;
+    private final Set<RecipientId>                        unchangedIds          = new HashSet<>();
 
     BulkOperationsHandle(SQLiteDatabase database) {
-      this.database = database;
+      this.database            = database;
+      this.existingContactInfo = getPendingSystemContactInfo();
     }
 
+    /**
+     * Contacts whose info matches what we already have only have their pending flag cleared, which
+     * is done in bulk by {@link #finish()}. Everything else is written individually.
+     */
     public void setSystemContactInfo(@NonNull RecipientId id,
                                      @Nullable String displayName,
                                      @Nullable String photoUri,
@@ -2626,6 +2820,13 @@ public class RecipientDatabase extends Database {
                                      int systemPhoneType,
                                      @Nullable String systemContactUri)
     {
+      SystemContactSnapshot existing = existingContactInfo.remove(id);
+
+      if (existing != null && existing.matches(displayName, photoUri, systemPhoneLabel, systemPhoneType, systemContactUri)) {
+        unchangedIds.add(id);
+        return;
+      }
+
       ContentValues dirtyQualifyingValues = new ContentValues();
       dirtyQualifyingValues.put(SYSTEM_DISPLAY_NAME, displayName);
 
@@ -2652,13 +2853,44 @@ public class RecipientDatabase extends Database {
     }
 
     public void finish() {
+      clearPendingForUnchangedInfo();
       markAllRelevantEntriesDirty();
       clearSystemDataForPendingInfo();
 
       database.setTransactionSuccessful();
       database.endTransaction();
 
-      Stream.of(pendingContactInfoMap.entrySet()).forEach(entry -> Recipient.live(entry.getKey()).refresh());
+      Log.d(TAG, "[BulkOperationsHandle] Updated " + pendingContactInfoMap.size() + " system contacts, " + unchangedIds.size() + " unchanged.");
+
+      ApplicationDependencies.getRecipientCache().refreshAll(pendingContactInfoMap.keySet());
+    }
+
+    private @NonNull Map<RecipientId, SystemContactSnapshot> getPendingSystemContactInfo() {
+      Map<RecipientId, SystemContactSnapshot> results    = new HashMap<>();
+      String[]                                projection = new String[] { ID, SYSTEM_DISPLAY_NAME, SYSTEM_PHOTO_URI, SYSTEM_PHONE_LABEL, SYSTEM_PHONE_TYPE, SYSTEM_CONTACT_URI, COLOR };
+
+      try (Cursor cursor = database.query(TABLE_NAME, projection, SYSTEM_INFO_PENDING + " = ?", new String[] { "1" }, null, null, null)) {
+        while (cursor != null && cursor.moveToNext()) {
+          results.put(RecipientId.from(CursorUtil.requireLong(cursor, ID)),
+                      new SystemContactSnapshot(CursorUtil.requireString(cursor, SYSTEM_DISPLAY_NAME),
+                                                CursorUtil.requireString(cursor, SYSTEM_PHOTO_URI),
+                                                CursorUtil.requireString(cursor, SYSTEM_PHONE_LABEL),
+                                                CursorUtil.requireInt(cursor, SYSTEM_PHONE_TYPE),
+                                                CursorUtil.requireString(cursor, SYSTEM_CONTACT_URI),
+                                                CursorUtil.requireString(cursor, COLOR) != null));
+        }
+      }
+
+      return results;
+    }
+
+    private void clearPendingForUnchangedInfo() {
+      ContentValues values = new ContentValues(1);
+      values.put(SYSTEM_INFO_PENDING, 0);
+
+      for (SqlUtil.Query query : SqlUtil.buildCollectionQueries(ID, unchangedIds)) {
+        database.update(TABLE_NAME, values, query.getWhere(), query.getWhereArgs());
+      }
     }
 
     private void markAllRelevantEntriesDirty() {
@@ -2695,6 +2927,81 @@ public class RecipientDatabase extends Database {
     return "REPLACE(" + column + ", ' ', '')";
   }
 
+  /**
+   * @param prefix Prefix for the recipient columns, e.g. "new." in a trigger.
+   * @return The values to insert into {@link #FTS_TABLE_NAME}, in the order of {@link #FTS_COLUMNS}.
+   */
+  private static @NonNull String buildFtsValues(@NonNull String prefix) {
+    String name = "COALESCE(" + nullIfEmpty(prefix + SYSTEM_DISPLAY_NAME) + ", " + nullIfEmpty(prefix + PROFILE_JOINED_NAME) + ", " + nullIfEmpty(prefix + PROFILE_GIVEN_NAME) + ", " + nullIfEmpty(prefix + USERNAME) + ", " + nullIfEmpty(prefix + PHONE) + ")";
+
+    return withSuffixes(name) + ", " +
+           withSuffixes(prefix + USERNAME) + ", " +
+           suffixes(digitsOnly(prefix + PHONE)) + ", " +
+           withSuffixes(prefix + EMAIL);
+  }
+
+  /**
+   * Ex:
+   *   name -> name || ' ' || suffixes(REPLACE(name, ' ', ''))
+   */
+  private static @NonNull String withSuffixes(@NonNull String column) {
+    return column + " || ' ' || " + suffixes(removeWhitespace(column));
+  }
+
+  /**
+   * Ex:
+   *   phone -> phone || ' ' || substr(phone, 2) || ' ' || substr(phone, 3) ...
+   */
+  private static @NonNull String suffixes(@NonNull String column) {
+    StringBuilder builder = new StringBuilder(column);
+
+    for (int i = 2; i <= FTS_MAX_INFIX_OFFSET; i++) {
+      builder.append(" || ' ' || substr(").append(column).append(", ").append(i).append(")");
+    }
+
+    return builder.toString();
+  }
+
+  /**
+   * Strips the formatting that can show up in a stored phone number.
+   */
+  private static @NonNull String digitsOnly(@NonNull String column) {
+    String stripped = column;
+
+    for (String character : new String[] { "+", "-", " ", "(", ")", "." }) {
+      stripped = "REPLACE(" + stripped + ", '" + character + "', '')";
+    }
+
+    return stripped;
+  }
+
+  /**
+   * Uses the full text index where possible, which finds matches anywhere in the first
+   * {@link #FTS_MAX_INFIX_OFFSET} characters of a value, and at the start of any word in it,
+   * regardless of case, diacritics and phone number formatting. Queries that are empty, or have
+   * nothing but punctuation, symbols or emoji in them, can't be answered by the index, so they fall
+   * back to a case-insensitive GLOB over the provided recipient columns.
+   *
+   * @param searchPhone True to also match phone-like queries by their digits alone, so that
+   *                    "(555) 123" finds +15551234567.
+   * @return The selection and its arguments.
+   */
+  private static @NonNull Pair<String, String[]> buildSearchSelection(@NonNull String query, @NonNull String[] ftsColumns, boolean searchPhone, @NonNull String... globColumns) {
+    String ftsQuery = RecipientSearchQuery.build(query, ftsColumns, searchPhone ? FTS_PHONE : null);
+
+    if (ftsQuery != null) {
+      return new Pair<>(ID + " IN (SELECT rowid FROM " + FTS_TABLE_NAME + " WHERE " + FTS_TABLE_NAME + " MATCH ?)", SqlUtil.buildArgs(ftsQuery));
+    }
+
+    String   pattern   = buildCaseInsensitiveGlobPattern(query);
+    String[] args      = new String[globColumns.length];
+    String   selection = TextUtils.join(" GLOB ? OR ", globColumns) + " GLOB ?";
+
+    Arrays.fill(args, pattern);
+
+    return new Pair<>("(" + selection + ")", args);
+  }
+
   public interface ColorUpdater {
     MaterialColor update(@NonNull String name, @Nullable String color);
   }
@@ -3085,6 +3392,37 @@ public class RecipientDatabase extends Database {
     }
   }
 
+  private static class SystemContactSnapshot {
+
+    private final String  displayName;
+    private final String  photoUri;
+    private final String  phoneLabel;
+    private final int     phoneType;
+    private final String  contactUri;
+    private final boolean hasColor;
+
+    private SystemContactSnapshot(String displayName, String photoUri, String phoneLabel, int phoneType, String contactUri, boolean hasColor) {
+      this.displayName = displayName;
+      this.photoUri    = photoUri;
+      this.phoneLabel  = phoneLabel;
+      this.phoneType   = phoneType;
+      this.contactUri  = contactUri;
+      this.hasColor    = hasColor;
+    }
+
+    /**
+     * @return True if writing these values wouldn't change anything, including assigning a color.
+     */
+    boolean matches(String displayName, String photoUri, String phoneLabel, int phoneType, String contactUri) {
+      return Objects.equals(this.displayName, displayName) &&
+             Objects.equals(this.photoUri, photoUri)       &&
+             Objects.equals(this.phoneLabel, phoneLabel)   &&
+             this.phoneType == phoneType                   &&
+             Objects.equals(this.contactUri, contactUri)   &&
+             (displayName == null || hasColor);
+    }
+  }
+
   public static class MissingRecipientException extends IllegalStateException {
     public MissingRecipientException(@Nullable RecipientId id) {
       super("Failed to find recipient with ID: " + id);
@@ -0,0 +1,123 @@
+package org.thoughtcrime.securesms.database;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Builds the FTS5 queries for {@link RecipientDatabase#FTS_TABLE_NAME}. Text columns are matched a
+ * word at a time, the same way the index tokenizes them. The phone column only holds digits, so
+ * queries are matched against it with their formatting stripped.
+ * <p>
+ * Every term is a prefix query. The index also holds the suffixes of each value, so a prefix query
+ * finds matches in the middle of a value too.
+ */
+final class RecipientSearchQuery {
+
+  private RecipientSearchQuery() {}
+
+  /**
+   * Matches recipients where every word of the query is in any one of the text columns, or where
+   * the query's digits are in the phone column. Only queries with no
+   * letters in them are matched against the phone column, so "john 5" doesn't match every number
+   * starting with a 5.
+   *
+   * Ex:
+   *   "john sm", [name]        -> (name : "john"* AND name : "sm"*)
+   *   "(555) 12", [name] phone -> (name : "555"* AND name : "12"*) OR (phone : "55512"*)
+   *
+   * @return The query, or null if the query has no words that could be in the index.
+   */
+  static @Nullable String build(@NonNull String query, @NonNull String[] textColumns, @Nullable String phoneColumn) {
+    List<String> words = getWords(query);
+
+    if (words.isEmpty()) {
+      return null;
+    }
+
+    String       digits  = getPhoneDigits(query);
+    List<String> clauses = new ArrayList<>(textColumns.length + 1);
+
+    for (String column : textColumns) {
+      StringBuilder clause = new StringBuilder("(");
+
+      for (int i = 0; i < words.size(); i++) {
+        if (i > 0) clause.append(" AND ");
+        appendPrefixTerm(clause, column, words.get(i));
+      }
+
+      clauses.add(clause.append(")").toString());
+    }
+
+    if (phoneColumn != null && digits != null) {
+      StringBuilder clause = new StringBuilder("(");
+      appendPrefixTerm(clause, phoneColumn, digits);
+      clauses.add(clause.append(")").toString());
+    }
+
+    StringBuilder ftsQuery = new StringBuilder();
+
+    for (int i = 0; i < clauses.size(); i++) {
+      if (i > 0) ftsQuery.append(" OR ");
+      ftsQuery.append(clauses.get(i));
+    }
+
+    return ftsQuery.toString();
+  }
+
+  /**
+   * @return The digits in the query, or null if it has letters in it or no digits at all, and so
+   *         isn't a phone number.
+   */
+  static @Nullable String getPhoneDigits(@NonNull String query) {
+    StringBuilder digits = new StringBuilder();
+
+    for (int i = 0; i < query.length(); ) {
+      int codePoint = query.codePointAt(i);
+
+      if (Character.isDigit(codePoint)) {
+        digits.appendCodePoint(codePoint);
+      } else if (Character.isLetter(codePoint)) {
+        return null;
+      }
+
+      i += Character.charCount(codePoint);
+    }
+
+    return digits.length() > 0 ? digits.toString() : null;
+  }
+
+  /**
+   * Splits the query into runs of letters and digits, which is what the unicode61 tokenizer
+   * considers a word. Anything else, like punctuation or emoji, can't be in the index.
+   */
+  static @NonNull List<String> getWords(@NonNull String query) {
+    List<String>  words = new ArrayList<>();
+    StringBuilder word  = new StringBuilder();
+
+    for (int i = 0; i < query.length(); ) {
+      int codePoint = query.codePointAt(i);
+
+      if (Character.isLetterOrDigit(codePoint)) {
+        word.appendCodePoint(codePoint);
+      } else if (word.length() > 0) {
+        words.add(word.toString());
+        word.setLength(0);
+      }
+
+      i += Character.charCount(codePoint);
+    }
+
+    if (word.length() > 0) {
+      words.add(word.toString());
+    }
+
+    return words;
+  }
+
+  private static void appendPrefixTerm(@NonNull StringBuilder builder, @NonNull String column, @NonNull String term) {
+    builder.append(column).append(" : \"").append(term).append("\"*");
+  }
+}
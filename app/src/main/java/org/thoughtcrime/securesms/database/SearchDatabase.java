@@ -12,6 +12,7 @@ import net.sqlcipher.database.SQLiteDatabase;
 
 import org.thoughtcrime.securesms.database.helpers.SQLCipherOpenHelper;
 import org.thoughtcrime.securesms.tracing.Trace;
+import org.thoughtcrime.securesms.util.SqlUtil;
 
 /**
  * Contains all databases necessary for full-text search (FTS).
@@ -25,7 +26,6 @@ public class SearchDatabase extends Database {
   public static final String ID                     = "rowid";
   public static final String BODY                   = MmsSmsColumns.BODY;
   public static final String THREAD_ID              = MmsSmsColumns.THREAD_ID;
-  public static final String SNIPPET                = "snippet";
   public static final String CONVERSATION_RECIPIENT = "conversation_recipient";
   public static final String MESSAGE_RECIPIENT      = "message_recipient";
   public static final String IS_MMS                 = "is_mms";
@@ -33,6 +33,8 @@ public class SearchDatabase extends Database {
 
   public static final String SNIPPET_WRAP = "...";
 
+  public static final int MESSAGE_LIMIT = 500;
+
   public static final String[] CREATE_TABLE = {
       "CREATE VIRTUAL TABLE " + SMS_FTS_TABLE_NAME + " USING fts5(" + BODY + ", " + THREAD_ID + " UNINDEXED, content=" + SmsDatabase.TABLE_NAME + ", content_rowid=" + SmsDatabase.ID + ");",
 
@@ -62,42 +64,52 @@ public class SearchDatabase extends Database {
           "END;"
   };
 
-  private static final String MESSAGES_QUERY =
-      "SELECT " +
-        ThreadDatabase.TABLE_NAME + "." + ThreadDatabase.RECIPIENT_ID + " AS " + CONVERSATION_RECIPIENT + ", " +
-        MmsSmsColumns.RECIPIENT_ID + " AS " + MESSAGE_RECIPIENT + ", " +
-        "snippet(" + SMS_FTS_TABLE_NAME + ", -1, '', '', '" + SNIPPET_WRAP + "', 7) AS " + SNIPPET + ", " +
-        SmsDatabase.TABLE_NAME + "." + SmsDatabase.DATE_RECEIVED + " AS " + MmsSmsColumns.NORMALIZED_DATE_RECEIVED + ", " +
-        SMS_FTS_TABLE_NAME + "." + THREAD_ID + ", " +
-        SMS_FTS_TABLE_NAME + "." + BODY + ", " +
-        SMS_FTS_TABLE_NAME + "." + ID + " AS " + MESSAGE_ID + ", " +
-        "0 AS " + IS_MMS + " " +
-      "FROM " + SmsDatabase.TABLE_NAME + " " +
-      "INNER JOIN " + SMS_FTS_TABLE_NAME + " ON " + SMS_FTS_TABLE_NAME + "." + ID + " = " + SmsDatabase.TABLE_NAME + "." + SmsDatabase.ID + " " +
-      "INNER JOIN " + ThreadDatabase.TABLE_NAME + " ON " + SMS_FTS_TABLE_NAME + "." + THREAD_ID + " = " + ThreadDatabase.TABLE_NAME + "." + ThreadDatabase.ID + " " +
-      "WHERE " + SMS_FTS_TABLE_NAME + " MATCH ? " +
+  /**
+   * Each table is narrowed to its matches after the position, ordered by date, and only the first
+   * page of those is kept. Merging two sorted pages then gives the page across both tables, so a
+   * page never depends on how many pages came before it.
+   */
+  private static final String MESSAGES_PAGE_QUERY =
+      "SELECT * FROM (" +
+        "SELECT " +
+          ThreadDatabase.TABLE_NAME + "." + ThreadDatabase.RECIPIENT_ID + " AS " + CONVERSATION_RECIPIENT + ", " +
+          MmsSmsColumns.RECIPIENT_ID + " AS " + MESSAGE_RECIPIENT + ", " +
+          SmsDatabase.TABLE_NAME + "." + SmsDatabase.DATE_RECEIVED + " AS " + MmsSmsColumns.NORMALIZED_DATE_RECEIVED + ", " +
+          SmsDatabase.TABLE_NAME + "." + MmsSmsColumns.THREAD_ID + ", " +
+          SmsDatabase.TABLE_NAME + "." + MmsSmsColumns.BODY + ", " +
+          SmsDatabase.TABLE_NAME + "." + SmsDatabase.ID + " AS " + MESSAGE_ID + ", " +
+          "0 AS " + IS_MMS + " " +
+        "FROM " + SmsDatabase.TABLE_NAME + " " +
+        "INNER JOIN " + ThreadDatabase.TABLE_NAME + " ON " + SmsDatabase.TABLE_NAME + "." + MmsSmsColumns.THREAD_ID + " = " + ThreadDatabase.TABLE_NAME + "." + ThreadDatabase.ID + " " +
+        "WHERE " + SmsDatabase.TABLE_NAME + "." + SmsDatabase.ID + " IN (SELECT " + ID + " FROM " + SMS_FTS_TABLE_NAME + " WHERE " + SMS_FTS_TABLE_NAME + " MATCH ?) AND " +
+          "(" + SmsDatabase.TABLE_NAME + "." + SmsDatabase.DATE_RECEIVED + " < ? OR (" + SmsDatabase.TABLE_NAME + "." + SmsDatabase.DATE_RECEIVED + " = ? AND " + SmsDatabase.TABLE_NAME + "." + SmsDatabase.ID + " < ?)) " +
+        "ORDER BY " + SmsDatabase.TABLE_NAME + "." + SmsDatabase.DATE_RECEIVED + " DESC, " + SmsDatabase.TABLE_NAME + "." + SmsDatabase.ID + " DESC " +
+        "LIMIT ?" +
+      ") " +
       "UNION ALL " +
-      "SELECT " +
-        ThreadDatabase.TABLE_NAME + "." + ThreadDatabase.RECIPIENT_ID + " AS " + CONVERSATION_RECIPIENT + ", " +
-        MmsSmsColumns.RECIPIENT_ID + " AS " + MESSAGE_RECIPIENT + ", " +
-        "snippet(" + MMS_FTS_TABLE_NAME + ", -1, '', '', '" + SNIPPET_WRAP + "', 7) AS " + SNIPPET + ", " +
-        MmsDatabase.TABLE_NAME + "." + MmsDatabase.DATE_RECEIVED + " AS " + MmsSmsColumns.NORMALIZED_DATE_RECEIVED + ", " +
-        MMS_FTS_TABLE_NAME + "." + THREAD_ID + ", " +
-        MMS_FTS_TABLE_NAME + "." + BODY + ", " +
-        MMS_FTS_TABLE_NAME + "." + ID + " AS " + MESSAGE_ID + ", " +
-        "1 AS " + IS_MMS + " " +
-      "FROM " + MmsDatabase.TABLE_NAME + " " +
-      "INNER JOIN " + MMS_FTS_TABLE_NAME + " ON " + MMS_FTS_TABLE_NAME + "." + ID + " = " + MmsDatabase.TABLE_NAME + "." + MmsDatabase.ID + " " +
-      "INNER JOIN " + ThreadDatabase.TABLE_NAME + " ON " + MMS_FTS_TABLE_NAME + "." + THREAD_ID + " = " + ThreadDatabase.TABLE_NAME + "." + ThreadDatabase.ID + " " +
-      "WHERE " + MMS_FTS_TABLE_NAME + " MATCH ? " +
-      "ORDER BY " + MmsSmsColumns.NORMALIZED_DATE_RECEIVED + " DESC " +
-      "LIMIT 500";
+      "SELECT * FROM (" +
+        "SELECT " +
+          ThreadDatabase.TABLE_NAME + "." + ThreadDatabase.RECIPIENT_ID + " AS " + CONVERSATION_RECIPIENT + ", " +
+          MmsSmsColumns.RECIPIENT_ID + " AS " + MESSAGE_RECIPIENT + ", " +
+          MmsDatabase.TABLE_NAME + "." + MmsDatabase.DATE_RECEIVED + " AS " + MmsSmsColumns.NORMALIZED_DATE_RECEIVED + ", " +
+          MmsDatabase.TABLE_NAME + "." + MmsSmsColumns.THREAD_ID + ", " +
+          MmsDatabase.TABLE_NAME + "." + MmsSmsColumns.BODY + ", " +
+          MmsDatabase.TABLE_NAME + "." + MmsDatabase.ID + " AS " + MESSAGE_ID + ", " +
+          "1 AS " + IS_MMS + " " +
+        "FROM " + MmsDatabase.TABLE_NAME + " " +
+        "INNER JOIN " + ThreadDatabase.TABLE_NAME + " ON " + MmsDatabase.TABLE_NAME + "." + MmsSmsColumns.THREAD_ID + " = " + ThreadDatabase.TABLE_NAME + "." + ThreadDatabase.ID + " " +
+        "WHERE " + MmsDatabase.TABLE_NAME + "." + MmsDatabase.ID + " IN (SELECT " + ID + " FROM " + MMS_FTS_TABLE_NAME + " WHERE " + MMS_FTS_TABLE_NAME + " MATCH ?) AND " +
+          "(" + MmsDatabase.TABLE_NAME + "." + MmsDatabase.DATE_RECEIVED + " < ? OR (" + MmsDatabase.TABLE_NAME + "." + MmsDatabase.DATE_RECEIVED + " = ? AND " + MmsDatabase.TABLE_NAME + "." + MmsDatabase.ID + " < ?)) " +
+        "ORDER BY " + MmsDatabase.TABLE_NAME + "." + MmsDatabase.DATE_RECEIVED + " DESC, " + MmsDatabase.TABLE_NAME + "." + MmsDatabase.ID + " DESC " +
+        "LIMIT ?" +
+      ") " +
+      "ORDER BY " + MmsSmsColumns.NORMALIZED_DATE_RECEIVED + " DESC, " + IS_MMS + " DESC, " + MESSAGE_ID + " DESC " +
+      "LIMIT ?";
 
   private static final String MESSAGES_FOR_THREAD_QUERY =
       "SELECT " +
           ThreadDatabase.TABLE_NAME + "." + ThreadDatabase.RECIPIENT_ID + " AS " + CONVERSATION_RECIPIENT + ", " +
           MmsSmsColumns.RECIPIENT_ID + " AS " + MESSAGE_RECIPIENT + ", " +
-          "snippet(" + SMS_FTS_TABLE_NAME + ", -1, '', '', '" + SNIPPET_WRAP + "', 7) AS " + SNIPPET + ", " +
           SmsDatabase.TABLE_NAME + "." + SmsDatabase.DATE_RECEIVED + " AS " + MmsSmsColumns.NORMALIZED_DATE_RECEIVED + ", " +
           SMS_FTS_TABLE_NAME + "." + THREAD_ID + ", " +
           SMS_FTS_TABLE_NAME + "." + BODY + ", " +
@@ -111,7 +123,6 @@ public class SearchDatabase extends Database {
         "SELECT " +
           ThreadDatabase.TABLE_NAME + "." + ThreadDatabase.RECIPIENT_ID + " AS " + CONVERSATION_RECIPIENT + ", " +
           MmsSmsColumns.RECIPIENT_ID + " AS " + MESSAGE_RECIPIENT + ", " +
-          "snippet(" + MMS_FTS_TABLE_NAME + ", -1, '', '', '" + SNIPPET_WRAP + "', 7) AS " + SNIPPET + ", " +
           MmsDatabase.TABLE_NAME + "." + MmsDatabase.DATE_RECEIVED + " AS " + MmsSmsColumns.NORMALIZED_DATE_RECEIVED + ", " +
           MMS_FTS_TABLE_NAME + "." + THREAD_ID + ", " +
           MMS_FTS_TABLE_NAME + "." + BODY + ", " +
@@ -122,13 +133,23 @@ public class SearchDatabase extends Database {
         "INNER JOIN " + ThreadDatabase.TABLE_NAME + " ON " + MMS_FTS_TABLE_NAME + "." + THREAD_ID + " = " + ThreadDatabase.TABLE_NAME + "." + ThreadDatabase.ID + " " +
         "WHERE " + MMS_FTS_TABLE_NAME + " MATCH ? AND " + MmsDatabase.TABLE_NAME + "." + MmsSmsColumns.THREAD_ID + " = ? " +
         "ORDER BY " + MmsSmsColumns.NORMALIZED_DATE_RECEIVED + " DESC " +
-        "LIMIT 500";
+        "LIMIT " + MESSAGE_LIMIT;
 
   public SearchDatabase(@NonNull Context context, @NonNull SQLCipherOpenHelper databaseHelper) {
     super(context, databaseHelper);
   }
 
-  public Cursor queryMessages(@NonNull String query) {
+  /**
+   * Returns a page of messages matching the query, newest first. Bodies are returned as is,
+   * callers can find where the query matches in them with their own tokenizer rather than having
+   * a snippet built for every row.
+   *
+   * @param position Where the previous page ended, or {@link MessageSearchPosition#START}.
+   * @return Up to pageSize rows. The next page starts after the last of them, see
+   *         {@link MessageSearchPosition#after(long, long, boolean)}. If fewer than pageSize rows
+   *         are returned, there are no more pages.
+   */
+  public Cursor queryMessages(@NonNull String query, @NonNull MessageSearchPosition position, int pageSize) {
     SQLiteDatabase db                  = databaseHelper.getReadableDatabase();
     String         fullTextSearchQuery = createFullTextSearchQuery(query);
 
@@ -136,8 +157,10 @@ public class SearchDatabase extends Database {
       return null;
     }
 
-    Cursor cursor = db.rawQuery(MESSAGES_QUERY, new String[] { fullTextSearchQuery,
-                                                               fullTextSearchQuery });
+    long   date   = position.getDateReceived();
+    Cursor cursor = db.rawQuery(MESSAGES_PAGE_QUERY, SqlUtil.buildArgs(fullTextSearchQuery, date, date, position.getSmsIdBound(), pageSize,
+                                                                       fullTextSearchQuery, date, date, position.getMmsIdBound(), pageSize,
+                                                                       pageSize));
 
     setNotifyConversationListListeners(cursor);
     return cursor;
@@ -173,4 +196,3 @@ public class SearchDatabase extends Database {
     return "\"" + s.replace("\"", "\"\"") + "\"";
   }
 }
-
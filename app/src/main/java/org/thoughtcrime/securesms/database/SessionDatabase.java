@@ -18,8 +18,11 @@ import org.whispersystems.libsignal.state.SessionRecord;
 import org.whispersystems.signalservice.api.push.SignalServiceAddress;
 
 import java.io.IOException;
+import java.util.Collection;
+import java.util.HashSet;
 import java.util.LinkedList;
 import java.util.List;
+import java.util.Set;
 
 @Trace
 public class SessionDatabase extends Database {
@@ -148,6 +151,24 @@ public class SessionDatabase extends Database {
     database.delete(TABLE_NAME, RECIPIENT_ID + " = ?", new String[] {recipientId.serialize()});
   }
 
+  /**
+   * @return The subset of the provided recipients that we have at least one session with.
+   */
+  public @NonNull Set<RecipientId> getRecipientsWithSessions(@NonNull Collection<RecipientId> recipientIds) {
+    SQLiteDatabase   database = databaseHelper.getReadableDatabase();
+    Set<RecipientId> results  = new HashSet<>();
+
+    for (SqlUtil.Query query : SqlUtil.buildCollectionQueries(RECIPIENT_ID, recipientIds)) {
+      try (Cursor cursor = database.query(TABLE_NAME, new String[] { RECIPIENT_ID }, query.getWhere(), query.getWhereArgs(), null, null, null)) {
+        while (cursor != null && cursor.moveToNext()) {
+          results.add(RecipientId.from(cursor.getLong(cursor.getColumnIndexOrThrow(RECIPIENT_ID))));
+        }
+      }
+    }
+
+    return results;
+  }
+
   public boolean hasSessionFor(@NonNull RecipientId recipientId) {
     SQLiteDatabase database = databaseHelper.getReadableDatabase();
     String         query    = RECIPIENT_ID + " = ?";
@@ -153,6 +153,9 @@ public class SmsDatabase extends MessageDatabase {
   private final String OUTGOING_INSECURE_MESSAGE_CLAUSE = "(" + TYPE + " & " + Types.BASE_TYPE_MASK + ") = " + Types.BASE_SENT_TYPE + " AND NOT (" + TYPE + " & " + Types.SECURE_MESSAGE_BIT + ")";
   private final String OUTGOING_SECURE_MESSAGE_CLAUSE   = "(" + TYPE + " & " + Types.BASE_TYPE_MASK + ") = " + Types.BASE_SENT_TYPE + " AND (" + TYPE + " & " + (Types.SECURE_MESSAGE_BIT | Types.PUSH_MESSAGE_BIT) + ")";
 
+  /** Messages with these bits don't, on their own, keep a thread's summary count above zero. */
+  private static final long THREAD_SUMMARY_EXCLUDED_BITS = Types.END_SESSION_BIT | Types.KEY_EXCHANGE_IDENTITY_UPDATE_BIT | Types.KEY_EXCHANGE_IDENTITY_VERIFIED_BIT;
+
   private static final EarlyReceiptCache earlyDeliveryReceiptCache = new EarlyReceiptCache("SmsDelivery");
 
   public SmsDatabase(Context context, SQLCipherOpenHelper databaseHelper) {
@@ -238,8 +241,7 @@ public class SmsDatabase extends MessageDatabase {
 
     String[] cols  = { "COUNT(*)" };
     String   query = THREAD_ID + " = ? AND (NOT " + TYPE + " & ? AND TYPE != ?)";
-    long     type  = Types.END_SESSION_BIT | Types.KEY_EXCHANGE_IDENTITY_UPDATE_BIT | Types.KEY_EXCHANGE_IDENTITY_VERIFIED_BIT;
-    String[] args  = SqlUtil.buildArgs(threadId, type, Types.PROFILE_CHANGE_TYPE);
+    String[] args  = SqlUtil.buildArgs(threadId, THREAD_SUMMARY_EXCLUDED_BITS, Types.PROFILE_CHANGE_TYPE);
 
     try (Cursor cursor = db.query(TABLE_NAME, cols, query, args, null, null, null)) {
       if (cursor != null && cursor.moveToFirst()) {
@@ -389,7 +391,7 @@ public class SmsDatabase extends MessageDatabase {
 
     long threadId = getThreadIdForMessage(id);
 
-    DatabaseFactory.getThreadDatabase(context).update(threadId, false);
+    DatabaseFactory.getThreadDatabase(context).updateForChangedMessage(threadId, getDateReceived(id));
     notifyConversationListeners(threadId);
   }
 
@@ -414,8 +416,9 @@ public class SmsDatabase extends MessageDatabase {
 
   @Override
   public void markExpireStarted(Collection<Long> ids, long startedAtTimestamp) {
-    SQLiteDatabase db       = databaseHelper.getWritableDatabase();
-    long           threadId = -1;
+    SQLiteDatabase db           = databaseHelper.getWritableDatabase();
+    long           threadId     = -1;
+    long           dateReceived = -1;
 
     db.beginTransaction();
     try {
@@ -430,6 +433,8 @@ public class SmsDatabase extends MessageDatabase {
         if (threadId < 0) {
           threadId = getThreadIdForMessage(id);
         }
+
+        dateReceived = Math.max(dateReceived, getDateReceived(id));
       }
 
       db.setTransactionSuccessful();
@@ -437,7 +442,7 @@ public class SmsDatabase extends MessageDatabase {
       db.endTransaction();
     }
 
-    DatabaseFactory.getThreadDatabase(context).update(threadId, false);
+    DatabaseFactory.getThreadDatabase(context).updateForChangedMessage(threadId, dateReceived);
     notifyConversationListeners(threadId);
   }
 
@@ -451,7 +456,7 @@ public class SmsDatabase extends MessageDatabase {
     db.update(TABLE_NAME, contentValues, ID_WHERE, new String[] {id+""});
 
     long threadId = getThreadIdForMessage(id);
-    DatabaseFactory.getThreadDatabase(context).update(threadId, false);
+    DatabaseFactory.getThreadDatabase(context).updateForChangedMessage(threadId, getDateReceived(id));
     notifyConversationListeners(threadId);
   }
 
@@ -475,7 +480,7 @@ public class SmsDatabase extends MessageDatabase {
     SQLiteDatabase database     = databaseHelper.getWritableDatabase();
     boolean        foundMessage = false;
 
-    try (Cursor cursor = database.query(TABLE_NAME, new String[] {ID, THREAD_ID, RECIPIENT_ID, TYPE, DELIVERY_RECEIPT_COUNT, READ_RECEIPT_COUNT},
+    try (Cursor cursor = database.query(TABLE_NAME, new String[] {ID, THREAD_ID, RECIPIENT_ID, TYPE, DATE_RECEIVED, DELIVERY_RECEIPT_COUNT, READ_RECEIPT_COUNT},
                               DATE_SENT + " = ?", new String[] {String.valueOf(messageId.getTimetamp())},
                               null, null, null, null)) {
 
@@ -487,14 +492,15 @@ public class SmsDatabase extends MessageDatabase {
           boolean     isFirstIncrement = cursor.getLong(cursor.getColumnIndexOrThrow(columnName)) == 0;
 
           if (outRecipientId.equals(theirRecipientId)) {
-            long threadId = cursor.getLong(cursor.getColumnIndexOrThrow(THREAD_ID));
+            long threadId     = cursor.getLong(cursor.getColumnIndexOrThrow(THREAD_ID));
+            long dateReceived = cursor.getLong(cursor.getColumnIndexOrThrow(DATE_RECEIVED));
 
             database.execSQL("UPDATE " + TABLE_NAME +
                              " SET " + columnName + " = " + columnName + " + 1 WHERE " +
                              ID + " = ?",
                              new String[] {String.valueOf(cursor.getLong(cursor.getColumnIndexOrThrow(ID)))});
 
-            DatabaseFactory.getThreadDatabase(context).update(threadId, false);
+            DatabaseFactory.getThreadDatabase(context).updateForChangedMessage(threadId, dateReceived);
 
             if (isFirstIncrement) {
               notifyConversationListeners(threadId);
@@ -517,13 +523,13 @@ public class SmsDatabase extends MessageDatabase {
   }
 
   @Override
-  public List<Pair<Long, Long>> setTimestampRead(SyncMessageId messageId, long proposedExpireStarted) {
+  public List<Pair<Long, Long>> setTimestampRead(SyncMessageId messageId, long proposedExpireStarted, @NonNull Set<Long> threadsUpdated) {
     SQLiteDatabase         database = databaseHelper.getWritableDatabase();
     List<Pair<Long, Long>> expiring = new LinkedList<>();
     Cursor                 cursor   = null;
 
     try {
-      cursor = database.query(TABLE_NAME, new String[] {ID, THREAD_ID, RECIPIENT_ID, TYPE, EXPIRES_IN, EXPIRE_STARTED},
+      cursor = database.query(TABLE_NAME, new String[] {ID, THREAD_ID, RECIPIENT_ID, TYPE, READ, EXPIRES_IN, EXPIRE_STARTED},
                               DATE_SENT + " = ?", new String[] {String.valueOf(messageId.getTimetamp())},
                               null, null, null, null);
 
@@ -536,6 +542,7 @@ public class SmsDatabase extends MessageDatabase {
           long threadId      = cursor.getLong(cursor.getColumnIndexOrThrow(THREAD_ID));
           long expiresIn     = cursor.getLong(cursor.getColumnIndexOrThrow(EXPIRES_IN));
           long expireStarted = cursor.getLong(cursor.getColumnIndexOrThrow(EXPIRE_STARTED));
+          int  markedRead    = cursor.getInt(cursor.getColumnIndexOrThrow(READ)) == 0 ? 1 : 0;
 
           expireStarted = expireStarted > 0 ? Math.min(proposedExpireStarted, expireStarted) : proposedExpireStarted;
 
@@ -549,9 +556,10 @@ public class SmsDatabase extends MessageDatabase {
 
           database.update(TABLE_NAME, contentValues, ID_WHERE, new String[] {cursor.getLong(cursor.getColumnIndexOrThrow(ID)) + ""});
 
-          DatabaseFactory.getThreadDatabase(context).updateReadState(threadId);
+          DatabaseFactory.getThreadDatabase(context).updateReadState(threadId, markedRead);
           DatabaseFactory.getThreadDatabase(context).setLastSeen(threadId);
           notifyConversationListeners(threadId);
+          threadsUpdated.add(threadId);
         }
       }
     } finally {
@@ -770,7 +778,7 @@ public class SmsDatabase extends MessageDatabase {
     SQLiteDatabase db = databaseHelper.getWritableDatabase();
     long messageId    = db.insert(TABLE_NAME, null, values);
 
-    DatabaseFactory.getThreadDatabase(context).update(threadId, true);
+    DatabaseFactory.getThreadDatabase(context).updateForInsertedMessage(this, threadId, messageId, values.getAsLong(DATE_RECEIVED), true);
     if (unread) {
       DatabaseFactory.getThreadDatabase(context).incrementUnread(threadId, 1);
     }
@@ -962,7 +970,7 @@ public class SmsDatabase extends MessageDatabase {
       }
 
       if (!message.isIdentityUpdate() && !message.isIdentityVerified() && !message.isIdentityDefault()) {
-        DatabaseFactory.getThreadDatabase(context).update(threadId, true);
+        DatabaseFactory.getThreadDatabase(context).updateForInsertedMessage(this, threadId, messageId, values.getAsLong(DATE_RECEIVED), true);
       }
 
       if (message.getSubscriptionId() != -1) {
@@ -1021,7 +1029,7 @@ public class SmsDatabase extends MessageDatabase {
     }
 
     if (!message.isIdentityVerified() && !message.isIdentityDefault()) {
-      DatabaseFactory.getThreadDatabase(context).update(threadId, true);
+      DatabaseFactory.getThreadDatabase(context).updateForInsertedMessage(this, threadId, messageId, contentValues.getAsLong(DATE_RECEIVED), true);
       DatabaseFactory.getThreadDatabase(context).setLastSeen(threadId);
     }
 
@@ -1036,6 +1044,22 @@ public class SmsDatabase extends MessageDatabase {
     return messageId;
   }
 
+  /**
+   * The SMS part of the summary count is all messages in the thread, but only if at least one of
+   * them isn't excluded. So we can only adjust it by one if some other message isn't excluded.
+   */
+  @Override
+  boolean changesThreadSummaryCountByOne(long threadId, long messageId) {
+    SQLiteDatabase db = databaseHelper.getReadableDatabase();
+
+    String   query = THREAD_ID + " = ? AND " + ID + " != ? AND (NOT " + TYPE + " & ? AND TYPE != ?)";
+    String[] args  = SqlUtil.buildArgs(threadId, messageId, THREAD_SUMMARY_EXCLUDED_BITS, Types.PROFILE_CHANGE_TYPE);
+
+    try (Cursor cursor = db.query(TABLE_NAME, new String[] { ID }, query, args, null, null, null, "1")) {
+      return cursor != null && cursor.moveToFirst();
+    }
+  }
+
   @Override
   public Cursor getExpirationStartedMessages() {
     String         where = EXPIRE_STARTED + " > 0";
@@ -1073,12 +1097,14 @@ public class SmsDatabase extends MessageDatabase {
   public boolean deleteMessage(long messageId) {
     Log.d(TAG, "deleteMessage(" + messageId + ")");
 
-    SQLiteDatabase db       = databaseHelper.getWritableDatabase();
-    long           threadId = getThreadIdForMessage(messageId);
+    SQLiteDatabase db           = databaseHelper.getWritableDatabase();
+    long           threadId     = getThreadIdForMessage(messageId);
+    long           dateReceived = getDateReceived(messageId);
+    boolean        countByOne   = dateReceived >= 0 && changesThreadSummaryCountByOne(threadId, messageId);
 
     db.delete(TABLE_NAME, ID_WHERE, new String[] {messageId+""});
 
-    boolean threadDeleted = DatabaseFactory.getThreadDatabase(context).update(threadId, false, true);
+    boolean threadDeleted = DatabaseFactory.getThreadDatabase(context).updateForDeletedMessage(threadId, dateReceived, countByOne);
 
     notifyConversationListeners(threadId);
     return threadDeleted;
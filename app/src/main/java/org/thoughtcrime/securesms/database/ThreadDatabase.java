@@ -61,9 +61,6 @@ import org.thoughtcrime.securesms.util.TextSecurePreferences;
 import org.thoughtcrime.securesms.util.Util;
 import org.whispersystems.libsignal.util.guava.Optional;
 import org.whispersystems.signalservice.api.storage.SignalAccountRecord;
-import org.whispersystems.signalservice.api.storage.SignalContactRecord;
-import org.whispersystems.signalservice.api.storage.SignalGroupV1Record;
-import org.whispersystems.signalservice.api.storage.SignalGroupV2Record;
 
 import java.io.Closeable;
 import java.io.IOException;
@@ -181,11 +178,27 @@ public class ThreadDatabase extends Database {
     return db.insert(TABLE_NAME, null, contentValues);
   }
 
-  private void updateThread(long threadId, long count, String body, @Nullable Uri attachment,
-                            @Nullable String contentType, @Nullable Extra extra,
-                            long date, int status, int deliveryReceiptCount, long type, boolean unarchive,
-                            long expiresIn, int readReceiptCount)
-  {
+  private void updateThread(long threadId, long count, @NonNull MessageRecord record, boolean unarchive) {
+    ContentValues contentValues = getSnippetValues(record);
+    contentValues.put(MESSAGE_COUNT, count);
+
+    if (unarchive) {
+      contentValues.put(ARCHIVED, 0);
+    }
+
+    if (count != getConversationMessageCount(threadId)) {
+      contentValues.put(LAST_SCROLLED, 0);
+    }
+
+    SQLiteDatabase db = databaseHelper.getWritableDatabase();
+    db.update(TABLE_NAME, contentValues, ID + " = ?", new String[] {threadId + ""});
+    notifyConversationListListeners();
+  }
+
+  private @NonNull ContentValues getSnippetValues(@NonNull MessageRecord record) {
+    Extra  extra           = getExtrasFor(record);
+    Uri    attachment      = getAttachmentUriFor(record);
+    long   date            = record.getTimestamp();
     String extraSerialized = null;
 
     if (extra != null) {
@@ -198,28 +211,17 @@ public class ThreadDatabase extends Database {
 
     ContentValues contentValues = new ContentValues();
     contentValues.put(DATE, date - date % 1000);
-    contentValues.put(SNIPPET, body);
+    contentValues.put(SNIPPET, ThreadBodyUtil.getFormattedBodyFor(context, record));
     contentValues.put(SNIPPET_URI, attachment == null ? null : attachment.toString());
-    contentValues.put(SNIPPET_TYPE, type);
-    contentValues.put(SNIPPET_CONTENT_TYPE, contentType);
+    contentValues.put(SNIPPET_TYPE, record.getType());
+    contentValues.put(SNIPPET_CONTENT_TYPE, getContentTypeFor(record));
     contentValues.put(SNIPPET_EXTRAS, extraSerialized);
-    contentValues.put(MESSAGE_COUNT, count);
-    contentValues.put(STATUS, status);
-    contentValues.put(DELIVERY_RECEIPT_COUNT, deliveryReceiptCount);
-    contentValues.put(READ_RECEIPT_COUNT, readReceiptCount);
-    contentValues.put(EXPIRES_IN, expiresIn);
+    contentValues.put(STATUS, record.getDeliveryStatus());
+    contentValues.put(DELIVERY_RECEIPT_COUNT, record.getDeliveryReceiptCount());
+    contentValues.put(READ_RECEIPT_COUNT, record.getReadReceiptCount());
+    contentValues.put(EXPIRES_IN, record.getExpiresIn());
 
-    if (unarchive) {
-      contentValues.put(ARCHIVED, 0);
-    }
-
-    if (count != getConversationMessageCount(threadId)) {
-      contentValues.put(LAST_SCROLLED, 0);
-    }
-
-    SQLiteDatabase db = databaseHelper.getWritableDatabase();
-    db.update(TABLE_NAME, contentValues, ID + " = ?", new String[] {threadId + ""});
-    notifyConversationListListeners();
+    return contentValues;
   }
 
   public void updateSnippet(long threadId, String snippet, @Nullable Uri attachment, long date, long type, boolean unarchive) {
@@ -376,6 +378,7 @@ public class ThreadDatabase extends Database {
     DatabaseFactory.getSmsDatabase(context).setAllReactionsSeen();
     DatabaseFactory.getMmsDatabase(context).setAllReactionsSeen();
 
+    notifyAllConversationListeners();
     notifyConversationListListeners();
 
     return Util.concatenatedList(smsRecords, mmsRecords);
@@ -952,6 +955,7 @@ public class ThreadDatabase extends Database {
     DatabaseFactory.getMmsDatabase(context).deleteAllThreads();
     DatabaseFactory.getDraftDatabase(context).clearAllDrafts();
     deleteAllThreads();
+    notifyAllConversationListeners();
   }
 
   public long getThreadIdIfExistsFor(@NonNull RecipientId recipientId) {
@@ -1055,36 +1059,37 @@ public class ThreadDatabase extends Database {
     notifyConversationListeners(threadId);
   }
 
-  void updateReadState(long threadId) {
-    ThreadRecord previous    = getThreadRecord(threadId);
-    int          unreadCount = DatabaseFactory.getMmsSmsDatabase(context).getUnreadCount(threadId);
+  /**
+   * Updates the thread after some of its messages were marked read one at a time, by taking them
+   * off the unread count rather than recounting the thread's unread messages.
+   *
+   * @param markedRead How many of those messages were unread before.
+   */
+  void updateReadState(long threadId, int markedRead) {
+    SQLiteDatabase db                    = databaseHelper.getWritableDatabase();
+    RecipientId    forcedUnreadRecipient = null;
 
-    ContentValues contentValues = new ContentValues();
-    contentValues.put(READ, unreadCount == 0 ? ReadStatus.READ.serialize() : ReadStatus.UNREAD.serialize());
-    contentValues.put(UNREAD_COUNT, unreadCount);
+    try (Cursor cursor = db.query(TABLE_NAME, new String[] { READ, RECIPIENT_ID }, ID_WHERE, SqlUtil.buildArgs(threadId), null, null, null)) {
+      if (cursor != null && cursor.moveToFirst() && cursor.getInt(0) == ReadStatus.FORCED_UNREAD.serialize()) {
+        forcedUnreadRecipient = RecipientId.from(cursor.getLong(1));
+      }
+    }
 
-    databaseHelper.getWritableDatabase().update(TABLE_NAME, contentValues, ID_WHERE, SqlUtil.buildArgs(threadId));
+    db.execSQL("UPDATE " + TABLE_NAME + " SET " + UNREAD_COUNT + " = MAX(0, " + UNREAD_COUNT + " - ?), " +
+                   READ + " = CASE WHEN " + UNREAD_COUNT + " - ? > 0 THEN " + ReadStatus.UNREAD.serialize() + " ELSE " + ReadStatus.READ.serialize() + " END " +
+                   "WHERE " + ID + " = ?",
+               new String[] {String.valueOf(markedRead),
+                             String.valueOf(markedRead),
+                             String.valueOf(threadId)});
 
     notifyConversationListListeners();
 
-    if (previous != null && previous.isForcedUnread()) {
-      DatabaseFactory.getRecipientDatabase(context).markNeedsSync(previous.getRecipient().getId());
+    if (forcedUnreadRecipient != null) {
+      DatabaseFactory.getRecipientDatabase(context).markNeedsSync(forcedUnreadRecipient);
       StorageSyncHelper.scheduleSyncForDataChange();
     }
   }
 
-  public void applyStorageSyncUpdate(@NonNull RecipientId recipientId, @NonNull SignalContactRecord record) {
-    applyStorageSyncUpdate(recipientId, record.isArchived(), record.isForcedUnread());
-  }
-
-  public void applyStorageSyncUpdate(@NonNull RecipientId recipientId, @NonNull SignalGroupV1Record record) {
-    applyStorageSyncUpdate(recipientId, record.isArchived(), record.isForcedUnread());
-  }
-
-  public void applyStorageSyncUpdate(@NonNull RecipientId recipientId, @NonNull SignalGroupV2Record record) {
-    applyStorageSyncUpdate(recipientId, record.isArchived(), record.isForcedUnread());
-  }
-
   public void applyStorageSyncUpdate(@NonNull RecipientId recipientId, @NonNull SignalAccountRecord record) {
     SQLiteDatabase db = databaseHelper.getWritableDatabase();
 
@@ -1139,6 +1144,68 @@ public class ThreadDatabase extends Database {
     notifyConversationListListeners();
   }
 
+  /**
+   * Applies the archived and forced-unread state of synced contacts and groups. Thread ids and
+   * unread counts are looked up in bulk, and recipients that don't have a thread are skipped without
+   * further queries.
+   */
+  public void applyStorageSyncUpdates(@NonNull Collection<StorageSyncUpdate> updates) {
+    if (updates.isEmpty()) {
+      return;
+    }
+
+    SQLiteDatabase         db           = databaseHelper.getWritableDatabase();
+    Map<RecipientId, Long> threadIds    = getThreadIdsFor(Stream.of(updates).map(u -> u.recipientId).toList());
+    Map<Long, Integer>     unreadCounts = DatabaseFactory.getMmsSmsDatabase(context).getUnreadCounts(StorageSyncUpdate.getThreadsToCount(updates, threadIds));
+
+    for (StorageSyncUpdate update : updates) {
+      Long threadId = threadIds.get(update.recipientId);
+
+      if (threadId == null) {
+        continue;
+      }
+
+      ContentValues values = new ContentValues();
+      values.put(ARCHIVED, update.archived);
+
+      if (update.forcedUnread) {
+        values.put(READ, ReadStatus.FORCED_UNREAD.serialize());
+      } else {
+        Integer unreadCount = unreadCounts.get(threadId);
+        int     count       = unreadCount != null ? unreadCount : 0;
+
+        values.put(READ, update.getReadStatus(count).serialize());
+        values.put(UNREAD_COUNT, count);
+      }
+
+      db.update(TABLE_NAME, values, ID_WHERE, SqlUtil.buildArgs(threadId));
+    }
+  }
+
+  /**
+   * @return The thread id of each recipient that has a thread.
+   */
+  public @NonNull Map<RecipientId, Long> getThreadIdsFor(@NonNull Collection<RecipientId> recipientIds) {
+    Map<RecipientId, Long> threadIds = new HashMap<>(recipientIds.size());
+
+    if (recipientIds.isEmpty()) {
+      return threadIds;
+    }
+
+    SQLiteDatabase db = databaseHelper.getReadableDatabase();
+
+    for (SqlUtil.Query query : SqlUtil.buildCollectionQueries(RECIPIENT_ID, recipientIds)) {
+      try (Cursor cursor = db.query(TABLE_NAME, new String[] { ID, RECIPIENT_ID }, query.getWhere(), query.getWhereArgs(), null, null, null)) {
+        while (cursor != null && cursor.moveToNext()) {
+          threadIds.put(RecipientId.from(cursor.getLong(cursor.getColumnIndexOrThrow(RECIPIENT_ID))),
+                        cursor.getLong(cursor.getColumnIndexOrThrow(ID)));
+        }
+      }
+    }
+
+    return threadIds;
+  }
+
   private void applyStorageSyncUpdate(@NonNull RecipientId recipientId, boolean archived, boolean forcedUnread) {
     ContentValues values = new ContentValues();
     values.put(ARCHIVED, archived);
@@ -1181,10 +1248,7 @@ public class ThreadDatabase extends Database {
       MessageRecord record;
 
       if (reader != null && (record = reader.getNext()) != null) {
-        updateThread(threadId, count, ThreadBodyUtil.getFormattedBodyFor(context, record), getAttachmentUriFor(record),
-                     getContentTypeFor(record), getExtrasFor(record),
-                     record.getTimestamp(), record.getDeliveryStatus(), record.getDeliveryReceiptCount(),
-                     record.getType(), unarchive, record.getExpiresIn(), record.getReadReceiptCount());
+        updateThread(threadId, count, record, unarchive);
         notifyConversationListListeners();
         return false;
       } else {
@@ -1198,6 +1262,120 @@ public class ThreadDatabase extends Database {
     }
   }
 
+  /**
+   * Updates the thread after a single message was inserted into it. Rather than recounting the
+   * thread and re-querying its snippet like {@link #update(long, boolean)} does, this bumps the count
+   * and only replaces the snippet if the new message is the newest in the thread. Falls back to a
+   * full update when the count can't be adjusted by one.
+   *
+   * The snippet check and the write happen in one transaction, so that a message inserted
+   * concurrently can't be overwritten by an older one that checked first.
+   */
+  void updateForInsertedMessage(@NonNull MessageDatabase messageDatabase, long threadId, long messageId, long dateReceived, boolean unarchive) {
+    SQLiteDatabase db = databaseHelper.getWritableDatabase();
+
+    db.beginTransaction();
+    try {
+      boolean                    countByOne = messageDatabase.changesThreadSummaryCountByOne(threadId, messageId);
+      boolean                    hasNewer   = countByOne && hasSnippetCandidateReceivedAfter(threadId, dateReceived);
+      MessageRecord              record     = null;
+      ThreadSummaryUpdate.Action action;
+
+      if (countByOne && !hasNewer) {
+        try {
+          record = messageDatabase.getMessageRecord(messageId);
+        } catch (NoSuchMessageException e) {
+          Log.w(TAG, "Inserted message is missing. Doing a full update.", e);
+          countByOne = false;
+        }
+      }
+
+      action = ThreadSummaryUpdate.forInsert(dateReceived, countByOne, hasNewer, record != null && isSilentType(record.getType()));
+
+      if (action == ThreadSummaryUpdate.Action.FULL_UPDATE) {
+        update(threadId, unarchive);
+      } else {
+        ContentValues values = action == ThreadSummaryUpdate.Action.INCREMENT_COUNT_AND_REPLACE_SNIPPET ? getSnippetValues(record)
+                                                                                                        : new ContentValues();
+
+        if (unarchive) {
+          values.put(ARCHIVED, 0);
+        }
+
+        adjustMessageCount(threadId, 1, values);
+      }
+
+      db.setTransactionSuccessful();
+    } finally {
+      db.endTransaction();
+    }
+
+    notifyConversationListListeners();
+  }
+
+  /**
+   * Updates the thread after a single message was deleted from it. Unless the message may have
+   * been the snippet, this only takes one off the count.
+   *
+   * @param dateReceived      When the message was received, read before it was deleted.
+   * @param changesCountByOne See {@link MessageDatabase#changesThreadSummaryCountByOne(long, long)},
+   *                          checked before the message was deleted.
+   * @return True if the thread was deleted, like {@link #update(long, boolean, boolean)}.
+   */
+  boolean updateForDeletedMessage(long threadId, long dateReceived, boolean changesCountByOne) {
+    boolean                    hasNewer = dateReceived >= 0 && changesCountByOne && hasSnippetCandidateReceivedAfter(threadId, dateReceived);
+    ThreadSummaryUpdate.Action action   = ThreadSummaryUpdate.forDelete(dateReceived, changesCountByOne, hasNewer);
+
+    if (action == ThreadSummaryUpdate.Action.FULL_UPDATE) {
+      return update(threadId, false, true);
+    }
+
+    adjustMessageCount(threadId, -1, new ContentValues());
+    notifyConversationListListeners();
+
+    return false;
+  }
+
+  /**
+   * Updates the thread after a message changed in a way that doesn't affect the count, like a
+   * receipt or a new delivery status. Only the snippet can show that, so nothing is written unless
+   * the message may be the snippet.
+   *
+   * @param dateReceived When the changed message was received, or -1 if unknown.
+   */
+  void updateForChangedMessage(long threadId, long dateReceived) {
+    boolean hasNewer = dateReceived >= 0 && hasSnippetCandidateReceivedAfter(threadId, dateReceived);
+
+    if (ThreadSummaryUpdate.forChange(dateReceived, hasNewer) == ThreadSummaryUpdate.Action.FULL_UPDATE) {
+      update(threadId, false);
+    }
+  }
+
+  private boolean hasSnippetCandidateReceivedAfter(long threadId, long dateReceived) {
+    return DatabaseFactory.getMmsSmsDatabase(context).hasSnippetCandidateReceivedAfter(threadId, dateReceived);
+  }
+
+  /**
+   * Adjusts the count and writes the other values in a single statement. Any change to the count
+   * resets the last scrolled position, matching {@link #updateThread}.
+   */
+  private void adjustMessageCount(long threadId, int delta, @NonNull ContentValues values) {
+    StringBuilder query = new StringBuilder("UPDATE " + TABLE_NAME + " SET " + MESSAGE_COUNT + " = " + MESSAGE_COUNT + " + ?, " + LAST_SCROLLED + " = 0");
+    List<Object>  args  = new ArrayList<>(values.size() + 2);
+
+    args.add(delta);
+
+    for (String key : values.keySet()) {
+      query.append(", ").append(key).append(" = ?");
+      args.add(values.get(key));
+    }
+
+    query.append(" WHERE ").append(ID).append(" = ?");
+    args.add(threadId);
+
+    databaseHelper.getWritableDatabase().execSQL(query.toString(), args.toArray());
+  }
+
   public @NonNull ThreadRecord getThreadRecordFor(@NonNull Recipient recipient) {
     return Objects.requireNonNull(getThreadRecord(getThreadIdFor(recipient)));
   }
@@ -1642,6 +1820,44 @@ public class ThreadDatabase extends Database {
     }
   }
 
+  public static final class StorageSyncUpdate {
+    private final RecipientId recipientId;
+    private final boolean     archived;
+    private final boolean     forcedUnread;
+
+    public StorageSyncUpdate(@NonNull RecipientId recipientId, boolean archived, boolean forcedUnread) {
+      this.recipientId  = recipientId;
+      this.archived     = archived;
+      this.forcedUnread = forcedUnread;
+    }
+
+    /**
+     * @return The threads whose unread count is needed to apply the updates. Recipients without a
+     *         thread and threads that are forced unread don't need one.
+     */
+    static @NonNull Set<Long> getThreadsToCount(@NonNull Collection<StorageSyncUpdate> updates, @NonNull Map<RecipientId, Long> threadIds) {
+      Set<Long> threadsToCount = new HashSet<>(updates.size());
+
+      for (StorageSyncUpdate update : updates) {
+        Long threadId = threadIds.get(update.recipientId);
+
+        if (threadId != null && !update.forcedUnread) {
+          threadsToCount.add(threadId);
+        }
+      }
+
+      return threadsToCount;
+    }
+
+    @NonNull ReadStatus getReadStatus(int unreadCount) {
+      if (forcedUnread) {
+        return ReadStatus.FORCED_UNREAD;
+      } else {
+        return unreadCount == 0 ? ReadStatus.READ : ReadStatus.UNREAD;
+      }
+    }
+  }
+
   static final class MergeResult {
     final long    threadId;
     final long    previousThreadId;
@@ -0,0 +1,76 @@
+package org.thoughtcrime.securesms.database;
+
+import androidx.annotation.NonNull;
+
+/**
+ * Decides how much of a thread's summary, its message count and snippet, has to be rewritten after
+ * a single message is inserted, deleted or changed. Anything that may touch the snippet row, or
+ * that can't adjust the count by one, falls back to the full recount in
+ * {@link ThreadDatabase#update(long, boolean)}, which also corrects any drift in the count.
+ */
+final class ThreadSummaryUpdate {
+
+  enum Action {
+    /** Recount the thread and re-query its snippet. */
+    FULL_UPDATE,
+    /** Add one to the count and keep the snippet. */
+    INCREMENT_COUNT,
+    /** Add one to the count and make the inserted message the snippet. */
+    INCREMENT_COUNT_AND_REPLACE_SNIPPET,
+    /** Subtract one from the count and keep the snippet. */
+    DECREMENT_COUNT,
+    /** Leave the summary as it is. */
+    NONE
+  }
+
+  private ThreadSummaryUpdate() {}
+
+  /**
+   * @param dateReceived             When the inserted message was received, or -1 if it couldn't be read.
+   * @param changesCountByOne        See {@link MessageDatabase#changesThreadSummaryCountByOne(long, long)}.
+   * @param hasNewerSnippetCandidate True if the thread has a possible snippet received after the
+   *                                 inserted message, which is then not the newest.
+   * @param silent                   True if the inserted message is of a type that is never a snippet.
+   */
+  static @NonNull Action forInsert(long dateReceived, boolean changesCountByOne, boolean hasNewerSnippetCandidate, boolean silent) {
+    if (dateReceived < 0 || !changesCountByOne) {
+      return Action.FULL_UPDATE;
+    }
+
+    if (hasNewerSnippetCandidate || silent) {
+      return Action.INCREMENT_COUNT;
+    }
+
+    return Action.INCREMENT_COUNT_AND_REPLACE_SNIPPET;
+  }
+
+  /**
+   * @param dateReceived             When the deleted message was received, or -1 if it couldn't be read.
+   * @param changesCountByOne        See {@link MessageDatabase#changesThreadSummaryCountByOne(long, long)},
+   *                                 checked before the delete.
+   * @param hasNewerSnippetCandidate True if the thread has a possible snippet received after the
+   *                                 deleted message, which then wasn't the snippet.
+   */
+  static @NonNull Action forDelete(long dateReceived, boolean changesCountByOne, boolean hasNewerSnippetCandidate) {
+    if (dateReceived < 0 || !changesCountByOne || !hasNewerSnippetCandidate) {
+      return Action.FULL_UPDATE;
+    }
+
+    return Action.DECREMENT_COUNT;
+  }
+
+  /**
+   * For changes that don't affect the count, like receipts, delivery status or a remote delete.
+   *
+   * @param dateReceived             When the changed message was received, or -1 if it couldn't be read.
+   * @param hasNewerSnippetCandidate True if the thread has a possible snippet received after the
+   *                                 changed message, which then isn't the snippet.
+   */
+  static @NonNull Action forChange(long dateReceived, boolean hasNewerSnippetCandidate) {
+    if (dateReceived < 0 || !hasNewerSnippetCandidate) {
+      return Action.FULL_UPDATE;
+    }
+
+    return Action.NONE;
+  }
+}
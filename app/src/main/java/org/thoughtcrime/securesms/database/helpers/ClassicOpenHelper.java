@@ -434,6 +434,7 @@ public class ClassicOpenHelper extends SQLiteOpenHelper {
     db.endTransaction();
 
 //    DecryptingQueue.schedulePendingDecrypts(context, masterSecret);
+    ApplicationDependencies.getMessageNotifier().invalidateAllThreads();
     ApplicationDependencies.getMessageNotifier().updateNotification(context);
   }
 
@@ -16,10 +16,14 @@ import androidx.annotation.NonNull;
 
 import com.annimon.stream.Stream;
 import com.bumptech.glide.Glide;
+import com.google.protobuf.InvalidProtocolBufferException;
 
 import net.sqlcipher.database.SQLiteDatabase;
 import net.sqlcipher.database.SQLiteDatabaseHook;
 import net.sqlcipher.database.SQLiteOpenHelper;
+import org.signal.storageservice.protos.groups.Member;
+import org.signal.storageservice.protos.groups.local.DecryptedGroup;
+import org.signal.storageservice.protos.groups.local.DecryptedMember;
 
 import org.thoughtcrime.securesms.contacts.avatars.ContactColorsLegacy;
 import org.thoughtcrime.securesms.database.MentionDatabase;
@@ -31,6 +35,7 @@ import org.thoughtcrime.securesms.storage.StorageSyncHelper;
 import org.thoughtcrime.securesms.crypto.DatabaseSecret;
 import org.thoughtcrime.securesms.crypto.MasterSecret;
 import org.thoughtcrime.securesms.database.AttachmentDatabase;
+import org.thoughtcrime.securesms.database.AttachmentThumbnailDatabase;
 import org.thoughtcrime.securesms.database.DraftDatabase;
 import org.thoughtcrime.securesms.database.GroupDatabase;
 import org.thoughtcrime.securesms.database.GroupReceiptDatabase;
@@ -64,6 +69,7 @@ import org.thoughtcrime.securesms.util.SqlUtil;
 import org.thoughtcrime.securesms.util.TextSecurePreferences;
 import org.thoughtcrime.securesms.util.Triple;
 import org.thoughtcrime.securesms.util.Util;
+import org.whispersystems.signalservice.api.util.UuidUtil;
 
 import java.io.ByteArrayInputStream;
 import java.io.File;
@@ -160,8 +166,11 @@ public class SQLCipherOpenHelper extends SQLiteOpenHelper {
   private static final int GV1_MIGRATION                    = 80;
   private static final int NOTIFIED_TIMESTAMP               = 81;
   private static final int GV1_MIGRATION_LAST_SEEN          = 82;
+  private static final int GROUP_MEMBERSHIP                 = 83;
+  private static final int RECIPIENT_FTS                    = 84;
+  private static final int ATTACHMENT_THUMBNAILS            = 85;
 
-  private static final int    DATABASE_VERSION = 82;
+  private static final int    DATABASE_VERSION = 85;
   private static final String DATABASE_NAME    = "signal.db";
 
   private final Context        context;
@@ -196,6 +205,7 @@ public class SQLCipherOpenHelper extends SQLiteOpenHelper {
     db.execSQL(DraftDatabase.CREATE_TABLE);
     db.execSQL(PushDatabase.CREATE_TABLE);
     db.execSQL(GroupDatabase.CREATE_TABLE);
+    db.execSQL(GroupDatabase.CREATE_MEMBERSHIP_TABLE);
     db.execSQL(RecipientDatabase.CREATE_TABLE);
     db.execSQL(GroupReceiptDatabase.CREATE_TABLE);
     db.execSQL(OneTimePreKeyDatabase.CREATE_TABLE);
@@ -206,7 +216,9 @@ public class SQLCipherOpenHelper extends SQLiteOpenHelper {
     db.execSQL(KeyValueDatabase.CREATE_TABLE);
     db.execSQL(MegaphoneDatabase.CREATE_TABLE);
     db.execSQL(MentionDatabase.CREATE_TABLE);
+    db.execSQL(AttachmentThumbnailDatabase.CREATE_TABLE);
     executeStatements(db, SearchDatabase.CREATE_TABLE);
+    executeStatements(db, RecipientDatabase.CREATE_FTS_TABLE);
     executeStatements(db, JobDatabase.CREATE_TABLE);
     executeStatements(db, RemappedRecordsDatabase.CREATE_TABLE);
 
@@ -1170,6 +1182,79 @@ public class SQLCipherOpenHelper extends SQLiteOpenHelper {
         db.execSQL("ALTER TABLE recipient ADD COLUMN last_gv1_migrate_reminder INTEGER DEFAULT 0");
       }
 
+      if (oldVersion < GROUP_MEMBERSHIP) {
+        db.execSQL("CREATE TABLE group_membership (_id INTEGER PRIMARY KEY, group_id TEXT NOT NULL, recipient_id INTEGER NOT NULL, role INTEGER DEFAULT 0);");
+        db.execSQL("CREATE UNIQUE INDEX IF NOT EXISTS group_membership_group_recipient_index ON group_membership (group_id, recipient_id);");
+        db.execSQL("CREATE INDEX IF NOT EXISTS group_membership_recipient_group_index ON group_membership (recipient_id, group_id);");
+
+        int count = 0;
+        try (Cursor cursor = db.rawQuery("SELECT group_id, members, decrypted_group FROM groups", null)) {
+          while (cursor.moveToNext()) {
+            String groupId = CursorUtil.requireString(cursor, "group_id");
+            String members = CursorUtil.requireString(cursor, "members");
+            byte[] group   = CursorUtil.requireBlob(cursor, "decrypted_group");
+
+            if (TextUtils.isEmpty(members)) {
+              continue;
+            }
+
+            Set<String> admins = new HashSet<>();
+
+            if (group != null) {
+              try {
+                for (DecryptedMember member : DecryptedGroup.parseFrom(group).getMembersList()) {
+                  if (member.getRole() == Member.Role.ADMINISTRATOR) {
+                    try (Cursor recipientCursor = db.rawQuery("SELECT _id FROM recipient WHERE uuid = ?", SqlUtil.buildArgs(UuidUtil.fromByteString(member.getUuid())))) {
+                      if (recipientCursor.moveToFirst()) {
+                        admins.add(recipientCursor.getString(0));
+                      }
+                    }
+                  }
+                }
+              } catch (InvalidProtocolBufferException e) {
+                Log.w(TAG, "Failed to parse group state. Admins will be picked up on the next group update.", e);
+              }
+            }
+
+            for (String recipientId : members.split(",")) {
+              ContentValues values = new ContentValues(3);
+              values.put("group_id", groupId);
+              values.put("recipient_id", recipientId);
+              values.put("role", admins.contains(recipientId) ? 1 : 0);
+
+              if (db.insertWithOnConflict("group_membership", null, values, SQLiteDatabase.CONFLICT_IGNORE) != -1) {
+                count++;
+              }
+            }
+          }
+        }
+
+        Log.i(TAG, "Populated " + count + " group memberships.");
+      }
+
+      if (oldVersion < RECIPIENT_FTS) {
+        long ftsStart = System.currentTimeMillis();
+
+        for (String statement : RecipientDatabase.CREATE_FTS_TABLE) {
+          db.execSQL(statement);
+        }
+
+        db.execSQL(RecipientDatabase.POPULATE_FTS_TABLE);
+
+        Log.i(TAG, "Indexed recipients for search in " + (System.currentTimeMillis() - ftsStart) + " ms.");
+      }
+
+      if (oldVersion < ATTACHMENT_THUMBNAILS) {
+        db.execSQL("CREATE TABLE attachment_thumbnail (_id INTEGER PRIMARY KEY AUTOINCREMENT, " +
+                                                      "data_file TEXT NOT NULL, " +
+                                                      "bucket INTEGER NOT NULL, " +
+                                                      "width INTEGER NOT NULL, " +
+                                                      "height INTEGER NOT NULL, " +
+                                                      "file_path TEXT NOT NULL, " +
+                                                      "file_random BLOB NOT NULL, " +
+                                                      "UNIQUE(data_file, bucket))");
+      }
+
       db.setTransactionSuccessful();
     } finally {
       db.endTransaction();
@@ -167,7 +167,7 @@ public class ApplicationDependencyProvider implements ApplicationDependencies.Pr
 
   @Override
   public @NonNull MessageNotifier provideMessageNotifier() {
-    return new OptimizedMessageNotifier(new DefaultMessageNotifier());
+    return new OptimizedMessageNotifier(new DefaultMessageNotifier(context));
   }
 
   @Override
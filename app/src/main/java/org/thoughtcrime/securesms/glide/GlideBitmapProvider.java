@@ -0,0 +1,33 @@
+package org.thoughtcrime.securesms.glide;
+
+import android.graphics.Bitmap;
+
+import androidx.annotation.NonNull;
+
+import com.bumptech.glide.load.engine.bitmap_recycle.BitmapPool;
+
+import org.signal.glide.BitmapProvider;
+
+/**
+ * Gives the APNG frame decoders their bitmaps from Glide's {@link BitmapPool}, so that the bitmaps
+ * of a stopped sticker are reused by the next one that starts, and count towards the same memory
+ * budget as every other bitmap Glide holds on to.
+ */
+public final class GlideBitmapProvider implements BitmapProvider {
+
+  private final BitmapPool bitmapPool;
+
+  public GlideBitmapProvider(@NonNull BitmapPool bitmapPool) {
+    this.bitmapPool = bitmapPool;
+  }
+
+  @Override
+  public @NonNull Bitmap obtain(int width, int height) {
+    return bitmapPool.get(width, height, Bitmap.Config.ARGB_8888);
+  }
+
+  @Override
+  public void recycle(@NonNull Bitmap bitmap) {
+    bitmapPool.put(bitmap);
+  }
+}
@@ -12,12 +12,27 @@ import org.signal.glide.apng.decode.APNGParser;
 import org.signal.glide.common.io.ByteBufferReader;
 import org.signal.glide.common.loader.ByteBufferLoader;
 import org.signal.glide.common.loader.Loader;
+import org.thoughtcrime.securesms.util.ByteUnit;
+import org.thoughtcrime.securesms.util.Hex;
 
 import java.io.IOException;
 import java.nio.ByteBuffer;
-
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+
+/**
+ * Decodes animated PNGs, such as stickers.
+ * <p>
+ * Decoders are shared between everything that shows the same APNG at the same size, no matter
+ * which model it was loaded from, so that a sticker shown many times is only read and rendered once
+ * per frame. Each drawable copies the shared frame into its own bitmap.
+ */
 public class ApngBufferCacheDecoder implements ResourceDecoder<ByteBuffer, APNGDecoder> {
 
+  private static final long MAX_CACHE_SIZE = ByteUnit.MEGABYTES.toBytes(8);
+
+  private final ReferenceCountedCache<String, APNGDecoder> decoders = new ReferenceCountedCache<>(MAX_CACHE_SIZE);
+
   @Override
   public boolean handles(@NonNull ByteBuffer source, @NonNull Options options) {
     return APNGParser.isAPNG(new ByteBufferReader(source));
@@ -37,16 +52,37 @@ public class ApngBufferCacheDecoder implements ResourceDecoder<ByteBuffer, APNGD
       }
     };
 
-    return new FrameSeqDecoderResource(new APNGDecoder(loader, null), source.limit());
+    String      key     = getKey(source, width, height);
+    APNGDecoder decoder = decoders.acquire(key, source.limit(), () -> new APNGDecoder(loader, null));
+
+    return new FrameSeqDecoderResource(decoders, key, decoder, source.limit());
   }
 
-  private static class FrameSeqDecoderResource implements Resource<APNGDecoder> {
-    private final APNGDecoder decoder;
-    private final int         size;
+  private static @NonNull String getKey(@NonNull ByteBuffer source, int width, int height) {
+    try {
+      MessageDigest digest = MessageDigest.getInstance("SHA-256");
+      ByteBuffer    data   = source.duplicate();
+
+      data.position(0);
+      digest.update(data);
 
-    FrameSeqDecoderResource(@NonNull APNGDecoder decoder, int size) {
-      this.decoder = decoder;
-      this.size    = size;
+      return Hex.toStringCondensed(digest.digest()) + "-" + width + "x" + height;
+    } catch (NoSuchAlgorithmException e) {
+      throw new AssertionError(e);
+    }
+  }
+
+  private static class FrameSeqDecoderResource implements Resource<APNGDecoder> {
+    private final ReferenceCountedCache<String, APNGDecoder> decoders;
+    private final String                                     key;
+    private final APNGDecoder                                decoder;
+    private final int                                        size;
+
+    FrameSeqDecoderResource(@NonNull ReferenceCountedCache<String, APNGDecoder> decoders, @NonNull String key, @NonNull APNGDecoder decoder, int size) {
+      this.decoders = decoders;
+      this.key      = key;
+      this.decoder  = decoder;
+      this.size     = size;
     }
 
     @Override
@@ -66,8 +102,9 @@ public class ApngBufferCacheDecoder implements ResourceDecoder<ByteBuffer, APNGD
 
     @Override
     public void recycle() {
-      this.decoder.stop();
+      if (decoders.release(key)) {
+        this.decoder.stop();
+      }
     }
   }
 }
-
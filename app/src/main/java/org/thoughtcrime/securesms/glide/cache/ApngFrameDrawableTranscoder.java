@@ -31,11 +31,12 @@ public class ApngFrameDrawableTranscoder implements ResourceTranscoder<APNGDecod
 
       @Override
       public int getSize() {
-        return 0;
+        return toTranscode.getSize();
       }
 
       @Override
       public void recycle() {
+        toTranscode.recycle();
       }
 
       @Override
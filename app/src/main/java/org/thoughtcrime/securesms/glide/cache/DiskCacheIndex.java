@@ -0,0 +1,272 @@
+package org.thoughtcrime.securesms.glide.cache;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.TreeSet;
+
+/**
+ * In-memory index of what is in an {@link EncryptedDiskCache}, deciding what to evict and keeping
+ * hit and miss counts.
+ * <p>
+ * Eviction is GreedyDual-Size: each entry has a priority of L + 1 / size in KiB, refreshed when it is
+ * hit, and the entry with the lowest priority goes first. L is raised to the priority of each
+ * evicted entry, so entries that have not been used for a while age out, and large entries age
+ * out sooner than small ones. A grid of small thumbnails therefore survives one large image.
+ */
+final class DiskCacheIndex {
+
+  private final long               maxSize;
+  private final Map<String, Entry> entries  = new HashMap<>();
+  private final TreeSet<Entry>     priority = new TreeSet<>((a, b) -> {
+    int result = Double.compare(a.priority, b.priority);
+    return result != 0 ? result : Long.compare(a.sequence, b.sequence);
+  });
+
+  private double inflation;
+  private long   sequence;
+  private long   size;
+
+  private long hits;
+  private long misses;
+  private long bytesHit;
+  private long bytesWritten;
+  private long evictions;
+  private long bytesEvicted;
+
+  DiskCacheIndex(long maxSize) {
+    this.maxSize = maxSize;
+  }
+
+  /**
+   * Adds entries found on disk, oldest first. Older entries start with lower priorities.
+   *
+   * @return The keys that had to be evicted to fit.
+   */
+  synchronized @NonNull List<String> load(@NonNull List<String> keys, @NonNull List<Long> sizes) {
+    for (int i = 0; i < keys.size(); i++) {
+      Entry entry = new Entry(keys.get(i), sizes.get(i));
+
+      entry.priority = (i + 1) / (double) keys.size() * cost(entry.size);
+      entry.sequence = sequence++;
+
+      add(entry);
+    }
+
+    return trimToSize(null);
+  }
+
+  /**
+   * Looks an entry up, counting a hit or a miss.
+   */
+  synchronized boolean get(@NonNull String key) {
+    Entry entry = entries.get(key);
+
+    if (entry == null) {
+      misses++;
+      return false;
+    }
+
+    priority.remove(entry);
+    entry.priority = inflation + cost(entry.size);
+    entry.sequence = sequence++;
+    priority.add(entry);
+
+    hits++;
+    bytesHit += entry.size;
+    return true;
+  }
+
+  /**
+   * For an entry that was just hit but whose file turned out to be gone, for example because the
+   * system cleared the cache directory. Removes the entry and counts the lookup as a miss.
+   */
+  synchronized void removeMissing(@NonNull String key) {
+    Entry entry = entries.get(key);
+
+    if (entry != null && remove(key)) {
+      hits--;
+      bytesHit -= entry.size;
+      misses++;
+    }
+  }
+
+  synchronized boolean contains(@NonNull String key) {
+    return entries.containsKey(key);
+  }
+
+  /**
+   * Adds or replaces an entry.
+   *
+   * @return The keys that had to be evicted to fit, which never includes the new entry itself.
+   */
+  synchronized @NonNull List<String> put(@NonNull String key, long entrySize) {
+    remove(key);
+
+    Entry entry = new Entry(key, entrySize);
+    entry.priority = inflation + cost(entrySize);
+    entry.sequence = sequence++;
+
+    add(entry);
+    bytesWritten += entrySize;
+
+    return trimToSize(entry);
+  }
+
+  synchronized boolean remove(@NonNull String key) {
+    Entry entry = entries.remove(key);
+
+    if (entry == null) {
+      return false;
+    }
+
+    priority.remove(entry);
+    size -= entry.size;
+    return true;
+  }
+
+  synchronized void clear() {
+    entries.clear();
+    priority.clear();
+    size      = 0;
+    inflation = 0;
+  }
+
+  synchronized long getSize() {
+    return size;
+  }
+
+  synchronized @NonNull Metrics getMetrics() {
+    return new Metrics(entries.size(), size, hits, misses, bytesHit, bytesWritten, evictions, bytesEvicted);
+  }
+
+  private void add(@NonNull Entry entry) {
+    entries.put(entry.key, entry);
+    priority.add(entry);
+    size += entry.size;
+  }
+
+  /**
+   * Evicts the lowest priority entries until the cache fits, other than the one to keep, which may
+   * be larger than the whole cache on its own.
+   */
+  private @NonNull List<String> trimToSize(@Nullable Entry keep) {
+    if (size <= maxSize) {
+      return Collections.emptyList();
+    }
+
+    List<String>    evicted  = new ArrayList<>();
+    Iterator<Entry> iterator = priority.iterator();
+
+    while (size > maxSize && iterator.hasNext()) {
+      Entry victim = iterator.next();
+
+      if (victim == keep) {
+        continue;
+      }
+
+      iterator.remove();
+      entries.remove(victim.key);
+      size      -= victim.size;
+      inflation  = Math.max(inflation, victim.priority);
+
+      evictions++;
+      bytesEvicted += victim.size;
+      evicted.add(victim.key);
+    }
+
+    return evicted;
+  }
+
+  /**
+   * Measured in KiB so that priorities stay well apart for typical entry sizes.
+   */
+  private static double cost(long size) {
+    return 1024d / Math.max(1, size);
+  }
+
+  private static final class Entry {
+    private final String key;
+    private final long   size;
+
+    private double priority;
+    private long   sequence;
+
+    private Entry(@NonNull String key, long size) {
+      this.key  = key;
+      this.size = size;
+    }
+  }
+
+  static final class Metrics {
+    private final int  entryCount;
+    private final long size;
+    private final long hits;
+    private final long misses;
+    private final long bytesHit;
+    private final long bytesWritten;
+    private final long evictions;
+    private final long bytesEvicted;
+
+    private Metrics(int entryCount, long size, long hits, long misses, long bytesHit, long bytesWritten, long evictions, long bytesEvicted) {
+      this.entryCount   = entryCount;
+      this.size         = size;
+      this.hits         = hits;
+      this.misses       = misses;
+      this.bytesHit     = bytesHit;
+      this.bytesWritten = bytesWritten;
+      this.evictions    = evictions;
+      this.bytesEvicted = bytesEvicted;
+    }
+
+    int getEntryCount() {
+      return entryCount;
+    }
+
+    long getSize() {
+      return size;
+    }
+
+    long getHits() {
+      return hits;
+    }
+
+    long getMisses() {
+      return misses;
+    }
+
+    long getBytesHit() {
+      return bytesHit;
+    }
+
+    long getBytesWritten() {
+      return bytesWritten;
+    }
+
+    long getEvictions() {
+      return evictions;
+    }
+
+    long getBytesEvicted() {
+      return bytesEvicted;
+    }
+
+    double getHitRate() {
+      return hits + misses > 0 ? hits / (double) (hits + misses) : 0;
+    }
+
+    @Override
+    public @NonNull String toString() {
+      return String.format(Locale.US,
+                           "entries: %d, size: %d kB, hits: %d, misses: %d (%.1f%% hit rate), hit: %d kB, written: %d kB, evictions: %d (%d kB)",
+                           entryCount, size / 1024, hits, misses, getHitRate() * 100, bytesHit / 1024, bytesWritten / 1024, evictions, bytesEvicted / 1024);
+    }
+  }
+}
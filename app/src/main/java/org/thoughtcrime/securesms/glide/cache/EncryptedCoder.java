@@ -3,8 +3,11 @@ package org.thoughtcrime.securesms.glide.cache;
 
 import androidx.annotation.NonNull;
 
+import org.thoughtcrime.securesms.crypto.DerivedKeyCache;
 import org.thoughtcrime.securesms.util.Util;
 
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
 import java.io.File;
 import java.io.FileInputStream;
 import java.io.FileOutputStream;
@@ -19,7 +22,6 @@ import java.security.NoSuchAlgorithmException;
 import javax.crypto.Cipher;
 import javax.crypto.CipherInputStream;
 import javax.crypto.CipherOutputStream;
-import javax.crypto.Mac;
 import javax.crypto.NoSuchPaddingException;
 import javax.crypto.spec.IvParameterSpec;
 import javax.crypto.spec.SecretKeySpec;
@@ -31,17 +33,20 @@ class EncryptedCoder {
                                        (byte)0xe5, (byte)0xb1, (byte)0x1b, (byte)0xd7,
                                        (byte)0x29, (byte)0xe5, (byte)0x04, (byte)0xcc};
 
+  /**
+   * The cipher streams read and write in small pieces, so buffer the file underneath them.
+   */
+  private static final int BUFFER_SIZE = 8192;
+
   OutputStream createEncryptedOutputStream(@NonNull byte[] masterKey, @NonNull File file)
       throws IOException
   {
     try {
       byte[] random = Util.getSecretBytes(32);
-      Mac    mac    = Mac.getInstance("HmacSHA256");
-      mac.init(new SecretKeySpec(masterKey, "HmacSHA256"));
+      byte[] key    = DerivedKeyCache.getInstance().getKey(masterKey, random);
 
-      FileOutputStream fileOutputStream = new FileOutputStream(file);
-      byte[]           iv               = new byte[16];
-      byte[]           key              = mac.doFinal(random);
+      OutputStream fileOutputStream = new BufferedOutputStream(new FileOutputStream(file), BUFFER_SIZE);
+      byte[]       iv               = new byte[16];
 
       Cipher cipher = Cipher.getInstance("AES/CTR/NoPadding");
       cipher.init(Cipher.ENCRYPT_MODE, new SecretKeySpec(key, "AES"), new IvParameterSpec(iv));
@@ -60,13 +65,10 @@ class EncryptedCoder {
 
   CipherInputStream createEncryptedInputStream(@NonNull byte[] masterKey, @NonNull File file) throws IOException {
     try {
-      Mac    mac    = Mac.getInstance("HmacSHA256");
-      mac.init(new SecretKeySpec(masterKey, "HmacSHA256"));
-
-      FileInputStream fileInputStream     = new FileInputStream(file);
-      byte[]          theirMagic          = new byte[MAGIC_BYTES.length];
-      byte[]          theirRandom         = new byte[32];
-      byte[]          theirEncryptedMagic = new byte[MAGIC_BYTES.length];
+      InputStream fileInputStream     = new BufferedInputStream(new FileInputStream(file), BUFFER_SIZE);
+      byte[]      theirMagic          = new byte[MAGIC_BYTES.length];
+      byte[]      theirRandom         = new byte[32];
+      byte[]      theirEncryptedMagic = new byte[MAGIC_BYTES.length];
 
       Util.readFully(fileInputStream, theirMagic);
       Util.readFully(fileInputStream, theirRandom);
@@ -76,7 +78,7 @@ class EncryptedCoder {
       }
 
       byte[] iv  = new byte[16];
-      byte[] key = mac.doFinal(theirRandom);
+      byte[] key = DerivedKeyCache.getInstance().getKey(masterKey, theirRandom);
 
       Cipher cipher = Cipher.getInstance("AES/CTR/NoPadding");
       cipher.init(Cipher.DECRYPT_MODE, new SecretKeySpec(key, "AES"), new IvParameterSpec(iv));
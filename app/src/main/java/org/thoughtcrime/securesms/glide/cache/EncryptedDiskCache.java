@@ -0,0 +1,238 @@
+package org.thoughtcrime.securesms.glide.cache;
+
+import android.content.Context;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+
+import com.bumptech.glide.load.Key;
+import com.bumptech.glide.load.engine.cache.DiskCache;
+import com.bumptech.glide.load.engine.cache.SafeKeyGenerator;
+
+import org.thoughtcrime.securesms.logging.Log;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Glide's disk cache, holding files written by the encrypted cache encoders.
+ * <p>
+ * Unlike Glide's default cache, what is in the cache is kept in an in-memory
+ * {@link DiskCacheIndex}, built from one directory listing per segment when the cache is first
+ * used. Misses then don't touch the file system at all, and eviction considers entry size as well
+ * as recency. A hit still checks that the file exists, since the system may delete cache files
+ * behind the index's back. Entries are spread over a fixed set of segment directories so that no
+ * one directory grows too large.
+ * <p>
+ * Hit, miss and byte counts are logged periodically.
+ */
+public final class EncryptedDiskCache implements DiskCache {
+
+  private static final String TAG = Log.tag(EncryptedDiskCache.class);
+
+  private static final String DIRECTORY            = "encrypted_glide_cache";
+  private static final String TEMP_SUFFIX          = ".tmp";
+  private static final int    METRICS_LOG_INTERVAL = 1000;
+
+  private final File             directory;
+  private final long             maxSize;
+  private final SafeKeyGenerator safeKeyGenerator = new SafeKeyGenerator();
+  private final AtomicLong       tempCounter      = new AtomicLong();
+  private final AtomicLong       lookups          = new AtomicLong();
+
+  private DiskCacheIndex index;
+
+  EncryptedDiskCache(@NonNull File directory, long maxSize) {
+    this.directory = directory;
+    this.maxSize   = maxSize;
+  }
+
+  @Override
+  public @Nullable File get(@NonNull Key key) {
+    String  safeKey = safeKeyGenerator.getSafeKey(key);
+    boolean hit     = getIndex().get(safeKey);
+
+    if (lookups.incrementAndGet() % METRICS_LOG_INTERVAL == 0) {
+      Log.i(TAG, getIndex().getMetrics().toString());
+    }
+
+    if (!hit) {
+      return null;
+    }
+
+    File file = getFile(safeKey);
+
+    if (!file.exists()) {
+      Log.w(TAG, "Indexed entry is missing from disk");
+      getIndex().removeMissing(safeKey);
+      return null;
+    }
+
+    return file;
+  }
+
+  @Override
+  public void put(@NonNull Key key, @NonNull Writer writer) {
+    String safeKey = safeKeyGenerator.getSafeKey(key);
+
+    File file = getFile(safeKey);
+
+    if (getIndex().contains(safeKey) && file.exists()) {
+      return;
+    }
+
+    File tempFile = new File(file.getParentFile(), safeKey + "." + tempCounter.incrementAndGet() + TEMP_SUFFIX);
+
+    try {
+      if (!file.getParentFile().exists() && !file.getParentFile().mkdirs()) {
+        Log.w(TAG, "Unable to create segment directory");
+        return;
+      }
+
+      if (!writer.write(tempFile)) {
+        return;
+      }
+
+      long size = tempFile.length();
+
+      if (!tempFile.renameTo(file)) {
+        Log.w(TAG, "Unable to move cache entry into place");
+        return;
+      }
+
+      for (String evicted : getIndex().put(safeKey, size)) {
+        deleteFile(getFile(evicted));
+      }
+    } finally {
+      if (tempFile.exists()) {
+        deleteFile(tempFile);
+      }
+    }
+  }
+
+  @Override
+  public void delete(@NonNull Key key) {
+    String safeKey = safeKeyGenerator.getSafeKey(key);
+
+    getIndex().remove(safeKey);
+    deleteFile(getFile(safeKey));
+  }
+
+  @Override
+  public synchronized void clear() {
+    getIndex().clear();
+
+    for (File segment : listFiles(directory)) {
+      for (File file : listFiles(segment)) {
+        deleteFile(file);
+      }
+    }
+  }
+
+  @NonNull DiskCacheIndex.Metrics getMetrics() {
+    return getIndex().getMetrics();
+  }
+
+  private synchronized @NonNull DiskCacheIndex getIndex() {
+    if (index == null) {
+      index = loadIndex();
+    }
+    return index;
+  }
+
+  /**
+   * Segments are named by the first character of the hex keys within them.
+   */
+  private @NonNull File getFile(@NonNull String safeKey) {
+    return new File(new File(directory, safeKey.substring(0, 1)), safeKey);
+  }
+
+  private @NonNull DiskCacheIndex loadIndex() {
+    long       startTime = System.currentTimeMillis();
+    List<File> files     = new ArrayList<>();
+
+    for (File segment : listFiles(directory)) {
+      for (File file : listFiles(segment)) {
+        if (file.getName().endsWith(TEMP_SUFFIX)) {
+          deleteFile(file);
+        } else {
+          files.add(file);
+        }
+      }
+    }
+
+    int          count        = files.size();
+    long[]       lastModified = new long[count];
+    Integer[]    byAge        = new Integer[count];
+    List<String> keys         = new ArrayList<>(count);
+    List<Long>   sizes        = new ArrayList<>(count);
+
+    for (int i = 0; i < count; i++) {
+      lastModified[i] = files.get(i).lastModified();
+      byAge[i]        = i;
+    }
+
+    Arrays.sort(byAge, (a, b) -> Long.compare(lastModified[a], lastModified[b]));
+
+    for (int i : byAge) {
+      keys.add(files.get(i).getName());
+      sizes.add(files.get(i).length());
+    }
+
+    DiskCacheIndex loaded = new DiskCacheIndex(maxSize);
+
+    for (String evicted : loaded.load(keys, sizes)) {
+      deleteFile(getFile(evicted));
+    }
+
+    Log.i(TAG, "Indexed " + count + " entries (" + loaded.getSize() / 1024 + " kB) in " + (System.currentTimeMillis() - startTime) + " ms");
+
+    return loaded;
+  }
+
+  private static @NonNull File[] listFiles(@NonNull File directory) {
+    File[] files = directory.listFiles();
+    return files != null ? files : new File[0];
+  }
+
+  private static void deleteFile(@NonNull File file) {
+    if (!file.delete() && file.exists()) {
+      Log.w(TAG, "Unable to delete " + file.getName());
+    }
+  }
+
+  public static final class Factory implements DiskCache.Factory {
+
+    private final Context context;
+
+    public Factory(@NonNull Context context) {
+      this.context = context.getApplicationContext();
+    }
+
+    @Override
+    public @Nullable DiskCache build() {
+      deleteLegacyCache(new File(context.getCacheDir(), DiskCache.Factory.DEFAULT_DISK_CACHE_DIR));
+
+      return new EncryptedDiskCache(new File(context.getCacheDir(), DIRECTORY), DiskCache.Factory.DEFAULT_DISK_CACHE_SIZE);
+    }
+
+    /**
+     * Entries in Glide's own cache are encrypted the same way, but are named differently and would
+     * never be found or evicted.
+     */
+    private static void deleteLegacyCache(@NonNull File legacyDirectory) {
+      if (!legacyDirectory.exists()) {
+        return;
+      }
+
+      for (File file : listFiles(legacyDirectory)) {
+        deleteFile(file);
+      }
+
+      deleteFile(legacyDirectory);
+    }
+  }
+}
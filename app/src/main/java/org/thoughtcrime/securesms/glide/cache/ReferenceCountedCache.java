@@ -0,0 +1,120 @@
+package org.thoughtcrime.securesms.glide.cache;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashSet;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Hands out one shared value per key for as long as something holds a reference to it.
+ * <p>
+ * Values that are no longer referenced are kept around, so that a value that is asked for again
+ * shortly after doesn't have to be created again, until the total size of all values goes over the
+ * budget. Then the idle values are dropped, the ones that have been idle the longest first. Values
+ * that are referenced are never dropped.
+ */
+final class ReferenceCountedCache<K, V> {
+
+  private final long             maxSize;
+  private final Map<K, Entry<V>> entries = new HashMap<>();
+  private final Set<K>           idle    = new LinkedHashSet<>();
+
+  private long size;
+
+  ReferenceCountedCache(long maxSize) {
+    this.maxSize = maxSize;
+  }
+
+  /**
+   * Takes a reference to the value for the key, creating it if there is none.
+   *
+   * @param size The size of the value if it has to be created.
+   */
+  synchronized @NonNull V acquire(@NonNull K key, long size, @NonNull Factory<V> factory) {
+    Entry<V> entry = entries.get(key);
+
+    if (entry == null) {
+      entry = new Entry<>(factory.create(), size);
+
+      entries.put(key, entry);
+      this.size += size;
+    } else if (entry.references == 0) {
+      idle.remove(key);
+    }
+
+    entry.references++;
+
+    trimToSize();
+
+    return entry.value;
+  }
+
+  /**
+   * Gives up a reference taken with {@link #acquire(Object, long, Factory)}.
+   *
+   * @return True if nothing references the value anymore.
+   */
+  synchronized boolean release(@NonNull K key) {
+    Entry<V> entry = entries.get(key);
+
+    if (entry == null || entry.references == 0) {
+      throw new IllegalStateException("Released a value that is not referenced");
+    }
+
+    entry.references--;
+
+    if (entry.references > 0) {
+      return false;
+    }
+
+    idle.add(key);
+    trimToSize();
+
+    return true;
+  }
+
+  synchronized @Nullable V get(@NonNull K key) {
+    Entry<V> entry = entries.get(key);
+    return entry != null ? entry.value : null;
+  }
+
+  synchronized int getReferenceCount(@NonNull K key) {
+    Entry<V> entry = entries.get(key);
+    return entry != null ? entry.references : 0;
+  }
+
+  synchronized long getSize() {
+    return size;
+  }
+
+  private void trimToSize() {
+    Iterator<K> iterator = idle.iterator();
+
+    while (size > maxSize && iterator.hasNext()) {
+      Entry<V> entry = entries.remove(iterator.next());
+
+      iterator.remove();
+      size -= entry.size;
+    }
+  }
+
+  interface Factory<V> {
+    @NonNull V create();
+  }
+
+  private static final class Entry<V> {
+    private final V    value;
+    private final long size;
+
+    private int references;
+
+    private Entry(@NonNull V value, long size) {
+      this.value = value;
+      this.size  = size;
+    }
+  }
+}
@@ -0,0 +1,131 @@
+package org.thoughtcrime.securesms.groups.v2.processing;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+
+import org.signal.storageservice.protos.groups.local.DecryptedGroup;
+
+import java.io.IOException;
+import java.util.Collection;
+
+/**
+ * Advances the local group state through the server history a page at a time, fetching further
+ * pages only as they are needed to reach the requested revision, so a long history is never held
+ * in memory all at once.
+ *
+ * Each page is committed on its own. Work that follows from the new state, like downloading a new
+ * avatar, is started for whatever was committed, even if a later page fails to load.
+ */
+final class GroupHistoryApplier {
+
+  static final int NO_REMAINING_REVISION = -1;
+
+  private final PageSource pageSource;
+  private final PageWriter pageWriter;
+  private final FollowUp   followUp;
+
+  GroupHistoryApplier(@NonNull PageSource pageSource, @NonNull PageWriter pageWriter, @NonNull FollowUp followUp) {
+    this.pageSource = pageSource;
+    this.pageWriter = pageWriter;
+    this.followUp   = followUp;
+  }
+
+  /**
+   * @param restorePlaceholder True if the local state is a placeholder from a backup restore.
+   * @throws IOException If a page after the first couldn't be loaded. Any pages before it have
+   *                     still been committed.
+   */
+  @NonNull Result apply(@NonNull HistoryPage firstPage, int revision, long timestamp, boolean restorePlaceholder)
+      throws IOException
+  {
+    DecryptedGroup initialState      = firstPage.getGroupState().getLocalState();
+    DecryptedGroup currentState      = initialState;
+    HistoryPage    page              = firstPage;
+    int            remainingRevision = NO_REMAINING_REVISION;
+
+    try {
+      while (true) {
+        GlobalGroupState        inputGroupState         = page.getGroupState();
+        AdvanceGroupStateResult advanceGroupStateResult = GroupStateMapper.partiallyAdvanceGroupState(inputGroupState, revision);
+        GlobalGroupState        remainingWork           = advanceGroupStateResult.getNewGlobalGroupState();
+        DecryptedGroup          newLocalState           = remainingWork.getLocalState();
+
+        if (newLocalState == null) {
+          break;
+        }
+
+        if (newLocalState != inputGroupState.getLocalState()) {
+          timestamp          = pageWriter.write(inputGroupState, newLocalState, advanceGroupStateResult.getProcessedLogEntries(), timestamp, restorePlaceholder);
+          currentState       = newLocalState;
+          restorePlaceholder = false;
+        }
+
+        if (remainingWork.getServerHistory().size() > 0) {
+          remainingRevision = page.hasMore() ? GroupStateMapper.LATEST : remainingWork.getLatestRevisionNumber();
+          break;
+        }
+
+        if (!page.hasMore()) {
+          break;
+        }
+
+        page = pageSource.getPage(page.getNextPageRevision(), currentState);
+      }
+    } finally {
+      if (currentState != null && currentState != initialState) {
+        followUp.onCommitted(initialState, currentState);
+      }
+    }
+
+    return new Result(currentState != initialState ? currentState : null, remainingRevision);
+  }
+
+  interface PageSource {
+    @NonNull HistoryPage getPage(int fromRevision, @Nullable DecryptedGroup localState) throws IOException;
+  }
+
+  interface PageWriter {
+    /**
+     * Writes the new state, its update messages and learned profile keys in a single transaction.
+     *
+     * @return The timestamp to use for the next update message.
+     */
+    long write(@NonNull GlobalGroupState inputGroupState,
+               @NonNull DecryptedGroup newLocalState,
+               @NonNull Collection<LocalGroupLogEntry> processedLogEntries,
+               long timestamp,
+               boolean restorePlaceholder);
+  }
+
+  interface FollowUp {
+    /**
+     * Called once pages have been committed, with the state before the first and after the last.
+     */
+    void onCommitted(@Nullable DecryptedGroup initialState, @NonNull DecryptedGroup currentState);
+  }
+
+  static final class Result {
+    private final DecryptedGroup newState;
+    private final int            remainingRevision;
+
+    private Result(@Nullable DecryptedGroup newState, int remainingRevision) {
+      this.newState          = newState;
+      this.remainingRevision = remainingRevision;
+    }
+
+    /**
+     * @return The state after the last committed page, or null if nothing was committed.
+     */
+    @Nullable DecryptedGroup getNewState() {
+      return newState;
+    }
+
+    /**
+     * @return The revision still to be fetched, possibly {@link GroupStateMapper#LATEST}, or
+     *         {@link #NO_REMAINING_REVISION} if the requested revision was reached.
+     */
+    int getRemainingRevision() {
+      return remainingRevision;
+    }
+  }
+}
@@ -45,6 +45,7 @@ import org.thoughtcrime.securesms.sms.IncomingTextMessage;
 import org.whispersystems.libsignal.util.guava.Optional;
 import org.whispersystems.signalservice.api.groupsv2.DecryptedGroupHistoryEntry;
 import org.whispersystems.signalservice.api.groupsv2.DecryptedGroupUtil;
+import org.whispersystems.signalservice.api.groupsv2.GroupHistoryPage;
 import org.whispersystems.signalservice.api.groupsv2.GroupsV2Api;
 import org.whispersystems.signalservice.api.groupsv2.InvalidGroupStateException;
 import org.whispersystems.signalservice.api.groupsv2.NotAbleToApplyGroupV2ChangeException;
@@ -56,7 +57,7 @@ import java.io.IOException;
 import java.util.ArrayList;
 import java.util.Collection;
 import java.util.Collections;
-import java.util.List;
+import java.util.HashSet;
 import java.util.Locale;
 import java.util.Set;
 import java.util.UUID;
@@ -163,7 +164,7 @@ public final class GroupsV2StateProcessor {
         return new GroupUpdateResult(GroupState.GROUP_CONSISTENT_OR_AHEAD, null);
       }
 
-      GlobalGroupState inputGroupState = null;
+      HistoryPage inputPage = null;
 
       DecryptedGroup localState = groupDatabase.getGroup(groupId)
                                                .transform(g -> g.requireV2GroupProperties().getDecryptedGroup())
@@ -181,30 +182,30 @@ public final class GroupsV2StateProcessor {
             Log.i(TAG, "Applying P2P group change");
             DecryptedGroup newState = DecryptedGroupUtil.apply(localState, signedGroupChange);
 
-            inputGroupState = new GlobalGroupState(localState, Collections.singletonList(new ServerGroupLogEntry(newState, signedGroupChange)));
+            inputPage = HistoryPage.last(new GlobalGroupState(localState, Collections.singletonList(new ServerGroupLogEntry(newState, signedGroupChange))));
           } catch (NotAbleToApplyGroupV2ChangeException e) {
             Log.w(TAG, "Unable to apply P2P group change", e);
           }
         }
       }
 
-      if (inputGroupState == null) {
+      if (inputPage == null) {
         try {
           boolean latestRevisionOnly = revision == LATEST && (localState == null || localState.getRevision() == GroupsV2StateProcessor.RESTORE_PLACEHOLDER_REVISION);
-          inputGroupState = queryServer(localState, latestRevisionOnly);
+          inputPage = queryServer(localState, latestRevisionOnly);
         } catch (GroupNotAMemberException e) {
           if (localState != null && signedGroupChange != null) {
             try {
               Log.i(TAG, "Applying P2P group change when not a member");
               DecryptedGroup newState = DecryptedGroupUtil.applyWithoutRevisionCheck(localState, signedGroupChange);
 
-              inputGroupState = new GlobalGroupState(localState, Collections.singletonList(new ServerGroupLogEntry(newState, signedGroupChange)));
+              inputPage = HistoryPage.last(new GlobalGroupState(localState, Collections.singletonList(new ServerGroupLogEntry(newState, signedGroupChange))));
             } catch (NotAbleToApplyGroupV2ChangeException failed) {
               Log.w(TAG, "Unable to apply P2P group change when not a member", failed);
             }
           }
 
-          if (inputGroupState == null) {
+          if (inputPage == null) {
             if (localState != null && DecryptedGroupUtil.isPendingOrRequesting(localState, Recipient.self().getUuid().get())) {
               Log.w(TAG, "Unable to query server for group " + groupId + " server says we're not in group, but we think we are a pending or requesting member");
             } else {
@@ -218,30 +219,92 @@ public final class GroupsV2StateProcessor {
         Log.i(TAG, "Saved server query for group change");
       }
 
-      AdvanceGroupStateResult advanceGroupStateResult = GroupStateMapper.partiallyAdvanceGroupState(inputGroupState, revision);
-      DecryptedGroup          newLocalState           = advanceGroupStateResult.getNewGlobalGroupState().getLocalState();
+      return applyHistory(inputPage, localState, revision, timestamp);
+    }
+
+    /**
+     * Applies the history a page at a time, fetching further pages only as they are needed to
+     * reach the requested revision. Each page is written in a single transaction, so catching up a
+     * long history neither holds all of it in memory nor writes it one revision at a time.
+     */
+    private @NonNull GroupUpdateResult applyHistory(@NonNull HistoryPage firstPage,
+                                                    @Nullable DecryptedGroup localState,
+                                                    int revision,
+                                                    long timestamp)
+        throws IOException
+    {
+      boolean             restorePlaceholder = localState != null && localState.getRevision() == GroupsV2StateProcessor.RESTORE_PLACEHOLDER_REVISION;
+      Set<RecipientId>    learnedProfileKeys = new HashSet<>();
+      GroupHistoryApplier applier            = new GroupHistoryApplier((fromRevision, currentState) -> getHistoryPage(Recipient.self().requireUuid(), fromRevision, currentState),
+                                                                       (input, newLocalState, entries, pageTimestamp, placeholder) -> applyPage(input, newLocalState, entries, pageTimestamp, placeholder, learnedProfileKeys),
+                                                                       (initialState, currentState) -> onHistoryCommitted(initialState, currentState, learnedProfileKeys));
 
-      if (newLocalState == null || newLocalState == inputGroupState.getLocalState()) {
+      GroupHistoryApplier.Result result   = applier.apply(firstPage, revision, timestamp, restorePlaceholder);
+      DecryptedGroup             newState = result.getNewState();
+
+      if (newState == null) {
         return new GroupUpdateResult(GroupState.GROUP_CONSISTENT_OR_AHEAD, null);
       }
 
-      updateLocalDatabaseGroupState(inputGroupState, newLocalState);
-      determineProfileSharing(inputGroupState, newLocalState);
-      if (localState != null && localState.getRevision() == GroupsV2StateProcessor.RESTORE_PLACEHOLDER_REVISION) {
-        Log.i(TAG, "Inserting single update message for restore placeholder");
-        insertUpdateMessages(timestamp, null, Collections.singleton(new LocalGroupLogEntry(newLocalState, null)));
-      } else {
-        insertUpdateMessages(timestamp, localState, advanceGroupStateResult.getProcessedLogEntries());
+      if (result.getRemainingRevision() != GroupHistoryApplier.NO_REMAINING_REVISION) {
+        int remainingRevision = result.getRemainingRevision();
+
+        Log.i(TAG, String.format(Locale.US, "There are more revisions on the server for this group, scheduling for later, V[%d..%s]", newState.getRevision() + 1, remainingRevision == LATEST ? "latest" : String.valueOf(remainingRevision)));
+        ApplicationDependencies.getJobManager().add(new RequestGroupV2InfoJob(groupId, remainingRevision));
+      }
+
+      return new GroupUpdateResult(GroupState.GROUP_UPDATED, newState);
+    }
+
+    /**
+     * Called with what was committed, even if a later page of history failed to load.
+     */
+    private void onHistoryCommitted(@Nullable DecryptedGroup initialState,
+                                    @NonNull DecryptedGroup currentState,
+                                    @NonNull Set<RecipientId> learnedProfileKeys)
+    {
+      boolean needsAvatarFetch = initialState == null ? !TextUtils.isEmpty(currentState.getAvatar())
+                                                      : !currentState.getAvatar().equals(initialState.getAvatar());
+
+      if (needsAvatarFetch) {
+        jobManager.add(new AvatarGroupsV2DownloadJob(groupId, currentState.getAvatar()));
       }
-      persistLearnedProfileKeys(inputGroupState);
 
-      GlobalGroupState remainingWork = advanceGroupStateResult.getNewGlobalGroupState();
-      if (remainingWork.getServerHistory().size() > 0) {
-        Log.i(TAG, String.format(Locale.US, "There are more revisions on the server for this group, scheduling for later, V[%d..%d]", newLocalState.getRevision() + 1, remainingWork.getLatestRevisionNumber()));
-        ApplicationDependencies.getJobManager().add(new RequestGroupV2InfoJob(groupId, remainingWork.getLatestRevisionNumber()));
+      fetchProfiles(learnedProfileKeys);
+    }
+
+    /**
+     * @return The timestamp to use for the next update message.
+     */
+    private long applyPage(@NonNull GlobalGroupState inputGroupState,
+                           @NonNull DecryptedGroup newLocalState,
+                           @NonNull Collection<LocalGroupLogEntry> processedLogEntries,
+                           long timestamp,
+                           boolean restorePlaceholder,
+                           @NonNull Set<RecipientId> learnedProfileKeys)
+    {
+      MessageDatabase database = DatabaseFactory.getMmsDatabase(context);
+
+      database.beginTransaction();
+      try {
+        updateLocalDatabaseGroupState(inputGroupState, newLocalState);
+        determineProfileSharing(inputGroupState, newLocalState);
+
+        if (restorePlaceholder) {
+          Log.i(TAG, "Inserting single update message for restore placeholder");
+          timestamp = insertUpdateMessages(timestamp, null, Collections.singleton(new LocalGroupLogEntry(newLocalState, null)));
+        } else {
+          timestamp = insertUpdateMessages(timestamp, inputGroupState.getLocalState(), processedLogEntries);
+        }
+
+        learnedProfileKeys.addAll(persistLearnedProfileKeys(inputGroupState));
+
+        database.setTransactionSuccessful();
+      } finally {
+        database.endTransaction();
       }
 
-      return new GroupUpdateResult(GroupState.GROUP_UPDATED, newLocalState);
+      return timestamp;
     }
 
     @WorkerThread
@@ -264,7 +327,8 @@ public final class GroupsV2StateProcessor {
         throws IOException, GroupNotAMemberException, GroupDoesNotExistException
     {
       try {
-        return groupsV2Api.getGroupHistory(groupSecretParams, revision, groupsV2Authorization.getAuthorizationForToday(Recipient.self().requireUuid(), groupSecretParams))
+        return groupsV2Api.getGroupHistoryPage(groupSecretParams, revision, groupsV2Authorization.getAuthorizationForToday(Recipient.self().requireUuid(), groupSecretParams))
+                          .getResults()
                           .get(0)
                           .getGroup()
                           .orNull();
@@ -335,21 +399,11 @@ public final class GroupsV2StateProcessor {
     private void updateLocalDatabaseGroupState(@NonNull GlobalGroupState inputGroupState,
                                                @NonNull DecryptedGroup newLocalState)
     {
-      boolean needsAvatarFetch;
-
       if (inputGroupState.getLocalState() == null) {
         groupDatabase.create(masterKey, newLocalState);
-        needsAvatarFetch = !TextUtils.isEmpty(newLocalState.getAvatar());
       } else {
         groupDatabase.update(masterKey, newLocalState);
-        needsAvatarFetch = !newLocalState.getAvatar().equals(inputGroupState.getLocalState().getAvatar());
       }
-
-      if (needsAvatarFetch) {
-        jobManager.add(new AvatarGroupsV2DownloadJob(groupId, newLocalState.getAvatar()));
-      }
-
-      determineProfileSharing(inputGroupState, newLocalState);
     }
 
     private void determineProfileSharing(@NonNull GlobalGroupState inputGroupState,
@@ -398,7 +452,10 @@ public final class GroupsV2StateProcessor {
       }
     }
 
-    private void insertUpdateMessages(long timestamp,
+    /**
+     * @return The timestamp to use for the next update message.
+     */
+    private long insertUpdateMessages(long timestamp,
                                       @Nullable DecryptedGroup previousGroupState,
                                       Collection<LocalGroupLogEntry> processedLogEntries)
     {
@@ -411,9 +468,11 @@ public final class GroupsV2StateProcessor {
         }
         previousGroupState = entry.getGroup();
       }
+
+      return timestamp;
     }
 
-    private void persistLearnedProfileKeys(@NonNull GlobalGroupState globalGroupState) {
+    private @NonNull Set<RecipientId> persistLearnedProfileKeys(@NonNull GlobalGroupState globalGroupState) {
       final ProfileKeySet profileKeys = new ProfileKeySet();
 
       for (ServerGroupLogEntry entry : globalGroupState.getServerHistory()) {
@@ -425,8 +484,10 @@ public final class GroupsV2StateProcessor {
         }
       }
 
-      Set<RecipientId> updated = recipientDatabase.persistProfileKeySet(profileKeys);
+      return recipientDatabase.persistProfileKeySet(profileKeys);
+    }
 
+    private void fetchProfiles(@NonNull Set<RecipientId> updated) {
       if (!updated.isEmpty()) {
         Log.i(TAG, String.format(Locale.US, "Learned %d new profile keys, fetching profiles", updated.size()));
 
@@ -436,12 +497,11 @@ public final class GroupsV2StateProcessor {
       }
     }
 
-    private @NonNull GlobalGroupState queryServer(@Nullable DecryptedGroup localState, boolean latestOnly)
+    private @NonNull HistoryPage queryServer(@Nullable DecryptedGroup localState, boolean latestOnly)
         throws IOException, GroupNotAMemberException
     {
-      UUID                      selfUuid          = Recipient.self().getUuid().get();
-      DecryptedGroup            latestServerGroup;
-      List<ServerGroupLogEntry> history;
+      UUID           selfUuid          = Recipient.self().getUuid().get();
+      DecryptedGroup latestServerGroup;
 
       try {
         latestServerGroup = groupsV2Api.getGroup(groupSecretParams, groupsV2Authorization.getAuthorizationForToday(selfUuid, groupSecretParams));
@@ -452,28 +512,26 @@ public final class GroupsV2StateProcessor {
       }
 
       if (latestOnly || !GroupProtoUtil.isMember(selfUuid, latestServerGroup.getMembersList())) {
-        history = Collections.singletonList(new ServerGroupLogEntry(latestServerGroup, null));
+        return HistoryPage.last(new GlobalGroupState(localState, Collections.singletonList(new ServerGroupLogEntry(latestServerGroup, null))));
       } else {
         int revisionWeWereAdded = GroupProtoUtil.findRevisionWeWereAdded(latestServerGroup, selfUuid);
         int logsNeededFrom      = localState != null ? Math.max(localState.getRevision(), revisionWeWereAdded) : revisionWeWereAdded;
 
-        history = getFullMemberHistory(selfUuid, logsNeededFrom);
+        return getHistoryPage(selfUuid, logsNeededFrom, localState);
       }
-
-      return new GlobalGroupState(localState, history);
     }
 
-    private List<ServerGroupLogEntry> getFullMemberHistory(@NonNull UUID selfUuid, int logsNeededFromRevision) throws IOException {
+    private @NonNull HistoryPage getHistoryPage(@NonNull UUID selfUuid, int fromRevision, @Nullable DecryptedGroup localState) throws IOException {
       try {
-        Collection<DecryptedGroupHistoryEntry> groupStatesFromRevision = groupsV2Api.getGroupHistory(groupSecretParams, logsNeededFromRevision, groupsV2Authorization.getAuthorizationForToday(selfUuid, groupSecretParams));
-        ArrayList<ServerGroupLogEntry>         history                 = new ArrayList<>(groupStatesFromRevision.size());
-        boolean                                ignoreServerChanges     = SignalStore.internalValues().gv2IgnoreServerChanges();
+        GroupHistoryPage               page                = groupsV2Api.getGroupHistoryPage(groupSecretParams, fromRevision, groupsV2Authorization.getAuthorizationForToday(selfUuid, groupSecretParams));
+        ArrayList<ServerGroupLogEntry> history             = new ArrayList<>(page.getResults().size());
+        boolean                        ignoreServerChanges = SignalStore.internalValues().gv2IgnoreServerChanges();
 
         if (ignoreServerChanges) {
           Log.w(TAG, "Server change logs are ignored by setting");
         }
 
-        for (DecryptedGroupHistoryEntry entry : groupStatesFromRevision) {
+        for (DecryptedGroupHistoryEntry entry : page.getResults()) {
           DecryptedGroup       group  = entry.getGroup().orNull();
           DecryptedGroupChange change = ignoreServerChanges ? null : entry.getChange().orNull();
 
@@ -482,7 +540,9 @@ public final class GroupsV2StateProcessor {
           }
         }
 
-        return history;
+        GlobalGroupState groupState = new GlobalGroupState(localState, history);
+
+        return page.hasMore() ? new HistoryPage(groupState, page.getNextPageRevision()) : HistoryPage.last(groupState);
       } catch (InvalidGroupStateException | VerificationFailedException e) {
         throw new IOException(e);
       }
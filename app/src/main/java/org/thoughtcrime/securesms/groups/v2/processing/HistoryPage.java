@@ -0,0 +1,34 @@
+package org.thoughtcrime.securesms.groups.v2.processing;
+
+import androidx.annotation.NonNull;
+
+/**
+ * A page of history to apply to the local group state, and where the next page starts, if any.
+ */
+final class HistoryPage {
+  private static final int NO_MORE_PAGES = -1;
+
+  private final GlobalGroupState groupState;
+  private final int              nextPageRevision;
+
+  HistoryPage(@NonNull GlobalGroupState groupState, int nextPageRevision) {
+    this.groupState       = groupState;
+    this.nextPageRevision = nextPageRevision;
+  }
+
+  static @NonNull HistoryPage last(@NonNull GlobalGroupState groupState) {
+    return new HistoryPage(groupState, NO_MORE_PAGES);
+  }
+
+  @NonNull GlobalGroupState getGroupState() {
+    return groupState;
+  }
+
+  boolean hasMore() {
+    return nextPageRevision != NO_MORE_PAGES;
+  }
+
+  int getNextPageRevision() {
+    return nextPageRevision;
+  }
+}
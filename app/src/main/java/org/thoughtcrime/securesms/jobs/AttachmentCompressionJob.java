@@ -4,6 +4,10 @@ import android.content.Context;
 import android.media.MediaDataSource;
 
 import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+import androidx.annotation.RequiresApi;
+
+import com.google.android.exoplayer2.util.MimeTypes;
 
 import org.greenrobot.eventbus.EventBus;
 import org.thoughtcrime.securesms.R;
@@ -12,6 +16,7 @@ import org.thoughtcrime.securesms.attachments.AttachmentId;
 import org.thoughtcrime.securesms.attachments.DatabaseAttachment;
 import org.thoughtcrime.securesms.database.AttachmentDatabase;
 import org.thoughtcrime.securesms.database.DatabaseFactory;
+import org.thoughtcrime.securesms.dependencies.ApplicationDependencies;
 import org.thoughtcrime.securesms.events.PartProgressEvent;
 import org.thoughtcrime.securesms.jobmanager.Data;
 import org.thoughtcrime.securesms.jobmanager.Job;
@@ -26,15 +31,20 @@ import org.thoughtcrime.securesms.service.NotificationController;
 import org.thoughtcrime.securesms.transport.UndeliverableMessageException;
 import org.thoughtcrime.securesms.util.BitmapDecodingException;
 import org.thoughtcrime.securesms.util.BitmapUtil;
+import org.thoughtcrime.securesms.util.FeatureFlags;
 import org.thoughtcrime.securesms.util.MediaUtil;
 import org.thoughtcrime.securesms.util.MemoryFileDescriptor.MemoryFileException;
 import org.thoughtcrime.securesms.video.InMemoryTranscoder;
+import org.thoughtcrime.securesms.video.StreamingTranscoder;
+import org.thoughtcrime.securesms.video.TranscodeCheckpoint;
 import org.thoughtcrime.securesms.video.VideoSizeException;
 import org.thoughtcrime.securesms.video.VideoSourceException;
 import org.thoughtcrime.securesms.video.videoconverter.EncodingException;
+import org.thoughtcrime.securesms.video.videoconverter.Mp4FragmentWriter;
 
 import java.io.ByteArrayInputStream;
 import java.io.IOException;
+import java.io.OutputStream;
 import java.util.concurrent.TimeUnit;
 
 public final class AttachmentCompressionJob extends BaseJob {
@@ -117,13 +127,16 @@ public final class AttachmentCompressionJob extends BaseJob {
 
     if (databaseAttachment.getTransformProperties().shouldSkipTransform()) {
       Log.i(TAG, "Skipping at the direction of the TransformProperties.");
-      return;
-    }
+    } else {
+      MediaConstraints mediaConstraints = mms ? MediaConstraints.getMmsMediaConstraints(mmsSubscriptionId)
+                                              : MediaConstraints.getPushMediaConstraints();
 
-    MediaConstraints mediaConstraints = mms ? MediaConstraints.getMmsMediaConstraints(mmsSubscriptionId)
-                                            : MediaConstraints.getPushMediaConstraints();
+      scaleAndStripExif(database, mediaConstraints, databaseAttachment);
+    }
 
-    scaleAndStripExif(database, mediaConstraints, databaseAttachment);
+    if (AttachmentThumbnailJob.canGenerateFor(databaseAttachment)) {
+      ApplicationDependencies.getJobManager().add(new AttachmentThumbnailJob(attachmentId));
+    }
   }
 
   @Override
@@ -141,7 +154,7 @@ public final class AttachmentCompressionJob extends BaseJob {
   {
     try {
       if (MediaUtil.isVideo(attachment)) {
-        attachment = transcodeVideoIfNeededToDatabase(context, attachmentDatabase, attachment, constraints, EventBus.getDefault(), this::isCanceled);
+        attachment = transcodeVideoIfNeededToDatabase(context, attachmentDatabase, attachment, constraints, !mms && FeatureFlags.pipelinedAttachmentUpload(), EventBus.getDefault(), this::isCanceled);
         if (!constraints.isSatisfied(context, attachment)) {
           throw new UndeliverableMessageException("Size constraints could not be met on video!");
         }
@@ -171,6 +184,7 @@ public final class AttachmentCompressionJob extends BaseJob {
                                                                               @NonNull AttachmentDatabase attachmentDatabase,
                                                                               @NonNull DatabaseAttachment attachment,
                                                                               @NonNull MediaConstraints constraints,
+                                                                              boolean pipelineUpload,
                                                                               @NonNull EventBus eventBus,
                                                                               @NonNull InMemoryTranscoder.CancelationSignal cancelationSignal)
       throws UndeliverableMessageException
@@ -202,23 +216,29 @@ public final class AttachmentCompressionJob extends BaseJob {
           options = new InMemoryTranscoder.Options(transformProperties.getVideoTrimStartTimeUs(), transformProperties.getVideoTrimEndTimeUs());
         }
 
-        try (InMemoryTranscoder transcoder = new InMemoryTranscoder(context, dataSource, options, constraints.getCompressedVideoMaxSize(context))) {
+        InMemoryTranscoder.Progress progress = percent -> {
+          notification.setProgress(100, percent);
+          eventBus.postSticky(new PartProgressEvent(attachment,
+                                                    PartProgressEvent.Type.COMPRESSION,
+                                                    100,
+                                                    percent));
+        };
+
+        if (FeatureFlags.streamingVideoTranscode()) {
+          StreamingTranscoder transcoder = new StreamingTranscoder(dataSource, options, constraints.getCompressedVideoMaxSize(context));
+
           if (transcoder.isTranscodeRequired()) {
-            MediaStream mediaStream = transcoder.transcode(percent -> {
-              notification.setProgress(100, percent);
-              eventBus.postSticky(new PartProgressEvent(attachment,
-                                                        PartProgressEvent.Type.COMPRESSION,
-                                                        100,
-                                                        percent));
-            }, cancelationSignal);
-
-            attachmentDatabase.updateAttachmentData(attachment, mediaStream, transformProperties.isVideoEdited());
-            attachmentDatabase.markAttachmentAsTransformed(attachment.getAttachmentId());
-            DatabaseAttachment updatedAttachment = attachmentDatabase.getAttachment(attachment.getAttachmentId());
-            if (updatedAttachment == null) {
-              throw new AssertionError();
+            streamTranscodeToDatabase(context, attachmentDatabase, attachment, transcoder, pipelineUpload, progress, cancelationSignal);
+            return markTransformed(attachmentDatabase, attachment);
+          }
+        } else {
+          try (InMemoryTranscoder transcoder = new InMemoryTranscoder(context, dataSource, options, constraints.getCompressedVideoMaxSize(context))) {
+            if (transcoder.isTranscodeRequired()) {
+              MediaStream mediaStream = transcoder.transcode(progress, cancelationSignal);
+
+              attachmentDatabase.updateAttachmentData(attachment, mediaStream, transformProperties.isVideoEdited());
+              return markTransformed(attachmentDatabase, attachment);
             }
-            return updatedAttachment;
           }
         }
       }
@@ -238,6 +258,111 @@ public final class AttachmentCompressionJob extends BaseJob {
     return attachment;
   }
 
+  private static @NonNull DatabaseAttachment markTransformed(@NonNull AttachmentDatabase attachmentDatabase, @NonNull DatabaseAttachment attachment) {
+    attachmentDatabase.markAttachmentAsTransformed(attachment.getAttachmentId());
+    DatabaseAttachment updatedAttachment = attachmentDatabase.getAttachment(attachment.getAttachmentId());
+    if (updatedAttachment == null) {
+      throw new AssertionError();
+    }
+    return updatedAttachment;
+  }
+
+  /**
+   * Transcodes straight into a new data file for the attachment, checkpointing as it goes. If the
+   * process was killed during an earlier attempt, the transcode carries on from its last checkpoint
+   * where possible, and starts over otherwise.
+   * <p>
+   * When starting over, the attachment can also be uploaded as it is transcoded, see
+   * {@link PipelinedAttachmentUpload}.
+   */
+  @RequiresApi(26)
+  private static void streamTranscodeToDatabase(@NonNull Context context,
+                                                @NonNull AttachmentDatabase attachmentDatabase,
+                                                @NonNull DatabaseAttachment attachment,
+                                                @NonNull StreamingTranscoder transcoder,
+                                                boolean pipelineUpload,
+                                                @NonNull InMemoryTranscoder.Progress progress,
+                                                @NonNull InMemoryTranscoder.CancelationSignal cancelationSignal)
+      throws IOException, MmsException, EncodingException, VideoSizeException
+  {
+    String                            checkpointName = attachment.getAttachmentId().getRowId() + "_" + attachment.getAttachmentId().getUniqueId();
+    TranscodeCheckpoint               checkpoint     = TranscodeCheckpoint.read(context, checkpointName);
+    AttachmentDatabase.DataFileOutput output         = null;
+    PipelinedAttachmentUpload         upload         = null;
+
+    if (checkpoint != null && checkpoint.getSettingsKey().equals(transcoder.getSettingsKey())) {
+      try {
+        output = attachmentDatabase.resumeDataFileOutput(checkpoint.getFile(), checkpoint.getRandom(), checkpoint.getWriterCheckpoint().getLength());
+      } catch (IOException e) {
+        Log.w(TAG, "Unable to reopen checkpointed transcode output", e);
+      }
+    }
+
+    if (checkpoint != null && output == null) {
+      Log.i(TAG, "Discarding checkpointed transcode output");
+      //noinspection ResultOfMethodCallIgnored
+      checkpoint.getFile().delete();
+    }
+
+    try {
+      if (output != null) {
+        try {
+          streamTranscode(context, checkpointName, transcoder, output, checkpoint.getWriterCheckpoint(), null, progress, cancelationSignal);
+        } catch (IOException | EncodingException e) {
+          Log.w(TAG, "Resumed transcode failed, starting over", e);
+          output.delete();
+          output = null;
+        }
+      }
+
+      if (output == null) {
+        output = attachmentDatabase.newDataFileOutput();
+        upload = pipelineUpload ? PipelinedAttachmentUpload.start(cancelationSignal::isCanceled) : null;
+        streamTranscode(context, checkpointName, transcoder, output, null, upload, progress, cancelationSignal);
+      }
+
+      // Forget the checkpoint first, so that its file can't be mistaken for a partial one once attached
+      TranscodeCheckpoint.delete(context, checkpointName);
+
+      attachmentDatabase.updateAttachmentData(attachment, output, MimeTypes.VIDEO_MP4);
+      output = null;
+
+      if (upload != null) {
+        upload.finish(context, attachment.getAttachmentId());
+        upload = null;
+      }
+    } finally {
+      TranscodeCheckpoint.delete(context, checkpointName);
+
+      if (output != null) {
+        output.delete();
+      }
+
+      if (upload != null) {
+        upload.cancel();
+      }
+    }
+  }
+
+  @RequiresApi(26)
+  private static void streamTranscode(@NonNull Context context,
+                                      @NonNull String checkpointName,
+                                      @NonNull StreamingTranscoder transcoder,
+                                      @NonNull AttachmentDatabase.DataFileOutput output,
+                                      @Nullable Mp4FragmentWriter.Checkpoint resumeFrom,
+                                      @Nullable PipelinedAttachmentUpload upload,
+                                      @NonNull InMemoryTranscoder.Progress progress,
+                                      @NonNull InMemoryTranscoder.CancelationSignal cancelationSignal)
+      throws IOException, EncodingException, VideoSizeException
+  {
+    String       settingsKey  = transcoder.getSettingsKey();
+    OutputStream outputStream = upload != null ? upload.tee(output.getOutputStream()) : output.getOutputStream();
+
+    transcoder.transcode(progress, cancelationSignal, outputStream, resumeFrom, checkpoint -> {
+      new TranscodeCheckpoint(output.getFile(), output.getRandom(), settingsKey, checkpoint).write(context, checkpointName);
+    });
+  }
+
   private static MediaStream getResizedMedia(@NonNull Context context,
                                              @NonNull Attachment attachment,
                                              @NonNull MediaConstraints constraints)
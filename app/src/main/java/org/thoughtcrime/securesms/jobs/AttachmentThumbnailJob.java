@@ -0,0 +1,201 @@
+package org.thoughtcrime.securesms.jobs;
+
+import android.graphics.Bitmap;
+import android.os.Build;
+
+import androidx.annotation.NonNull;
+
+import com.bumptech.glide.load.engine.DiskCacheStrategy;
+import com.bumptech.glide.load.resource.bitmap.DownsampleStrategy;
+import com.bumptech.glide.request.target.Target;
+
+import org.thoughtcrime.securesms.attachments.Attachment;
+import org.thoughtcrime.securesms.attachments.AttachmentId;
+import org.thoughtcrime.securesms.attachments.DatabaseAttachment;
+import org.thoughtcrime.securesms.attachments.ThumbnailBuckets;
+import org.thoughtcrime.securesms.database.AttachmentThumbnailDatabase;
+import org.thoughtcrime.securesms.database.DatabaseFactory;
+import org.thoughtcrime.securesms.jobmanager.Data;
+import org.thoughtcrime.securesms.jobmanager.Job;
+import org.thoughtcrime.securesms.logging.Log;
+import org.thoughtcrime.securesms.mms.DecryptableStreamUriLoader.DecryptableUri;
+import org.thoughtcrime.securesms.mms.GlideApp;
+import org.thoughtcrime.securesms.util.MediaUtil;
+
+import java.io.IOException;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Generates the {@link org.thoughtcrime.securesms.attachments.AttachmentThumbnail}s of an image or
+ * video attachment once its data is final, i.e. after it has been downloaded or compressed.
+ * <p>
+ * The attachment is decoded once, at the size of the largest bucket it needs, and the smaller
+ * buckets are scaled down from that.
+ */
+public final class AttachmentThumbnailJob extends BaseJob {
+
+  public static final String KEY = "AttachmentThumbnailJob";
+
+  private static final String TAG = Log.tag(AttachmentThumbnailJob.class);
+
+  private static final String KEY_ROW_ID    = "row_id";
+  private static final String KEY_UNIQUE_ID = "unique_id";
+
+  private final AttachmentId attachmentId;
+
+  public AttachmentThumbnailJob(@NonNull AttachmentId attachmentId) {
+    this(new Parameters.Builder()
+                       .setQueue("ATTACHMENT_THUMBNAIL")
+                       .setLifespan(TimeUnit.DAYS.toMillis(1))
+                       .setMaxAttempts(3)
+                       .build(),
+         attachmentId);
+  }
+
+  private AttachmentThumbnailJob(@NonNull Parameters parameters, @NonNull AttachmentId attachmentId) {
+    super(parameters);
+    this.attachmentId = attachmentId;
+  }
+
+  /**
+   * Stickers and GIFs are left out, as they're displayed animated. Frames can only be taken from
+   * attachment videos from API 23.
+   */
+  public static boolean canGenerateFor(@NonNull Attachment attachment) {
+    if (attachment.isSticker() || MediaUtil.isGif(attachment)) {
+      return false;
+    }
+
+    return MediaUtil.isImage(attachment) || (MediaUtil.isVideo(attachment) && Build.VERSION.SDK_INT >= 23);
+  }
+
+  @Override
+  public @NonNull Data serialize() {
+    return new Data.Builder().putLong(KEY_ROW_ID, attachmentId.getRowId())
+                             .putLong(KEY_UNIQUE_ID, attachmentId.getUniqueId())
+                             .build();
+  }
+
+  @Override
+  public @NonNull String getFactoryKey() {
+    return KEY;
+  }
+
+  @Override
+  public void onRun() throws IOException {
+    DatabaseAttachment          attachment        = DatabaseFactory.getAttachmentDatabase(context).getAttachment(attachmentId);
+    AttachmentThumbnailDatabase thumbnailDatabase = DatabaseFactory.getAttachmentThumbnailDatabase(context);
+
+    if (attachment == null || attachment.getUri() == null || attachment.isInProgress()) {
+      Log.w(TAG, "No attachment data for " + attachmentId);
+      return;
+    }
+
+    if (!canGenerateFor(attachment)) {
+      Log.i(TAG, "No thumbnails for " + attachment.getContentType());
+      return;
+    }
+
+    if (!thumbnailDatabase.getThumbnails(attachmentId).isEmpty()) {
+      Log.i(TAG, "Thumbnails already generated for the data of " + attachmentId);
+      return;
+    }
+
+    String dataFile = thumbnailDatabase.getDataFile(attachmentId);
+
+    if (dataFile == null) {
+      Log.w(TAG, "No attachment data file for " + attachmentId);
+      return;
+    }
+
+    long                    startTime = System.currentTimeMillis();
+    LargestBucketDownsample strategy  = new LargestBucketDownsample();
+    Bitmap                  bitmap;
+
+    try {
+      bitmap = GlideApp.with(context)
+                       .asBitmap()
+                       .load(new DecryptableUri(attachment.getUri()))
+                       .skipMemoryCache(true)
+                       .diskCacheStrategy(DiskCacheStrategy.NONE)
+                       .downsample(strategy)
+                       .dontTransform()
+                       .submit(Target.SIZE_ORIGINAL, Target.SIZE_ORIGINAL)
+                       .get();
+    } catch (InterruptedException | ExecutionException e) {
+      Log.w(TAG, "Unable to decode " + attachmentId + ", not generating thumbnails", e);
+      return;
+    }
+
+    try {
+      List<Integer> buckets = ThumbnailBuckets.getBuckets(strategy.sourceWidth, strategy.sourceHeight);
+
+      for (int bucket : buckets) {
+        float  scale     = ThumbnailBuckets.getScale(strategy.sourceWidth, strategy.sourceHeight, bucket);
+        int    width     = Math.min(bitmap.getWidth(), Math.round(strategy.sourceWidth * scale));
+        int    height    = Math.min(bitmap.getHeight(), Math.round(strategy.sourceHeight * scale));
+        Bitmap thumbnail = width == bitmap.getWidth() && height == bitmap.getHeight() ? bitmap
+                                                                                      : Bitmap.createScaledBitmap(bitmap, width, height, true);
+
+        boolean inserted;
+
+        try {
+          inserted = thumbnailDatabase.insertThumbnail(attachmentId, dataFile, bucket, thumbnail);
+        } finally {
+          if (thumbnail != bitmap) {
+            thumbnail.recycle();
+          }
+        }
+
+        if (!inserted) {
+          return;
+        }
+      }
+
+      Log.i(TAG, "Generated " + buckets.size() + " thumbnail(s) for " + attachmentId + " in " + (System.currentTimeMillis() - startTime) + " ms");
+    } finally {
+      bitmap.recycle();
+    }
+  }
+
+  @Override
+  public void onFailure() {
+  }
+
+  @Override
+  protected boolean onShouldRetry(@NonNull Exception exception) {
+    return exception instanceof IOException;
+  }
+
+  /**
+   * Decodes to the size of the largest thumbnail bucket, without scaling up, and records the size of
+   * the source so that the buckets can be worked out from it.
+   */
+  private static final class LargestBucketDownsample extends DownsampleStrategy {
+
+    private volatile int sourceWidth;
+    private volatile int sourceHeight;
+
+    @Override
+    public float getScaleFactor(int sourceWidth, int sourceHeight, int requestedWidth, int requestedHeight) {
+      this.sourceWidth  = sourceWidth;
+      this.sourceHeight = sourceHeight;
+
+      return ThumbnailBuckets.getScale(sourceWidth, sourceHeight, ThumbnailBuckets.getLargestBucket());
+    }
+
+    @Override
+    public @NonNull SampleSizeRounding getSampleSizeRounding(int sourceWidth, int sourceHeight, int requestedWidth, int requestedHeight) {
+      return SampleSizeRounding.QUALITY;
+    }
+  }
+
+  public static final class Factory implements Job.Factory<AttachmentThumbnailJob> {
+    @Override
+    public @NonNull AttachmentThumbnailJob create(@NonNull Parameters parameters, @NonNull Data data) {
+      return new AttachmentThumbnailJob(parameters, new AttachmentId(data.getLong(KEY_ROW_ID), data.getLong(KEY_UNIQUE_ID)));
+    }
+  }
+}
@@ -44,6 +44,7 @@ import org.whispersystems.libsignal.util.guava.Optional;
 import java.io.IOException;
 import java.io.UnsupportedEncodingException;
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.HashSet;
 import java.util.LinkedList;
 import java.util.List;
@@ -99,6 +100,7 @@ public class MmsDownloadJob extends BaseJob {
   public void onAdded() {
     if (automatic && KeyCachingService.isLocked(context)) {
       DatabaseFactory.getMmsDatabase(context).markIncomingNotificationReceived(threadId);
+      ApplicationDependencies.getMessageNotifier().invalidateThreads(Collections.singleton(threadId));
       ApplicationDependencies.getMessageNotifier().updateNotification(context);
     }
   }
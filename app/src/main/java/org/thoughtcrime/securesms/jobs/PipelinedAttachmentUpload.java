@@ -0,0 +1,153 @@
+package org.thoughtcrime.securesms.jobs;
+
+import android.content.Context;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+
+import org.thoughtcrime.securesms.attachments.Attachment;
+import org.thoughtcrime.securesms.attachments.AttachmentId;
+import org.thoughtcrime.securesms.attachments.DatabaseAttachment;
+import org.thoughtcrime.securesms.attachments.PointerAttachment;
+import org.thoughtcrime.securesms.database.AttachmentDatabase;
+import org.thoughtcrime.securesms.database.DatabaseFactory;
+import org.thoughtcrime.securesms.dependencies.ApplicationDependencies;
+import org.thoughtcrime.securesms.logging.Log;
+import org.thoughtcrime.securesms.mms.PartAuthority;
+import org.thoughtcrime.securesms.util.concurrent.SignalExecutors;
+import org.whispersystems.libsignal.util.guava.Optional;
+import org.whispersystems.signalservice.api.SignalServiceMessageSender;
+import org.whispersystems.signalservice.api.messages.SignalServiceAttachment;
+import org.whispersystems.signalservice.api.messages.SignalServiceAttachmentPointer;
+import org.whispersystems.signalservice.api.messages.SignalServiceAttachmentStream;
+import org.whispersystems.signalservice.internal.push.http.CancelationSignal;
+import org.whispersystems.signalservice.internal.push.http.ResumableUploadSpec;
+import org.whispersystems.signalservice.internal.push.http.StreamingAttachmentUpload;
+
+import java.io.FilterOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+
+/**
+ * Uploads an attachment while it is still being compressed, so that the upload doesn't wait for
+ * compression to finish and the compressed file isn't read back in to be encrypted.
+ * <p>
+ * If the upload falls behind, compression is held back to match. If the upload fails, compression
+ * carries on without it and {@link AttachmentUploadJob} uploads the attachment as usual. When it
+ * succeeds, the upload is recorded against the attachment and {@link AttachmentUploadJob} reuses it.
+ */
+final class PipelinedAttachmentUpload {
+
+  private static final String TAG = Log.tag(PipelinedAttachmentUpload.class);
+
+  private final SignalServiceMessageSender messageSender;
+  private final ResumableUploadSpec        resumableUploadSpec;
+  private final StreamingAttachmentUpload  upload;
+
+  private boolean failed;
+
+  private PipelinedAttachmentUpload(@NonNull SignalServiceMessageSender messageSender,
+                                    @NonNull ResumableUploadSpec resumableUploadSpec,
+                                    @NonNull StreamingAttachmentUpload upload)
+  {
+    this.messageSender       = messageSender;
+    this.resumableUploadSpec = resumableUploadSpec;
+    this.upload              = upload;
+  }
+
+  /**
+   * @return The started upload, or null if it could not be started, e.g. for lack of network.
+   */
+  static @Nullable PipelinedAttachmentUpload start(@NonNull CancelationSignal cancelationSignal) {
+    try {
+      SignalServiceMessageSender messageSender       = ApplicationDependencies.getSignalServiceMessageSender();
+      ResumableUploadSpec        resumableUploadSpec = messageSender.getResumableUploadSpec();
+      StreamingAttachmentUpload  upload              = messageSender.startStreamingAttachmentUpload(resumableUploadSpec, SignalExecutors.UNBOUNDED, cancelationSignal);
+
+      return new PipelinedAttachmentUpload(messageSender, resumableUploadSpec, upload);
+    } catch (IOException e) {
+      Log.w(TAG, "Unable to start pipelined upload, will upload once compressed", e);
+      return null;
+    }
+  }
+
+  /**
+   * @return A stream that writes to the given output, and to the upload for as long as it works.
+   */
+  @NonNull OutputStream tee(@NonNull OutputStream output) {
+    return new FilterOutputStream(output) {
+      @Override
+      public void write(int b) throws IOException {
+        write(new byte[] { (byte) b }, 0, 1);
+      }
+
+      @Override
+      public void write(@NonNull byte[] b, int off, int len) throws IOException {
+        out.write(b, off, len);
+
+        if (!failed) {
+          try {
+            upload.getOutputStream().write(b, off, len);
+          } catch (IOException e) {
+            Log.w(TAG, "Pipelined upload failed, carrying on without it", e);
+            cancel();
+          }
+        }
+      }
+    };
+  }
+
+  /**
+   * Finishes the upload of the now fully compressed attachment.
+   *
+   * @return True if the attachment was uploaded.
+   */
+  boolean finish(@NonNull Context context, @NonNull AttachmentId attachmentId) {
+    if (failed) {
+      return false;
+    }
+
+    AttachmentDatabase database           = DatabaseFactory.getAttachmentDatabase(context);
+    DatabaseAttachment databaseAttachment = database.getAttachment(attachmentId);
+
+    if (databaseAttachment == null || databaseAttachment.getUri() == null) {
+      Log.w(TAG, "Attachment is gone, abandoning pipelined upload");
+      cancel();
+      return false;
+    }
+
+    try (InputStream stream = PartAuthority.getAttachmentStream(context, databaseAttachment.getUri())) {
+      SignalServiceAttachmentStream localAttachment = SignalServiceAttachment.newStreamBuilder()
+                                                                             .withStream(stream)
+                                                                             .withContentType(databaseAttachment.getContentType())
+                                                                             .withLength(databaseAttachment.getSize())
+                                                                             .withFileName(databaseAttachment.getFileName())
+                                                                             .withVoiceNote(databaseAttachment.isVoiceNote())
+                                                                             .withBorderless(databaseAttachment.isBorderless())
+                                                                             .withWidth(databaseAttachment.getWidth())
+                                                                             .withHeight(databaseAttachment.getHeight())
+                                                                             .withUploadTimestamp(System.currentTimeMillis())
+                                                                             .withCaption(databaseAttachment.getCaption())
+                                                                             .withBlurHash(AttachmentUploadJob.getVideoBlurHash(context, databaseAttachment))
+                                                                             .build();
+
+      SignalServiceAttachmentPointer remoteAttachment = messageSender.finishStreamingAttachmentUpload(resumableUploadSpec, upload, localAttachment);
+      Attachment                     attachment       = PointerAttachment.forPointer(Optional.of(remoteAttachment), null, databaseAttachment.getFastPreflightId()).get();
+
+      database.updateAttachmentAfterUpload(attachmentId, attachment, remoteAttachment.getUploadTimestamp());
+
+      Log.i(TAG, "Uploaded " + attachmentId + " while compressing");
+      return true;
+    } catch (IOException e) {
+      Log.w(TAG, "Pipelined upload failed, will upload again", e);
+      cancel();
+      return false;
+    }
+  }
+
+  void cancel() {
+    failed = true;
+    upload.cancel();
+  }
+}
@@ -132,11 +132,13 @@ import java.security.SecureRandom;
 import java.util.ArrayList;
 import java.util.Collection;
 import java.util.Collections;
+import java.util.HashSet;
 import java.util.LinkedList;
 import java.util.List;
 import java.util.Locale;
 import java.util.Map;
 import java.util.Objects;
+import java.util.Set;
 import java.util.concurrent.TimeUnit;
 
 @Trace
@@ -828,6 +830,7 @@ public final class PushProcessMessageJob extends BaseJob {
 
       if (reaction.isRemove()) {
         db.deleteReaction(targetMessage.getId(), reactionAuthor.getId());
+        ApplicationDependencies.getMessageNotifier().invalidateThreads(Collections.singleton(targetMessage.getThreadId()));
         ApplicationDependencies.getMessageNotifier().updateNotification(context);
       } else {
         ReactionRecord reactionRecord = new ReactionRecord(reaction.getEmoji(), reactionAuthor.getId(), message.getTimestamp(), System.currentTimeMillis());
@@ -1025,6 +1028,7 @@ public final class PushProcessMessageJob extends BaseJob {
 
       if (threadId != -1) {
         DatabaseFactory.getThreadDatabase(context).setRead(threadId, true);
+        ApplicationDependencies.getMessageNotifier().invalidateThreads(Collections.singleton(threadId));
         ApplicationDependencies.getMessageNotifier().updateNotification(context);
       }
 
@@ -1075,9 +1079,11 @@ public final class PushProcessMessageJob extends BaseJob {
 
   private void handleSynchronizeReadMessage(@NonNull List<ReadMessage> readMessages, long envelopeTimestamp)
   {
+    Set<Long> threadsUpdated = new HashSet<>();
+
     for (ReadMessage readMessage : readMessages) {
-      List<Pair<Long, Long>> expiringText  = DatabaseFactory.getSmsDatabase(context).setTimestampRead(new SyncMessageId(Recipient.externalPush(context, readMessage.getSender()).getId(), readMessage.getTimestamp()), envelopeTimestamp);
-      List<Pair<Long, Long>> expiringMedia = DatabaseFactory.getMmsDatabase(context).setTimestampRead(new SyncMessageId(Recipient.externalPush(context, readMessage.getSender()).getId(), readMessage.getTimestamp()), envelopeTimestamp);
+      List<Pair<Long, Long>> expiringText  = DatabaseFactory.getSmsDatabase(context).setTimestampRead(new SyncMessageId(Recipient.externalPush(context, readMessage.getSender()).getId(), readMessage.getTimestamp()), envelopeTimestamp, threadsUpdated);
+      List<Pair<Long, Long>> expiringMedia = DatabaseFactory.getMmsDatabase(context).setTimestampRead(new SyncMessageId(Recipient.externalPush(context, readMessage.getSender()).getId(), readMessage.getTimestamp()), envelopeTimestamp, threadsUpdated);
 
       for (Pair<Long, Long> expiringMessage : expiringText) {
         ApplicationContext.getInstance(context)
@@ -1095,6 +1101,7 @@ public final class PushProcessMessageJob extends BaseJob {
     MessageNotifier messageNotifier = ApplicationDependencies.getMessageNotifier();
     messageNotifier.setLastDesktopActivityTimestamp(envelopeTimestamp);
     messageNotifier.cancelDelayedNotifications();
+    messageNotifier.invalidateThreads(threadsUpdated);
     messageNotifier.updateNotification(context);
   }
 
@@ -1105,13 +1112,15 @@ public final class PushProcessMessageJob extends BaseJob {
     long          timestamp = openMessage.getTimestamp();
     MessageRecord record    = DatabaseFactory.getMmsSmsDatabase(context).getMessageFor(timestamp, author);
 
+    MessageNotifier messageNotifier = ApplicationDependencies.getMessageNotifier();
+
     if (record != null && record.isMms()) {
       DatabaseFactory.getAttachmentDatabase(context).deleteAttachmentFilesForViewOnceMessage(record.getId());
+      messageNotifier.invalidateThreads(Collections.singleton(record.getThreadId()));
     } else {
       warn(TAG, String.valueOf(envelopeTimestamp), "Got a view-once open message for a message we don't have!");
     }
 
-    MessageNotifier messageNotifier = ApplicationDependencies.getMessageNotifier();
     messageNotifier.setLastDesktopActivityTimestamp(envelopeTimestamp);
     messageNotifier.cancelDelayedNotifications();
     messageNotifier.updateNotification(context);
@@ -0,0 +1,18 @@
+package org.thoughtcrime.securesms.keyvalue;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.WorkerThread;
+
+import java.util.Collection;
+
+/**
+ * Where {@link KeyValueStore} loads its data from and writes it back to.
+ */
+public interface KeyValuePersistentStorage {
+
+  @WorkerThread
+  void writeDataSet(@NonNull KeyValueDataSet dataSet, @NonNull Collection<String> removes);
+
+  @WorkerThread
+  @NonNull KeyValueDataSet getDataSet();
+}
@@ -3,12 +3,13 @@ package org.thoughtcrime.securesms.keyvalue;
 import android.content.Context;
 
 import androidx.annotation.AnyThread;
+import androidx.annotation.GuardedBy;
 import androidx.annotation.NonNull;
 import androidx.annotation.Nullable;
+import androidx.annotation.VisibleForTesting;
 import androidx.annotation.WorkerThread;
 
 import org.thoughtcrime.securesms.database.DatabaseFactory;
-import org.thoughtcrime.securesms.database.KeyValueDatabase;
 import org.thoughtcrime.securesms.logging.Log;
 import org.thoughtcrime.securesms.logging.SignalUncaughtExceptionHandler;
 import org.thoughtcrime.securesms.util.concurrent.SignalExecutors;
@@ -25,64 +26,71 @@ import java.util.concurrent.ExecutorService;
  *
  * Implemented as a write-through cache that is safe to read and write to on the main thread.
  *
- * Writes are enqueued on a separate executor, but writes are finished up in
- * {@link SignalUncaughtExceptionHandler}, meaning all write should finish barring a native crash
- * or the system killing us unexpectedly (i.e. a force-stop).
+ * The cache is an immutable snapshot that is swapped out on every write, so reads never take a
+ * lock and {@link #beginRead()} doesn't have to copy anything.
+ *
+ * Writes are enqueued on a separate executor, where any that pile up are combined into a single
+ * transaction. Writes are finished up in {@link SignalUncaughtExceptionHandler}, meaning all write
+ * should finish barring a native crash or the system killing us unexpectedly (i.e. a force-stop).
  */
 public final class KeyValueStore implements KeyValueReader {
 
   private static final String TAG = Log.tag(KeyValueStore.class);
 
-  private final ExecutorService  executor;
-  private final KeyValueDatabase database;
+  private final ExecutorService           executor;
+  private final KeyValuePersistentStorage storage;
+
+  /** Never modified once published. */
+  private volatile KeyValueDataSet dataSet;
 
-  private KeyValueDataSet dataSet;
+  @GuardedBy("this") private KeyValueDataSet pendingWrites  = new KeyValueDataSet();
+  @GuardedBy("this") private Set<String>     pendingRemoves = new HashSet<>();
+  @GuardedBy("this") private boolean         flushScheduled;
 
   public KeyValueStore(@NonNull Context context) {
-    this.executor = SignalExecutors.newCachedSingleThreadExecutor("signal-KeyValueStore");
-    this.database = DatabaseFactory.getKeyValueDatabase(context);
+    this(SignalExecutors.newCachedSingleThreadExecutor("signal-KeyValueStore"), DatabaseFactory.getKeyValueDatabase(context));
+  }
+
+  @VisibleForTesting
+  KeyValueStore(@NonNull ExecutorService executor, @NonNull KeyValuePersistentStorage storage) {
+    this.executor = executor;
+    this.storage  = storage;
   }
 
   @AnyThread
   @Override
-  public synchronized byte[] getBlob(@NonNull String key, byte[] defaultValue) {
-    initializeIfNecessary();
-    return dataSet.getBlob(key, defaultValue);
+  public byte[] getBlob(@NonNull String key, byte[] defaultValue) {
+    return getDataSet().getBlob(key, defaultValue);
   }
 
   @AnyThread
   @Override
-  public synchronized boolean getBoolean(@NonNull String key, boolean defaultValue) {
-    initializeIfNecessary();
-    return dataSet.getBoolean(key, defaultValue);
+  public boolean getBoolean(@NonNull String key, boolean defaultValue) {
+    return getDataSet().getBoolean(key, defaultValue);
   }
 
   @AnyThread
   @Override
-  public synchronized float getFloat(@NonNull String key, float defaultValue) {
-    initializeIfNecessary();
-    return dataSet.getFloat(key, defaultValue);
+  public float getFloat(@NonNull String key, float defaultValue) {
+    return getDataSet().getFloat(key, defaultValue);
   }
 
   @AnyThread
   @Override
-  public synchronized int getInteger(@NonNull String key, int defaultValue) {
-    initializeIfNecessary();
-    return dataSet.getInteger(key, defaultValue);
+  public int getInteger(@NonNull String key, int defaultValue) {
+    return getDataSet().getInteger(key, defaultValue);
   }
 
   @AnyThread
   @Override
-  public synchronized long getLong(@NonNull String key, long defaultValue) {
-    initializeIfNecessary();
-    return dataSet.getLong(key, defaultValue);
+  public long getLong(@NonNull String key, long defaultValue) {
+    return getDataSet().getLong(key, defaultValue);
   }
 
   @AnyThread
   @Override
-  public synchronized String getString(@NonNull String key, String defaultValue) {
-    initializeIfNecessary();
-    return dataSet.getString(key, defaultValue);
+  public String getString(@NonNull String key, String defaultValue) {
+    return getDataSet().getString(key, defaultValue);
   }
 
   /**
@@ -100,20 +108,24 @@ public final class KeyValueStore implements KeyValueReader {
    *         efficient to use the various get* methods instead.
    */
   @AnyThread
-  synchronized @NonNull KeyValueReader beginRead() {
-    initializeIfNecessary();
-
-    KeyValueDataSet copy = new KeyValueDataSet();
-    copy.putAll(dataSet);
+  @NonNull KeyValueReader beginRead() {
+    return getDataSet();
+  }
 
-    return copy;
+  /**
+   * Loads the store from disk, so that the first read doesn't have to. Meant to be called off the
+   * main thread early in app startup.
+   */
+  @WorkerThread
+  void warm() {
+    getDataSet();
   }
 
   /**
    * Ensures that any pending writes (such as those made via {@link Writer#apply()}) are finished.
    */
   @AnyThread
-  synchronized void blockUntilAllWritesFinished() {
+  void blockUntilAllWritesFinished() {
     CountDownLatch latch = new CountDownLatch(1);
 
     executor.execute(latch::countDown);
@@ -125,21 +137,57 @@ public final class KeyValueStore implements KeyValueReader {
     }
   }
 
-
   private synchronized void write(@NonNull KeyValueDataSet newDataSet, @NonNull Collection<String> removes) {
-    initializeIfNecessary();
+    KeyValueDataSet updated = new KeyValueDataSet();
+    updated.putAll(getDataSet());
+    updated.putAll(newDataSet);
+    updated.removeAll(removes);
 
-    dataSet.putAll(newDataSet);
-    dataSet.removeAll(removes);
+    dataSet = updated;
 
-    executor.execute(() -> database.writeDataSet(newDataSet, removes));
+    pendingRemoves.removeAll(newDataSet.getValues().keySet());
+    pendingRemoves.addAll(removes);
+    pendingWrites.putAll(newDataSet);
+    pendingWrites.removeAll(removes);
+
+    if (!flushScheduled) {
+      flushScheduled = true;
+      executor.execute(this::flush);
+    }
   }
 
-  private void initializeIfNecessary() {
-    if (dataSet != null) return;
-    this.dataSet = database.getDataSet();
+  /**
+   * Writes everything that has been applied since the last flush in one transaction.
+   */
+  private void flush() {
+    KeyValueDataSet writes;
+    Set<String>     removes;
+
+    synchronized (this) {
+      writes         = pendingWrites;
+      removes        = pendingRemoves;
+      pendingWrites  = new KeyValueDataSet();
+      pendingRemoves = new HashSet<>();
+      flushScheduled = false;
+    }
+
+    storage.writeDataSet(writes, removes);
   }
 
+  private @NonNull KeyValueDataSet getDataSet() {
+    KeyValueDataSet snapshot = dataSet;
+
+    if (snapshot != null) {
+      return snapshot;
+    }
+
+    synchronized (this) {
+      if (dataSet == null) {
+        dataSet = storage.getDataSet();
+      }
+      return dataSet;
+    }
+  }
   class Writer {
     private final KeyValueDataSet dataSet = new KeyValueDataSet();
     private final Set<String>     removes = new HashSet<>();
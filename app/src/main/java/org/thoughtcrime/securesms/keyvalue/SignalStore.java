@@ -1,6 +1,7 @@
 package org.thoughtcrime.securesms.keyvalue;
 
 import androidx.annotation.NonNull;
+import androidx.annotation.WorkerThread;
 import androidx.preference.PreferenceDataStore;
 
 import org.thoughtcrime.securesms.dependencies.ApplicationDependencies;
@@ -60,6 +61,14 @@ public final class SignalStore {
     phoneNumberPrivacy().onFirstEverAppLaunch();
   }
 
+  /**
+   * Loads the store ahead of its first use. Should be called off the main thread.
+   */
+  @WorkerThread
+  public static void warm() {
+    getStore().warm();
+  }
+
   public static @NonNull KbsValues kbsValues() {
     return INSTANCE.kbsValues;
   }
@@ -27,18 +27,24 @@ import javax.crypto.spec.SecretKeySpec;
 
 class LogFile {
 
+  /**
+   * Writes a sequence of records, each consisting of a random IV, a 4-byte length and the
+   * AES-CBC ciphertext. A record may hold several newline-separated log lines, which lets the
+   * caller encrypt in large blocks while staying readable by {@link Reader}.
+   */
   public static class Writer {
 
     private final byte[]        ivBuffer         = new byte[16];
     private final GrowingBuffer ciphertextBuffer = new GrowingBuffer();
+    private final SecureRandom  random           = new SecureRandom();
 
-    private final byte[]               secret;
+    private final SecretKeySpec        key;
     private final File                 file;
     private final Cipher               cipher;
     private final BufferedOutputStream outputStream;
 
     Writer(@NonNull byte[] secret, @NonNull File file) throws IOException {
-      this.secret       = secret;
+      this.key          = new SecretKeySpec(secret, "AES");
       this.file         = file;
       this.outputStream = new BufferedOutputStream(new FileOutputStream(file, true));
 
@@ -50,15 +56,23 @@ class LogFile {
     }
 
     void writeEntry(@NonNull String entry) throws IOException {
-      new SecureRandom().nextBytes(ivBuffer);
-
       byte[] plaintext = entry.getBytes();
+      writeBlock(plaintext, 0, plaintext.length);
+    }
+
+    /**
+     * Encrypts and writes the plaintext as a single record. Multiple log lines should be separated
+     * by '\n' with no trailing newline.
+     */
+    void writeBlock(@NonNull byte[] plaintext, int offset, int length) throws IOException {
+      random.nextBytes(ivBuffer);
+
       try {
-        cipher.init(Cipher.ENCRYPT_MODE, new SecretKeySpec(secret, "AES"), new IvParameterSpec(ivBuffer));
+        cipher.init(Cipher.ENCRYPT_MODE, key, new IvParameterSpec(ivBuffer));
 
-        int    cipherLength = cipher.getOutputSize(plaintext.length);
+        int    cipherLength = cipher.getOutputSize(length);
         byte[] ciphertext   = ciphertextBuffer.get(cipherLength);
-        cipherLength = cipher.doFinal(plaintext, 0, plaintext.length, ciphertext);
+        cipherLength = cipher.doFinal(plaintext, offset, length, ciphertext);
 
         outputStream.write(ivBuffer);
         outputStream.write(Conversions.intToByteArray(cipherLength));
@@ -0,0 +1,180 @@
+package org.thoughtcrime.securesms.logging;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * A bounded, lock-free, multi-producer single-consumer ring buffer of log entries.
+ *
+ * Slots are pre-allocated and reused, so publishing an entry doesn't allocate. Each slot carries a
+ * sequence number that tells producers when it is free and the consumer when it has been
+ * published. Only a single thread may call {@link #drain(Handler, int)}.
+ *
+ * Entries are published with a volatile write. A producer that then checks whether the consumer
+ * is parked is therefore ordered after the publish, and can't miss a consumer that is about to
+ * park.
+ */
+final class LogRingBuffer {
+
+  private final Entry[]         entries;
+  private final AtomicLongArray sequences;
+  private final AtomicLong      tail;
+  private final int             mask;
+
+  private long head;
+
+  LogRingBuffer(int capacity) {
+    if (capacity <= 0 || Integer.bitCount(capacity) != 1) {
+      throw new IllegalArgumentException("Capacity must be a positive power of two!");
+    }
+
+    this.entries   = new Entry[capacity];
+    this.sequences = new AtomicLongArray(capacity);
+    this.tail      = new AtomicLong(0);
+    this.mask      = capacity - 1;
+
+    for (int i = 0; i < capacity; i++) {
+      entries[i] = new Entry();
+      sequences.set(i, i);
+    }
+  }
+
+  /**
+   * @return True if the entry was published, false if the buffer was full.
+   */
+  boolean offer(@NonNull String level, @NonNull String tag, @Nullable String message, @Nullable Throwable throwable, long timestamp) {
+    long position = claim();
+
+    if (position < 0) {
+      return false;
+    }
+
+    int   index = index(position);
+    Entry entry = entries[index];
+
+    entry.level     = level;
+    entry.tag       = tag;
+    entry.message   = message;
+    entry.throwable = throwable;
+    entry.timestamp = timestamp;
+
+    sequences.set(index, position + 1);
+    return true;
+  }
+
+  /**
+   * Publishes a task that will be run on the consumer thread, in order with the surrounding log
+   * entries.
+   *
+   * @return True if the task was published, false if the buffer was full.
+   */
+  boolean offer(@NonNull Runnable task) {
+    long position = claim();
+
+    if (position < 0) {
+      return false;
+    }
+
+    int index = index(position);
+
+    entries[index].task = task;
+
+    sequences.set(index, position + 1);
+    return true;
+  }
+
+  /**
+   * Hands up to maxEntries published entries to the handler, in publish order. The entry must not
+   * be retained after {@link Handler#onEntry(Entry)} returns. Must only be called from the
+   * consumer thread.
+   *
+   * @return The number of entries drained.
+   */
+  int drain(@NonNull Handler handler, int maxEntries) {
+    int count = 0;
+
+    while (count < maxEntries) {
+      int index = index(head);
+
+      if (sequences.get(index) != head + 1) {
+        break;
+      }
+
+      Entry entry = entries[index];
+
+      try {
+        handler.onEntry(entry);
+      } finally {
+        entry.clear();
+        sequences.lazySet(index, head + entries.length);
+        head++;
+        count++;
+      }
+    }
+
+    return count;
+  }
+
+  /**
+   * Must only be called from the consumer thread.
+   */
+  boolean isEmpty() {
+    return sequences.get(index(head)) != head + 1;
+  }
+
+  int capacity() {
+    return entries.length;
+  }
+
+  /**
+   * @return The claimed position, or -1 if the buffer is full.
+   */
+  private long claim() {
+    long position = tail.get();
+
+    while (true) {
+      long sequence   = sequences.get(index(position));
+      long difference = sequence - position;
+
+      if (difference == 0) {
+        if (tail.compareAndSet(position, position + 1)) {
+          return position;
+        }
+        position = tail.get();
+      } else if (difference < 0) {
+        return -1;
+      } else {
+        position = tail.get();
+      }
+    }
+  }
+
+  private int index(long position) {
+    return (int) (position & mask);
+  }
+
+  static final class Entry {
+    String    level;
+    String    tag;
+    String    message;
+    Throwable throwable;
+    long      timestamp;
+    Runnable  task;
+
+    private void clear() {
+      level     = null;
+      tag       = null;
+      message   = null;
+      throwable = null;
+      timestamp = 0;
+      task      = null;
+    }
+  }
+
+  interface Handler {
+    void onEntry(@NonNull Entry entry);
+  }
+}
@@ -0,0 +1,79 @@
+package org.thoughtcrime.securesms.logging;
+
+import androidx.annotation.NonNull;
+
+import java.text.SimpleDateFormat;
+import java.util.Date;
+import java.util.Locale;
+import java.util.TimeZone;
+
+/**
+ * Formats timestamps as "yyyy-MM-dd HH:mm:ss.SSS zzz" without allocating in the common case.
+ *
+ * The date, hour and zone portions are formatted once per local hour and cached. Everything below
+ * the hour is derived arithmetically from the offset into the cached hour. Not thread safe.
+ */
+final class LogTimestampFormatter {
+
+  private static final long HOUR_MILLIS = 60 * 60 * 1000;
+
+  private final SimpleDateFormat prefixFormat;
+  private final SimpleDateFormat suffixFormat;
+  private final TimeZone         timeZone;
+
+  private long   hourStart = Long.MAX_VALUE;
+  private long   hourEnd   = Long.MIN_VALUE;
+  private String prefix;
+  private String suffix;
+
+  LogTimestampFormatter() {
+    this(TimeZone.getDefault());
+  }
+
+  LogTimestampFormatter(@NonNull TimeZone timeZone) {
+    this.timeZone     = timeZone;
+    this.prefixFormat = new SimpleDateFormat("yyyy-MM-dd HH:", Locale.US);
+    this.suffixFormat = new SimpleDateFormat(" zzz", Locale.US);
+
+    prefixFormat.setTimeZone(timeZone);
+    suffixFormat.setTimeZone(timeZone);
+  }
+
+  void format(long timestamp, @NonNull StringBuilder out) {
+    if (timestamp < hourStart || timestamp >= hourEnd) {
+      updateHour(timestamp);
+    }
+
+    int offset  = (int) (timestamp - hourStart);
+    int minutes = offset / 60_000;
+    int seconds = (offset / 1000) % 60;
+    int millis  = offset % 1000;
+
+    out.append(prefix);
+    appendPadded(out, minutes, 2);
+    out.append(':');
+    appendPadded(out, seconds, 2);
+    out.append('.');
+    appendPadded(out, millis, 3);
+    out.append(suffix);
+  }
+
+  private void updateHour(long timestamp) {
+    long localTime   = timestamp + timeZone.getOffset(timestamp);
+    long intoTheHour = ((localTime % HOUR_MILLIS) + HOUR_MILLIS) % HOUR_MILLIS;
+
+    hourStart = timestamp - intoTheHour;
+    hourEnd   = hourStart + HOUR_MILLIS;
+
+    Date date = new Date(timestamp);
+
+    prefix = prefixFormat.format(date);
+    suffix = suffixFormat.format(date);
+  }
+
+  private static void appendPadded(@NonNull StringBuilder out, int value, int width) {
+    if (width >= 3 && value < 100) out.append('0');
+    if (value < 10)                out.append('0');
+    out.append(value);
+  }
+}
@@ -3,6 +3,8 @@ package org.thoughtcrime.securesms.logging;
 import android.annotation.SuppressLint;
 import android.content.Context;
 import androidx.annotation.AnyThread;
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
 import androidx.annotation.WorkerThread;
 
 import org.thoughtcrime.securesms.BuildConfig;
@@ -10,19 +12,30 @@ import org.thoughtcrime.securesms.database.NoExternalStorageException;
 import org.thoughtcrime.securesms.util.concurrent.ListenableFuture;
 import org.thoughtcrime.securesms.util.concurrent.SettableFuture;
 
-import java.io.ByteArrayOutputStream;
 import java.io.File;
 import java.io.IOException;
-import java.io.PrintStream;
-import java.text.SimpleDateFormat;
+import java.io.PrintWriter;
+import java.io.StringWriter;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.charset.CharsetEncoder;
+import java.nio.charset.CoderResult;
+import java.nio.charset.CodingErrorAction;
+import java.nio.charset.StandardCharsets;
 import java.util.Arrays;
-import java.util.Date;
-import java.util.LinkedList;
-import java.util.List;
 import java.util.concurrent.CountDownLatch;
-import java.util.concurrent.Executor;
-import java.util.concurrent.Executors;
-
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Persists encrypted logs to disk.
+ *
+ * Callers publish entries into a lock-free {@link LogRingBuffer}. A single low-priority thread
+ * drains it, formats entries into a reusable buffer and encrypts them in blocks of up to
+ * {@link #MAX_BLOCK_SIZE} bytes rather than one cipher operation per line. If the buffer is full,
+ * entries are dropped and the number dropped is recorded in the log.
+ */
 @SuppressLint("LogNotSignal")
 public final class PersistentLogger extends Log.Logger {
 
@@ -37,28 +50,46 @@ public final class PersistentLogger extends Log.Logger {
 
   private static final String VERSION_TAG = "[" + BuildConfig.VERSION_NAME + "]";
 
-  private static final String           LOG_DIRECTORY   = "log";
-  private static final String           FILENAME_PREFIX = "log-";
-  private static final int              MAX_LOG_FILES   = 7;
-  private static final int              MAX_LOG_SIZE    = 300 * 1024;
-  private static final SimpleDateFormat DATE_FORMAT     = new SimpleDateFormat("yyyy-MM-dd HH:mm:ss.SSS zzz");
+  private static final String LOG_DIRECTORY   = "log";
+  private static final String FILENAME_PREFIX = "log-";
+  private static final int    MAX_LOG_FILES   = 7;
+  private static final int    MAX_LOG_SIZE    = 300 * 1024;
+
+  private static final int BUFFER_CAPACITY = 8192;
+  private static final int MAX_DRAIN_COUNT = 256;
+  private static final int MAX_BLOCK_SIZE  = 16 * 1024;
+
+  private static final long MAX_PARK_NANOS = TimeUnit.MILLISECONDS.toNanos(100);
 
-  private final Context  context;
-  private final Executor executor;
-  private final byte[]   secret;
+  private final Context               context;
+  private final byte[]                secret;
+  private final LogRingBuffer         ringBuffer;
+  private final AtomicLong            droppedCount;
+  private final Thread                consumer;
+  private final LogTimestampFormatter timestampFormatter;
+  private final StringBuilder         blockBuilder;
+  private final CharsetEncoder        encoder;
+
+  private volatile boolean consumerParked;
 
   private LogFile.Writer writer;
+  private ByteBuffer     encodeBuffer;
 
   public PersistentLogger(Context context) {
-    this.context  = context.getApplicationContext();
-    this.secret   = LogSecretProvider.getOrCreateAttachmentSecret(context);
-    this.executor = Executors.newSingleThreadExecutor(r -> {
-      Thread thread = new Thread(r, "signal-PersistentLogger");
-      thread.setPriority(Thread.MIN_PRIORITY);
-      return thread;
-    });
-
-    executor.execute(this::initializeWriter);
+    this.context            = context.getApplicationContext();
+    this.secret             = LogSecretProvider.getOrCreateAttachmentSecret(context);
+    this.ringBuffer         = new LogRingBuffer(BUFFER_CAPACITY);
+    this.droppedCount       = new AtomicLong(0);
+    this.timestampFormatter = new LogTimestampFormatter();
+    this.blockBuilder       = new StringBuilder(MAX_BLOCK_SIZE + 1024);
+    this.encodeBuffer       = ByteBuffer.allocate(MAX_BLOCK_SIZE * 2);
+    this.encoder            = StandardCharsets.UTF_8.newEncoder()
+                                                    .onMalformedInput(CodingErrorAction.REPLACE)
+                                                    .onUnmappableCharacter(CodingErrorAction.REPLACE);
+    this.consumer           = new Thread(this::drainLoop, "signal-PersistentLogger");
+
+    consumer.setPriority(Thread.MIN_PRIORITY);
+    consumer.start();
   }
 
   @Override
@@ -95,7 +126,7 @@ public final class PersistentLogger extends Log.Logger {
   public void blockUntilAllWritesFinished() {
     CountDownLatch latch = new CountDownLatch(1);
 
-    executor.execute(latch::countDown);
+    enqueueTask(latch::countDown);
 
     try {
       latch.await();
@@ -108,7 +139,7 @@ public final class PersistentLogger extends Log.Logger {
   public ListenableFuture<CharSequence> getLogs() {
     final SettableFuture<CharSequence> future = new SettableFuture<>();
 
-    executor.execute(() -> {
+    enqueueTask(() -> {
       StringBuilder builder = new StringBuilder();
 
       try {
@@ -124,7 +155,7 @@ public final class PersistentLogger extends Log.Logger {
         }
 
         future.set(builder);
-      } catch (NoExternalStorageException e) {
+      } catch (NoExternalStorageException | RuntimeException e) {
         future.setException(e);
       }
     });
@@ -143,30 +174,173 @@ public final class PersistentLogger extends Log.Logger {
 
   @AnyThread
   private void write(String level, String tag, String message, Throwable t) {
-    executor.execute(() -> {
-      try {
-        if (writer == null) {
-          return;
-        }
+    if (ringBuffer.offer(level, tag, message, t, System.currentTimeMillis())) {
+      wakeConsumer();
+    } else {
+      droppedCount.incrementAndGet();
+    }
+  }
 
-        if (writer.getLogSize() >= MAX_LOG_SIZE) {
-          writer.close();
-          writer = new LogFile.Writer(secret, createNewLogFile());
-          trimLogFilesOverMax();
+  /**
+   * Tasks are never dropped. If the buffer is full we wait for the consumer to make room.
+   */
+  @AnyThread
+  private void enqueueTask(@NonNull Runnable task) {
+    while (!ringBuffer.offer(task)) {
+      wakeConsumer();
+      Thread.yield();
+    }
+    wakeConsumer();
+  }
+
+  private void wakeConsumer() {
+    if (consumerParked) {
+      LockSupport.unpark(consumer);
+    }
+  }
+
+  /**
+   * Runs for the life of the process, so nothing that goes wrong with a single entry or block may
+   * end it. Otherwise the buffer would fill up and every caller waiting on a task would hang.
+   */
+  @WorkerThread
+  private void drainLoop() {
+    initializeWriter();
+
+    while (true) {
+      int drained = ringBuffer.drain(this::handleEntry, MAX_DRAIN_COUNT);
+
+      if (drained == 0) {
+        try {
+          appendDroppedCount();
+          flushBlock();
+        } catch (Throwable t) {
+          android.util.Log.w(TAG, "Failed to flush logs.", t);
+          blockBuilder.setLength(0);
         }
 
-        for (String entry : buildLogEntries(level, tag, message, t)) {
-          writer.writeEntry(entry);
+        // Producers unpark us after publishing. The timeout only bounds how long a missed wakeup
+        // could delay writes.
+        consumerParked = true;
+        if (ringBuffer.isEmpty()) {
+          LockSupport.parkNanos(this, MAX_PARK_NANOS);
         }
+        consumerParked = false;
+      }
+    }
+  }
 
-      } catch (NoExternalStorageException e) {
-        android.util.Log.w(TAG, "Cannot persist logs.", e);
-      } catch (IOException e) {
-        android.util.Log.w(TAG, "Failed to write line. Deleting all logs and starting over.");
-        deleteAllLogs();
-        initializeWriter();
+  @WorkerThread
+  private void handleEntry(@NonNull LogRingBuffer.Entry entry) {
+    try {
+      handleEntryOrThrow(entry);
+    } catch (Throwable t) {
+      android.util.Log.w(TAG, "Failed to handle log entry.", t);
+    }
+  }
+
+  @WorkerThread
+  private void handleEntryOrThrow(@NonNull LogRingBuffer.Entry entry) {
+    if (entry.task != null) {
+      try {
+        flushBlock();
+      } finally {
+        entry.task.run();
       }
-    });
+      return;
+    }
+
+    appendLine(entry.level, entry.tag, entry.message, entry.timestamp);
+
+    if (entry.throwable != null) {
+      StringWriter stringWriter = new StringWriter();
+      entry.throwable.printStackTrace(new PrintWriter(stringWriter));
+
+      String[] lines = stringWriter.toString().split("\\n");
+
+      for (String line : lines) {
+        appendLine(entry.level, entry.tag, line, entry.timestamp);
+      }
+    }
+  }
+
+  @WorkerThread
+  private void appendDroppedCount() {
+    long dropped = droppedCount.getAndSet(0);
+
+    if (dropped > 0) {
+      appendLine(LOG_W, TAG, "Log buffer was full. Dropped " + dropped + " entries.", System.currentTimeMillis());
+    }
+  }
+
+  @WorkerThread
+  private void appendLine(@NonNull String level, @NonNull String tag, @Nullable String message, long timestamp) {
+    if (blockBuilder.length() > 0) {
+      blockBuilder.append('\n');
+    }
+
+    blockBuilder.append(VERSION_TAG).append(' ');
+    timestampFormatter.format(timestamp, blockBuilder);
+    blockBuilder.append(' ').append(level).append(' ').append(tag).append(": ").append(message);
+
+    if (blockBuilder.length() >= MAX_BLOCK_SIZE) {
+      flushBlock();
+    }
+  }
+
+  @WorkerThread
+  private void flushBlock() {
+    if (blockBuilder.length() == 0) {
+      return;
+    }
+
+    try {
+      if (writer == null) {
+        return;
+      }
+
+      if (writer.getLogSize() >= MAX_LOG_SIZE) {
+        writer.close();
+        writer = new LogFile.Writer(secret, createNewLogFile());
+        trimLogFilesOverMax();
+      }
+
+      ByteBuffer plaintext = encodeBlock();
+      writer.writeBlock(plaintext.array(), 0, plaintext.position());
+    } catch (NoExternalStorageException e) {
+      android.util.Log.w(TAG, "Cannot persist logs.", e);
+    } catch (IOException e) {
+      android.util.Log.w(TAG, "Failed to write block. Deleting all logs and starting over.");
+      deleteAllLogs();
+      initializeWriter();
+    } finally {
+      blockBuilder.setLength(0);
+    }
+  }
+
+  /**
+   * Encodes the current block into the reusable encode buffer, growing it if necessary.
+   */
+  @WorkerThread
+  private @NonNull ByteBuffer encodeBlock() {
+    while (true) {
+      CharBuffer input = CharBuffer.wrap(blockBuilder);
+
+      encodeBuffer.clear();
+      encoder.reset();
+
+      CoderResult result = encoder.encode(input, encodeBuffer, true);
+
+      if (!result.isOverflow()) {
+        result = encoder.flush(encodeBuffer);
+      }
+
+      if (!result.isOverflow()) {
+        return encodeBuffer;
+      }
+
+      encodeBuffer = ByteBuffer.allocate(encodeBuffer.capacity() * 2);
+    }
   }
 
   private void trimLogFilesOverMax() throws NoExternalStorageException {
@@ -219,29 +393,4 @@ public final class PersistentLogger extends Log.Logger {
 
     return logDir;
   }
-
-  private List<String> buildLogEntries(String level, String tag, String message, Throwable t) {
-    List<String> entries = new LinkedList<>();
-    Date         date    = new Date();
-
-    entries.add(buildEntry(level, tag, message, date));
-
-    if (t != null) {
-      ByteArrayOutputStream outputStream = new ByteArrayOutputStream();
-      t.printStackTrace(new PrintStream(outputStream));
-
-      String   trace = new String(outputStream.toByteArray());
-      String[] lines = trace.split("\\n");
-
-      for (String line : lines) {
-        entries.add(buildEntry(level, tag, line, date));
-      }
-    }
-
-    return entries;
-  }
-
-  private String buildEntry(String level, String tag, String message, Date date) {
-    return VERSION_TAG + ' ' +DATE_FORMAT.format(date) + ' ' + level + ' ' + tag + ": " + message;
-  }
 }
@@ -3,6 +3,7 @@ package org.thoughtcrime.securesms.logsubmit;
 import android.content.Context;
 
 import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
 
 import org.thoughtcrime.securesms.tracing.Tracer;
 import org.thoughtcrime.securesms.util.Base64;
@@ -20,10 +21,27 @@ public class LogSectionTrace implements LogSection {
 
   @Override
   public @NonNull CharSequence getContent(@NonNull Context context) {
+    String trace    = compress(Tracer.getInstance().serialize());
+    byte[] snapshot = Tracer.getInstance().getLastSnapshot();
+
+    if (snapshot == null) {
+      return trace;
+    }
+
+    return trace + "\n\n" +
+           "Last slow event snapshot:\n" +
+           compress(snapshot);
+  }
+
+  private static @NonNull String compress(@Nullable byte[] trace) {
+    if (trace == null) {
+      return "";
+    }
+
     try (ByteArrayOutputStream outputStream     = new ByteArrayOutputStream();
          GZIPOutputStream      compressedStream = new GZIPOutputStream(outputStream))
     {
-      compressedStream.write(Tracer.getInstance().serialize());
+      compressedStream.write(trace);
       compressedStream.flush();
       compressedStream.close();
 
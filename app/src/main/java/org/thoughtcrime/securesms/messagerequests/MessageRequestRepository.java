@@ -32,6 +32,7 @@ import org.thoughtcrime.securesms.util.concurrent.SignalExecutors;
 import org.whispersystems.libsignal.util.guava.Optional;
 
 import java.io.IOException;
+import java.util.Collections;
 import java.util.List;
 import java.util.concurrent.Executor;
 
@@ -137,6 +138,7 @@ final class MessageRequestRepository {
 
         List<MessageDatabase.MarkedMessageInfo> messageIds = DatabaseFactory.getThreadDatabase(context)
                                                                             .setEntireThreadRead(threadId);
+        ApplicationDependencies.getMessageNotifier().invalidateThreads(Collections.singleton(threadId));
         ApplicationDependencies.getMessageNotifier().updateNotification(context);
         MarkReadReceiver.process(context, messageIds);
 
@@ -235,6 +237,7 @@ final class MessageRequestRepository {
 
       List<MessageDatabase.MarkedMessageInfo> messageIds = DatabaseFactory.getThreadDatabase(context)
                                                                           .setEntireThreadRead(threadId);
+      ApplicationDependencies.getMessageNotifier().invalidateThreads(Collections.singleton(threadId));
       ApplicationDependencies.getMessageNotifier().updateNotification(context);
       MarkReadReceiver.process(context, messageIds);
 
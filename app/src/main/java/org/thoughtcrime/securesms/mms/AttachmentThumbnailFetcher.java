@@ -0,0 +1,40 @@
+package org.thoughtcrime.securesms.mms;
+
+import android.content.ContentResolver;
+import android.content.Context;
+import android.net.Uri;
+
+import org.thoughtcrime.securesms.database.DatabaseFactory;
+import org.thoughtcrime.securesms.logging.Log;
+
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.io.InputStream;
+
+/**
+ * Loads an attachment thumbnail, falling back to the attachment itself if the thumbnail has been
+ * removed since it was chosen.
+ */
+class AttachmentThumbnailFetcher extends DecryptableStreamLocalUriFetcher {
+
+  private static final String TAG = Log.tag(AttachmentThumbnailFetcher.class);
+
+  private final Context context;
+  private final long    thumbnailId;
+
+  AttachmentThumbnailFetcher(Context context, Uri uri, long thumbnailId) {
+    super(context, uri);
+    this.context     = context;
+    this.thumbnailId = thumbnailId;
+  }
+
+  @Override
+  protected InputStream loadResource(Uri uri, ContentResolver contentResolver) throws FileNotFoundException {
+    try {
+      return DatabaseFactory.getAttachmentThumbnailDatabase(context).getThumbnailStream(thumbnailId);
+    } catch (IOException e) {
+      Log.w(TAG, "Unable to load thumbnail, loading attachment instead", e);
+      return super.loadResource(uri, contentResolver);
+    }
+  }
+}
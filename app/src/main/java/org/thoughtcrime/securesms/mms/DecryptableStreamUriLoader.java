@@ -10,7 +10,11 @@ import com.bumptech.glide.load.Options;
 import com.bumptech.glide.load.model.ModelLoader;
 import com.bumptech.glide.load.model.ModelLoaderFactory;
 import com.bumptech.glide.load.model.MultiModelLoaderFactory;
+import com.bumptech.glide.signature.ObjectKey;
 
+import org.thoughtcrime.securesms.attachments.AttachmentThumbnail;
+import org.thoughtcrime.securesms.attachments.ThumbnailBuckets;
+import org.thoughtcrime.securesms.database.DatabaseFactory;
 import org.thoughtcrime.securesms.mms.DecryptableStreamUriLoader.DecryptableUri;
 
 import java.io.InputStream;
@@ -27,9 +31,28 @@ public class DecryptableStreamUriLoader implements ModelLoader<DecryptableUri, I
   @Nullable
   @Override
   public LoadData<InputStream> buildLoadData(@NonNull DecryptableUri decryptableUri, int width, int height, @NonNull Options options) {
+    AttachmentThumbnail thumbnail = getThumbnail(decryptableUri.uri, width, height);
+
+    if (thumbnail != null) {
+      Key sourceKey = new ObjectKey(decryptableUri.uri + "#thumbnail-" + thumbnail.getBucket());
+      return new LoadData<>(sourceKey, new AttachmentThumbnailFetcher(context, decryptableUri.uri, thumbnail.getId()));
+    }
+
     return new LoadData<>(decryptableUri, new DecryptableStreamLocalUriFetcher(context, decryptableUri.uri));
   }
 
+  /**
+   * Attachments are loaded from the smallest thumbnail that is large enough, if there is one, rather
+   * than decoded and scaled down from the full size image or video every time.
+   */
+  private @Nullable AttachmentThumbnail getThumbnail(@NonNull Uri uri, int width, int height) {
+    if (!PartAuthority.isAttachmentUri(uri) || width <= 0 || height <= 0) {
+      return null;
+    }
+
+    return ThumbnailBuckets.select(DatabaseFactory.getAttachmentThumbnailDatabase(context).getThumbnails(PartAuthority.requireAttachmentId(uri)), width, height);
+  }
+
   @Override
   public boolean handles(@NonNull DecryptableUri decryptableUri) {
     return true;
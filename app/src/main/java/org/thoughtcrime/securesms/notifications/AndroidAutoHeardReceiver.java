@@ -29,6 +29,7 @@ import org.thoughtcrime.securesms.dependencies.ApplicationDependencies;
 import org.thoughtcrime.securesms.database.MessageDatabase.MarkedMessageInfo;
 import org.thoughtcrime.securesms.logging.Log;
 
+import java.util.ArrayList;
 import java.util.LinkedList;
 import java.util.List;
 
@@ -59,14 +60,17 @@ public class AndroidAutoHeardReceiver extends BroadcastReceiver {
         @Override
         protected Void doInBackground(Void... params) {
           List<MarkedMessageInfo> messageIdsCollection = new LinkedList<>();
+          List<Long>              threadIdsCollection  = new ArrayList<>(threadIds.length);
 
           for (long threadId : threadIds) {
             Log.i(TAG, "Marking meassage as read: " + threadId);
+            threadIdsCollection.add(threadId);
             List<MarkedMessageInfo> messageIds = DatabaseFactory.getThreadDatabase(context).setRead(threadId, true);
 
             messageIdsCollection.addAll(messageIds);
           }
 
+          ApplicationDependencies.getMessageNotifier().invalidateThreads(threadIdsCollection);
           ApplicationDependencies.getMessageNotifier().updateNotification(context);
           MarkReadReceiver.process(context, messageIdsCollection);
 
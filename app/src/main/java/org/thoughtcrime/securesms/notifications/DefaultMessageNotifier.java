@@ -22,6 +22,7 @@ import android.app.NotificationManager;
 import android.app.PendingIntent;
 import android.content.Context;
 import android.content.Intent;
+import android.database.ContentObserver;
 import android.database.Cursor;
 import android.media.AudioAttributes;
 import android.media.AudioManager;
@@ -46,6 +47,7 @@ import org.thoughtcrime.securesms.R;
 import org.thoughtcrime.securesms.contactshare.Contact;
 import org.thoughtcrime.securesms.contactshare.ContactUtil;
 import org.thoughtcrime.securesms.conversation.ConversationActivity;
+import org.thoughtcrime.securesms.database.DatabaseContentProviders;
 import org.thoughtcrime.securesms.database.DatabaseFactory;
 import org.thoughtcrime.securesms.database.MentionUtil;
 import org.thoughtcrime.securesms.database.MmsSmsColumns;
@@ -74,10 +76,14 @@ import org.thoughtcrime.securesms.util.concurrent.SignalExecutors;
 import org.thoughtcrime.securesms.webrtc.CallNotificationBuilder;
 import org.whispersystems.signalservice.internal.util.Util;
 
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
 import java.util.HashSet;
 import java.util.LinkedList;
 import java.util.List;
 import java.util.ListIterator;
+import java.util.Map;
 import java.util.Set;
 import java.util.concurrent.Executor;
 import java.util.concurrent.Executors;
@@ -104,10 +110,15 @@ public class DefaultMessageNotifier implements MessageNotifier {
   private static final long   MIN_AUDIBLE_PERIOD_MILLIS = TimeUnit.SECONDS.toMillis(2);
   private static final long   DESKTOP_ACTIVITY_PERIOD   = TimeUnit.MINUTES.toMillis(1);
 
-  private volatile long                     visibleThread                = -1;
-  private volatile long                     lastDesktopActivityTimestamp = -1;
-  private volatile long                     lastAudibleNotification      = -1;
-  private          final CancelableExecutor executor                     = new CancelableExecutor();
+  private volatile long                         visibleThread                = -1;
+  private volatile long                         lastDesktopActivityTimestamp = -1;
+  private volatile long                         lastAudibleNotification      = -1;
+  private          final CancelableExecutor     executor                     = new CancelableExecutor();
+  private          final NotificationStateCache stateCache                   = new NotificationStateCache(new DatabaseSource());
+
+  public DefaultMessageNotifier(@NonNull Context context) {
+    context.getContentResolver().registerContentObserver(DatabaseContentProviders.Conversation.getUriForAllThreads(), true, new ConversationObserver());
+  }
 
   @Override
   public void setVisibleThread(long threadId) {
@@ -286,15 +297,21 @@ public class DefaultMessageNotifier implements MessageNotifier {
                                   boolean signal,
                                   int     reminderCount)
   {
-    boolean isReminder  = reminderCount > 0;
-    Cursor  telcoCursor = null;
-    Cursor  pushCursor  = null;
+    boolean isReminder = reminderCount > 0;
+    Cursor  pushCursor = null;
+
+    // Invalidation through ConversationObserver arrives asynchronously, so whatever prompted this
+    // update may not have been seen yet. Callers invalidate the other threads they changed.
+    if (targetThread > 0) {
+      stateCache.invalidateThread(targetThread);
+    }
 
     try {
-      telcoCursor = DatabaseFactory.getMmsSmsDatabase(context).getUnread();
-      pushCursor  = DatabaseFactory.getPushDatabase(context).getPending();
+      NotificationStateCache.Snapshot snapshot = stateCache.getSnapshot(context);
 
-      if ((telcoCursor == null || telcoCursor.isAfterLast()) &&
+      pushCursor = DatabaseFactory.getPushDatabase(context).getPending();
+
+      if (!snapshot.hasUnread() &&
           (pushCursor == null || pushCursor.isAfterLast()))
       {
         cancelActiveNotifications(context);
@@ -303,7 +320,7 @@ public class DefaultMessageNotifier implements MessageNotifier {
         return;
       }
 
-      NotificationState notificationState = constructNotificationState(context, telcoCursor);
+      NotificationState notificationState = snapshot.getState();
 
       if (signal && (System.currentTimeMillis() - lastAudibleNotification) < MIN_AUDIBLE_PERIOD_MILLIS) {
         signal = false;
@@ -338,23 +355,31 @@ public class DefaultMessageNotifier implements MessageNotifier {
       cancelOrphanedNotifications(context, notificationState);
       updateBadge(context, notificationState.getMessageCount());
 
-      List<Long> smsIds = new LinkedList<>();
-      List<Long> mmsIds = new LinkedList<>();
+      List<Long>             smsIds        = new LinkedList<>();
+      List<Long>             mmsIds        = new LinkedList<>();
+      List<NotificationItem> newlyNotified = new LinkedList<>();
       for (NotificationItem item : notificationState.getNotifications()) {
+        if (item.getNotifiedTimestamp() != 0) {
+          continue;
+        }
+
         if (item.isMms()) {
           mmsIds.add(item.getId());
         } else {
           smsIds.add(item.getId());
         }
+        newlyNotified.add(item);
       }
-      DatabaseFactory.getMmsSmsDatabase(context).setNotifiedTimestamp(System.currentTimeMillis(), smsIds, mmsIds);
+
+      long notifiedTimestamp = System.currentTimeMillis();
+      DatabaseFactory.getMmsSmsDatabase(context).setNotifiedTimestamp(notifiedTimestamp, smsIds, mmsIds);
+      stateCache.markNotified(newlyNotified, notifiedTimestamp);
 
       if (shouldScheduleReminder) {
         scheduleReminder(context, reminderCount);
       }
     } finally {
-      if (telcoCursor != null) telcoCursor.close();
-      if (pushCursor != null)  pushCursor.close();
+      if (pushCursor != null) pushCursor.close();
     }
   }
 
@@ -563,11 +588,16 @@ public class DefaultMessageNotifier implements MessageNotifier {
     ringtone.play();
   }
 
-  private static NotificationState constructNotificationState(@NonNull  Context context,
-                                                              @NonNull  Cursor cursor)
+  /**
+   * Reads the notification items for every unread message and reaction in the cursor. Mute state is
+   * not applied here; see {@link NotificationStateCache}.
+   */
+  private static @NonNull List<NotificationStateCache.Entry> readNotificationEntries(@NonNull Context context,
+                                                                                     @NonNull Cursor cursor)
   {
-    NotificationState     notificationState = new NotificationState();
-    MmsSmsDatabase.Reader reader            = DatabaseFactory.getMmsSmsDatabase(context).readerFor(cursor);
+    List<NotificationStateCache.Entry> entries              = new LinkedList<>();
+    MmsSmsDatabase.Reader              reader               = DatabaseFactory.getMmsSmsDatabase(context).readerFor(cursor);
+    Map<Long, Recipient>               threadRecipientsById = new HashMap<>();
 
     MessageRecord record;
 
@@ -588,7 +618,12 @@ public class DefaultMessageNotifier implements MessageNotifier {
       long         notifiedTimestamp     = record.getNotifiedTimestamp();
 
       if (threadId != -1) {
-        threadRecipients = DatabaseFactory.getThreadDatabase(context).getRecipientForThreadId(threadId);
+        if (threadRecipientsById.containsKey(threadId)) {
+          threadRecipients = threadRecipientsById.get(threadId);
+        } else {
+          threadRecipients = DatabaseFactory.getThreadDatabase(context).getRecipientForThreadId(threadId);
+          threadRecipientsById.put(threadId, threadRecipients);
+        }
       }
 
       if (isUnreadMessage) {
@@ -611,16 +646,8 @@ public class DefaultMessageNotifier implements MessageNotifier {
           canReply  = true;
         }
 
-        boolean includeMessage = true;
-        if (threadRecipients != null && threadRecipients.isMuted()) {
-          boolean mentionsOverrideMute = threadRecipients.getMentionSetting() == RecipientDatabase.MentionSetting.ALWAYS_NOTIFY;
-
-          includeMessage = mentionsOverrideMute && record.hasSelfMention();
-        }
-
-        if (threadRecipients == null || includeMessage) {
-          notificationState.addNotification(new NotificationItem(id, mms, recipient, conversationRecipient, threadRecipients, threadId, body, timestamp, receivedTimestamp, slideDeck, false, record.isJoined(), canReply, notifiedTimestamp));
-        }
+        NotificationItem item = new NotificationItem(id, mms, recipient, conversationRecipient, threadRecipients, threadId, body, timestamp, receivedTimestamp, slideDeck, false, record.isJoined(), canReply, notifiedTimestamp);
+        entries.add(new NotificationStateCache.Entry(item, record.hasSelfMention(), false));
       }
 
       if (hasUnreadReactions) {
@@ -653,15 +680,13 @@ public class DefaultMessageNotifier implements MessageNotifier {
             body = builder;
           }
 
-          if (threadRecipients == null || !threadRecipients.isMuted()) {
-            notificationState.addNotification(new NotificationItem(id, mms, reactionSender, conversationRecipient, threadRecipients, threadId, body, reaction.getDateReceived(), receivedTimestamp, null, true, record.isJoined(), false, 0));
-          }
+          NotificationItem item = new NotificationItem(id, mms, reactionSender, conversationRecipient, threadRecipients, threadId, body, reaction.getDateReceived(), receivedTimestamp, null, true, record.isJoined(), false, 0);
+          entries.add(new NotificationStateCache.Entry(item, false, true));
         }
       }
     }
 
-    reader.close();
-    return notificationState;
+    return entries;
   }
 
   private static CharSequence getReactionMessageBody(@NonNull Context context, @NonNull MessageRecord record, @NonNull CharSequence body) {
@@ -757,6 +782,81 @@ public class DefaultMessageNotifier implements MessageNotifier {
     alarmManager.cancel(pendingIntent);
   }
 
+  @Override
+  public void invalidateThreads(@NonNull Collection<Long> threadIds) {
+    for (long threadId : threadIds) {
+      stateCache.invalidateThread(threadId);
+    }
+  }
+
+  @Override
+  public void invalidateAllThreads() {
+    stateCache.invalidateAll();
+  }
+
+  /**
+   * Invalidates threads as the database reports changes to them. This is delivered off the writing
+   * thread, so database transactions never wait on us.
+   */
+  private final class ConversationObserver extends ContentObserver {
+
+    private ConversationObserver() {
+      super(null);
+    }
+
+    @Override
+    public void onChange(boolean selfChange) {
+      onChange(selfChange, null);
+    }
+
+    @Override
+    public void onChange(boolean selfChange, @Nullable Uri uri) {
+      long threadId = getThreadId(uri);
+
+      if (threadId > 0) {
+        stateCache.invalidateThread(threadId);
+      } else {
+        stateCache.invalidateAll();
+      }
+    }
+
+    private long getThreadId(@Nullable Uri uri) {
+      String segment = uri != null ? uri.getLastPathSegment() : null;
+
+      if (segment == null) {
+        return -1;
+      }
+
+      try {
+        return Long.parseLong(segment);
+      } catch (NumberFormatException e) {
+        return -1;
+      }
+    }
+  }
+
+  private static final class DatabaseSource implements NotificationStateCache.Source {
+
+    @Override
+    public boolean isLocked(@NonNull Context context) {
+      return KeyCachingService.isLocked(context);
+    }
+
+    @Override
+    public @NonNull List<NotificationStateCache.Entry> readAll(@NonNull Context context) {
+      try (Cursor cursor = DatabaseFactory.getMmsSmsDatabase(context).getUnread()) {
+        return cursor != null ? readNotificationEntries(context, cursor) : Collections.emptyList();
+      }
+    }
+
+    @Override
+    public @NonNull List<NotificationStateCache.Entry> readThread(@NonNull Context context, long threadId) {
+      try (Cursor cursor = DatabaseFactory.getMmsSmsDatabase(context).getUnreadInThread(threadId)) {
+        return cursor != null ? readNotificationEntries(context, cursor) : Collections.emptyList();
+      }
+    }
+  }
+
   private static class DelayedNotification implements Runnable {
 
     private static final long DELAY = TimeUnit.SECONDS.toMillis(5);
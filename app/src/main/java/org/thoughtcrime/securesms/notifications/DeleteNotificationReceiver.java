@@ -34,6 +34,8 @@ public class DeleteNotificationReceiver extends BroadcastReceiver {
             else         DatabaseFactory.getMmsDatabase(context).markAsNotified(ids[i]);
           }
 
+          ApplicationDependencies.getMessageNotifier().invalidateAllThreads();
+
           return null;
         }
       }.executeOnExecutor(AsyncTask.THREAD_POOL_EXECUTOR);
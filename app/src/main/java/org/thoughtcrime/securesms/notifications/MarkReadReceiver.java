@@ -24,6 +24,7 @@ import org.thoughtcrime.securesms.logging.Log;
 import org.thoughtcrime.securesms.recipients.RecipientId;
 import org.thoughtcrime.securesms.service.ExpiringMessageManager;
 
+import java.util.ArrayList;
 import java.util.LinkedList;
 import java.util.List;
 import java.util.Map;
@@ -50,15 +51,18 @@ public class MarkReadReceiver extends BroadcastReceiver {
         @Override
         protected Void doInBackground(Void... params) {
           List<MarkedMessageInfo> messageIdsCollection = new LinkedList<>();
+          List<Long>              threadIdsCollection  = new ArrayList<>(threadIds.length);
 
           for (long threadId : threadIds) {
             Log.i(TAG, "Marking as read: " + threadId);
+            threadIdsCollection.add(threadId);
             List<MarkedMessageInfo> messageIds = DatabaseFactory.getThreadDatabase(context).setRead(threadId, true);
             messageIdsCollection.addAll(messageIds);
           }
 
           process(context, messageIdsCollection);
 
+          ApplicationDependencies.getMessageNotifier().invalidateThreads(threadIdsCollection);
           ApplicationDependencies.getMessageNotifier().updateNotification(context);
 
           return null;
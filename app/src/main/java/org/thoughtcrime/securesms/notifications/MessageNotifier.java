@@ -10,6 +10,8 @@ import org.thoughtcrime.securesms.dependencies.ApplicationDependencies;
 import org.thoughtcrime.securesms.recipients.Recipient;
 import org.thoughtcrime.securesms.util.concurrent.SignalExecutors;
 
+import java.util.Collection;
+
 public interface MessageNotifier {
   void setVisibleThread(long threadId);
   long getVisibleThread();
@@ -23,6 +25,20 @@ public interface MessageNotifier {
   void updateNotification(@NonNull Context context, long threadId, boolean signal, int reminderCount);
   void clearReminder(@NonNull Context context);
 
+  /**
+   * Marks the cached notification state of the threads as stale, so they are reloaded on the next
+   * update. Call this before {@link #updateNotification(Context)} after changing threads, e.g. by
+   * marking them read. Changes are also picked up without this, but only once the database has
+   * notified us, which may be after the update.
+   */
+  void invalidateThreads(@NonNull Collection<Long> threadIds);
+
+  /**
+   * Drops all cached notification state, so it is reloaded on the next update. Only needed for
+   * changes that aren't tied to particular threads, like notification settings.
+   */
+  void invalidateAllThreads();
+
 
   class ReminderReceiver extends BroadcastReceiver {
 
@@ -62,6 +62,10 @@ public class NotificationItem {
     this.notifiedTimestamp        = notifiedTimestamp;
   }
 
+  public @NonNull NotificationItem withNotifiedTimestamp(long notifiedTimestamp) {
+    return new NotificationItem(id, mms, individualRecipient, conversationRecipient, threadRecipient, threadId, text, timestamp, messageReceivedTimestamp, slideDeck, jumpToMessage, isJoin, canReply, notifiedTimestamp);
+  }
+
   public @NonNull  Recipient getRecipient() {
     return threadRecipient == null ? conversationRecipient : threadRecipient;
   }
@@ -70,6 +74,10 @@ public class NotificationItem {
     return individualRecipient;
   }
 
+  public @Nullable Recipient getThreadRecipient() {
+    return threadRecipient;
+  }
+
   public @Nullable CharSequence getText() {
     return text;
   }
@@ -78,6 +86,10 @@ public class NotificationItem {
     return timestamp;
   }
 
+  public long getReceivedTimestamp() {
+    return messageReceivedTimestamp;
+  }
+
   public long getThreadId() {
     return threadId;
   }
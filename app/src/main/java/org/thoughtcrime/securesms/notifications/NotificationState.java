@@ -33,9 +33,7 @@ public class NotificationState {
   public NotificationState() {}
 
   public NotificationState(@NonNull List<NotificationItem> items) {
-    for (NotificationItem item : items) {
-      addNotification(item);
-    }
+    addNotifications(items);
   }
 
   public void addNotification(NotificationItem item) {
@@ -46,6 +44,20 @@ public class NotificationState {
     threads.add(item.getThreadId());
   }
 
+  /**
+   * Equivalent to calling {@link #addNotification(NotificationItem)} for each item in order, but
+   * only sorts once.
+   */
+  public void addNotifications(@NonNull Collection<NotificationItem> items) {
+    notifications.addAll(items);
+    Collections.sort(notifications, notificationItemComparator);
+
+    for (NotificationItem item : items) {
+      threads.remove(item.getThreadId());
+      threads.add(item.getThreadId());
+    }
+  }
+
   public @Nullable Uri getRingtone(@NonNull Context context) {
     if (!notifications.isEmpty()) {
       Recipient recipient = notifications.get(0).getRecipient();
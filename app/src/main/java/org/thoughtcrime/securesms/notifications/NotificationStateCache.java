@@ -0,0 +1,256 @@
+package org.thoughtcrime.securesms.notifications;
+
+import android.content.Context;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.WorkerThread;
+
+import org.thoughtcrime.securesms.database.RecipientDatabase;
+import org.thoughtcrime.securesms.logging.Log;
+import org.thoughtcrime.securesms.recipients.Recipient;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.IdentityHashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Keeps the notification items for all unread messages in memory, grouped by thread, so that a
+ * notification update only has to re-query the threads that changed since the previous update,
+ * rather than every unread message.
+ *
+ * Threads are invalidated as their messages change, as reported by the database to
+ * {@link DefaultMessageNotifier}. A full reload from the database happens on first use, after
+ * {@link #invalidateAll()}, when the lock state changes (which changes how bodies are rendered),
+ * and periodically as a safety net.
+ *
+ * Mute state is applied when the state is assembled rather than when items are loaded, so muting
+ * or unmuting a thread doesn't require a reload.
+ *
+ * Invalidation can be called from any thread, so it must never wait on the monitor that is held
+ * while we query the database.
+ */
+final class NotificationStateCache {
+
+  private static final String TAG = Log.tag(NotificationStateCache.class);
+
+  private static final long FULL_RELOAD_INTERVAL = TimeUnit.MINUTES.toMillis(10);
+
+  private final Source                 source;
+  private final Map<Long, List<Entry>> entriesByThread;
+  private final Set<Long>              dirtyThreads;
+
+  private volatile boolean fullReloadRequired;
+
+  private boolean loadedWhileLocked;
+  private long    lastFullReload;
+
+  NotificationStateCache(@NonNull Source source) {
+    this.source             = source;
+    this.entriesByThread    = new HashMap<>();
+    this.dirtyThreads       = Collections.newSetFromMap(new ConcurrentHashMap<>());
+    this.fullReloadRequired = true;
+  }
+
+  void invalidateThread(long threadId) {
+    dirtyThreads.add(threadId);
+  }
+
+  void invalidateAll() {
+    fullReloadRequired = true;
+  }
+
+  /**
+   * Brings the cache up to date and returns the current state, with items for muted threads
+   * filtered out.
+   */
+  @WorkerThread
+  synchronized @NonNull Snapshot getSnapshot(@NonNull Context context) {
+    boolean   locked = source.isLocked(context);
+    long      now    = System.currentTimeMillis();
+    Set<Long> dirty  = drainDirtyThreads();
+
+    if (fullReloadRequired || locked != loadedWhileLocked || now - lastFullReload > FULL_RELOAD_INTERVAL) {
+      fullReloadRequired = false;
+      loadedWhileLocked  = locked;
+      lastFullReload     = now;
+
+      reloadAll(context);
+    } else if (!dirty.isEmpty()) {
+      reloadThreads(context, dirty);
+    }
+
+    return buildSnapshot();
+  }
+
+  /**
+   * Records that the provided items, as returned in a {@link Snapshot}, have now been notified, so
+   * future updates don't alert for them again. Mirrors what we write to the database.
+   */
+  synchronized void markNotified(@NonNull Collection<NotificationItem> items, long timestamp) {
+    if (items.isEmpty()) {
+      return;
+    }
+
+    Set<NotificationItem> notified = Collections.newSetFromMap(new IdentityHashMap<>());
+    notified.addAll(items);
+
+    for (List<Entry> entries : entriesByThread.values()) {
+      for (int i = 0; i < entries.size(); i++) {
+        Entry entry = entries.get(i);
+
+        if (notified.contains(entry.item)) {
+          entries.set(i, new Entry(entry.item.withNotifiedTimestamp(timestamp), entry.mentionsSelf, entry.reaction));
+        }
+      }
+    }
+  }
+
+  private void reloadAll(@NonNull Context context) {
+    long startTime = System.currentTimeMillis();
+
+    entriesByThread.clear();
+
+    for (Entry entry : source.readAll(context)) {
+      List<Entry> threadEntries = entriesByThread.get(entry.item.getThreadId());
+
+      if (threadEntries == null) {
+        threadEntries = new ArrayList<>();
+        entriesByThread.put(entry.item.getThreadId(), threadEntries);
+      }
+
+      threadEntries.add(entry);
+    }
+
+    Log.d(TAG, "Reloaded all notification state for " + entriesByThread.size() + " threads in " + (System.currentTimeMillis() - startTime) + " ms");
+  }
+
+  private @NonNull Set<Long> drainDirtyThreads() {
+    Set<Long>      drained  = new HashSet<>();
+    Iterator<Long> iterator = dirtyThreads.iterator();
+
+    while (iterator.hasNext()) {
+      drained.add(iterator.next());
+      iterator.remove();
+    }
+
+    return drained;
+  }
+
+  private void reloadThreads(@NonNull Context context, @NonNull Set<Long> threadIds) {
+    for (long threadId : threadIds) {
+      List<Entry> entries = source.readThread(context, threadId);
+
+      if (entries.isEmpty()) {
+        entriesByThread.remove(threadId);
+      } else {
+        entriesByThread.put(threadId, new ArrayList<>(entries));
+      }
+    }
+  }
+
+  /**
+   * Items are ordered by the time we received them, which is the order the full query returns
+   * them in, so the thread ordering of the resulting state matches a full reload.
+   */
+  private @NonNull Snapshot buildSnapshot() {
+    List<NotificationItem> items     = new ArrayList<>();
+    boolean                hasUnread = false;
+
+    Map<Long, Recipient> threadRecipients = new HashMap<>();
+
+    for (List<Entry> entries : entriesByThread.values()) {
+      for (Entry entry : entries) {
+        hasUnread = true;
+
+        if (isVisible(entry, threadRecipients)) {
+          items.add(entry.item);
+        }
+      }
+    }
+
+    Collections.sort(items, (a, b) -> Long.compare(a.getReceivedTimestamp(), b.getReceivedTimestamp()));
+
+    return new Snapshot(new NotificationState(items), hasUnread);
+  }
+
+  private static boolean isVisible(@NonNull Entry entry, @NonNull Map<Long, Recipient> threadRecipients) {
+    Recipient cachedRecipient = entry.item.getThreadRecipient();
+
+    if (cachedRecipient == null) {
+      return true;
+    }
+
+    Recipient threadRecipient = threadRecipients.get(entry.item.getThreadId());
+
+    if (threadRecipient == null) {
+      threadRecipient = cachedRecipient.live().resolve();
+      threadRecipients.put(entry.item.getThreadId(), threadRecipient);
+    }
+
+    if (!threadRecipient.isMuted()) {
+      return true;
+    }
+
+    return !entry.reaction                                                                   &&
+           entry.mentionsSelf                                                                &&
+           threadRecipient.getMentionSetting() == RecipientDatabase.MentionSetting.ALWAYS_NOTIFY;
+  }
+
+  static final class Snapshot {
+    private final NotificationState state;
+    private final boolean           hasUnread;
+
+    private Snapshot(@NonNull NotificationState state, boolean hasUnread) {
+      this.state     = state;
+      this.hasUnread = hasUnread;
+    }
+
+    @NonNull NotificationState getState() {
+      return state;
+    }
+
+    /**
+     * True if there are any unread items, including ones hidden because their thread is muted.
+     */
+    boolean hasUnread() {
+      return hasUnread;
+    }
+  }
+
+  static final class Entry {
+    private final NotificationItem item;
+    private final boolean          mentionsSelf;
+    private final boolean          reaction;
+
+    Entry(@NonNull NotificationItem item, boolean mentionsSelf, boolean reaction) {
+      this.item         = item;
+      this.mentionsSelf = mentionsSelf;
+      this.reaction     = reaction;
+    }
+  }
+
+  interface Source {
+    boolean isLocked(@NonNull Context context);
+
+    /**
+     * @return Every unread item, in the order they were received.
+     */
+    @WorkerThread
+    @NonNull List<Entry> readAll(@NonNull Context context);
+
+    /**
+     * @return The unread items in a single thread, in the order they were received.
+     */
+    @WorkerThread
+    @NonNull List<Entry> readThread(@NonNull Context context, long threadId);
+  }
+}
@@ -11,6 +11,8 @@ import org.thoughtcrime.securesms.util.LeakyBucketLimiter;
 import org.thoughtcrime.securesms.util.Util;
 import org.thoughtcrime.securesms.util.concurrent.SignalExecutors;
 
+import java.util.Collection;
+
 /**
  * Uses a leaky-bucket strategy to limiting notification updates.
  */
@@ -80,6 +82,16 @@ public class OptimizedMessageNotifier implements MessageNotifier {
     wrapped.clearReminder(context);
   }
 
+  @Override
+  public void invalidateThreads(@NonNull Collection<Long> threadIds) {
+    wrapped.invalidateThreads(threadIds);
+  }
+
+  @Override
+  public void invalidateAllThreads() {
+    wrapped.invalidateAllThreads();
+  }
+
   private void runOnLimiter(@NonNull Runnable runnable) {
     Throwable prettyException = new Throwable();
     limiter.run(() -> {
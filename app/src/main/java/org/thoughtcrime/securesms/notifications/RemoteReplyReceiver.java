@@ -110,6 +110,7 @@ public class RemoteReplyReceiver extends BroadcastReceiver {
 
           List<MarkedMessageInfo> messageIds = DatabaseFactory.getThreadDatabase(context).setRead(threadId, true);
 
+          ApplicationDependencies.getMessageNotifier().invalidateThreads(Collections.singleton(threadId));
           ApplicationDependencies.getMessageNotifier().updateNotification(context);
           MarkReadReceiver.process(context, messageIds);
 
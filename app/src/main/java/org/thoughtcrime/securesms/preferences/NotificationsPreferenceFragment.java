@@ -212,6 +212,7 @@ public class NotificationsPreferenceFragment extends ListSummaryPreferenceFragme
       new AsyncTask<Void, Void, Void>() {
         @Override
         protected Void doInBackground(Void... params) {
+          ApplicationDependencies.getMessageNotifier().invalidateAllThreads();
           ApplicationDependencies.getMessageNotifier().updateNotification(getActivity());
           return null;
         }
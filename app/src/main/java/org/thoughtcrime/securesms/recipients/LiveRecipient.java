@@ -13,6 +13,7 @@ import androidx.lifecycle.Observer;
 import com.annimon.stream.Stream;
 
 import org.thoughtcrime.securesms.R;
+import org.thoughtcrime.securesms.database.DatabaseContentProviders;
 import org.thoughtcrime.securesms.database.DatabaseFactory;
 import org.thoughtcrime.securesms.database.GroupDatabase;
 import org.thoughtcrime.securesms.database.GroupDatabase.GroupRecord;
@@ -23,7 +24,10 @@ import org.thoughtcrime.securesms.util.TextSecurePreferences;
 import org.thoughtcrime.securesms.util.Util;
 import org.whispersystems.libsignal.util.guava.Optional;
 
+import java.util.ArrayList;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.Objects;
 import java.util.Set;
 import java.util.concurrent.CopyOnWriteArraySet;
@@ -148,7 +152,8 @@ public final class LiveRecipient {
   }
 
   /**
-   * Forces a reload of the underlying recipient.
+   * Forces a reload of the underlying recipient, and lets observers of
+   * {@link DatabaseContentProviders.Recipient} know that it may have changed.
    */
   @WorkerThread
   public void refresh(@NonNull RecipientId id) {
@@ -173,16 +178,58 @@ public final class LiveRecipient {
     }
 
     set(recipient);
+
+    context.getContentResolver().notifyChange(DatabaseContentProviders.Recipient.CONTENT_URI, null);
   }
 
   public @NonNull LiveData<Recipient> getLiveData() {
     return liveData;
   }
 
+  /**
+   * Resolves this recipient using settings that were already read in bulk, for instance by
+   * {@link LiveRecipientCache#resolveAll(java.util.Collection)}. Any group members found in knownSettings
+   * aren't re-read, and any that we do have to read are added to it for later use.
+   */
+  @WorkerThread
+  @NonNull Recipient resolve(@NonNull RecipientSettings settings, @NonNull Map<RecipientId, RecipientSettings> knownSettings) {
+    Recipient current = recipient.get();
+
+    if (!current.isResolving() || current.getId().isUnknown()) {
+      return current;
+    }
+
+    Recipient updated = buildAndCacheRecipient(current.getId(), settings, knownSettings);
+
+    set(updated);
+
+    return updated;
+  }
+
+  /**
+   * Like {@link #refresh()}, but uses settings that were already read in bulk, for instance by
+   * {@link LiveRecipientCache#refreshAll(java.util.Collection)}.
+   */
+  @WorkerThread
+  void refresh(@NonNull RecipientSettings settings, @NonNull Map<RecipientId, RecipientSettings> knownSettings) {
+    if (getId().isUnknown()) return;
+
+    Recipient recipient = buildAndCacheRecipient(getId(), settings, knownSettings);
+
+    for (Recipient participant : recipient.getParticipants()) {
+      participant.live().set(participant);
+    }
+
+    set(recipient);
+  }
+
   private @NonNull Recipient fetchAndCacheRecipientFromDisk(@NonNull RecipientId id) {
-    RecipientSettings settings = recipientDatabase.getRecipientSettings(id);
-    RecipientDetails  details  = settings.getGroupId() != null ? getGroupRecipientDetails(settings)
-                                                               : RecipientDetails.forIndividual(context, settings);
+    return buildAndCacheRecipient(id, recipientDatabase.getRecipientSettings(id), new HashMap<>());
+  }
+
+  private @NonNull Recipient buildAndCacheRecipient(@NonNull RecipientId id, @NonNull RecipientSettings settings, @NonNull Map<RecipientId, RecipientSettings> knownSettings) {
+    RecipientDetails details = settings.getGroupId() != null ? getGroupRecipientDetails(settings, knownSettings)
+                                                             : RecipientDetails.forIndividual(context, settings);
 
     Recipient recipient = new Recipient(id, details, true);
     RecipientIdCache.INSTANCE.put(recipient);
@@ -190,12 +237,12 @@ public final class LiveRecipient {
   }
 
   @WorkerThread
-  private @NonNull RecipientDetails getGroupRecipientDetails(@NonNull RecipientSettings settings) {
+  private @NonNull RecipientDetails getGroupRecipientDetails(@NonNull RecipientSettings settings, @NonNull Map<RecipientId, RecipientSettings> knownSettings) {
     Optional<GroupRecord> groupRecord = groupDatabase.getGroup(settings.getId());
 
     if (groupRecord.isPresent()) {
       String          title    = groupRecord.get().getTitle();
-      List<Recipient> members  = Stream.of(groupRecord.get().getMembers()).filterNot(RecipientId::isUnknown).map(this::fetchAndCacheRecipientFromDisk).toList();
+      List<Recipient> members  = getGroupMembers(groupRecord.get(), knownSettings);
       Optional<Long>  avatarId = Optional.absent();
 
       if (groupRecord.get().hasAvatar()) {
@@ -208,6 +255,31 @@ public final class LiveRecipient {
     return new RecipientDetails(null, Optional.absent(), false, false, settings, null);
   }
 
+  /**
+   * Reads all members we don't already know about in one bulk query, rather than one per member.
+   */
+  @WorkerThread
+  private @NonNull List<Recipient> getGroupMembers(@NonNull GroupRecord groupRecord, @NonNull Map<RecipientId, RecipientSettings> knownSettings) {
+    List<RecipientId> memberIds  = Stream.of(groupRecord.getMembers()).filterNot(RecipientId::isUnknown).toList();
+    List<RecipientId> unknownIds = Stream.of(memberIds).filterNot(knownSettings::containsKey).toList();
+
+    knownSettings.putAll(recipientDatabase.getRecipientSettings(unknownIds));
+
+    List<Recipient> members = new ArrayList<>(memberIds.size());
+
+    for (RecipientId memberId : memberIds) {
+      RecipientSettings memberSettings = knownSettings.get(memberId);
+
+      if (memberSettings != null) {
+        members.add(buildAndCacheRecipient(memberId, memberSettings, knownSettings));
+      } else {
+        members.add(fetchAndCacheRecipientFromDisk(memberId));
+      }
+    }
+
+    return members;
+  }
+
   synchronized void set(@NonNull Recipient recipient) {
     this.recipient.set(recipient);
     this.liveData.postValue(recipient);
@@ -6,6 +6,7 @@ import android.content.Context;
 import androidx.annotation.AnyThread;
 import androidx.annotation.GuardedBy;
 import androidx.annotation.NonNull;
+import androidx.annotation.WorkerThread;
 import androidx.lifecycle.MutableLiveData;
 
 import com.annimon.stream.Stream;
@@ -13,20 +14,28 @@ import com.annimon.stream.Stream;
 import org.thoughtcrime.securesms.database.DatabaseFactory;
 import org.thoughtcrime.securesms.database.RecipientDatabase;
 import org.thoughtcrime.securesms.database.RecipientDatabase.MissingRecipientException;
+import org.thoughtcrime.securesms.database.RecipientDatabase.RecipientSettings;
 import org.thoughtcrime.securesms.database.ThreadDatabase;
 import org.thoughtcrime.securesms.database.model.ThreadRecord;
 import org.thoughtcrime.securesms.logging.Log;
-import org.thoughtcrime.securesms.util.LRUCache;
+import org.thoughtcrime.securesms.util.ClockCache;
 import org.thoughtcrime.securesms.util.TextSecurePreferences;
 import org.thoughtcrime.securesms.util.concurrent.SignalExecutors;
 
 import java.util.ArrayList;
 import java.util.Collection;
 import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.LinkedList;
 import java.util.List;
 import java.util.Map;
 import java.util.UUID;
+import java.util.concurrent.atomic.AtomicBoolean;
 
+/**
+ * Lookups don't take a lock, as they happen for every recipient that is bound or resolved.
+ */
 public final class LiveRecipientCache {
 
   private static final String TAG = Log.tag(LiveRecipientCache.class);
@@ -38,41 +47,55 @@ public final class LiveRecipientCache {
 
   private final Context                         context;
   private final RecipientDatabase               recipientDatabase;
-  private final Map<RecipientId, LiveRecipient> recipients;
-  private final LiveRecipient                   unknown;
+  private final ClockCache<RecipientId, LiveRecipient> recipients;
+  private final LiveRecipient                          unknown;
+  private final AtomicBoolean                          warmedUp;
 
   @GuardedBy("SELF_LOCK")
   private RecipientId localRecipientId;
-  private boolean     warmedUp;
 
   @SuppressLint("UseSparseArrays")
   public LiveRecipientCache(@NonNull Context context) {
     this.context           = context.getApplicationContext();
     this.recipientDatabase = DatabaseFactory.getRecipientDatabase(context);
-    this.recipients        = new LRUCache<>(CACHE_MAX);
+    this.recipients        = new ClockCache<>(CACHE_MAX);
     this.unknown           = new LiveRecipient(context, new MutableLiveData<>(), Recipient.UNKNOWN);
+    this.warmedUp          = new AtomicBoolean(false);
   }
 
   @AnyThread
-  synchronized @NonNull LiveRecipient getLive(@NonNull RecipientId id) {
+  @NonNull LiveRecipient getLive(@NonNull RecipientId id) {
+    return getLive(id, true);
+  }
+
+  /**
+   * @param enqueueResolve If true and we had to create a new entry, a resolve is enqueued on a
+   *                       background thread. Pass false if the caller is going to resolve it.
+   */
+  private @NonNull LiveRecipient getLive(@NonNull RecipientId id, boolean enqueueResolve) {
     if (id.isUnknown()) return unknown;
 
     LiveRecipient live = recipients.get(id);
 
     if (live == null) {
-      final LiveRecipient newLive = new LiveRecipient(context, new MutableLiveData<>(), new Recipient(id));
+      final LiveRecipient newLive  = new LiveRecipient(context, new MutableLiveData<>(), new Recipient(id));
+      final LiveRecipient existing = recipients.putIfAbsent(id, newLive);
 
-      recipients.put(id, newLive);
+      if (existing != null) {
+        return existing;
+      }
 
-      MissingRecipientException prettyStackTraceError = new MissingRecipientException(newLive.getId());
+      if (enqueueResolve) {
+        MissingRecipientException prettyStackTraceError = new MissingRecipientException(newLive.getId());
 
-      SignalExecutors.BOUNDED.execute(() -> {
-        try {
-          newLive.resolve();
-        } catch (MissingRecipientException e) {
-          throw prettyStackTraceError;
-        }
-      });
+        SignalExecutors.BOUNDED.execute(() -> {
+          try {
+            newLive.resolve();
+          } catch (MissingRecipientException e) {
+            throw prettyStackTraceError;
+          }
+        });
+      }
 
       live = newLive;
     }
@@ -80,6 +103,90 @@ public final class LiveRecipientCache {
     return live;
   }
 
+  /**
+   * Resolves all of the provided recipients, reading any that aren't already resolved from disk in
+   * bulk rather than one query per recipient. Members of groups are also read in bulk and added to
+   * the cache.
+   *
+   * @return The resolved recipients, in the same order as the provided ids.
+   */
+  @WorkerThread
+  public @NonNull List<Recipient> resolveAll(@NonNull Collection<RecipientId> ids) {
+    List<LiveRecipient>             lives      = new ArrayList<>(ids.size());
+    Map<RecipientId, LiveRecipient> unresolved = new LinkedHashMap<>();
+
+    for (RecipientId id : ids) {
+      LiveRecipient live = getLive(id, false);
+      lives.add(live);
+
+      if (!id.isUnknown() && live.get().isResolving()) {
+        unresolved.put(id, live);
+      }
+    }
+
+    if (!unresolved.isEmpty()) {
+      Map<RecipientId, RecipientSettings> settings      = recipientDatabase.getRecipientSettings(unresolved.keySet());
+      Map<RecipientId, RecipientSettings> knownSettings = new HashMap<>(settings);
+      List<Recipient>                     participants  = new LinkedList<>();
+
+      for (Map.Entry<RecipientId, LiveRecipient> entry : unresolved.entrySet()) {
+        RecipientSettings recipientSettings = settings.get(entry.getKey());
+        Recipient         resolved          = recipientSettings != null ? entry.getValue().resolve(recipientSettings, knownSettings)
+                                                                        : entry.getValue().resolve();
+
+        participants.addAll(resolved.getParticipants());
+      }
+
+      addToCache(participants);
+
+      Log.d(TAG, "Resolved " + unresolved.size() + " of " + ids.size() + " recipients in bulk.");
+    }
+
+    List<Recipient> resolved = new ArrayList<>(lives.size());
+
+    for (LiveRecipient live : lives) {
+      resolved.add(live.resolve());
+    }
+
+    return resolved;
+  }
+
+  /**
+   * Refreshes all of the provided recipients that are currently cached, reading them from disk in
+   * bulk. Recipients that aren't cached are skipped, as they'll be read fresh when next requested.
+   */
+  @WorkerThread
+  public void refreshAll(@NonNull Collection<RecipientId> ids) {
+    Map<RecipientId, LiveRecipient> cached = new LinkedHashMap<>();
+
+    for (RecipientId id : ids) {
+      LiveRecipient live = id.isUnknown() ? null : recipients.get(id);
+
+      if (live != null) {
+        cached.put(id, live);
+      }
+    }
+
+    if (cached.isEmpty()) {
+      return;
+    }
+
+    Map<RecipientId, RecipientSettings> settings      = recipientDatabase.getRecipientSettings(cached.keySet());
+    Map<RecipientId, RecipientSettings> knownSettings = new HashMap<>(settings);
+
+    for (Map.Entry<RecipientId, LiveRecipient> entry : cached.entrySet()) {
+      RecipientSettings recipientSettings = settings.get(entry.getKey());
+
+      if (recipientSettings != null) {
+        entry.getValue().refresh(recipientSettings, knownSettings);
+      } else {
+        entry.getValue().refresh();
+      }
+    }
+
+    Log.d(TAG, "Refreshed " + cached.size() + " of " + ids.size() + " recipients in bulk.");
+  }
+
   /**
    * Adds a recipient to the cache if we don't have an entry. This will also update a cache entry
    * if the provided recipient is resolved, or if the existing cache entry is unresolved.
@@ -87,14 +194,18 @@ public final class LiveRecipientCache {
    * If the recipient you add is unresolved, this will enqueue a resolve on a background thread.
    */
   @AnyThread
-  public synchronized void addToCache(@NonNull Collection<Recipient> newRecipients) {
+  public void addToCache(@NonNull Collection<Recipient> newRecipients) {
     for (Recipient recipient : newRecipients) {
       LiveRecipient live         = recipients.get(recipient.getId());
       boolean       needsResolve = false;
 
       if (live == null) {
-        live = new LiveRecipient(context, new MutableLiveData<>(), recipient);
-        recipients.put(recipient.getId(), live);
+        LiveRecipient newLive = new LiveRecipient(context, new MutableLiveData<>(), recipient);
+
+        live = recipients.putIfAbsent(recipient.getId(), newLive);
+      }
+
+      if (live == null) {
         needsResolve = recipient.isResolving();
       } else if (live.get().isResolving() || !recipient.isResolving()) {
         live.set(recipient);
@@ -138,11 +249,9 @@ public final class LiveRecipientCache {
   }
 
   @AnyThread
-  public synchronized void warmUp() {
-    if (warmedUp) {
+  public void warmUp() {
+    if (!warmedUp.compareAndSet(false, true)) {
       return;
-    } else {
-      warmedUp = true;
     }
 
     SignalExecutors.BOUNDED.execute(() -> {
@@ -161,17 +270,19 @@ public final class LiveRecipientCache {
 
       Log.d(TAG, "Warming up " + recipients.size() + " recipients.");
       Collections.reverse(recipients);
-      Stream.of(recipients).map(Recipient::getId).forEach(this::getLive);
+      resolveAll(Stream.of(recipients).map(Recipient::getId).toList());
     });
   }
 
   @AnyThread
-  public synchronized void clearSelf() {
-    localRecipientId = null;
+  public void clearSelf() {
+    synchronized (SELF_LOCK) {
+      localRecipientId = null;
+    }
   }
 
   @AnyThread
-  public synchronized void clear() {
+  public void clear() {
     recipients.clear();
   }
 }
@@ -125,15 +125,13 @@ public class Recipient {
     return live(id).resolve();
   }
 
+  /**
+   * Returns fully-populated {@link Recipient}s, in the same order as the ids. Any that aren't
+   * already cached are read from disk in bulk.
+   */
   @WorkerThread
   public static @NonNull List<Recipient> resolvedList(@NonNull Collection<RecipientId> ids) {
-    List<Recipient> recipients = new ArrayList<>(ids.size());
-
-    for (RecipientId recipientId : ids) {
-      recipients.add(resolved(recipientId));
-    }
-
-    return recipients;
+    return ApplicationDependencies.getRecipientCache().resolveAll(ids);
   }
 
   /**
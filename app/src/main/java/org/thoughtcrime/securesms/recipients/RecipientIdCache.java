@@ -4,14 +4,15 @@ import androidx.annotation.NonNull;
 import androidx.annotation.Nullable;
 
 import org.thoughtcrime.securesms.logging.Log;
+import org.thoughtcrime.securesms.util.ClockCache;
 import org.whispersystems.libsignal.util.guava.Optional;
 
-import java.util.LinkedHashMap;
-import java.util.Map;
 import java.util.UUID;
 
 /**
  * Thread safe cache that allows faster looking up of {@link RecipientId}s without hitting the database.
+ *
+ * Lookups happen for every incoming message, so they don't take a lock.
  */
 final class RecipientIdCache {
 
@@ -21,18 +22,13 @@ final class RecipientIdCache {
 
   private static final String TAG = Log.tag(RecipientIdCache.class);
 
-  private final Map<Object, RecipientId> ids;
+  private final ClockCache<Object, RecipientId> ids;
 
   RecipientIdCache(int limit) {
-    ids = new LinkedHashMap<Object, RecipientId>(128, 0.75f, true) {
-      @Override
-      protected boolean removeEldestEntry(Entry<Object, RecipientId> eldest) {
-        return size() > limit;
-      }
-    };
+    ids = new ClockCache<>(limit);
   }
 
-  synchronized void put(@NonNull Recipient recipient) {
+  void put(@NonNull Recipient recipient) {
     RecipientId      recipientId = recipient.getId();
     Optional<String> e164        = recipient.getE164();
     Optional<UUID>   uuid        = recipient.getUuid();
@@ -46,7 +42,7 @@ final class RecipientIdCache {
     }
   }
 
-  synchronized @Nullable RecipientId get(@Nullable UUID uuid, @Nullable String e164) {
+  @Nullable RecipientId get(@Nullable UUID uuid, @Nullable String e164) {
     if (uuid != null && e164 != null) {
       RecipientId recipientIdByUuid = ids.get(uuid);
       if (recipientIdByUuid == null) return null;
@@ -71,7 +67,7 @@ final class RecipientIdCache {
     return null;
   }
 
-  synchronized void clear() {
+  void clear() {
     ids.clear();
   }
 }
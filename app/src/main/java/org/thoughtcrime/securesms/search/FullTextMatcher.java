@@ -0,0 +1,184 @@
+package org.thoughtcrime.securesms.search;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+
+import java.text.Normalizer;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+
+/**
+ * Matches text in memory the same way the message FTS index matches a query built by
+ * {@link org.thoughtcrime.securesms.database.SearchDatabase}: every space-separated word of the
+ * query has to appear in the text as a phrase, with the last token of the phrase matched as a
+ * prefix. Tokens are case-folded runs of letters and digits with diacritics removed, as with the
+ * unicode61 tokenizer.
+ */
+final class FullTextMatcher {
+
+  private final List<List<String>> phrases;
+
+  private FullTextMatcher(@NonNull List<List<String>> phrases) {
+    this.phrases = phrases;
+  }
+
+  /**
+   * @return A matcher for the query, or null if a word in it has no tokens, as we can't know how
+   *         the index would treat it.
+   */
+  static @Nullable FullTextMatcher forQuery(@NonNull String query) {
+    List<List<String>> phrases = new ArrayList<>();
+
+    for (String word : query.split(" ")) {
+      if (word.trim().isEmpty()) {
+        continue;
+      }
+
+      List<String> tokens = tokenize(word);
+
+      if (tokens.isEmpty()) {
+        return null;
+      }
+
+      phrases.add(tokens);
+    }
+
+    return phrases.isEmpty() ? null : new FullTextMatcher(phrases);
+  }
+
+  boolean matches(@Nullable String text) {
+    if (text == null) {
+      return false;
+    }
+
+    List<Token> tokens = tokenizeWithOffsets(text);
+
+    for (List<String> phrase : phrases) {
+      if (findPhrase(tokens, phrase) < 0) {
+        return false;
+      }
+    }
+
+    return true;
+  }
+
+  /**
+   * @return The offset in the text of the first place any word of the query matches, or -1 if
+   *         none do.
+   */
+  int indexIn(@Nullable String text) {
+    if (text == null) {
+      return -1;
+    }
+
+    List<Token> tokens = tokenizeWithOffsets(text);
+    int         first  = -1;
+
+    for (List<String> phrase : phrases) {
+      int index = findPhrase(tokens, phrase);
+
+      if (index >= 0 && (first < 0 || index < first)) {
+        first = index;
+      }
+    }
+
+    return first >= 0 ? tokens.get(first).start : -1;
+  }
+
+  /**
+   * @return The index of the token the phrase starts at, or -1 if it isn't present.
+   */
+  private static int findPhrase(@NonNull List<Token> tokens, @NonNull List<String> phrase) {
+    int last = phrase.size() - 1;
+
+    for (int i = 0; i + last < tokens.size(); i++) {
+      boolean matches = true;
+
+      for (int j = 0; j < last && matches; j++) {
+        matches = tokens.get(i + j).text.equals(phrase.get(j));
+      }
+
+      if (matches && tokens.get(i + last).text.startsWith(phrase.get(last))) {
+        return i;
+      }
+    }
+
+    return -1;
+  }
+
+  static @NonNull List<String> tokenize(@NonNull String text) {
+    List<String> tokens = new ArrayList<>();
+
+    for (Token token : tokenizeWithOffsets(text)) {
+      tokens.add(token.text);
+    }
+
+    return tokens;
+  }
+
+  private static @NonNull List<Token> tokenizeWithOffsets(@NonNull String text) {
+    List<Token>   tokens  = new ArrayList<>();
+    StringBuilder token   = new StringBuilder();
+    boolean       inToken = false;
+    int           start   = 0;
+
+    for (int i = 0; i < text.length(); ) {
+      int codePoint = text.codePointAt(i);
+      int next      = i + Character.charCount(codePoint);
+
+      if (Character.isLetterOrDigit(codePoint)) {
+        if (!inToken) {
+          inToken = true;
+          start   = i;
+        }
+
+        appendFolded(token, codePoint);
+      } else if (inToken && Character.getType(codePoint) != Character.NON_SPACING_MARK) {
+        tokens.add(new Token(token.toString(), start));
+        token.setLength(0);
+        inToken = false;
+      }
+
+      i = next;
+    }
+
+    if (inToken) {
+      tokens.add(new Token(token.toString(), start));
+    }
+
+    return tokens;
+  }
+
+  /**
+   * Appends the code point lowercased and with any diacritics removed.
+   */
+  private static void appendFolded(@NonNull StringBuilder builder, int codePoint) {
+    if (codePoint < 0x80) {
+      builder.append(Character.toLowerCase((char) codePoint));
+      return;
+    }
+
+    String decomposed = Normalizer.normalize(new String(Character.toChars(codePoint)), Normalizer.Form.NFD).toLowerCase(Locale.ROOT);
+
+    for (int i = 0; i < decomposed.length(); ) {
+      int folded = decomposed.codePointAt(i);
+
+      if (Character.getType(folded) != Character.NON_SPACING_MARK) {
+        builder.appendCodePoint(folded);
+      }
+
+      i += Character.charCount(folded);
+    }
+  }
+
+  private static final class Token {
+    private final String text;
+    private final int    start;
+
+    private Token(@NonNull String text, int start) {
+      this.text  = text;
+      this.start = start;
+    }
+  }
+}
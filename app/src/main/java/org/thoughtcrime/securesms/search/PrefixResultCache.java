@@ -0,0 +1,125 @@
+package org.thoughtcrime.securesms.search;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+
+import com.annimon.stream.Stream;
+import com.annimon.stream.function.Predicate;
+
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Caches the results of recent queries to a single search source, so that typing another
+ * character can often be answered from memory rather than by querying the database again.
+ *
+ * This relies on the source only ever narrowing its results as a query is extended, i.e. every
+ * result for "abc" is also a result for "ab". Given the complete (not truncated) results for a
+ * prefix of a query, if they're empty then so are the results for the query, and otherwise the
+ * results for the query can be found by filtering them.
+ *
+ * Prefixes without any letters or digits in them are never used, as sources tend to treat those
+ * queries specially.
+ */
+final class PrefixResultCache<T> {
+
+  private final Map<String, Entry<T>> entries;
+
+  PrefixResultCache(int maxEntries) {
+    this.entries = new LinkedHashMap<String, Entry<T>>(maxEntries, 0.75f, true) {
+      @Override
+      protected boolean removeEldestEntry(Map.Entry<String, Entry<T>> eldest) {
+        return size() > maxEntries;
+      }
+    };
+  }
+
+  /**
+   * @param filter Used to narrow the results of a prefix of the query, if present.
+   * @return The results for the query, or null if they have to be queried for.
+   */
+  synchronized @Nullable List<T> get(@NonNull String query, @Nullable Filter<T> filter) {
+    Entry<T> exact = entries.get(query);
+
+    if (exact != null) {
+      return exact.results;
+    }
+
+    Entry<T> prefix = null;
+
+    for (Map.Entry<String, Entry<T>> entry : entries.entrySet()) {
+      String key = entry.getKey();
+
+      if (entry.getValue().complete            &&
+          query.startsWith(key)                &&
+          hasLetterOrDigit(key)                &&
+          (prefix == null || key.length() > prefix.query.length()))
+      {
+        prefix = entry.getValue();
+      }
+    }
+
+    if (prefix == null) {
+      return null;
+    }
+
+    if (prefix.results.isEmpty()) {
+      put(query, Collections.emptyList(), true);
+      return Collections.emptyList();
+    }
+
+    Predicate<T> predicate = filter != null ? filter.forQuery(query) : null;
+
+    if (predicate == null) {
+      return null;
+    }
+
+    List<T> filtered = Stream.of(prefix.results).filter(predicate).toList();
+
+    put(query, filtered, true);
+    return filtered;
+  }
+
+  /**
+   * @param complete False if the results were truncated.
+   */
+  synchronized void put(@NonNull String query, @NonNull List<T> results, boolean complete) {
+    entries.put(query, new Entry<>(query, Collections.unmodifiableList(results), complete));
+  }
+
+  synchronized void clear() {
+    entries.clear();
+  }
+
+  private static boolean hasLetterOrDigit(@NonNull String query) {
+    for (int i = 0; i < query.length(); i++) {
+      if (Character.isLetterOrDigit(query.charAt(i))) {
+        return true;
+      }
+    }
+
+    return false;
+  }
+
+  interface Filter<T> {
+    /**
+     * @return A predicate that matches the results for the query, or null if the query can't be
+     *         evaluated in memory.
+     */
+    @Nullable Predicate<T> forQuery(@NonNull String query);
+  }
+
+  private static final class Entry<T> {
+    private final String  query;
+    private final List<T> results;
+    private final boolean complete;
+
+    private Entry(@NonNull String query, @NonNull List<T> results, boolean complete) {
+      this.query    = query;
+      this.results  = results;
+      this.complete = complete;
+    }
+  }
+}
@@ -20,6 +20,7 @@ import org.thoughtcrime.securesms.database.DatabaseFactory;
 import org.thoughtcrime.securesms.database.MentionDatabase;
 import org.thoughtcrime.securesms.database.MentionUtil;
 import org.thoughtcrime.securesms.database.MessageDatabase;
+import org.thoughtcrime.securesms.database.MessageSearchPosition;
 import org.thoughtcrime.securesms.database.MmsDatabase;
 import org.thoughtcrime.securesms.database.MmsSmsColumns;
 import org.thoughtcrime.securesms.database.RecipientDatabase;
@@ -34,6 +35,8 @@ import org.thoughtcrime.securesms.recipients.Recipient;
 import org.thoughtcrime.securesms.recipients.RecipientId;
 import org.thoughtcrime.securesms.util.CursorUtil;
 import org.thoughtcrime.securesms.util.Util;
+import org.thoughtcrime.securesms.util.concurrent.SerialExecutor;
+import org.thoughtcrime.securesms.util.concurrent.SerialMonoLifoExecutor;
 import org.thoughtcrime.securesms.util.concurrent.SignalExecutors;
 
 import java.util.ArrayList;
@@ -43,10 +46,8 @@ import java.util.LinkedList;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
-import java.util.concurrent.ExecutionException;
 import java.util.concurrent.Executor;
-import java.util.concurrent.ExecutorService;
-import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicReference;
 
 import static org.thoughtcrime.securesms.database.SearchDatabase.SNIPPET_WRAP;
 
@@ -74,65 +75,155 @@ public class SearchRepository {
     }
   }
 
-  private final Context           context;
-  private final SearchDatabase    searchDatabase;
-  private final ContactRepository contactRepository;
-  private final ThreadDatabase    threadDatabase;
-  private final ContactAccessor   contactAccessor;
-  private final Executor          serialExecutor;
-  private final ExecutorService   parallelExecutor;
-  private final RecipientDatabase recipientDatabase;
-  private final MentionDatabase   mentionDatabase;
-  private final MessageDatabase   mmsDatabase;
+  private static final int CONTACT_LIMIT      = 250;
+  private static final int CACHED_QUERY_LIMIT = 10;
+  private static final int MESSAGE_PAGE_SIZE  = 100;
+
+  /**
+   * Bodies with mentions in them have had the mentions replaced with display names, which the
+   * index doesn't contain. That makes the filter slightly more lenient than the index for them.
+   */
+  private static final PrefixResultCache.Filter<MessageResult> MESSAGE_FILTER = query -> {
+    FullTextMatcher matcher = FullTextMatcher.forQuery(query);
+    return matcher != null ? result -> matcher.matches(result.body) : null;
+  };
+
+  private final Context                          context;
+  private final SearchDatabase                   searchDatabase;
+  private final ContactRepository                contactRepository;
+  private final ThreadDatabase                   threadDatabase;
+  private final ContactAccessor                  contactAccessor;
+  private final Executor                         threadSearchExecutor;
+  private final Executor                         contactExecutor;
+  private final Executor                         conversationExecutor;
+  private final Executor                         messageExecutor;
+  private final Executor                         mentionExecutor;
+  private final Executor                         callbackExecutor;
+  private final RecipientDatabase                recipientDatabase;
+  private final MentionDatabase                  mentionDatabase;
+  private final MessageDatabase                  mmsDatabase;
+  private final PrefixResultCache<Recipient>     contactCache;
+  private final PrefixResultCache<ThreadRecord>  conversationCache;
+  private final PrefixResultCache<MessageResult> messageCache;
+  private final AtomicReference<PendingSearch>   activeSearch;
 
   public SearchRepository() {
-    this.context           = ApplicationDependencies.getApplication().getApplicationContext();
-    this.searchDatabase    = DatabaseFactory.getSearchDatabase(context);
-    this.threadDatabase    = DatabaseFactory.getThreadDatabase(context);
-    this.recipientDatabase = DatabaseFactory.getRecipientDatabase(context);
-    this.mentionDatabase   = DatabaseFactory.getMentionDatabase(context);
-    this.mmsDatabase       = DatabaseFactory.getMmsDatabase(context);
-    this.contactRepository = new ContactRepository(context);
-    this.contactAccessor   = ContactAccessor.getInstance();
-    this.serialExecutor    = SignalExecutors.SERIAL;
-    this.parallelExecutor  = SignalExecutors.BOUNDED;
+    this.context              = ApplicationDependencies.getApplication().getApplicationContext();
+    this.searchDatabase       = DatabaseFactory.getSearchDatabase(context);
+    this.threadDatabase       = DatabaseFactory.getThreadDatabase(context);
+    this.recipientDatabase    = DatabaseFactory.getRecipientDatabase(context);
+    this.mentionDatabase      = DatabaseFactory.getMentionDatabase(context);
+    this.mmsDatabase          = DatabaseFactory.getMmsDatabase(context);
+    this.contactRepository    = new ContactRepository(context);
+    this.contactAccessor      = ContactAccessor.getInstance();
+    this.threadSearchExecutor = new SerialMonoLifoExecutor(SignalExecutors.BOUNDED);
+    this.contactExecutor      = new SerialMonoLifoExecutor(SignalExecutors.BOUNDED);
+    this.conversationExecutor = new SerialMonoLifoExecutor(SignalExecutors.BOUNDED);
+    this.messageExecutor      = new SerialMonoLifoExecutor(SignalExecutors.BOUNDED);
+    this.mentionExecutor      = new SerialMonoLifoExecutor(SignalExecutors.BOUNDED);
+    this.callbackExecutor     = new SerialExecutor(SignalExecutors.BOUNDED);
+    this.contactCache         = new PrefixResultCache<>(CACHED_QUERY_LIMIT);
+    this.conversationCache    = new PrefixResultCache<>(CACHED_QUERY_LIMIT);
+    this.messageCache         = new PrefixResultCache<>(CACHED_QUERY_LIMIT);
+    this.activeSearch         = new AtomicReference<>();
   }
 
+  /**
+   * Searches contacts, conversations and messages. Each is queried separately, and the callback is
+   * called with the results so far each time one finishes, and always once all have finished.
+   *
+   * Starting a new search cancels the previous one, and its callback won't be called again.
+   * Queries that extend a recent query are answered from memory where possible.
+   */
   public void query(@NonNull String query, @NonNull Callback<SearchResult> callback) {
     if (TextUtils.isEmpty(query)) {
-      callback.onResult(SearchResult.EMPTY);
+      cancelActiveSearch();
+      clearCache();
+      callbackExecutor.execute(() -> callback.onResult(SearchResult.EMPTY));
       return;
     }
 
-    serialExecutor.execute(() -> {
-      String cleanQuery = sanitizeQuery(query);
+    String        cleanQuery = sanitizeQuery(query);
+    PendingSearch search     = new PendingSearch(cleanQuery, callback, callbackExecutor);
+    PendingSearch previous   = activeSearch.getAndSet(search);
 
-      Future<List<Recipient>>     contacts        = parallelExecutor.submit(() -> queryContacts(cleanQuery));
-      Future<List<ThreadRecord>>  conversations   = parallelExecutor.submit(() -> queryConversations(cleanQuery));
-      Future<List<MessageResult>> messages        = parallelExecutor.submit(() -> queryMessages(cleanQuery));
-      Future<List<MessageResult>> mentionMessages = parallelExecutor.submit(() -> queryMentions(sanitizeQueryAsTokens(query)));
+    if (previous != null) {
+      previous.cancel();
+    }
 
-      try {
-        long         startTime = System.currentTimeMillis();
-        SearchResult result    = new SearchResult(cleanQuery, contacts.get(), conversations.get(), mergeMessagesAndMentions(messages.get(), mentionMessages.get()));
+    // Contacts and conversations are matched on things that aren't on the models we cache, like
+    // usernames, group titles and the localized "Note to self", so their results can't be filtered
+    // in memory. Their caches only answer repeated queries, and extensions of queries that had no
+    // results.
+    List<Recipient> cachedContacts = contactCache.get(cleanQuery, null);
 
-        Log.d(TAG, "Total time: " + (System.currentTimeMillis() - startTime) + " ms");
+    if (cachedContacts != null) {
+      search.setContacts(cachedContacts);
+    } else {
+      contactExecutor.execute(() -> {
+        if (search.isCanceled()) return;
+
+        List<Recipient> contacts = queryContacts(cleanQuery, search);
+
+        if (!search.isCanceled()) {
+          contactCache.put(cleanQuery, contacts, contacts.size() < CONTACT_LIMIT);
+          search.setContacts(contacts);
+        }
+      });
+    }
+
+    List<ThreadRecord> cachedConversations = conversationCache.get(cleanQuery, null);
+
+    if (cachedConversations != null) {
+      search.setConversations(cachedConversations);
+    } else {
+      conversationExecutor.execute(() -> {
+        if (search.isCanceled()) return;
+
+        List<ThreadRecord> conversations = queryConversations(cleanQuery, search);
+
+        if (!search.isCanceled()) {
+          conversationCache.put(cleanQuery, conversations, true);
+          search.setConversations(conversations);
+        }
+      });
+    }
+
+    List<MessageResult> cachedMessages = messageCache.get(cleanQuery, MESSAGE_FILTER);
+
+    if (cachedMessages != null) {
+      search.setMessages(cachedMessages);
+    } else {
+      messageExecutor.execute(() -> {
+        if (search.isCanceled()) return;
+
+        List<MessageResult> messages = queryMessages(cleanQuery, search);
+
+        if (!search.isCanceled()) {
+          messageCache.put(cleanQuery, messages, messages.size() < SearchDatabase.MESSAGE_LIMIT);
+          search.setMessages(messages);
+        }
+      });
+    }
 
-        callback.onResult(result);
-      } catch (ExecutionException | InterruptedException e) {
-        Log.w(TAG, e);
-        callback.onResult(SearchResult.EMPTY);
+    mentionExecutor.execute(() -> {
+      if (search.isCanceled()) return;
+
+      List<MessageResult> mentionMessages = queryMentions(sanitizeQueryAsTokens(query));
+
+      if (!search.isCanceled()) {
+        search.setMentionMessages(mentionMessages);
       }
     });
   }
 
   public void query(@NonNull String query, long threadId, @NonNull Callback<List<MessageResult>> callback) {
     if (TextUtils.isEmpty(query)) {
-      callback.onResult(CursorList.emptyList());
+      threadSearchExecutor.execute(() -> callback.onResult(CursorList.emptyList()));
       return;
     }
 
-    serialExecutor.execute(() -> {
+    threadSearchExecutor.execute(() -> {
       long                startTime       = System.currentTimeMillis();
       List<MessageResult> messages        = queryMessages(sanitizeQuery(query), threadId);
       List<MessageResult> mentionMessages = queryMentions(sanitizeQueryAsTokens(query), threadId);
@@ -143,7 +234,24 @@ public class SearchRepository {
     });
   }
 
-  private List<Recipient> queryContacts(String query) {
+  /**
+   * Drops cached results. Should be called whenever the data being searched may have changed.
+   */
+  public void clearCache() {
+    contactCache.clear();
+    conversationCache.clear();
+    messageCache.clear();
+  }
+
+  private void cancelActiveSearch() {
+    PendingSearch previous = activeSearch.getAndSet(null);
+
+    if (previous != null) {
+      previous.cancel();
+    }
+  }
+
+  private @NonNull List<Recipient> queryContacts(@NonNull String query, @NonNull PendingSearch search) {
     Cursor contacts = null;
 
     try {
@@ -152,7 +260,7 @@ public class SearchRepository {
 
       contacts = new MergeCursor(new Cursor[]{ textSecureContacts, systemContacts });
 
-      return readToList(contacts, new RecipientModelBuilder(), 250);
+      return readToList(contacts, new RecipientModelBuilder(), CONTACT_LIMIT, search);
     } finally {
       if (contacts != null) {
         contacts.close();
@@ -160,19 +268,40 @@ public class SearchRepository {
     }
   }
 
-  private @NonNull List<ThreadRecord> queryConversations(@NonNull String query) {
+  private @NonNull List<ThreadRecord> queryConversations(@NonNull String query, @NonNull PendingSearch search) {
     List<String>      numbers      = contactAccessor.getNumbersForThreadSearchFilter(context, query);
     List<RecipientId> recipientIds = Stream.of(numbers).map(number -> Recipient.external(context, number)).map(Recipient::getId).toList();
 
     try (Cursor cursor = threadDatabase.getFilteredConversationList(recipientIds)) {
-      return readToList(cursor, new ThreadModelBuilder(threadDatabase));
+      return readToList(cursor, new ThreadModelBuilder(threadDatabase), -1, search);
     }
   }
 
-  private @NonNull List<MessageResult> queryMessages(@NonNull String query) {
-    List<MessageResult> results;
-    try (Cursor cursor = searchDatabase.queryMessages(query)) {
-      results = readToList(cursor, new MessageModelBuilder());
+  private @NonNull List<MessageResult> queryMessages(@NonNull String query, @NonNull PendingSearch search) {
+    List<MessageResult>   results  = new ArrayList<>();
+    MessageModelBuilder   builder  = new MessageModelBuilder(FullTextMatcher.forQuery(query));
+    MessageSearchPosition position = MessageSearchPosition.START;
+
+    while (results.size() < SearchDatabase.MESSAGE_LIMIT && !search.isCanceled()) {
+      int                 pageSize = Math.min(MESSAGE_PAGE_SIZE, SearchDatabase.MESSAGE_LIMIT - results.size());
+      List<MessageResult> page;
+
+      try (Cursor cursor = searchDatabase.queryMessages(query, position, pageSize)) {
+        page = readToList(cursor, builder, -1, search);
+      }
+
+      results.addAll(page);
+
+      if (page.size() < pageSize) {
+        break;
+      }
+
+      MessageResult last = page.get(page.size() - 1);
+      position = MessageSearchPosition.after(last.receivedTimestampMs, last.messageId, last.isMms);
+    }
+
+    if (search.isCanceled()) {
+      return results;
     }
 
     List<Long> messageIds = new LinkedList<>();
@@ -243,7 +372,7 @@ public class SearchRepository {
 
   private @NonNull List<MessageResult> queryMessages(@NonNull String query, long threadId) {
     try (Cursor cursor = searchDatabase.queryMessages(query, threadId)) {
-      return readToList(cursor, new MessageModelBuilder());
+      return readToList(cursor, new MessageModelBuilder(FullTextMatcher.forQuery(query)));
     }
   }
 
@@ -309,29 +438,42 @@ public class SearchRepository {
   }
 
   private @NonNull String makeSnippet(@NonNull List<String> queries, @NonNull String body) {
-    if (body.length() < 50) {
-      return body;
-    }
-
     String lowerBody = body.toLowerCase();
     for (String query : queries) {
       int foundIndex = lowerBody.indexOf(query.toLowerCase());
       if (foundIndex != -1) {
-        int snippetStart = Math.max(0, Math.max(body.lastIndexOf(' ', foundIndex - 5) + 1, foundIndex - 15));
-        int lastSpace    = body.indexOf(' ', foundIndex + 30);
-        int snippetEnd   = Math.min(body.length(), lastSpace > 0 ? Math.min(lastSpace, foundIndex + 40) : foundIndex + 40);
-
-        return (snippetStart > 0 ? SNIPPET_WRAP : "") + body.substring(snippetStart, snippetEnd) + (snippetEnd < body.length() ? SNIPPET_WRAP : "");
+        return makeSnippet(body, foundIndex);
       }
     }
     return body;
   }
 
+  /**
+   * @param foundIndex Where the match starts in the body. The snippet starts at the beginning of
+   *                   the body if there isn't one.
+   */
+  private static @NonNull String makeSnippet(@NonNull String body, int foundIndex) {
+    if (body.length() < 50) {
+      return body;
+    }
+
+    foundIndex = Math.max(0, foundIndex);
+
+    int snippetStart = Math.max(0, Math.max(body.lastIndexOf(' ', foundIndex - 5) + 1, foundIndex - 15));
+    int lastSpace    = body.indexOf(' ', foundIndex + 30);
+    int snippetEnd   = Math.min(body.length(), lastSpace > 0 ? Math.min(lastSpace, foundIndex + 40) : foundIndex + 40);
+
+    return (snippetStart > 0 ? SNIPPET_WRAP : "") + body.substring(snippetStart, snippetEnd) + (snippetEnd < body.length() ? SNIPPET_WRAP : "");
+  }
+
   private @NonNull <T> List<T> readToList(@Nullable Cursor cursor, @NonNull CursorList.ModelBuilder<T> builder) {
-    return readToList(cursor, builder, -1);
+    return readToList(cursor, builder, -1, null);
   }
 
-  private @NonNull <T> List<T> readToList(@Nullable Cursor cursor, @NonNull CursorList.ModelBuilder<T> builder, int limit) {
+  /**
+   * @param search If present, reading stops early once the search is canceled.
+   */
+  private @NonNull <T> List<T> readToList(@Nullable Cursor cursor, @NonNull CursorList.ModelBuilder<T> builder, int limit, @Nullable PendingSearch search) {
     if (cursor == null) {
       return Collections.emptyList();
     }
@@ -339,7 +481,7 @@ public class SearchRepository {
     int     i    = 0;
     List<T> list = new ArrayList<>(cursor.getCount());
 
-    while (cursor.moveToNext() && (limit < 0 || i < limit)) {
+    while (cursor.moveToNext() && (limit < 0 || i < limit) && (search == null || !search.isCanceled())) {
       list.add(builder.build(cursor));
       i++;
     }
@@ -425,6 +567,16 @@ public class SearchRepository {
 
   private static class MessageModelBuilder implements CursorList.ModelBuilder<MessageResult> {
 
+    private final FullTextMatcher matcher;
+
+    /**
+     * @param matcher Used to find where the query matches to build a snippet around it. If absent,
+     *                the snippet is the whole body.
+     */
+    MessageModelBuilder(@Nullable FullTextMatcher matcher) {
+      this.matcher = matcher;
+    }
+
     @Override
     public MessageResult build(@NonNull Cursor cursor) {
       RecipientId conversationRecipientId = RecipientId.from(cursor.getLong(cursor.getColumnIndex(SearchDatabase.CONVERSATION_RECIPIENT)));
@@ -432,7 +584,7 @@ public class SearchRepository {
       Recipient   conversationRecipient   = Recipient.live(conversationRecipientId).get();
       Recipient   messageRecipient        = Recipient.live(messageRecipientId).get();
       String      body                    = CursorUtil.requireString(cursor, SearchDatabase.BODY);
-      String      bodySnippet             = CursorUtil.requireString(cursor, SearchDatabase.SNIPPET);
+      String      bodySnippet             = matcher != null ? makeSnippet(body, matcher.indexIn(body)) : body;
       long        receivedMs              = CursorUtil.requireLong(cursor, MmsSmsColumns.NORMALIZED_DATE_RECEIVED);
       long        threadId                = CursorUtil.requireLong(cursor, MmsSmsColumns.THREAD_ID);
       int         messageId               = CursorUtil.requireInt(cursor, SearchDatabase.MESSAGE_ID);
@@ -442,6 +594,95 @@ public class SearchRepository {
     }
   }
 
+  /**
+   * Collects the results of a search from each source as they finish, passing along the results
+   * so far. Partial results are only passed along if there are any, so we don't briefly show that
+   * there are no results while the remaining sources are still running.
+   *
+   * Results are handed to a serial executor in the order they were assembled, so the callback runs
+   * outside of our lock but still sees them in order.
+   */
+  private static final class PendingSearch {
+
+    private final String                 query;
+    private final Callback<SearchResult> callback;
+    private final Executor               callbackExecutor;
+    private final long                   startTime;
+
+    private volatile boolean canceled;
+
+    private List<Recipient>     contacts;
+    private List<ThreadRecord>  conversations;
+    private List<MessageResult> messages;
+    private List<MessageResult> mentionMessages;
+
+    private PendingSearch(@NonNull String query, @NonNull Callback<SearchResult> callback, @NonNull Executor callbackExecutor) {
+      this.query            = query;
+      this.callback         = callback;
+      this.callbackExecutor = callbackExecutor;
+      this.startTime        = System.currentTimeMillis();
+    }
+
+    boolean isCanceled() {
+      return canceled;
+    }
+
+    synchronized void cancel() {
+      canceled = true;
+    }
+
+    synchronized void setContacts(@NonNull List<Recipient> contacts) {
+      this.contacts = contacts;
+      onSourceFinished();
+    }
+
+    synchronized void setConversations(@NonNull List<ThreadRecord> conversations) {
+      this.conversations = conversations;
+      onSourceFinished();
+    }
+
+    synchronized void setMessages(@NonNull List<MessageResult> messages) {
+      this.messages = messages;
+      onSourceFinished();
+    }
+
+    synchronized void setMentionMessages(@NonNull List<MessageResult> mentionMessages) {
+      this.mentionMessages = mentionMessages;
+      onSourceFinished();
+    }
+
+    /**
+     * Called with the lock held.
+     */
+    private void onSourceFinished() {
+      if (canceled) {
+        return;
+      }
+
+      boolean      finished = contacts != null && conversations != null && messages != null && mentionMessages != null;
+      SearchResult result   = new SearchResult(query,
+                                               contacts != null ? contacts : Collections.emptyList(),
+                                               conversations != null ? conversations : Collections.emptyList(),
+                                               mergeMessagesAndMentions(messages != null ? messages : Collections.emptyList(),
+                                                                        mentionMessages != null ? mentionMessages : Collections.emptyList()));
+
+      if (finished) {
+        Log.d(TAG, "Total time: " + (System.currentTimeMillis() - startTime) + " ms");
+        deliver(result);
+      } else if (!result.isEmpty()) {
+        deliver(result);
+      }
+    }
+
+    private void deliver(@NonNull SearchResult result) {
+      callbackExecutor.execute(() -> {
+        if (!canceled) {
+          callback.onResult(result);
+        }
+      });
+    }
+  }
+
   public interface Callback<E> {
     void onResult(@NonNull E result);
   }
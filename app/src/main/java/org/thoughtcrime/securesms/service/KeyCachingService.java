@@ -39,6 +39,7 @@ import org.thoughtcrime.securesms.logging.Log;
 
 import org.thoughtcrime.securesms.DummyActivity;
 import org.thoughtcrime.securesms.R;
+import org.thoughtcrime.securesms.crypto.DerivedKeyCache;
 import org.thoughtcrime.securesms.crypto.InvalidPassphraseException;
 import org.thoughtcrime.securesms.crypto.MasterSecret;
 import org.thoughtcrime.securesms.crypto.MasterSecretUtil;
@@ -116,6 +117,7 @@ public class KeyCachingService extends Service {
         @Override
         protected Void doInBackground(Void... params) {
           if (!ApplicationMigrations.isUpdate(KeyCachingService.this)) {
+            ApplicationDependencies.getMessageNotifier().invalidateAllThreads();
             ApplicationDependencies.getMessageNotifier().updateNotification(KeyCachingService.this);
           }
           return null;
@@ -179,6 +181,7 @@ public class KeyCachingService extends Service {
   private void handleClearKey() {
     Log.i(TAG, "handleClearKey()");
     KeyCachingService.masterSecret = null;
+    DerivedKeyCache.getInstance().clear();
     stopForeground(true);
 
     Intent intent = new Intent(CLEAR_KEY_EVENT);
@@ -189,6 +192,7 @@ public class KeyCachingService extends Service {
     new AsyncTask<Void, Void, Void>() {
       @Override
       protected Void doInBackground(Void... params) {
+        ApplicationDependencies.getMessageNotifier().invalidateAllThreads();
         ApplicationDependencies.getMessageNotifier().updateNotification(KeyCachingService.this);
         return null;
       }
@@ -6,7 +6,6 @@ import androidx.annotation.NonNull;
 import androidx.annotation.Nullable;
 import androidx.annotation.VisibleForTesting;
 
-import com.annimon.stream.Collectors;
 import com.annimon.stream.Stream;
 
 import org.thoughtcrime.securesms.database.DatabaseFactory;
@@ -21,8 +20,6 @@ import org.thoughtcrime.securesms.logging.Log;
 import org.thoughtcrime.securesms.recipients.Recipient;
 import org.thoughtcrime.securesms.recipients.RecipientId;
 import org.thoughtcrime.securesms.tracing.Trace;
-import org.thoughtcrime.securesms.util.Base64;
-import org.thoughtcrime.securesms.util.SetUtil;
 import org.thoughtcrime.securesms.util.TextSecurePreferences;
 import org.thoughtcrime.securesms.util.Util;
 import org.whispersystems.libsignal.util.guava.Optional;
@@ -215,32 +212,47 @@ public final class StorageSyncHelper {
   public static @NonNull KeyDifferenceResult findKeyDifference(@NonNull Collection<StorageId> remoteKeys,
                                                                @NonNull Collection<StorageId> localKeys)
   {
-    Map<String, StorageId> remoteByRawId = Stream.of(remoteKeys).collect(Collectors.toMap(id -> Base64.encodeBytes(id.getRaw()), id -> id));
-    Map<String, StorageId> localByRawId  = Stream.of(localKeys).collect(Collectors.toMap(id -> Base64.encodeBytes(id.getRaw()), id -> id));
+    Map<ByteBuffer, StorageId> remoteByRawId = mapByRawId(remoteKeys);
+    Map<ByteBuffer, StorageId> localByRawId  = mapByRawId(localKeys);
 
-    boolean hasTypeMismatch = remoteByRawId.size() != remoteKeys.size() || localByRawId.size() != localKeys.size();
+    boolean         hasTypeMismatch = remoteByRawId.size() != remoteKeys.size() || localByRawId.size() != localKeys.size();
+    List<StorageId> remoteOnlyKeys  = new ArrayList<>();
+    List<StorageId> localOnlyKeys   = new ArrayList<>();
 
-    Set<String> remoteOnlyRawIds = SetUtil.difference(remoteByRawId.keySet(), localByRawId.keySet());
-    Set<String> localOnlyRawIds  = SetUtil.difference(localByRawId.keySet(), remoteByRawId.keySet());
-    Set<String> sharedRawIds     = SetUtil.intersection(localByRawId.keySet(), remoteByRawId.keySet());
+    for (Map.Entry<ByteBuffer, StorageId> entry : remoteByRawId.entrySet()) {
+      StorageId remote = entry.getValue();
+      StorageId local  = localByRawId.get(entry.getKey());
 
-    for (String rawId : sharedRawIds) {
-      StorageId remote = Objects.requireNonNull(remoteByRawId.get(rawId));
-      StorageId local  = Objects.requireNonNull(localByRawId.get(rawId));
-
-      if (remote.getType() != local.getType()) {
-        remoteOnlyRawIds.remove(rawId);
-        localOnlyRawIds.remove(rawId);
+      if (local == null) {
+        remoteOnlyKeys.add(remote);
+      } else if (remote.getType() != local.getType()) {
         hasTypeMismatch = true;
       }
     }
 
-    List<StorageId> remoteOnlyKeys = Stream.of(remoteOnlyRawIds).map(remoteByRawId::get).toList();
-    List<StorageId> localOnlyKeys  = Stream.of(localOnlyRawIds).map(localByRawId::get).toList();
+    for (Map.Entry<ByteBuffer, StorageId> entry : localByRawId.entrySet()) {
+      if (!remoteByRawId.containsKey(entry.getKey())) {
+        localOnlyKeys.add(entry.getValue());
+      }
+    }
 
     return new KeyDifferenceResult(remoteOnlyKeys, localOnlyKeys, hasTypeMismatch);
   }
 
+  /**
+   * Keys the ids by their raw bytes without copying or encoding them. Later ids replace earlier ones
+   * with the same raw bytes.
+   */
+  private static @NonNull Map<ByteBuffer, StorageId> mapByRawId(@NonNull Collection<StorageId> ids) {
+    Map<ByteBuffer, StorageId> map = new HashMap<>(ids.size() * 4 / 3 + 1);
+
+    for (StorageId id : ids) {
+      map.put(ByteBuffer.wrap(id.getRaw()), id);
+    }
+
+    return map;
+  }
+
   /**
    * Given two sets of storage records, this will resolve the data into a set of actions that need
    * to be applied to resolve the differences. This will handle discovering which records between
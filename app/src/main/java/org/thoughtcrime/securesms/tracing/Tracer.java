@@ -1,6 +1,7 @@
 package org.thoughtcrime.securesms.tracing;
 
 import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
 
 /**
  * A class to create Perfetto-compatible traces.
@@ -42,4 +43,22 @@ public interface Tracer {
    * snapshot.
    */
   @NonNull byte[] serialize();
+
+  /**
+   * Like {@link #serialize()}, but only includes slices that started within the last
+   * durationMillis.
+   */
+  @NonNull byte[] serialize(long durationMillis);
+
+  /**
+   * Called when something noteworthy and slow happened, like a bad frame or a blocked main thread.
+   * Implementations may capture a snapshot of the recent trace that can later be retrieved with
+   * {@link #getLastSnapshot()}.
+   */
+  void onSlowEvent(@NonNull String reason);
+
+  /**
+   * The most recent snapshot captured by {@link #onSlowEvent(String)}, if any.
+   */
+  @Nullable byte[] getLastSnapshot();
 }
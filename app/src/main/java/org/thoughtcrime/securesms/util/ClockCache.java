@@ -0,0 +1,193 @@
+package org.thoughtcrime.securesms.util;
+
+import androidx.annotation.GuardedBy;
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+
+import java.util.Arrays;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * A thread safe, bounded cache that uses the CLOCK algorithm to approximate LRU eviction.
+ *
+ * Reads are lock-free: a hit only looks the entry up in a {@link ConcurrentHashMap} and sets its
+ * referenced bit. A lock is only taken when an entry is added or removed. When the cache is full,
+ * the clock hand sweeps over the entries, giving any that have been referenced since the last
+ * sweep a second chance, and evicts the first one that hasn't.
+ */
+public final class ClockCache<K, V> {
+
+  private final ConcurrentHashMap<K, Node<K, V>> map;
+  private final Object                           lock;
+
+  @GuardedBy("lock") private final Node<K, V>[] slots;
+  @GuardedBy("lock") private final int[]        freeSlots;
+  @GuardedBy("lock") private       int          freeCount;
+  @GuardedBy("lock") private       int          hand;
+
+  @SuppressWarnings("unchecked")
+  public ClockCache(int maxSize) {
+    if (maxSize <= 0) {
+      throw new IllegalArgumentException("Max size must be positive!");
+    }
+
+    this.map       = new ConcurrentHashMap<>(maxSize * 4 / 3 + 1);
+    this.lock      = new Object();
+    this.slots     = (Node<K, V>[]) new Node[maxSize];
+    this.freeSlots = new int[maxSize];
+
+    clear();
+  }
+
+  public @Nullable V get(@NonNull K key) {
+    Node<K, V> node = map.get(key);
+
+    if (node == null) {
+      return null;
+    }
+
+    node.markReferenced();
+    return node.value;
+  }
+
+  /**
+   * Adds or replaces the value for the key, evicting another entry if necessary.
+   */
+  public void put(@NonNull K key, @NonNull V value) {
+    Node<K, V> node = map.get(key);
+
+    if (node != null && node.value == value) {
+      node.markReferenced();
+      return;
+    }
+
+    synchronized (lock) {
+      node = map.get(key);
+
+      if (node != null) {
+        node.value = value;
+        node.markReferenced();
+      } else {
+        insert(key, value);
+      }
+    }
+  }
+
+  /**
+   * Adds the value only if there is no value for the key, evicting another entry if necessary.
+   *
+   * @return The existing value, or null if the provided value was added.
+   */
+  public @Nullable V putIfAbsent(@NonNull K key, @NonNull V value) {
+    V existing = get(key);
+
+    if (existing != null) {
+      return existing;
+    }
+
+    synchronized (lock) {
+      Node<K, V> node = map.get(key);
+
+      if (node != null) {
+        node.markReferenced();
+        return node.value;
+      }
+
+      insert(key, value);
+      return null;
+    }
+  }
+
+  public @Nullable V remove(@NonNull K key) {
+    synchronized (lock) {
+      Node<K, V> node = map.remove(key);
+
+      if (node == null) {
+        return null;
+      }
+
+      release(node.slot);
+      return node.value;
+    }
+  }
+
+  public void clear() {
+    synchronized (lock) {
+      map.clear();
+      Arrays.fill(slots, null);
+
+      for (int i = 0; i < freeSlots.length; i++) {
+        freeSlots[i] = freeSlots.length - 1 - i;
+      }
+
+      freeCount = freeSlots.length;
+      hand      = 0;
+    }
+  }
+
+  public int size() {
+    return map.size();
+  }
+
+  @GuardedBy("lock")
+  private void insert(@NonNull K key, @NonNull V value) {
+    int        slot = freeCount > 0 ? freeSlots[--freeCount] : evict();
+    Node<K, V> node = new Node<>(key, value, slot);
+
+    slots[slot] = node;
+    map.put(key, node);
+  }
+
+  /**
+   * Advances the clock hand until it finds an entry that hasn't been referenced since the last
+   * sweep, clearing the referenced bit of every entry it passes. Terminates within two sweeps.
+   *
+   * @return The slot that was freed.
+   */
+  @GuardedBy("lock")
+  private int evict() {
+    while (true) {
+      int        slot = hand;
+      Node<K, V> node = slots[slot];
+
+      hand = (hand + 1) % slots.length;
+
+      if (node.referenced) {
+        node.referenced = false;
+      } else {
+        map.remove(node.key);
+        slots[slot] = null;
+        return slot;
+      }
+    }
+  }
+
+  @GuardedBy("lock")
+  private void release(int slot) {
+    slots[slot]            = null;
+    freeSlots[freeCount++] = slot;
+  }
+
+  private static final class Node<K, V> {
+    private final    K       key;
+    private final    int     slot;
+    private volatile V       value;
+    private volatile boolean referenced;
+
+    private Node(@NonNull K key, @NonNull V value, int slot) {
+      this.key   = key;
+      this.value = value;
+      this.slot  = slot;
+    }
+
+    /**
+     * Avoids the write if the bit is already set, so hot entries don't bounce their cache line
+     * between cores on every read.
+     */
+    private void markReferenced() {
+      if (!referenced) {
+        referenced = true;
+      }
+    }
+  }
+}
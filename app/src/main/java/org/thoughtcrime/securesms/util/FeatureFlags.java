@@ -66,6 +66,8 @@ public final class FeatureFlags {
   private static final String GV1_AUTO_MIGRATE             = "android.groupsV1Migration.auto";
   private static final String GV1_MANUAL_MIGRATE           = "android.groupsV1Migration.manual";
   private static final String GV1_FORCED_MIGRATE           = "android.groupsV1Migration.forced";
+  private static final String STREAMING_VIDEO_TRANSCODE    = "android.streamingVideoTranscode";
+  private static final String PIPELINED_UPLOAD             = "android.pipelinedAttachmentUpload";
 
   /**
    * We will only store remote values for flags in this set. If you want a flag to be controllable
@@ -87,7 +89,9 @@ public final class FeatureFlags {
       GV1_AUTO_MIGRATE,
       GV1_MANUAL_MIGRATE,
       GV1_FORCED_MIGRATE,
-      GROUP_CALLING_VERSION
+      GROUP_CALLING_VERSION,
+      STREAMING_VIDEO_TRANSCODE,
+      PIPELINED_UPLOAD
   );
 
   /**
@@ -287,6 +291,16 @@ public final class FeatureFlags {
     return getBoolean(GV1_FORCED_MIGRATE, false) && groupsV1ManualMigration() && groupsV1AutoMigration();
   }
 
+  /** Whether or not videos are transcoded straight to disk, rather than into memory first. */
+  public static boolean streamingVideoTranscode() {
+    return getBoolean(STREAMING_VIDEO_TRANSCODE, false);
+  }
+
+  /** Whether or not streamed video transcodes are uploaded while they are still being written. */
+  public static boolean pipelinedAttachmentUpload() {
+    return getBoolean(PIPELINED_UPLOAD, false) && streamingVideoTranscode();
+  }
+
   /** Only for rendering debug info. */
   public static synchronized @NonNull Map<String, Object> getMemoryValues() {
     return new TreeMap<>(REMOTE_VALUES);
@@ -7,6 +7,8 @@ import android.view.Display;
 import androidx.annotation.NonNull;
 
 import org.thoughtcrime.securesms.logging.Log;
+import org.thoughtcrime.securesms.tracing.Tracer;
+import org.thoughtcrime.securesms.util.concurrent.SignalExecutors;
 
 import java.util.Locale;
 import java.util.concurrent.TimeUnit;
@@ -21,7 +23,8 @@ public class FrameRateTracker {
 
   private static final String TAG = Log.tag(FrameRateTracker.class);
 
-  private static final int MAX_CONSECUTIVE_FRAME_LOGS = 10;
+  private static final int  MAX_CONSECUTIVE_FRAME_LOGS = 10;
+  private static final long BLOCKED_THRESHOLD_NANOS    = TimeUnit.SECONDS.toNanos(2);
 
   private final Context context;
 
@@ -89,6 +92,11 @@ public class FrameRateTracker {
           Log.w(TAG, String.format(Locale.ENGLISH, "Bad frame! Took %d ms (%d dropped frames, or %.2f FPS)", TimeUnit.NANOSECONDS.toMillis(elapsedNanos), droppedFrames, fps));
           consecutiveFrameWarnings++;
         }
+
+        if (Tracer.getInstance().isEnabled()) {
+          String reason = elapsedNanos > BLOCKED_THRESHOLD_NANOS ? "Main thread blocked" : "Bad frame";
+          SignalExecutors.BOUNDED.execute(() -> Tracer.getInstance().onSlowEvent(reason));
+        }
       } else {
         consecutiveFrameWarnings = 0;
       }
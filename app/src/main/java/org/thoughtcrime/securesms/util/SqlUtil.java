@@ -21,6 +21,12 @@ import java.util.Set;
 public final class SqlUtil {
   private SqlUtil() {}
 
+  /**
+   * SQLite limits the number of bound arguments in a single statement (999 on older versions), so
+   * we split large collection queries into chunks no bigger than this.
+   */
+  public static final int MAX_QUERY_ARGS = 900;
+
 
   public static boolean tableExists(@NonNull SQLiteDatabase db, @NonNull String table) {
     try (Cursor cursor = db.rawQuery("SELECT name FROM sqlite_master WHERE type=? AND name=?", new String[] { "table", table })) {
@@ -117,6 +123,36 @@ public final class SqlUtil {
     return new Query(column + " IN (" + query.toString() + ")", buildArgs(args));
   }
 
+  /**
+   * Like {@link #buildCollectionQuery(String, Collection)}, but splits the values across as many
+   * queries as necessary to keep each one under {@link #MAX_QUERY_ARGS} arguments.
+   */
+  public static @NonNull List<Query> buildCollectionQueries(@NonNull String column, @NonNull Collection<? extends Object> values) {
+    return buildCollectionQueries(column, values, MAX_QUERY_ARGS);
+  }
+
+  public static @NonNull List<Query> buildCollectionQueries(@NonNull String column, @NonNull Collection<? extends Object> values, int maxArgs) {
+    Preconditions.checkArgument(maxArgs > 0);
+
+    List<Query>  queries = new ArrayList<>((values.size() / maxArgs) + 1);
+    List<Object> chunk   = new ArrayList<>(Math.min(values.size(), maxArgs));
+
+    for (Object value : values) {
+      chunk.add(value);
+
+      if (chunk.size() == maxArgs) {
+        queries.add(buildCollectionQuery(column, chunk));
+        chunk.clear();
+      }
+    }
+
+    if (!chunk.isEmpty()) {
+      queries.add(buildCollectionQuery(column, chunk));
+    }
+
+    return queries;
+  }
+
   public static String[] appendArg(@NonNull String[] args, String addition) {
     String[] output = new String[args.length + 1];
 
@@ -126,6 +162,15 @@ public final class SqlUtil {
     return output;
   }
 
+  public static String[] appendArgs(@NonNull String[] args, @NonNull String[] additions) {
+    String[] output = new String[args.length + additions.length];
+
+    System.arraycopy(args, 0, output, 0, args.length);
+    System.arraycopy(additions, 0, output, args.length, additions.length);
+
+    return output;
+  }
+
   public static class Query {
     private final String   where;
     private final String[] whereArgs;
@@ -6,13 +6,17 @@ import androidx.annotation.NonNull;
 import androidx.annotation.RequiresApi;
 
 import org.thoughtcrime.securesms.crypto.AttachmentSecret;
-import org.thoughtcrime.securesms.crypto.ClassicDecryptingPartInputStream;
-import org.thoughtcrime.securesms.util.Util;
+import org.thoughtcrime.securesms.crypto.DecryptingPartReader;
 
 import java.io.File;
 import java.io.IOException;
-import java.io.InputStream;
 
+/**
+ * Create via {@link EncryptedMediaDataSource}.
+ * <p>
+ * A {@link MediaDataSource} that points to a file in the classic (AES/CBC + HMAC) format. The MAC
+ * is verified once, when the first read opens the {@link DecryptingPartReader}.
+ */
 @RequiresApi(23)
 final class ClassicEncryptedMediaDataSource extends MediaDataSource {
 
@@ -20,6 +24,8 @@ final class ClassicEncryptedMediaDataSource extends MediaDataSource {
   private final File             mediaFile;
   private final long             length;
 
+  private DecryptingPartReader reader;
+
   ClassicEncryptedMediaDataSource(@NonNull AttachmentSecret attachmentSecret, @NonNull File mediaFile, long length) {
     this.attachmentSecret = attachmentSecret;
     this.mediaFile        = mediaFile;
@@ -27,21 +33,12 @@ final class ClassicEncryptedMediaDataSource extends MediaDataSource {
   }
 
   @Override
-  public int readAt(long position, byte[] bytes, int offset, int length) throws IOException {
-    try (InputStream inputStream = ClassicDecryptingPartInputStream.createFor(attachmentSecret, mediaFile)) {
-      byte[] buffer          = new byte[4096];
-      long   headerRemaining = position;
-
-      while (headerRemaining > 0) {
-        int read = inputStream.read(buffer, 0, Util.toIntExact(Math.min((long)buffer.length, headerRemaining)));
-
-        if (read == -1) return -1;
-
-        headerRemaining -= read;
-      }
-
-      return inputStream.read(bytes, offset, length);
+  public synchronized int readAt(long position, byte[] bytes, int offset, int length) throws IOException {
+    if (reader == null) {
+      reader = DecryptingPartReader.createClassic(attachmentSecret, mediaFile);
     }
+
+    return reader.readAt(position, bytes, offset, length);
   }
 
   @Override
@@ -50,5 +47,10 @@ final class ClassicEncryptedMediaDataSource extends MediaDataSource {
   }
 
   @Override
-  public void close() {}
+  public synchronized void close() throws IOException {
+    if (reader != null) {
+      reader.close();
+      reader = null;
+    }
+  }
 }
@@ -178,7 +178,7 @@ public final class InMemoryTranscoder implements Closeable {
     }
   }
 
-  private static long getDuration(MediaMetadataRetriever mediaMetadataRetriever) throws VideoSourceException {
+  static long getDuration(MediaMetadataRetriever mediaMetadataRetriever) throws VideoSourceException {
     String durationString = mediaMetadataRetriever.extractMetadata(MediaMetadataRetriever.METADATA_KEY_DURATION);
     if (durationString == null) {
       throw new VideoSourceException("Cannot determine duration of video, null meta data");
@@ -194,7 +194,7 @@ public final class InMemoryTranscoder implements Closeable {
     }
   }
 
-  private static boolean containsLocation(MediaMetadataRetriever mediaMetadataRetriever) {
+  static boolean containsLocation(MediaMetadataRetriever mediaMetadataRetriever) {
     String locationString = mediaMetadataRetriever.extractMetadata(MediaMetadataRetriever.METADATA_KEY_LOCATION);
     return locationString != null;
   }
@@ -0,0 +1,200 @@
+package org.thoughtcrime.securesms.video;
+
+import android.media.MediaDataSource;
+import android.media.MediaMetadataRetriever;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+import androidx.annotation.RequiresApi;
+
+import org.thoughtcrime.securesms.logging.Log;
+import org.thoughtcrime.securesms.media.MediaInput;
+import org.thoughtcrime.securesms.video.videoconverter.EncodingException;
+import org.thoughtcrime.securesms.video.videoconverter.MediaConverter;
+import org.thoughtcrime.securesms.video.videoconverter.Mp4FragmentWriter;
+import org.thoughtcrime.securesms.video.videoconverter.StreamingMuxer;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.text.NumberFormat;
+import java.util.Locale;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Transcodes a video into a fragmented MP4 that is written straight to an {@link OutputStream},
+ * rather than into a memory file like {@link InMemoryTranscoder}. Memory use stays the same however
+ * long the video is.
+ * <p>
+ * Progress is checkpointed after each fragment, and a transcode can be resumed from a checkpoint
+ * once the output has been reopened at the checkpoint's length.
+ */
+@RequiresApi(26)
+public final class StreamingTranscoder {
+
+  private static final String TAG = Log.tag(StreamingTranscoder.class);
+
+  private final           MediaDataSource                dataSource;
+  private final           long                           upperSizeLimit;
+  private final           long                           inSize;
+  private final           long                           duration;
+  private final           int                            inputBitRate;
+  private final           VideoBitRateCalculator.Quality targetQuality;
+  private final           boolean                        transcodeRequired;
+  private final           long                           fileSizeEstimate;
+  private final @Nullable InMemoryTranscoder.Options     options;
+
+  /**
+   * @param upperSizeLimit A upper size to transcode to. The actual output size can be up to 10% smaller.
+   */
+  public StreamingTranscoder(@NonNull MediaDataSource dataSource, @Nullable InMemoryTranscoder.Options options, long upperSizeLimit) throws IOException, VideoSourceException {
+    this.dataSource = dataSource;
+    this.options    = options;
+
+    final MediaMetadataRetriever mediaMetadataRetriever = new MediaMetadataRetriever();
+    try {
+      mediaMetadataRetriever.setDataSource(dataSource);
+    } catch (RuntimeException e) {
+      Log.w(TAG, "Unable to read datasource", e);
+      throw new VideoSourceException("Unable to read datasource", e);
+    }
+
+    this.inSize         = dataSource.getSize();
+    this.duration       = InMemoryTranscoder.getDuration(mediaMetadataRetriever);
+    this.inputBitRate   = VideoBitRateCalculator.bitRate(inSize, duration);
+    this.targetQuality  = new VideoBitRateCalculator(upperSizeLimit).getTargetQuality(duration, inputBitRate);
+    this.upperSizeLimit = upperSizeLimit;
+
+    this.transcodeRequired = inputBitRate >= targetQuality.getTargetTotalBitRate() * 1.2 || inSize > upperSizeLimit || InMemoryTranscoder.containsLocation(mediaMetadataRetriever) || options != null;
+    if (!transcodeRequired) {
+      Log.i(TAG, "Video is within 20% of target bitrate, below the size limit, contained no location metadata or custom options.");
+    }
+
+    this.fileSizeEstimate = targetQuality.getFileSizeEstimate();
+  }
+
+  /**
+   * @return A key for the input and output settings. A checkpoint should only be resumed by a
+   *         transcoder with the same key.
+   */
+  public @NonNull String getSettingsKey() {
+    return String.format(Locale.US,
+                         "%d:%d:%d:%d:%d:%d:%d",
+                         inSize,
+                         duration,
+                         targetQuality.getTargetVideoBitRate(),
+                         targetQuality.getTargetAudioBitRate(),
+                         targetQuality.getOutputResolution(),
+                         options != null ? options.startTimeUs : 0,
+                         options != null ? options.endTimeUs : 0);
+  }
+
+  /**
+   * @param out                The output, positioned at the checkpoint's length if resuming.
+   * @param resumeFrom         A checkpoint from an earlier transcode with the same settings.
+   * @param checkpointListener Told about each checkpoint once the output has been flushed.
+   */
+  public void transcode(@NonNull InMemoryTranscoder.Progress progress,
+                        @Nullable InMemoryTranscoder.CancelationSignal cancelationSignal,
+                        @NonNull OutputStream out,
+                        @Nullable Mp4FragmentWriter.Checkpoint resumeFrom,
+                        @Nullable Mp4FragmentWriter.Listener checkpointListener)
+      throws IOException, EncodingException, VideoSizeException
+  {
+    NumberFormat numberFormat = NumberFormat.getInstance(Locale.US);
+
+    Log.i(TAG, String.format(Locale.US,
+                             "Transcoding:\n" +
+                             "Target bitrate : %s + %s = %s\n" +
+                             "Target format  : %dp\n" +
+                             "Video duration : %.1fs\n" +
+                             "Size limit     : %s kB\n" +
+                             "Estimate       : %s kB\n" +
+                             "Input size     : %s kB\n" +
+                             "Input bitrate  : %s bps",
+                             numberFormat.format(targetQuality.getTargetVideoBitRate()),
+                             numberFormat.format(targetQuality.getTargetAudioBitRate()),
+                             numberFormat.format(targetQuality.getTargetTotalBitRate()),
+                             targetQuality.getOutputResolution(),
+                             duration / 1000f,
+                             numberFormat.format(upperSizeLimit / 1024),
+                             numberFormat.format(fileSizeEstimate / 1024),
+                             numberFormat.format(inSize / 1024),
+                             numberFormat.format(inputBitRate)));
+
+    if (fileSizeEstimate > upperSizeLimit) {
+      throw new VideoSizeException("Size constraints could not be met!");
+    }
+
+    final boolean trimmed     = options != null && options.endTimeUs > 0;
+    final long    timeFromUs  = trimmed ? options.startTimeUs : 0;
+    final long    timeToUs    = trimmed ? options.endTimeUs : duration * 1000;
+    final long    startTimeUs = resumeFrom != null ? Math.max(timeFromUs, resumeFrom.getResumeTimeUs()) : timeFromUs;
+    final long    startLength = resumeFrom != null ? resumeFrom.getLength() : 0;
+
+    if (resumeFrom != null) {
+      Log.i(TAG, String.format(Locale.US, "Resuming at %.1fs with %s kB already written", startTimeUs / 1_000_000f, numberFormat.format(startLength / 1024)));
+    }
+
+    final AtomicBoolean     tooLarge = new AtomicBoolean();
+    final Mp4FragmentWriter writer   = new Mp4FragmentWriter(out, timeToUs - timeFromUs, checkpoint -> {
+      if (checkpoint.getLength() > upperSizeLimit) {
+        tooLarge.set(true);
+      } else if (checkpointListener != null) {
+        checkpointListener.onFragmentWritten(checkpoint);
+      }
+    }, resumeFrom);
+
+    final MediaConverter converter = new MediaConverter();
+
+    converter.setInput(new MediaInput.MediaDataSourceMediaInput(dataSource));
+    converter.setOutput(new StreamingMuxer(writer));
+    converter.setVideoResolution(targetQuality.getOutputResolution());
+    converter.setVideoBitrate(targetQuality.getTargetVideoBitRate());
+    converter.setAudioBitrate(targetQuality.getTargetAudioBitRate());
+
+    if (startTimeUs > 0 || trimmed) {
+      converter.setTimeRange(startTimeUs / 1000, trimmed ? timeToUs / 1000 : 0);
+    }
+
+    converter.setListener(percent -> {
+      long doneUs = startTimeUs - timeFromUs + (timeToUs - startTimeUs) * percent / 100;
+      progress.onProgress((int) (100 * doneUs / Math.max(1, timeToUs - timeFromUs)));
+      return tooLarge.get() || (cancelationSignal != null && cancelationSignal.isCanceled());
+    });
+
+    final long startTime = System.currentTimeMillis();
+
+    converter.convert();
+
+    if (tooLarge.get() || writer.getLength() > upperSizeLimit) {
+      throw new VideoSizeException("Size constraints could not be met!");
+    }
+
+    long  outSize           = writer.getLength();
+    long  writtenSize       = outSize - startLength;
+    float encodeDurationSec = Math.max(1, System.currentTimeMillis() - startTime) / 1000f;
+    float mediaDurationSec  = (timeToUs - startTimeUs) / 1_000_000f;
+
+    Log.i(TAG, String.format(Locale.US,
+                             "Transcoding complete:\n" +
+                             "Transcode time : %.1fs (%.1fx)\n" +
+                             "Throughput     : %s kB/s\n" +
+                             "Output size    : %s kB\n" +
+                             "  this run     : %s kB\n" +
+                             "  of Original  : %.1f%%\n" +
+                             "  of Estimate  : %.1f%%\n" +
+                             "Output bitrate : %s bps",
+                             encodeDurationSec,
+                             mediaDurationSec / encodeDurationSec,
+                             numberFormat.format((long) (writtenSize / 1024 / encodeDurationSec)),
+                             numberFormat.format(outSize / 1024),
+                             numberFormat.format(writtenSize / 1024),
+                             (outSize * 100d) / inSize,
+                             (outSize * 100d) / fileSizeEstimate,
+                             numberFormat.format(VideoBitRateCalculator.bitRate(outSize, (timeToUs - timeFromUs) / 1000))));
+  }
+
+  public boolean isTranscodeRequired() {
+    return transcodeRequired;
+  }
+}
@@ -0,0 +1,132 @@
+package org.thoughtcrime.securesms.video;
+
+import android.content.Context;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+
+import org.thoughtcrime.securesms.logging.Log;
+import org.thoughtcrime.securesms.video.videoconverter.Mp4FragmentWriter;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+
+/**
+ * What is needed to carry on with a {@link StreamingTranscoder} transcode after the process was
+ * killed: the partly written output file, and how far into it the last complete fragment reached.
+ * <p>
+ * Checkpoints are small files named by the caller, replaced atomically as the transcode progresses.
+ */
+public final class TranscodeCheckpoint {
+
+  private static final String TAG = Log.tag(TranscodeCheckpoint.class);
+
+  private static final String DIRECTORY = "transcode_checkpoints";
+  private static final int    VERSION   = 1;
+
+  private final File                         file;
+  private final byte[]                       random;
+  private final String                       settingsKey;
+  private final Mp4FragmentWriter.Checkpoint writerCheckpoint;
+
+  public TranscodeCheckpoint(@NonNull File file,
+                             @NonNull byte[] random,
+                             @NonNull String settingsKey,
+                             @NonNull Mp4FragmentWriter.Checkpoint writerCheckpoint)
+  {
+    this.file             = file;
+    this.random           = random;
+    this.settingsKey      = settingsKey;
+    this.writerCheckpoint = writerCheckpoint;
+  }
+
+  /**
+   * @return The encrypted output file being written.
+   */
+  public @NonNull File getFile() {
+    return file;
+  }
+
+  public @NonNull byte[] getRandom() {
+    return random;
+  }
+
+  /**
+   * @see StreamingTranscoder#getSettingsKey()
+   */
+  public @NonNull String getSettingsKey() {
+    return settingsKey;
+  }
+
+  public @NonNull Mp4FragmentWriter.Checkpoint getWriterCheckpoint() {
+    return writerCheckpoint;
+  }
+
+  public static @Nullable TranscodeCheckpoint read(@NonNull Context context, @NonNull String name) {
+    File checkpointFile = getCheckpointFile(context, name);
+
+    if (!checkpointFile.exists()) {
+      return null;
+    }
+
+    try (DataInputStream in = new DataInputStream(new FileInputStream(checkpointFile))) {
+      if (in.readInt() != VERSION) {
+        throw new IOException("Unknown version");
+      }
+
+      File   file        = new File(in.readUTF());
+      String settingsKey = in.readUTF();
+      byte[] random      = new byte[in.readInt()];
+      in.readFully(random);
+      byte[] checkpoint  = new byte[in.readInt()];
+      in.readFully(checkpoint);
+
+      return new TranscodeCheckpoint(file, random, settingsKey, Mp4FragmentWriter.Checkpoint.deserialize(checkpoint));
+    } catch (IOException e) {
+      Log.w(TAG, "Unreadable checkpoint " + name, e);
+      delete(context, name);
+      return null;
+    }
+  }
+
+  public void write(@NonNull Context context, @NonNull String name) throws IOException {
+    File   checkpointFile = getCheckpointFile(context, name);
+    File   temporaryFile  = new File(checkpointFile.getPath() + ".tmp");
+    byte[] checkpoint     = writerCheckpoint.serialize();
+
+    try (FileOutputStream fileOut = new FileOutputStream(temporaryFile)) {
+      DataOutputStream out = new DataOutputStream(fileOut);
+
+      out.writeInt(VERSION);
+      out.writeUTF(file.getAbsolutePath());
+      out.writeUTF(settingsKey);
+      out.writeInt(random.length);
+      out.write(random);
+      out.writeInt(checkpoint.length);
+      out.write(checkpoint);
+      out.flush();
+
+      fileOut.getFD().sync();
+    }
+
+    if (!temporaryFile.renameTo(checkpointFile)) {
+      throw new IOException("Failed to replace checkpoint " + name);
+    }
+  }
+
+  public static void delete(@NonNull Context context, @NonNull String name) {
+    File checkpointFile = getCheckpointFile(context, name);
+
+    if (checkpointFile.exists() && !checkpointFile.delete()) {
+      Log.w(TAG, "Failed to delete checkpoint " + name);
+    }
+  }
+
+  private static @NonNull File getCheckpointFile(@NonNull Context context, @NonNull String name) {
+    return new File(context.getDir(DIRECTORY, Context.MODE_PRIVATE), name);
+  }
+}
@@ -86,7 +86,8 @@ public class VideoPlayer extends FrameLayout {
     this.exoControls.setShowTimeoutMs(-1);
   }
 
-  private CreateMediaSource createMediaSource;
+  private CreateMediaSource           createMediaSource;
+  private AttachmentDataSourceFactory attachmentDataSourceFactory;
 
   public void setVideoSource(@NonNull VideoSlide videoSource, boolean autoplay) {
     Context                 context                    = getContext();
@@ -119,6 +120,8 @@ public class VideoPlayer extends FrameLayout {
     AttachmentDataSourceFactory attachmentDataSourceFactory = new AttachmentDataSourceFactory(context, defaultDataSourceFactory, null);
     ExtractorsFactory           extractorsFactory           = new DefaultExtractorsFactory();
 
+    this.attachmentDataSourceFactory = attachmentDataSourceFactory;
+
     createMediaSource = () -> new ExtractorMediaSource.Factory(attachmentDataSourceFactory)
                                                       .setExtractorsFactory(extractorsFactory)
                                                       .createMediaSource(videoSource.getUri());
@@ -148,6 +151,10 @@ public class VideoPlayer extends FrameLayout {
     if (this.exoPlayer != null) {
       this.exoPlayer.release();
     }
+
+    if (this.attachmentDataSourceFactory != null) {
+      this.attachmentDataSourceFactory.release();
+    }
   }
 
   public void loopForever() {
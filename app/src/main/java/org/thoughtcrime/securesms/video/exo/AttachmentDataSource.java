@@ -65,4 +65,11 @@ public class AttachmentDataSource implements DataSource {
   public void close() throws IOException {
     dataSource.close();
   }
+
+  /**
+   * Frees anything kept open between {@link #close()} and the next {@link #open(DataSpec)}.
+   */
+  public void release() {
+    partDataSource.release();
+  }
 }
@@ -9,12 +9,16 @@ import com.google.android.exoplayer2.upstream.DataSource;
 import com.google.android.exoplayer2.upstream.DefaultDataSourceFactory;
 import com.google.android.exoplayer2.upstream.TransferListener;
 
+import java.util.LinkedList;
+import java.util.List;
+
 public class AttachmentDataSourceFactory implements DataSource.Factory {
 
   private final Context context;
 
-  private final DefaultDataSourceFactory defaultDataSourceFactory;
-  private final TransferListener         listener;
+  private final DefaultDataSourceFactory   defaultDataSourceFactory;
+  private final TransferListener           listener;
+  private final List<AttachmentDataSource> dataSources = new LinkedList<>();
 
   public AttachmentDataSourceFactory(@NonNull Context context,
                                      @NonNull DefaultDataSourceFactory defaultDataSourceFactory,
@@ -27,8 +31,27 @@ public class AttachmentDataSourceFactory implements DataSource.Factory {
 
   @Override
   public AttachmentDataSource createDataSource() {
-    return new AttachmentDataSource(defaultDataSourceFactory.createDataSource(),
-                                    new PartDataSource(context, listener),
-                                    new BlobDataSource(context, listener));
+    AttachmentDataSource dataSource = new AttachmentDataSource(defaultDataSourceFactory.createDataSource(),
+                                                               new PartDataSource(context, listener),
+                                                               new BlobDataSource(context, listener));
+
+    synchronized (dataSources) {
+      dataSources.add(dataSource);
+    }
+
+    return dataSource;
+  }
+
+  /**
+   * Releases every data source created so far. To be called once the player is released.
+   */
+  public void release() {
+    synchronized (dataSources) {
+      for (AttachmentDataSource dataSource : dataSources) {
+        dataSource.release();
+      }
+
+      dataSources.clear();
+    }
   }
 }
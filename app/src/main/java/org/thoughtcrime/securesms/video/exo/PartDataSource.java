@@ -6,29 +6,43 @@ import android.net.Uri;
 import androidx.annotation.NonNull;
 import androidx.annotation.Nullable;
 
+import com.google.android.exoplayer2.C;
 import com.google.android.exoplayer2.upstream.DataSource;
 import com.google.android.exoplayer2.upstream.DataSpec;
 import com.google.android.exoplayer2.upstream.TransferListener;
 
 import org.thoughtcrime.securesms.attachments.Attachment;
+import org.thoughtcrime.securesms.crypto.DecryptingPartReader;
 import org.thoughtcrime.securesms.database.AttachmentDatabase;
 import org.thoughtcrime.securesms.database.DatabaseFactory;
+import org.thoughtcrime.securesms.logging.Log;
 import org.thoughtcrime.securesms.mms.PartUriParser;
 
 import java.io.EOFException;
 import java.io.IOException;
-import java.io.InputStream;
 import java.util.Collections;
 import java.util.List;
 import java.util.Map;
 
+/**
+ * Reads local attachments through a {@link DecryptingPartReader}.
+ * <p>
+ * ExoPlayer closes and reopens its data source for every seek. The reader, which holds the open
+ * file and the derived key, is therefore kept across {@link #close()} and reused when the same
+ * part is opened again. It is only closed when a different part is opened or on {@link #release()}.
+ */
 public class PartDataSource implements DataSource {
 
+  private static final String TAG = Log.tag(PartDataSource.class);
+
   private final @NonNull  Context          context;
   private final @Nullable TransferListener listener;
 
-  private Uri         uri;
-  private InputStream inputSteam;
+  private volatile DecryptingPartReader reader;
+
+  private Uri  uri;
+  private long position;
+  private long size;
 
   PartDataSource(@NonNull Context context, @Nullable TransferListener listener) {
     this.context  = context.getApplicationContext();
@@ -41,28 +55,48 @@ public class PartDataSource implements DataSource {
 
   @Override
   public long open(DataSpec dataSpec) throws IOException {
-    this.uri = dataSpec.uri;
+    if (reader == null || !dataSpec.uri.equals(uri)) {
+      release();
 
-    AttachmentDatabase attachmentDatabase = DatabaseFactory.getAttachmentDatabase(context);
-    PartUriParser      partUri            = new PartUriParser(uri);
-    Attachment         attachment         = attachmentDatabase.getAttachment(partUri.getPartId());
+      AttachmentDatabase attachmentDatabase = DatabaseFactory.getAttachmentDatabase(context);
+      PartUriParser      partUri            = new PartUriParser(dataSpec.uri);
+      Attachment         attachment         = attachmentDatabase.getAttachment(partUri.getPartId());
 
-    if (attachment == null) throw new IOException("Attachment not found");
+      if (attachment == null) throw new IOException("Attachment not found");
+
+      this.reader = attachmentDatabase.getAttachmentReader(partUri.getPartId());
+      this.size   = attachment.getSize();
+    }
 
-    this.inputSteam = attachmentDatabase.getAttachmentStream(partUri.getPartId(), dataSpec.position);
+    this.uri      = dataSpec.uri;
+    this.position = dataSpec.position;
 
     if (listener != null) {
       listener.onTransferStart(this, dataSpec, false);
     }
 
-    if (attachment.getSize() - dataSpec.position <= 0) throw new EOFException("No more data");
+    if (size - dataSpec.position <= 0) throw new EOFException("No more data");
 
-    return attachment.getSize() - dataSpec.position;
+    return size - dataSpec.position;
   }
 
   @Override
   public int read(byte[] buffer, int offset, int readLength) throws IOException {
-    int read = inputSteam.read(buffer, offset, readLength);
+    DecryptingPartReader reader = this.reader;
+
+    if (reader == null) {
+      throw new IOException("Data source was released");
+    }
+
+    if (position >= size) {
+      return C.RESULT_END_OF_INPUT;
+    }
+
+    int read = reader.readAt(position, buffer, offset, (int) Math.min(readLength, size - position));
+
+    if (read > 0) {
+      position += read;
+    }
 
     if (read > 0 && listener != null) {
       listener.onBytesTransferred(this, null, false, read);
@@ -81,8 +115,28 @@ public class PartDataSource implements DataSource {
     return Collections.emptyMap();
   }
 
+  /**
+   * Keeps the reader open so that the part can be reopened at another position cheaply.
+   */
   @Override
-  public void close() throws IOException {
-    inputSteam.close();
+  public void close() {
+  }
+
+  /**
+   * Closes the reader. To be called once the player using this source is released.
+   */
+  public void release() {
+    DecryptingPartReader reader = this.reader;
+
+    this.reader = null;
+    this.uri    = null;
+
+    if (reader != null) {
+      try {
+        reader.close();
+      } catch (IOException e) {
+        Log.w(TAG, e);
+      }
+    }
   }
 }
@@ -85,6 +85,14 @@ public final class MediaConverter {
         mOutput = new FileDescriptorOutput(fileDescriptor);
     }
 
+    /**
+     * Muxes into the given muxer, e.g. a {@link StreamingMuxer} that does not need a seekable file.
+     */
+    @SuppressWarnings("unused")
+    public void setOutput(final @NonNull Muxer muxer) {
+        mOutput = new MuxerOutput(muxer);
+    }
+
     @SuppressWarnings("unused")
     public void setTimeRange(long timeFrom, long timeTo) {
         mTimeFrom = timeFrom;
@@ -332,4 +340,19 @@ public final class MediaConverter {
             return new AndroidMuxer(fileDescriptor);
         }
     }
+
+    private static class MuxerOutput implements Output {
+
+        final Muxer muxer;
+
+        MuxerOutput(final @NonNull Muxer muxer) {
+            this.muxer = muxer;
+        }
+
+        @Override
+        public @NonNull
+        Muxer createMuxer() {
+            return muxer;
+        }
+    }
 }
@@ -0,0 +1,875 @@
+package org.thoughtcrime.securesms.video.videoconverter;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Writes an H.264/AAC fragmented MP4 to an {@link OutputStream} as the samples arrive.
+ * <p>
+ * Unlike MediaMuxer, which has to seek back to write its sample tables once the whole file is known,
+ * this writes the header up front and then the samples in self-describing fragments, each starting
+ * at the first video key frame at least {@link #MIN_FRAGMENT_DURATION_US} after the last, so one
+ * per second or so with our encoder settings. Only the current fragment is held in memory, and
+ * never more than {@link #MAX_FRAGMENT_BYTES} of it, however long the video is.
+ * <p>
+ * After each fragment a {@link Checkpoint} is handed to the {@link Listener}. A writer created from
+ * that checkpoint carries on appending to the same output after it has been truncated to
+ * {@link Checkpoint#getLength()}, so that a conversion can be resumed from the last fragment.
+ * <p>
+ * Sample times are expected to increase within a track, which is the case for the encoders we
+ * configure as they do not produce B-frames.
+ */
+public final class Mp4FragmentWriter {
+
+  static final long MIN_FRAGMENT_DURATION_US = 500_000;
+  static final int  MAX_FRAGMENT_BYTES       = 4 * 1024 * 1024;
+
+  private static final int MOVIE_TIMESCALE = 1000;
+  private static final int VIDEO_TIMESCALE = 90000;
+
+  private static final int SYNC_SAMPLE_FLAGS     = 0x02000000;
+  private static final int NON_SYNC_SAMPLE_FLAGS = 0x01010000;
+
+  private static final int[] UNITY_MATRIX = { 0x00010000, 0, 0, 0, 0x00010000, 0, 0, 0, 0x40000000 };
+
+  private final OutputStream          out;
+  private final long                  expectedDurationUs;
+  private final @Nullable Listener    listener;
+  private final @Nullable Checkpoint  resumeFrom;
+  private final List<Track>           tracks = new ArrayList<>();
+
+  private byte[]  header;
+  private long    length;
+  private long    baseTimeUs      = -1;
+  private long    fragmentStartUs = -1;
+  private int     fragmentBytes;
+  private int     sequenceNumber  = 1;
+  private boolean started;
+
+  /**
+   * @param expectedDurationUs The duration to advertise in the header, or 0 if unknown. Players use
+   *                           it to show the length of the video before reading every fragment.
+   * @param resumeFrom         A checkpoint from an earlier writer for the same tracks, if out is
+   *                           positioned at its end.
+   */
+  public Mp4FragmentWriter(@NonNull OutputStream out, long expectedDurationUs, @Nullable Listener listener, @Nullable Checkpoint resumeFrom) {
+    this.out                = out;
+    this.expectedDurationUs = expectedDurationUs;
+    this.listener           = listener;
+    this.resumeFrom         = resumeFrom;
+  }
+
+  /**
+   * @param sps Sequence parameter set NAL units, without start codes.
+   * @param pps Picture parameter set NAL units, without start codes.
+   * @return The index of the track.
+   */
+  public int addVideoTrack(int width, int height, @NonNull List<byte[]> sps, @NonNull List<byte[]> pps) {
+    if (sps.isEmpty() || pps.isEmpty()) {
+      throw new IllegalArgumentException("Missing parameter sets");
+    }
+
+    return addTrack(new VideoTrack(tracks.size() + 1, width, height, sps, pps));
+  }
+
+  /**
+   * @param audioSpecificConfig The AAC decoder configuration, i.e. the encoder's csd-0.
+   * @return The index of the track.
+   */
+  public int addAudioTrack(int sampleRate, int channelCount, int bitRate, @NonNull byte[] audioSpecificConfig) {
+    return addTrack(new AudioTrack(tracks.size() + 1, sampleRate, channelCount, bitRate, audioSpecificConfig));
+  }
+
+  /**
+   * Writes the header, or checks that it matches the checkpoint's if resuming.
+   */
+  public void start() throws IOException {
+    if (started) throw new IllegalStateException("Already started");
+    if (tracks.isEmpty()) throw new IllegalStateException("No tracks");
+
+    header  = buildHeader();
+    started = true;
+
+    if (resumeFrom != null) {
+      if (!Arrays.equals(header, resumeFrom.header) || tracks.size() != resumeFrom.trackResumeTimesUs.length) {
+        throw new IOException("Tracks do not match the checkpoint");
+      }
+
+      length         = resumeFrom.length;
+      baseTimeUs     = resumeFrom.baseTimeUs;
+      sequenceNumber = resumeFrom.nextSequenceNumber;
+
+      for (int i = 0; i < tracks.size(); i++) {
+        tracks.get(i).minTimeUs    = resumeFrom.trackResumeTimesUs[i];
+        tracks.get(i).resumeTimeUs = resumeFrom.trackResumeTimesUs[i];
+      }
+    } else {
+      out.write(header);
+      length = header.length;
+    }
+  }
+
+  /**
+   * Samples of a video track are length prefixed NAL units, not Annex-B. Every audio sample is a
+   * sync sample.
+   */
+  public void writeSample(int trackIndex, @NonNull byte[] data, int offset, int size, long presentationTimeUs, boolean sync) throws IOException {
+    if (!started) throw new IllegalStateException("Not started");
+
+    Track track = tracks.get(trackIndex);
+
+    sync |= !track.isVideo();
+
+    if (presentationTimeUs < track.minTimeUs || (baseTimeUs >= 0 && presentationTimeUs < baseTimeUs)) {
+      return;
+    }
+
+    if (fragmentStartUs >= 0) {
+      boolean fragmentBoundary = sync && (track.isVideo() || !hasVideo()) && presentationTimeUs - fragmentStartUs >= MIN_FRAGMENT_DURATION_US;
+
+      if (fragmentBoundary || fragmentBytes + size > MAX_FRAGMENT_BYTES) {
+        writeFragment(track, presentationTimeUs);
+      }
+    }
+
+    if (fragmentStartUs < 0) {
+      fragmentStartUs = presentationTimeUs;
+    }
+
+    track.add(data, offset, size, presentationTimeUs, sync);
+    fragmentBytes += size;
+  }
+
+  /**
+   * Writes out whatever is left of the last fragment.
+   */
+  public void finish() throws IOException {
+    if (!started) return;
+
+    if (fragmentStartUs >= 0) {
+      writeFragment(null, 0);
+    }
+
+    out.flush();
+  }
+
+  /**
+   * @return The number of bytes written to the output, including any before the checkpoint resumed from.
+   */
+  public long getLength() {
+    return length;
+  }
+
+  private int addTrack(@NonNull Track track) {
+    if (started) throw new IllegalStateException("Already started");
+
+    tracks.add(track);
+    return tracks.size() - 1;
+  }
+
+  private boolean hasVideo() {
+    for (Track track : tracks) {
+      if (track.isVideo()) return true;
+    }
+    return false;
+  }
+
+  /**
+   * @param next          The track whose sample triggered the end of the fragment, or null if finishing.
+   * @param nextTimeUs    The time of that sample, which gives the duration of the track's last sample.
+   */
+  private void writeFragment(@Nullable Track next, long nextTimeUs) throws IOException {
+    if (baseTimeUs < 0) {
+      baseTimeUs = Long.MAX_VALUE;
+
+      for (Track track : tracks) {
+        if (track.count > 0) {
+          baseTimeUs = Math.min(baseTimeUs, track.timesUs[0]);
+        }
+      }
+    }
+
+    Box   moof              = new Box();
+    int[] dataOffsetFields  = new int[tracks.size()];
+    int   moofStart         = moof.start("moof");
+
+    int mfhd = moof.startFull("mfhd", 0, 0);
+    moof.u32(sequenceNumber++);
+    moof.end(mfhd);
+
+    for (int i = 0; i < tracks.size(); i++) {
+      Track track = tracks.get(i);
+
+      if (track.count == 0) continue;
+
+      long[] ticks = new long[track.count + 1];
+
+      for (int s = 0; s < track.count; s++) {
+        ticks[s] = track.toTicks(track.timesUs[s] - baseTimeUs);
+      }
+
+      if (track == next) {
+        ticks[track.count] = track.toTicks(nextTimeUs - baseTimeUs);
+      } else {
+        ticks[track.count] = ticks[track.count - 1] + track.estimateLastDuration(ticks);
+      }
+
+      int traf = moof.start("traf");
+
+      int tfhd = moof.startFull("tfhd", 0, 0x020000);
+      moof.u32(track.id);
+      moof.end(tfhd);
+
+      int tfdt = moof.startFull("tfdt", 1, 0);
+      moof.u64(ticks[0]);
+      moof.end(tfdt);
+
+      int trun = moof.startFull("trun", 0, 0x000701);
+      moof.u32(track.count);
+      dataOffsetFields[i] = moof.size;
+      moof.u32(0);
+
+      for (int s = 0; s < track.count; s++) {
+        moof.u32((int) Math.max(0, ticks[s + 1] - ticks[s]));
+        moof.u32(track.sizes[s]);
+        moof.u32(track.syncs[s] ? SYNC_SAMPLE_FLAGS : NON_SYNC_SAMPLE_FLAGS);
+      }
+
+      moof.end(trun);
+      moof.end(traf);
+
+      if (track == next) {
+        track.resumeTimeUs = nextTimeUs;
+      } else {
+        track.resumeTimeUs = track.timesUs[track.count - 1] + track.toMicros(ticks[track.count] - ticks[track.count - 1]) / 2 + 1;
+      }
+    }
+
+    moof.end(moofStart);
+
+    int dataOffset = moof.size + 8;
+
+    for (int i = 0; i < tracks.size(); i++) {
+      Track track = tracks.get(i);
+
+      if (track.count == 0) continue;
+
+      moof.patch(dataOffsetFields[i], dataOffset);
+      dataOffset += track.data.size;
+    }
+
+    Box mdat = new Box();
+    mdat.u32(dataOffset - moof.size);
+    mdat.type("mdat");
+
+    out.write(moof.data, 0, moof.size);
+    out.write(mdat.data, 0, mdat.size);
+
+    for (Track track : tracks) {
+      out.write(track.data.data, 0, track.data.size);
+      track.clear();
+    }
+
+    length          += dataOffset;
+    fragmentStartUs  = -1;
+    fragmentBytes    = 0;
+
+    if (next != null && listener != null) {
+      out.flush();
+      listener.onFragmentWritten(buildCheckpoint());
+    }
+  }
+
+  private @NonNull Checkpoint buildCheckpoint() {
+    long[] trackResumeTimesUs = new long[tracks.size()];
+    long   resumeTimeUs       = Long.MAX_VALUE;
+
+    for (int i = 0; i < tracks.size(); i++) {
+      Track track = tracks.get(i);
+
+      trackResumeTimesUs[i] = track.resumeTimeUs;
+
+      if (track.isVideo()) {
+        resumeTimeUs = track.resumeTimeUs;
+      } else if (!hasVideo()) {
+        resumeTimeUs = Math.min(resumeTimeUs, track.resumeTimeUs);
+      }
+    }
+
+    return new Checkpoint(length, baseTimeUs, sequenceNumber, resumeTimeUs, trackResumeTimesUs, header);
+  }
+
+  private @NonNull byte[] buildHeader() {
+    Box box = new Box();
+
+    int ftyp = box.start("ftyp");
+    box.type("isom");
+    box.u32(0x200);
+    box.type("isom");
+    box.type("iso6");
+    box.type("avc1");
+    box.type("mp41");
+    box.end(ftyp);
+
+    int moov = box.start("moov");
+
+    int mvhd = box.startFull("mvhd", 0, 0);
+    box.u32(0);
+    box.u32(0);
+    box.u32(MOVIE_TIMESCALE);
+    box.u32(0);
+    box.u32(0x00010000);
+    box.u16(0x0100);
+    box.zeros(10);
+    box.matrix();
+    box.zeros(24);
+    box.u32(tracks.size() + 1);
+    box.end(mvhd);
+
+    for (Track track : tracks) {
+      track.writeTrak(box);
+    }
+
+    int mvex = box.start("mvex");
+
+    if (expectedDurationUs > 0) {
+      int mehd = box.startFull("mehd", 1, 0);
+      box.u64(expectedDurationUs * MOVIE_TIMESCALE / 1_000_000);
+      box.end(mehd);
+    }
+
+    for (Track track : tracks) {
+      int trex = box.startFull("trex", 0, 0);
+      box.u32(track.id);
+      box.u32(1);
+      box.u32(0);
+      box.u32(0);
+      box.u32(0);
+      box.end(trex);
+    }
+
+    box.end(mvex);
+    box.end(moov);
+
+    return Arrays.copyOf(box.data, box.size);
+  }
+
+  public interface Listener {
+    /**
+     * Called once a fragment has been written and the output flushed.
+     */
+    void onFragmentWritten(@NonNull Checkpoint checkpoint) throws IOException;
+  }
+
+  /**
+   * Where a writer got to, as of the end of a fragment.
+   */
+  public static final class Checkpoint {
+
+    private static final int VERSION = 1;
+
+    private final long   length;
+    private final long   baseTimeUs;
+    private final int    nextSequenceNumber;
+    private final long   resumeTimeUs;
+    private final long[] trackResumeTimesUs;
+    private final byte[] header;
+
+    private Checkpoint(long length, long baseTimeUs, int nextSequenceNumber, long resumeTimeUs, @NonNull long[] trackResumeTimesUs, @NonNull byte[] header) {
+      this.length             = length;
+      this.baseTimeUs         = baseTimeUs;
+      this.nextSequenceNumber = nextSequenceNumber;
+      this.resumeTimeUs       = resumeTimeUs;
+      this.trackResumeTimesUs = trackResumeTimesUs;
+      this.header             = header;
+    }
+
+    /**
+     * @return The number of bytes of output that the checkpoint covers.
+     */
+    public long getLength() {
+      return length;
+    }
+
+    /**
+     * @return The presentation time that conversion should restart from. Samples before each
+     *         track's own resume time are dropped, so restarting a little early is harmless.
+     */
+    public long getResumeTimeUs() {
+      return resumeTimeUs;
+    }
+
+    public @NonNull byte[] serialize() {
+      try {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        DataOutputStream      out   = new DataOutputStream(bytes);
+
+        out.writeInt(VERSION);
+        out.writeLong(length);
+        out.writeLong(baseTimeUs);
+        out.writeInt(nextSequenceNumber);
+        out.writeLong(resumeTimeUs);
+        out.writeInt(trackResumeTimesUs.length);
+
+        for (long time : trackResumeTimesUs) {
+          out.writeLong(time);
+        }
+
+        out.writeInt(header.length);
+        out.write(header);
+
+        return bytes.toByteArray();
+      } catch (IOException e) {
+        throw new AssertionError(e);
+      }
+    }
+
+    public static @NonNull Checkpoint deserialize(@NonNull byte[] serialized) throws IOException {
+      DataInputStream in = new DataInputStream(new ByteArrayInputStream(serialized));
+
+      if (in.readInt() != VERSION) {
+        throw new IOException("Unknown checkpoint version");
+      }
+
+      long   length             = in.readLong();
+      long   baseTimeUs         = in.readLong();
+      int    nextSequenceNumber = in.readInt();
+      long   resumeTimeUs       = in.readLong();
+      long[] trackResumeTimesUs = new long[in.readInt()];
+
+      for (int i = 0; i < trackResumeTimesUs.length; i++) {
+        trackResumeTimesUs[i] = in.readLong();
+      }
+
+      byte[] header = new byte[in.readInt()];
+      in.readFully(header);
+
+      return new Checkpoint(length, baseTimeUs, nextSequenceNumber, resumeTimeUs, trackResumeTimesUs, header);
+    }
+  }
+
+  private static abstract class Track {
+
+    final int id;
+    final int timescale;
+    final Box data = new Box();
+
+    long[]    timesUs = new long[64];
+    int[]     sizes   = new int[64];
+    boolean[] syncs   = new boolean[64];
+    int       count;
+    long      minTimeUs;
+    long      resumeTimeUs;
+    long      lastDuration;
+
+    Track(int id, int timescale) {
+      this.id        = id;
+      this.timescale = timescale;
+    }
+
+    abstract boolean isVideo();
+
+    abstract long defaultDuration();
+
+    abstract void writeMediaHeader(@NonNull Box box);
+
+    abstract void writeSampleEntry(@NonNull Box box);
+
+    void add(@NonNull byte[] sample, int offset, int size, long timeUs, boolean sync) {
+      if (count == timesUs.length) {
+        timesUs = Arrays.copyOf(timesUs, count * 2);
+        sizes   = Arrays.copyOf(sizes, count * 2);
+        syncs   = Arrays.copyOf(syncs, count * 2);
+      }
+
+      timesUs[count] = timeUs;
+      sizes[count]   = size;
+      syncs[count]   = sync;
+      count++;
+
+      data.bytes(sample, offset, size);
+    }
+
+    void clear() {
+      count     = 0;
+      data.size = 0;
+    }
+
+    /**
+     * The duration of the last sample is not known until the next one arrives, so it is assumed to
+     * match the one before it. The next fragment's decode time corrects any difference.
+     */
+    long estimateLastDuration(@NonNull long[] ticks) {
+      if (count > 1) {
+        lastDuration = ticks[count - 1] - ticks[count - 2];
+      } else if (lastDuration <= 0) {
+        lastDuration = defaultDuration();
+      }
+      return lastDuration;
+    }
+
+    long toTicks(long timeUs) {
+      return (timeUs * timescale + 500_000) / 1_000_000;
+    }
+
+    long toMicros(long ticks) {
+      return (ticks * 1_000_000 + timescale / 2) / timescale;
+    }
+
+    void writeTrak(@NonNull Box box) {
+      int trak = box.start("trak");
+
+      int tkhd = box.startFull("tkhd", 0, 3);
+      box.u32(0);
+      box.u32(0);
+      box.u32(id);
+      box.u32(0);
+      box.u32(0);
+      box.zeros(8);
+      box.u16(0);
+      box.u16(0);
+      box.u16(isVideo() ? 0 : 0x0100);
+      box.u16(0);
+      box.matrix();
+      writeDimensions(box);
+      box.end(tkhd);
+
+      int mdia = box.start("mdia");
+
+      int mdhd = box.startFull("mdhd", 0, 0);
+      box.u32(0);
+      box.u32(0);
+      box.u32(timescale);
+      box.u32(0);
+      box.u16(0x55C4);
+      box.u16(0);
+      box.end(mdhd);
+
+      int hdlr = box.startFull("hdlr", 0, 0);
+      box.u32(0);
+      box.type(isVideo() ? "vide" : "soun");
+      box.zeros(12);
+      box.string(isVideo() ? "VideoHandler" : "SoundHandler");
+      box.end(hdlr);
+
+      int minf = box.start("minf");
+
+      writeMediaHeader(box);
+
+      int dinf = box.start("dinf");
+      int dref = box.startFull("dref", 0, 0);
+      box.u32(1);
+      box.end(box.startFull("url ", 0, 1));
+      box.end(dref);
+      box.end(dinf);
+
+      int stbl = box.start("stbl");
+
+      int stsd = box.startFull("stsd", 0, 0);
+      box.u32(1);
+      writeSampleEntry(box);
+      box.end(stsd);
+
+      int stts = box.startFull("stts", 0, 0);
+      box.u32(0);
+      box.end(stts);
+
+      int stsc = box.startFull("stsc", 0, 0);
+      box.u32(0);
+      box.end(stsc);
+
+      int stsz = box.startFull("stsz", 0, 0);
+      box.u32(0);
+      box.u32(0);
+      box.end(stsz);
+
+      int stco = box.startFull("stco", 0, 0);
+      box.u32(0);
+      box.end(stco);
+
+      box.end(stbl);
+      box.end(minf);
+      box.end(mdia);
+      box.end(trak);
+    }
+
+    void writeDimensions(@NonNull Box box) {
+      box.u32(0);
+      box.u32(0);
+    }
+  }
+
+  private static final class VideoTrack extends Track {
+
+    private final int          width;
+    private final int          height;
+    private final List<byte[]> sps;
+    private final List<byte[]> pps;
+
+    VideoTrack(int id, int width, int height, @NonNull List<byte[]> sps, @NonNull List<byte[]> pps) {
+      super(id, VIDEO_TIMESCALE);
+      this.width  = width;
+      this.height = height;
+      this.sps    = sps;
+      this.pps    = pps;
+    }
+
+    @Override
+    boolean isVideo() {
+      return true;
+    }
+
+    @Override
+    long defaultDuration() {
+      return VIDEO_TIMESCALE / 30;
+    }
+
+    @Override
+    void writeDimensions(@NonNull Box box) {
+      box.u32(width << 16);
+      box.u32(height << 16);
+    }
+
+    @Override
+    void writeMediaHeader(@NonNull Box box) {
+      int vmhd = box.startFull("vmhd", 0, 1);
+      box.zeros(8);
+      box.end(vmhd);
+    }
+
+    @Override
+    void writeSampleEntry(@NonNull Box box) {
+      int avc1 = box.start("avc1");
+      box.zeros(6);
+      box.u16(1);
+      box.zeros(16);
+      box.u16(width);
+      box.u16(height);
+      box.u32(0x00480000);
+      box.u32(0x00480000);
+      box.u32(0);
+      box.u16(1);
+      box.zeros(32);
+      box.u16(0x0018);
+      box.u16(0xFFFF);
+
+      byte[] firstSps = sps.get(0);
+      int    profile  = firstSps[1] & 0xFF;
+
+      int avcC = box.start("avcC");
+      box.u8(1);
+      box.u8(profile);
+      box.u8(firstSps[2] & 0xFF);
+      box.u8(firstSps[3] & 0xFF);
+      box.u8(0xFF);
+      box.u8(0xE0 | sps.size());
+
+      for (byte[] nal : sps) {
+        box.u16(nal.length);
+        box.bytes(nal, 0, nal.length);
+      }
+
+      box.u8(pps.size());
+
+      for (byte[] nal : pps) {
+        box.u16(nal.length);
+        box.bytes(nal, 0, nal.length);
+      }
+
+      if (profile == 100 || profile == 110 || profile == 122 || profile == 144) {
+        box.u8(0xFC | 1);
+        box.u8(0xF8);
+        box.u8(0xF8);
+        box.u8(0);
+      }
+
+      box.end(avcC);
+      box.end(avc1);
+    }
+  }
+
+  private static final class AudioTrack extends Track {
+
+    private static final int SAMPLES_PER_FRAME = 1024;
+
+    private final int    sampleRate;
+    private final int    channelCount;
+    private final int    bitRate;
+    private final byte[] audioSpecificConfig;
+
+    AudioTrack(int id, int sampleRate, int channelCount, int bitRate, @NonNull byte[] audioSpecificConfig) {
+      super(id, sampleRate);
+      this.sampleRate          = sampleRate;
+      this.channelCount        = channelCount;
+      this.bitRate             = bitRate;
+      this.audioSpecificConfig = audioSpecificConfig;
+    }
+
+    @Override
+    boolean isVideo() {
+      return false;
+    }
+
+    @Override
+    long defaultDuration() {
+      return SAMPLES_PER_FRAME;
+    }
+
+    @Override
+    void writeMediaHeader(@NonNull Box box) {
+      int smhd = box.startFull("smhd", 0, 0);
+      box.u16(0);
+      box.u16(0);
+      box.end(smhd);
+    }
+
+    @Override
+    void writeSampleEntry(@NonNull Box box) {
+      int mp4a = box.start("mp4a");
+      box.zeros(6);
+      box.u16(1);
+      box.zeros(8);
+      box.u16(channelCount);
+      box.u16(16);
+      box.u16(0);
+      box.u16(0);
+      box.u32(sampleRate <= 0xFFFF ? sampleRate << 16 : 0);
+
+      int decoderSpecificInfoLength = 2 + audioSpecificConfig.length;
+      int decoderConfigLength       = 2 + 13 + decoderSpecificInfoLength;
+      int esLength                  = 3 + decoderConfigLength + 3;
+
+      if (esLength > 127) {
+        throw new IllegalArgumentException("Audio specific config is too long");
+      }
+
+      int esds = box.startFull("esds", 0, 0);
+      box.u8(0x03);
+      box.u8(esLength);
+      box.u16(0);
+      box.u8(0);
+
+      box.u8(0x04);
+      box.u8(decoderConfigLength - 2);
+      box.u8(0x40);
+      box.u8(0x15);
+      box.u8(0);
+      box.u16(0);
+      box.u32(bitRate);
+      box.u32(bitRate);
+
+      box.u8(0x05);
+      box.u8(audioSpecificConfig.length);
+      box.bytes(audioSpecificConfig, 0, audioSpecificConfig.length);
+
+      box.u8(0x06);
+      box.u8(1);
+      box.u8(0x02);
+      box.end(esds);
+
+      box.end(mp4a);
+    }
+  }
+
+  /**
+   * A growable big-endian buffer that boxes are built in, with their sizes filled in at the end.
+   */
+  private static final class Box {
+
+    private static final Charset ISO_8859_1 = Charset.forName("ISO-8859-1");
+
+    byte[] data = new byte[256];
+    int    size;
+
+    int start(@NonNull String type) {
+      int position = size;
+      u32(0);
+      type(type);
+      return position;
+    }
+
+    int startFull(@NonNull String type, int version, int flags) {
+      int position = start(type);
+      u32((version << 24) | flags);
+      return position;
+    }
+
+    void end(int position) {
+      patch(position, size - position);
+    }
+
+    void patch(int position, int value) {
+      data[position]     = (byte) (value >>> 24);
+      data[position + 1] = (byte) (value >>> 16);
+      data[position + 2] = (byte) (value >>> 8);
+      data[position + 3] = (byte) value;
+    }
+
+    void type(@NonNull String type) {
+      byte[] bytes = type.getBytes(ISO_8859_1);
+      bytes(bytes, 0, bytes.length);
+    }
+
+    void string(@NonNull String value) {
+      type(value);
+      u8(0);
+    }
+
+    void matrix() {
+      for (int value : UNITY_MATRIX) {
+        u32(value);
+      }
+    }
+
+    void u8(int value) {
+      ensureCapacity(1);
+      data[size++] = (byte) value;
+    }
+
+    void u16(int value) {
+      ensureCapacity(2);
+      data[size++] = (byte) (value >>> 8);
+      data[size++] = (byte) value;
+    }
+
+    void u32(int value) {
+      ensureCapacity(4);
+      patch(size, value);
+      size += 4;
+    }
+
+    void u64(long value) {
+      u32((int) (value >>> 32));
+      u32((int) value);
+    }
+
+    void zeros(int count) {
+      ensureCapacity(count);
+      Arrays.fill(data, size, size + count, (byte) 0);
+      size += count;
+    }
+
+    void bytes(@NonNull byte[] bytes, int offset, int length) {
+      ensureCapacity(length);
+      System.arraycopy(bytes, offset, data, size, length);
+      size += length;
+    }
+
+    private void ensureCapacity(int extra) {
+      if (size + extra > data.length) {
+        data = Arrays.copyOf(data, Math.max(data.length * 2, size + extra));
+      }
+    }
+  }
+}
@@ -0,0 +1,123 @@
+package org.thoughtcrime.securesms.video.videoconverter;
+
+import androidx.annotation.NonNull;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Converts the Annex-B H.264 that MediaCodec produces, where NAL units are separated by start codes,
+ * into the length prefixed form that MP4 stores.
+ */
+final class NalUnits {
+
+  static final int NAL_TYPE_SPS = 7;
+  static final int NAL_TYPE_PPS = 8;
+
+  private NalUnits() {}
+
+  /**
+   * @return The NAL units between the buffer's position and limit, without their start codes. Data
+   *         without any start code is treated as a single NAL unit.
+   */
+  static @NonNull List<byte[]> split(@NonNull ByteBuffer annexB) {
+    byte[]       data   = toArray(annexB);
+    int[]        bounds = findUnits(data);
+    List<byte[]> units  = new ArrayList<>(bounds.length / 2);
+
+    for (int i = 0; i < bounds.length; i += 2) {
+      units.add(Arrays.copyOfRange(data, bounds[i], bounds[i + 1]));
+    }
+
+    return units;
+  }
+
+  /**
+   * @return The NAL units between the buffer's position and limit, each preceded by its length as
+   *         a four byte big-endian integer in place of its start code.
+   */
+  static @NonNull byte[] toLengthPrefixed(@NonNull ByteBuffer annexB) {
+    byte[] data   = toArray(annexB);
+    int[]  bounds = findUnits(data);
+    int    length = 0;
+
+    for (int i = 0; i < bounds.length; i += 2) {
+      length += 4 + bounds[i + 1] - bounds[i];
+    }
+
+    byte[] output   = new byte[length];
+    int    position = 0;
+
+    for (int i = 0; i < bounds.length; i += 2) {
+      int unitLength = bounds[i + 1] - bounds[i];
+
+      output[position]     = (byte) (unitLength >>> 24);
+      output[position + 1] = (byte) (unitLength >>> 16);
+      output[position + 2] = (byte) (unitLength >>> 8);
+      output[position + 3] = (byte) unitLength;
+
+      System.arraycopy(data, bounds[i], output, position + 4, unitLength);
+      position += 4 + unitLength;
+    }
+
+    return output;
+  }
+
+  static int getType(@NonNull byte[] unit) {
+    return unit[0] & 0x1F;
+  }
+
+  private static @NonNull byte[] toArray(@NonNull ByteBuffer buffer) {
+    byte[] data = new byte[buffer.remaining()];
+    buffer.duplicate().get(data);
+    return data;
+  }
+
+  /**
+   * @return Start and end offsets of each NAL unit, in pairs.
+   */
+  private static @NonNull int[] findUnits(@NonNull byte[] data) {
+    int[] bounds = new int[16];
+    int   count  = 0;
+    int   start  = -1;
+    int   i      = 0;
+
+    while (i + 2 < data.length) {
+      if ((data[i + 2] & 0xFF) > 1) {
+        i += 3;
+      } else if (data[i] == 0 && data[i + 1] == 0 && data[i + 2] == 1) {
+        if (start >= 0) {
+          if (count + 2 > bounds.length) bounds = Arrays.copyOf(bounds, bounds.length * 2);
+          bounds[count++] = start;
+          bounds[count++] = trimTrailingZeros(data, start, i);
+        }
+        start  = i + 3;
+        i     += 3;
+      } else {
+        i++;
+      }
+    }
+
+    if (start < 0) {
+      return data.length > 0 ? new int[] { 0, data.length } : new int[0];
+    }
+
+    if (count + 2 > bounds.length) bounds = Arrays.copyOf(bounds, count + 2);
+    bounds[count++] = start;
+    bounds[count++] = data.length;
+
+    return Arrays.copyOf(bounds, count);
+  }
+
+  /**
+   * A four byte start code, or trailing_zero_8bits, leave zeros at the end of the previous unit.
+   */
+  private static int trimTrailingZeros(@NonNull byte[] data, int start, int end) {
+    while (end > start && data[end - 1] == 0) {
+      end--;
+    }
+    return end;
+  }
+}
@@ -0,0 +1,113 @@
+package org.thoughtcrime.securesms.video.videoconverter;
+
+import android.media.MediaCodec;
+import android.media.MediaFormat;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.RequiresApi;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * A {@link Muxer} that streams a fragmented MP4 through a {@link Mp4FragmentWriter} instead of
+ * writing a seekable file, so the output can go straight to any OutputStream.
+ * <p>
+ * Only H.264 video and AAC audio are supported.
+ */
+@RequiresApi(21)
+public final class StreamingMuxer implements Muxer {
+
+    private static final String MIME_AVC = "video/avc";
+    private static final String MIME_AAC = "audio/mp4a-latm";
+
+    private final Mp4FragmentWriter writer;
+    private final List<Boolean>     videoTracks = new ArrayList<>();
+
+    public StreamingMuxer(final @NonNull Mp4FragmentWriter writer) {
+        this.writer = writer;
+    }
+
+    @Override
+    public void start() throws IOException {
+        writer.start();
+    }
+
+    @Override
+    public void stop() throws IOException {
+        writer.finish();
+    }
+
+    @Override
+    public int addTrack(final @NonNull MediaFormat format) throws IOException {
+        final String mime = format.getString(MediaFormat.KEY_MIME);
+        final int track;
+
+        if (MIME_AVC.equals(mime)) {
+            final List<byte[]> sps = new ArrayList<>();
+            final List<byte[]> pps = new ArrayList<>();
+
+            for (String key : new String[] { "csd-0", "csd-1" }) {
+                final ByteBuffer csd = format.getByteBuffer(key);
+                if (csd == null) {
+                    continue;
+                }
+                for (byte[] unit : NalUnits.split(csd)) {
+                    if (NalUnits.getType(unit) == NalUnits.NAL_TYPE_SPS) {
+                        sps.add(unit);
+                    } else if (NalUnits.getType(unit) == NalUnits.NAL_TYPE_PPS) {
+                        pps.add(unit);
+                    }
+                }
+            }
+
+            if (sps.isEmpty() || pps.isEmpty()) {
+                throw new IOException("Missing parameter sets in " + format);
+            }
+
+            track = writer.addVideoTrack(format.getInteger(MediaFormat.KEY_WIDTH), format.getInteger(MediaFormat.KEY_HEIGHT), sps, pps);
+            videoTracks.add(true);
+        } else if (MIME_AAC.equals(mime)) {
+            final ByteBuffer csd = format.getByteBuffer("csd-0");
+            if (csd == null) {
+                throw new IOException("Missing audio specific config in " + format);
+            }
+
+            final byte[] audioSpecificConfig = new byte[csd.remaining()];
+            csd.duplicate().get(audioSpecificConfig);
+
+            track = writer.addAudioTrack(format.getInteger(MediaFormat.KEY_SAMPLE_RATE),
+                                         format.getInteger(MediaFormat.KEY_CHANNEL_COUNT),
+                                         format.containsKey(MediaFormat.KEY_BIT_RATE) ? format.getInteger(MediaFormat.KEY_BIT_RATE) : 0,
+                                         audioSpecificConfig);
+            videoTracks.add(false);
+        } else {
+            throw new IOException("Unsupported format " + mime);
+        }
+
+        return track;
+    }
+
+    @Override
+    public void writeSampleData(final int trackIndex, final @NonNull ByteBuffer byteBuf, final @NonNull MediaCodec.BufferInfo bufferInfo) throws IOException {
+        final ByteBuffer sample = byteBuf.duplicate();
+        sample.limit(bufferInfo.offset + bufferInfo.size);
+        sample.position(bufferInfo.offset);
+
+        final byte[] data;
+        if (videoTracks.get(trackIndex)) {
+            data = NalUnits.toLengthPrefixed(sample);
+        } else {
+            data = new byte[sample.remaining()];
+            sample.get(data);
+        }
+
+        writer.writeSample(trackIndex, data, 0, data.length, bufferInfo.presentationTimeUs, (bufferInfo.flags & MediaCodec.BUFFER_FLAG_KEY_FRAME) != 0);
+    }
+
+    @Override
+    public void release() {
+    }
+}
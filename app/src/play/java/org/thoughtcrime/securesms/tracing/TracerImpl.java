@@ -1,9 +1,10 @@
 package org.thoughtcrime.securesms.tracing;
 
 import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
 
 /**
- * Dummy implementation.
+ * Dummy implementation. Tracing is only woven into internal builds, so every method is a no-op.
  */
 final class TracerImpl implements Tracer {
 
@@ -14,21 +15,32 @@ final class TracerImpl implements Tracer {
 
   @Override
   public void start(@NonNull String methodName) {
-    throw new UnsupportedOperationException();
   }
 
   @Override
   public void start(@NonNull String methodName, @NonNull String key, @NonNull String value) {
-    throw new UnsupportedOperationException();
   }
 
   @Override
   public void end(@NonNull String methodName) {
-    throw new UnsupportedOperationException();
   }
 
   @Override
   public @NonNull byte[] serialize() {
-    throw new UnsupportedOperationException();
+    return new byte[0];
+  }
+
+  @Override
+  public @NonNull byte[] serialize(long durationMillis) {
+    return new byte[0];
+  }
+
+  @Override
+  public void onSlowEvent(@NonNull String reason) {
+  }
+
+  @Override
+  public @Nullable byte[] getLastSnapshot() {
+    return null;
   }
 }
@@ -0,0 +1,62 @@
+package org.thoughtcrime.securesms.attachments;
+
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+public final class ThumbnailBucketsTest {
+
+  private static final List<AttachmentThumbnail> THUMBNAILS = Arrays.asList(new AttachmentThumbnail(1, 384, 512, 384),
+                                                                            new AttachmentThumbnail(2, 768, 1024, 768),
+                                                                            new AttachmentThumbnail(3, 1280, 1707, 1280));
+
+  @Test
+  public void getBuckets_large_image_gets_all_buckets() {
+    assertEquals(Arrays.asList(1280, 768, 384), ThumbnailBuckets.getBuckets(4000, 3000));
+  }
+
+  @Test
+  public void getBuckets_skips_buckets_larger_than_short_side() {
+    assertEquals(Collections.singletonList(384), ThumbnailBuckets.getBuckets(600, 2000));
+    assertEquals(Collections.emptyList(), ThumbnailBuckets.getBuckets(300, 200));
+  }
+
+  @Test
+  public void getScale_fits_short_side_to_bucket() {
+    assertEquals(0.32f, ThumbnailBuckets.getScale(4000, 3000, 960), 0.0001f);
+    assertEquals(0.32f, ThumbnailBuckets.getScale(3000, 4000, 960), 0.0001f);
+  }
+
+  @Test
+  public void getScale_caps_long_side_of_panoramas() {
+    assertEquals(0.1f, ThumbnailBuckets.getScale(15360, 1000, 384), 0.0001f);
+  }
+
+  @Test
+  public void getScale_never_upscales() {
+    assertEquals(1f, ThumbnailBuckets.getScale(200, 100, 384), 0f);
+  }
+
+  @Test
+  public void select_picks_smallest_covering_thumbnail() {
+    assertEquals(1, ThumbnailBuckets.select(THUMBNAILS, 360, 360).getId());
+    assertEquals(2, ThumbnailBuckets.select(THUMBNAILS, 660, 495).getId());
+    assertEquals(3, ThumbnailBuckets.select(THUMBNAILS, 1024, 1024).getId());
+  }
+
+  @Test
+  public void select_returns_null_when_nothing_covers_target() {
+    assertNull(ThumbnailBuckets.select(THUMBNAILS, 1440, 1440));
+    assertNull(ThumbnailBuckets.select(Collections.emptyList(), 100, 100));
+  }
+
+  @Test
+  public void select_returns_null_for_original_size() {
+    assertNull(ThumbnailBuckets.select(THUMBNAILS, Integer.MIN_VALUE, Integer.MIN_VALUE));
+  }
+}
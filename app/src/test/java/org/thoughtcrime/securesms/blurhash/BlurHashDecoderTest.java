@@ -0,0 +1,89 @@
+package org.thoughtcrime.securesms.blurhash;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public final class BlurHashDecoderTest {
+
+  private static final String[] HASHES = { "LEHV6nWB2yk8pyo0adR*.7kCMdnj",
+                                           "LGF5]+Yk^6#M@-5c,1J5@[or[Q6.",
+                                           "L6PZfSi_.AyE_3t7t7R**0o#DgR4",
+                                           "|rF?hV%2WCj[ayj[a|j[az_NaeWBj@ayfRayfQfQM{M|azj[azf6fQfQfQIpWXofj[ayj[j[fQayWCoeoeaya}j[ayfQa{oLj?j[WVj[ayayj[fQoff7azayj[ayj[j[ayofayayayj[fQj[ayayj[ayfjj[j[ayjuayj[" };
+
+  @Test
+  public void decode_matches_reference() {
+    for (String hash : HASHES) {
+      for (int[] size : new int[][] { { 32, 32 }, { 17, 40 }, { 1, 1 } }) {
+        int   width    = size[0];
+        int   height   = size[1];
+        int[] actual   = new int[width * height];
+        int[] expected = referenceDecode(hash, width, height);
+
+        assertTrue(BlurHashDecoder.decode(hash, width, height, 1, actual));
+
+        for (int p = 0; p < actual.length; p++) {
+          assertEquals(0xff, actual[p] >>> 24);
+          assertEquals((expected[p] >> 16) & 0xff, (actual[p] >> 16) & 0xff, 1);
+          assertEquals((expected[p] >> 8)  & 0xff, (actual[p] >> 8)  & 0xff, 1);
+          assertEquals( expected[p]        & 0xff,  actual[p]        & 0xff, 1);
+        }
+      }
+    }
+  }
+
+  @Test
+  public void decode_rejects_invalid_hashes() {
+    int[] pixels = new int[4];
+
+    assertFalse(BlurHashDecoder.decode(null, 2, 2, 1, pixels));
+    assertFalse(BlurHashDecoder.decode("LEHV6", 2, 2, 1, pixels));
+    assertFalse(BlurHashDecoder.decode("LEHV6nWB2yk8pyo0adR*.7kCMdn", 2, 2, 1, pixels));
+  }
+
+  /**
+   * The straightforward per-pixel evaluation of the BlurHash basis.
+   */
+  private static int[] referenceDecode(String hash, int width, int height) {
+    int numCompEnc = Base83.decode(hash, 0, 1);
+    int numCompX   = (numCompEnc % 9) + 1;
+    int numCompY   = (numCompEnc / 9) + 1;
+    double maxAc   = (Base83.decode(hash, 1, 2) + 1) / 166f;
+
+    double[][] colors = new double[numCompX * numCompY][];
+
+    int dc = Base83.decode(hash, 2, 6);
+    colors[0] = new double[] { BlurHashUtil.sRGBToLinear(dc >> 16), BlurHashUtil.sRGBToLinear((dc >> 8) & 255), BlurHashUtil.sRGBToLinear(dc & 255) };
+
+    for (int i = 1; i < colors.length; i++) {
+      int value = Base83.decode(hash, 4 + i * 2, 6 + i * 2);
+      colors[i] = new double[] { BlurHashUtil.signPow((value / (19 * 19) - 9) / 9.0f, 2f) * maxAc,
+                                 BlurHashUtil.signPow(((value / 19) % 19 - 9) / 9.0f, 2f) * maxAc,
+                                 BlurHashUtil.signPow((value % 19 - 9) / 9.0f, 2f) * maxAc };
+    }
+
+    int[] pixels = new int[width * height];
+
+    for (int y = 0; y < height; y++) {
+      for (int x = 0; x < width; x++) {
+        double r = 0, g = 0, b = 0;
+
+        for (int j = 0; j < numCompY; j++) {
+          for (int i = 0; i < numCompX; i++) {
+            double basis = Math.cos(Math.PI * x * i / width) * Math.cos(Math.PI * y * j / height);
+            double[] color = colors[j * numCompX + i];
+            r += color[0] * basis;
+            g += color[1] * basis;
+            b += color[2] * basis;
+          }
+        }
+
+        pixels[y * width + x] = (int) (BlurHashUtil.linearTosRGB(r) << 16 | BlurHashUtil.linearTosRGB(g) << 8 | BlurHashUtil.linearTosRGB(b));
+      }
+    }
+
+    return pixels;
+  }
+}
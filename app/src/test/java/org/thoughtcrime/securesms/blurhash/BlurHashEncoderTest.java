@@ -0,0 +1,121 @@
+package org.thoughtcrime.securesms.blurhash;
+
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.Random;
+
+import static org.junit.Assert.assertEquals;
+
+public final class BlurHashEncoderTest {
+
+  @Test
+  public void encode_matches_reference() {
+    Random random = new Random(1234);
+
+    for (int[] size : new int[][] { { 32, 32 }, { 20, 48 }, { 7, 3 } }) {
+      int   width  = size[0];
+      int   height = size[1];
+      int[] pixels = gradient(width, height, random);
+
+      assertEquals(referenceEncode(pixels, width, height, 4, 3), BlurHashEncoder.encode(pixels, width, height, 4, 3));
+      assertEquals(referenceEncode(pixels, width, height, 1, 1), BlurHashEncoder.encode(pixels, width, height, 1, 1));
+      assertEquals(referenceEncode(pixels, width, height, 9, 9), BlurHashEncoder.encode(pixels, width, height, 9, 9));
+    }
+  }
+
+  @Test
+  public void encode_then_decode_keeps_solid_color() {
+    int   width  = 16;
+    int   height = 16;
+    int[] pixels = new int[width * height];
+
+    Arrays.fill(pixels, 0xff3080c0);
+
+    String hash    = BlurHashEncoder.encode(pixels, width, height, 1, 1);
+    int[]  decoded = new int[width * height];
+
+    BlurHashDecoder.decode(hash, width, height, 1, decoded);
+
+    for (int pixel : decoded) {
+      assertEquals(0xff3080c0, pixel);
+    }
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void encode_rejects_too_many_components() {
+    BlurHashEncoder.encode(new int[4], 2, 2, 10, 1);
+  }
+
+  private static int[] gradient(int width, int height, Random random) {
+    int[] pixels = new int[width * height];
+
+    for (int y = 0; y < height; y++) {
+      for (int x = 0; x < width; x++) {
+        int r = x * 255 / width;
+        int g = y * 255 / height;
+        int b = random.nextInt(256);
+        pixels[y * width + x] = 0xff000000 | r << 16 | g << 8 | b;
+      }
+    }
+
+    return pixels;
+  }
+
+  /**
+   * The straightforward evaluation of each component over every pixel.
+   */
+  private static String referenceEncode(int[] pixels, int width, int height, int componentX, int componentY) {
+    double[] factors = new double[componentX * componentY * 3];
+
+    for (int j = 0; j < componentY; j++) {
+      for (int i = 0; i < componentX; i++) {
+        double normalisation = i == 0 && j == 0 ? 1 : 2;
+        double r = 0, g = 0, b = 0;
+
+        for (int x = 0; x < width; x++) {
+          for (int y = 0; y < height; y++) {
+            double basis = normalisation * Math.cos((Math.PI * i * x) / width) * Math.cos((Math.PI * j * y) / height);
+            int    pixel = pixels[y * width + x];
+            r += basis * BlurHashUtil.sRGBToLinear((pixel >> 16) & 0xff);
+            g += basis * BlurHashUtil.sRGBToLinear((pixel >> 8)  & 0xff);
+            b += basis * BlurHashUtil.sRGBToLinear( pixel        & 0xff);
+          }
+        }
+
+        int    index = (j * componentX + i) * 3;
+        double scale = 1.0 / (width * height);
+        factors[index]     = r * scale;
+        factors[index + 1] = g * scale;
+        factors[index + 2] = b * scale;
+      }
+    }
+
+    int    components = componentX * componentY;
+    char[] hash       = new char[4 + 2 * components];
+
+    Base83.encode(componentX - 1 + (componentY - 1) * 9, 1, hash, 0);
+
+    double maximumValue;
+    if (components > 1) {
+      double quantised = Math.floor(Math.max(0, Math.min(82, Math.floor(BlurHashUtil.max(factors, 3, factors.length) * 166 - 0.5))));
+      maximumValue = (quantised + 1) / 166;
+      Base83.encode(Math.round(quantised), 1, hash, 1);
+    } else {
+      maximumValue = 1;
+      Base83.encode(0, 1, hash, 1);
+    }
+
+    Base83.encode((BlurHashUtil.linearTosRGB(factors[0]) << 16) + (BlurHashUtil.linearTosRGB(factors[1]) << 8) + BlurHashUtil.linearTosRGB(factors[2]), 4, hash, 2);
+
+    for (int c = 1; c < components; c++) {
+      long quantised = 0;
+      for (int channel = 0; channel < 3; channel++) {
+        quantised = quantised * 19 + (long) Math.floor(Math.max(0, Math.min(18, Math.floor(BlurHashUtil.signPow(factors[c * 3 + channel] / maximumValue, 0.5) * 9 + 9.5))));
+      }
+      Base83.encode(quantised, 2, hash, 6 + 2 * (c - 1));
+    }
+
+    return new String(hash);
+  }
+}
@@ -0,0 +1,46 @@
+package org.thoughtcrime.securesms.blurhash;
+
+import org.junit.Test;
+
+import java.util.Random;
+
+import static org.junit.Assert.assertEquals;
+
+public final class BlurHashUtilTest {
+
+  @Test
+  public void sRGBToLinearFast_matches_sRGBToLinear() {
+    for (int i = 0; i < 256; i++) {
+      assertEquals(BlurHashUtil.sRGBToLinear(i), BlurHashUtil.sRGBToLinearFast(i), 0);
+    }
+  }
+
+  @Test
+  public void linearTosRGBFast_matches_linearTosRGB_on_random_values() {
+    Random random = new Random(1234);
+
+    for (int i = 0; i < 1_000_000; i++) {
+      double value = random.nextDouble() * 1.2 - 0.1;
+      assertEquals(BlurHashUtil.linearTosRGB(value), BlurHashUtil.linearTosRGBFast(value));
+    }
+  }
+
+  @Test
+  public void linearTosRGBFast_matches_linearTosRGB_at_boundaries() {
+    for (int i = 0; i < 256; i++) {
+      double linear = BlurHashUtil.sRGBToLinear(i);
+
+      for (double value : new double[] { linear, Math.nextUp(linear), Math.nextDown(linear), (linear + BlurHashUtil.sRGBToLinear(Math.min(255, i + 1))) / 2 }) {
+        assertEquals(BlurHashUtil.linearTosRGB(value), BlurHashUtil.linearTosRGBFast(value));
+      }
+    }
+  }
+
+  @Test
+  public void linearTosRGBFast_clamps() {
+    assertEquals(0, BlurHashUtil.linearTosRGBFast(-1));
+    assertEquals(0, BlurHashUtil.linearTosRGBFast(Double.NaN));
+    assertEquals(255, BlurHashUtil.linearTosRGBFast(1));
+    assertEquals(255, BlurHashUtil.linearTosRGBFast(Double.POSITIVE_INFINITY));
+  }
+}
@@ -0,0 +1,152 @@
+package org.thoughtcrime.securesms.components.emoji.parsing;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.Mockito.mock;
+
+public final class EmojiParserTest {
+
+  private static final String SMILE       = "\ud83d\ude00";
+  private static final String HEART       = "\u2764\ufe0f";
+  private static final String HEART_BARE  = "\u2764";
+  private static final String THUMBS_UP   = "\ud83d\udc4d";
+  private static final String SKIN_TONE   = "\ud83c\udffd";
+  private static final String MAN         = "\ud83d\udc68";
+  private static final String WOMAN       = "\ud83d\udc69";
+  private static final String ZWJ         = "\u200d";
+  private static final String FAMILY      = MAN + ZWJ + WOMAN;
+  private static final String FLAG_US     = "\ud83c\uddfa\ud83c\uddf8";
+
+  private EmojiTree     tree;
+  private EmojiDrawInfo smile;
+  private EmojiDrawInfo heart;
+  private EmojiDrawInfo family;
+
+  @Before
+  public void setUp() {
+    EmojiPageBitmap page = mock(EmojiPageBitmap.class);
+
+    tree   = new EmojiTree();
+    smile  = new EmojiDrawInfo(page, 0);
+    heart  = new EmojiDrawInfo(page, 1);
+    family = new EmojiDrawInfo(page, 2);
+
+    tree.add(SMILE, smile);
+    tree.add(HEART, heart);
+    tree.add(THUMBS_UP, new EmojiDrawInfo(page, 3));
+    tree.add(MAN, new EmojiDrawInfo(page, 4));
+    tree.add(WOMAN, new EmojiDrawInfo(page, 5));
+    tree.add(FAMILY, family);
+    tree.add(FLAG_US, new EmojiDrawInfo(page, 6));
+  }
+
+  @Test
+  public void findCandidates_finds_emoji_in_text() {
+    EmojiParser.CandidateList candidates = new EmojiParser(tree).findCandidates("hi " + SMILE + " there");
+
+    assertEquals(1, candidates.size());
+    assertEquals(3, candidates.list.get(0).getStartIndex());
+    assertEquals(5, candidates.list.get(0).getEndIndex());
+    assertSame(smile, candidates.list.get(0).getDrawInfo());
+    assertFalse(candidates.allEmojis);
+  }
+
+  @Test
+  public void findCandidates_prefers_longest_match() {
+    EmojiParser.CandidateList candidates = new EmojiParser(tree).findCandidates(FAMILY);
+
+    assertEquals(1, candidates.size());
+    assertSame(family, candidates.list.get(0).getDrawInfo());
+    assertTrue(candidates.allEmojis);
+  }
+
+  @Test
+  public void findCandidates_matches_emoji_missing_variation_selector() {
+    EmojiParser.CandidateList candidates = new EmojiParser(tree).findCandidates(HEART_BARE + " " + HEART);
+
+    assertEquals(2, candidates.size());
+    assertSame(heart, candidates.list.get(0).getDrawInfo());
+    assertEquals(1, candidates.list.get(0).getEndIndex());
+    assertSame(heart, candidates.list.get(1).getDrawInfo());
+    assertEquals(4, candidates.list.get(1).getEndIndex());
+    assertTrue(candidates.allEmojis);
+  }
+
+  @Test
+  public void findCandidates_includes_skin_tone() {
+    EmojiParser.CandidateList candidates = new EmojiParser(tree).findCandidates(THUMBS_UP + SKIN_TONE);
+
+    assertEquals(1, candidates.size());
+    assertEquals(4, candidates.list.get(0).getEndIndex());
+  }
+
+  @Test
+  public void findCandidates_falls_back_to_shorter_match() {
+    EmojiParser.CandidateList candidates = new EmojiParser(tree).findCandidates(MAN + ZWJ + "x");
+
+    assertEquals(1, candidates.size());
+    assertEquals(2, candidates.list.get(0).getEndIndex());
+  }
+
+  @Test
+  public void findCandidates_matches_reference_on_corpus() {
+    String[] pieces = { SMILE, HEART, HEART_BARE, THUMBS_UP, SKIN_TONE, MAN, WOMAN, ZWJ, FAMILY, FLAG_US, "\ufe0f", "a", " ", "\ud83c", "hello" };
+    Random   random = new Random(1234);
+
+    for (int i = 0; i < 2000; i++) {
+      StringBuilder text = new StringBuilder();
+
+      for (int j = random.nextInt(12); j >= 0; j--) {
+        text.append(pieces[random.nextInt(pieces.length)]);
+      }
+
+      EmojiParser.CandidateList actual   = new EmojiParser(tree).findCandidates(text);
+      List<int[]>               expected = referenceFindCandidates(text);
+
+      assertEquals(text.toString(), expected.size(), actual.size());
+
+      for (int c = 0; c < expected.size(); c++) {
+        assertEquals(expected.get(c)[0], actual.list.get(c).getStartIndex());
+        assertEquals(expected.get(c)[1], actual.list.get(c).getEndIndex());
+      }
+    }
+  }
+
+  /**
+   * Tries every end position for every start, as the parser used to.
+   */
+  private List<int[]> referenceFindCandidates(CharSequence text) {
+    List<int[]> results = new ArrayList<>();
+
+    for (int i = 0; i < text.length(); i++) {
+      int best = -1;
+
+      for (int j = i + 1; j <= text.length(); j++) {
+        EmojiTree.Matches status = tree.isEmoji(text, i, j);
+
+        if      (status.exactMatch())      best = j;
+        else if (status.impossibleMatch()) break;
+      }
+
+      if (best != -1) {
+        if (best + 2 <= text.length() && Fitzpatrick.fitzpatrickFromUnicode(text, best) != null) {
+          best += 2;
+        }
+
+        results.add(new int[] { i, best });
+        i = best - 1;
+      }
+    }
+
+    return results;
+  }
+}
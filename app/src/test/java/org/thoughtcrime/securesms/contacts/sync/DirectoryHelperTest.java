@@ -0,0 +1,33 @@
+package org.thoughtcrime.securesms.contacts.sync;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class DirectoryHelperTest {
+
+  @Test
+  public void isSanitaryNumber_validNumbers() {
+    assertTrue(DirectoryHelper.isSanitaryNumber("+16108675309"));
+    assertTrue(DirectoryHelper.isSanitaryNumber("+1"));
+    assertTrue(DirectoryHelper.isSanitaryNumber("+9223372036854775807"));
+  }
+
+  @Test
+  public void isSanitaryNumber_invalidNumbers() {
+    assertFalse(DirectoryHelper.isSanitaryNumber(""));
+    assertFalse(DirectoryHelper.isSanitaryNumber("+"));
+    assertFalse(DirectoryHelper.isSanitaryNumber("16108675309"));
+    assertFalse(DirectoryHelper.isSanitaryNumber("+06108675309"));
+    assertFalse(DirectoryHelper.isSanitaryNumber("+1610867530a"));
+    assertFalse(DirectoryHelper.isSanitaryNumber("+-6108675309"));
+    assertFalse(DirectoryHelper.isSanitaryNumber("+1 610 867 5309"));
+  }
+
+  @Test
+  public void isSanitaryNumber_rejectsNumbersTooLargeForALong() {
+    assertFalse(DirectoryHelper.isSanitaryNumber("+9223372036854775808"));
+    assertFalse(DirectoryHelper.isSanitaryNumber("+12345678901234567890"));
+  }
+}
@@ -0,0 +1,139 @@
+package org.thoughtcrime.securesms.crypto;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.Random;
+
+import javax.crypto.Cipher;
+import javax.crypto.Mac;
+import javax.crypto.spec.IvParameterSpec;
+import javax.crypto.spec.SecretKeySpec;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+
+public final class DecryptingPartReaderTest {
+
+  private static final int PLAINTEXT_LENGTH = DecryptingPartReader.BLOCK_SIZE * 3 + 1234;
+
+  private final Random           random           = new Random(1234);
+  private final AttachmentSecret attachmentSecret = new AttachmentSecret(bytes(32), bytes(32), bytes(32));
+  private final byte[]           plaintext        = bytes(PLAINTEXT_LENGTH);
+
+  private File file;
+
+  @Before
+  public void setUp() throws IOException {
+    file = File.createTempFile("part", ".mms");
+  }
+
+  @After
+  public void tearDown() {
+    file.delete();
+  }
+
+  @Test
+  public void modern_withRandom_readsEverywhere() throws Exception {
+    byte[] keyRandom = bytes(32);
+
+    write(encryptModern(keyRandom));
+
+    try (DecryptingPartReader reader = DecryptingPartReader.createModern(attachmentSecret, file, keyRandom)) {
+      assertReadsMatch(reader);
+    }
+  }
+
+  @Test
+  public void modern_withInlineRandom_readsEverywhere() throws Exception {
+    byte[] keyRandom = bytes(32);
+
+    write(concat(keyRandom, encryptModern(keyRandom)));
+
+    try (DecryptingPartReader reader = DecryptingPartReader.createModern(attachmentSecret, file, null)) {
+      assertReadsMatch(reader);
+    }
+  }
+
+  @Test
+  public void classic_readsEverywhere_andStripsPadding() throws Exception {
+    write(encryptClassic());
+
+    try (DecryptingPartReader reader = DecryptingPartReader.createClassic(attachmentSecret, file)) {
+      assertReadsMatch(reader);
+    }
+  }
+
+  @Test(expected = IOException.class)
+  public void classic_badMac_throws() throws Exception {
+    byte[] encrypted = encryptClassic();
+    encrypted[encrypted.length - 1] ^= 1;
+
+    write(encrypted);
+
+    DecryptingPartReader.createClassic(attachmentSecret, file);
+  }
+
+  private void assertReadsMatch(DecryptingPartReader reader) throws IOException {
+    byte[] all = new byte[PLAINTEXT_LENGTH + 100];
+    assertEquals(PLAINTEXT_LENGTH, reader.readAt(0, all, 0, all.length));
+    assertArrayEquals(plaintext, Arrays.copyOf(all, PLAINTEXT_LENGTH));
+
+    for (int i = 0; i < 500; i++) {
+      int    position = random.nextInt(PLAINTEXT_LENGTH);
+      int    length   = 1 + random.nextInt(DecryptingPartReader.BLOCK_SIZE * 2);
+      byte[] buffer   = new byte[length + 7];
+      int    expected = Math.min(length, PLAINTEXT_LENGTH - position);
+
+      assertEquals(expected, reader.readAt(position, buffer, 7, length));
+      assertArrayEquals(Arrays.copyOfRange(plaintext, position, position + expected), Arrays.copyOfRange(buffer, 7, 7 + expected));
+    }
+
+    assertEquals(-1, reader.readAt(PLAINTEXT_LENGTH, new byte[10], 0, 10));
+  }
+
+  private byte[] encryptModern(byte[] keyRandom) throws Exception {
+    Mac mac = Mac.getInstance("HmacSHA256");
+    mac.init(new SecretKeySpec(attachmentSecret.getModernKey(), "HmacSHA256"));
+
+    Cipher cipher = Cipher.getInstance("AES/CTR/NoPadding");
+    cipher.init(Cipher.ENCRYPT_MODE, new SecretKeySpec(mac.doFinal(keyRandom), "AES"), new IvParameterSpec(new byte[16]));
+
+    return cipher.doFinal(plaintext);
+  }
+
+  private byte[] encryptClassic() throws Exception {
+    byte[] iv     = bytes(16);
+    Cipher cipher = Cipher.getInstance("AES/CBC/PKCS5Padding");
+    cipher.init(Cipher.ENCRYPT_MODE, new SecretKeySpec(attachmentSecret.getClassicCipherKey(), "AES"), new IvParameterSpec(iv));
+
+    byte[] data = concat(iv, cipher.doFinal(plaintext));
+    Mac    mac  = Mac.getInstance("HmacSHA1");
+    mac.init(new SecretKeySpec(attachmentSecret.getClassicMacKey(), "HmacSHA1"));
+
+    return concat(data, mac.doFinal(data));
+  }
+
+  private void write(byte[] data) throws IOException {
+    try (FileOutputStream out = new FileOutputStream(file)) {
+      out.write(data);
+    }
+  }
+
+  private byte[] bytes(int length) {
+    byte[] bytes = new byte[length];
+    random.nextBytes(bytes);
+    return bytes;
+  }
+
+  private static byte[] concat(byte[] a, byte[] b) {
+    byte[] result = Arrays.copyOf(a, a.length + b.length);
+    System.arraycopy(b, 0, result, a.length, b.length);
+    return result;
+  }
+}
@@ -0,0 +1,129 @@
+package org.thoughtcrime.securesms.crypto;
+
+import org.junit.Test;
+
+import java.util.Random;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+
+public final class DerivedKeyCacheTest {
+
+  private final Random random    = new Random(1234);
+  private final byte[] masterKey = bytes(32);
+
+  @Test
+  public void getKey_matches_hmac() {
+    DerivedKeyCache cache      = new DerivedKeyCache(4);
+    byte[]          fileRandom = bytes(32);
+
+    assertArrayEquals(DerivedKeyCache.derive(masterKey, fileRandom), cache.getKey(masterKey, fileRandom));
+    assertArrayEquals(DerivedKeyCache.derive(masterKey, fileRandom), cache.getKey(masterKey, fileRandom));
+    assertEquals(1, cache.size());
+  }
+
+  @Test
+  public void getKey_returns_a_copy() {
+    DerivedKeyCache cache      = new DerivedKeyCache(4);
+    byte[]          fileRandom = bytes(32);
+    byte[]          key        = cache.getKey(masterKey, fileRandom);
+
+    key[0] ^= 1;
+
+    assertArrayEquals(DerivedKeyCache.derive(masterKey, fileRandom), cache.getKey(masterKey, fileRandom));
+  }
+
+  @Test
+  public void getKey_does_not_share_entries_between_master_keys() {
+    DerivedKeyCache cache          = new DerivedKeyCache(4);
+    byte[]          fileRandom     = bytes(32);
+    byte[]          otherMasterKey = bytes(32);
+
+    cache.getKey(masterKey, fileRandom);
+
+    assertArrayEquals(DerivedKeyCache.derive(otherMasterKey, fileRandom), cache.getKey(otherMasterKey, fileRandom));
+  }
+
+  @Test
+  public void getKey_with_new_master_key_zeroes_keys_from_the_old_one() {
+    DerivedKeyCache cache          = new DerivedKeyCache(4);
+    byte[]          fileRandom     = bytes(32);
+    byte[]          otherRandom    = bytes(32);
+    byte[]          otherMasterKey = bytes(32);
+
+    cache.getKey(masterKey, fileRandom);
+
+    byte[] old = cache.peek(fileRandom);
+
+    cache.getKey(otherMasterKey, otherRandom);
+
+    assertEquals(1, cache.size());
+    assertNull(cache.peek(fileRandom));
+    assertArrayEquals(new byte[32], old);
+    assertArrayEquals(DerivedKeyCache.derive(masterKey, fileRandom), cache.getKey(masterKey, fileRandom));
+  }
+
+  @Test
+  public void put_is_used_by_getKey() {
+    DerivedKeyCache cache      = new DerivedKeyCache(4);
+    byte[]          fileRandom = bytes(32);
+    byte[]          key        = bytes(32);
+
+    cache.put(masterKey, fileRandom, key);
+
+    assertArrayEquals(key, cache.getKey(masterKey, fileRandom));
+  }
+
+  @Test
+  public void eviction_zeroes_least_recently_used_key() {
+    DerivedKeyCache cache  = new DerivedKeyCache(2);
+    byte[]          first  = bytes(32);
+    byte[]          second = bytes(32);
+
+    cache.getKey(masterKey, first);
+    cache.getKey(masterKey, second);
+    cache.getKey(masterKey, first);
+
+    byte[] evicted = cache.peek(second);
+
+    cache.getKey(masterKey, bytes(32));
+
+    assertEquals(2, cache.size());
+    assertNull(cache.peek(second));
+    assertNotNull(cache.peek(first));
+    assertArrayEquals(new byte[32], evicted);
+  }
+
+  @Test
+  public void clear_zeroes_all_keys() {
+    DerivedKeyCache cache      = new DerivedKeyCache(4);
+    byte[]          fileRandom = bytes(32);
+
+    cache.getKey(masterKey, fileRandom);
+
+    byte[] cached = cache.peek(fileRandom);
+
+    assertFalse(isZero(cached));
+
+    cache.clear();
+
+    assertEquals(0, cache.size());
+    assertArrayEquals(new byte[32], cached);
+  }
+
+  private static boolean isZero(byte[] bytes) {
+    for (byte b : bytes) {
+      if (b != 0) return false;
+    }
+    return true;
+  }
+
+  private byte[] bytes(int length) {
+    byte[] bytes = new byte[length];
+    random.nextBytes(bytes);
+    return bytes;
+  }
+}
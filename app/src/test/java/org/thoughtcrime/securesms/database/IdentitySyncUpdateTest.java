@@ -0,0 +1,93 @@
+package org.thoughtcrime.securesms.database;
+
+import org.junit.Test;
+import org.thoughtcrime.securesms.database.IdentityDatabase.IdentityRecord;
+import org.thoughtcrime.securesms.database.IdentityDatabase.VerifiedStatus;
+import org.whispersystems.libsignal.IdentityKey;
+import org.whispersystems.libsignal.util.guava.Optional;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+public final class IdentitySyncUpdateTest {
+
+  private final IdentityKey key      = mock(IdentityKey.class);
+  private final IdentityKey otherKey = mock(IdentityKey.class);
+
+  @Test
+  public void compare_no_existing_identity_is_saved_as_first_use() {
+    IdentitySyncUpdate update = IdentitySyncUpdate.compare(Optional.absent(), key, VerifiedStatus.DEFAULT);
+
+    assertTrue(update.needsSave());
+    assertTrue(update.isFirstUse());
+    assertFalse(update.isKeyChange());
+  }
+
+  @Test
+  public void compare_same_key_and_status_is_not_saved() {
+    IdentitySyncUpdate update = IdentitySyncUpdate.compare(record(key, VerifiedStatus.VERIFIED), key, VerifiedStatus.VERIFIED);
+
+    assertFalse(update.needsSave());
+    assertFalse(update.isKeyChange());
+  }
+
+  @Test
+  public void compare_same_key_new_status_is_saved_without_key_change() {
+    IdentitySyncUpdate update = IdentitySyncUpdate.compare(record(key, VerifiedStatus.DEFAULT), key, VerifiedStatus.VERIFIED);
+
+    assertTrue(update.needsSave());
+    assertFalse(update.isFirstUse());
+    assertFalse(update.isKeyChange());
+  }
+
+  @Test
+  public void compare_new_key_is_saved_as_key_change() {
+    IdentitySyncUpdate update = IdentitySyncUpdate.compare(record(otherKey, VerifiedStatus.DEFAULT), key, VerifiedStatus.DEFAULT);
+
+    assertTrue(update.needsSave());
+    assertFalse(update.isFirstUse());
+    assertTrue(update.isKeyChange());
+  }
+
+  @Test
+  public void compare_matches_queried_comparison() {
+    IdentitySyncUpdate bulk    = IdentitySyncUpdate.compare(record(otherKey, VerifiedStatus.VERIFIED), key, VerifiedStatus.VERIFIED);
+    IdentitySyncUpdate queried = new IdentitySyncUpdate(true, false, true);
+
+    assertEquals(queried.needsSave(), bulk.needsSave());
+    assertEquals(queried.isFirstUse(), bulk.isFirstUse());
+    assertEquals(queried.isKeyChange(), bulk.isKeyChange());
+  }
+
+  @Test
+  public void getVerifiedChange_becomes_verified() {
+    assertEquals(Boolean.TRUE, IdentitySyncUpdate.getVerifiedChange(record(key, VerifiedStatus.DEFAULT), Optional.of(VerifiedStatus.VERIFIED)));
+    assertEquals(Boolean.TRUE, IdentitySyncUpdate.getVerifiedChange(Optional.absent(), Optional.of(VerifiedStatus.VERIFIED)));
+  }
+
+  @Test
+  public void getVerifiedChange_no_longer_verified() {
+    assertEquals(Boolean.FALSE, IdentitySyncUpdate.getVerifiedChange(record(key, VerifiedStatus.VERIFIED), Optional.of(VerifiedStatus.UNVERIFIED)));
+  }
+
+  @Test
+  public void getVerifiedChange_unchanged() {
+    assertNull(IdentitySyncUpdate.getVerifiedChange(record(key, VerifiedStatus.VERIFIED), Optional.of(VerifiedStatus.VERIFIED)));
+    assertNull(IdentitySyncUpdate.getVerifiedChange(record(key, VerifiedStatus.DEFAULT), Optional.of(VerifiedStatus.UNVERIFIED)));
+    assertNull(IdentitySyncUpdate.getVerifiedChange(Optional.absent(), Optional.of(VerifiedStatus.DEFAULT)));
+    assertNull(IdentitySyncUpdate.getVerifiedChange(record(key, VerifiedStatus.VERIFIED), Optional.absent()));
+  }
+
+  private static Optional<IdentityRecord> record(IdentityKey identityKey, VerifiedStatus verifiedStatus) {
+    IdentityRecord record = mock(IdentityRecord.class);
+
+    when(record.getIdentityKey()).thenReturn(identityKey);
+    when(record.getVerifiedStatus()).thenReturn(verifiedStatus);
+
+    return Optional.of(record);
+  }
+}
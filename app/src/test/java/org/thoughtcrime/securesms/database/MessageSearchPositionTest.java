@@ -0,0 +1,106 @@
+package org.thoughtcrime.securesms.database;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+
+public final class MessageSearchPositionTest {
+
+  /** In page order: newest first, MMS before SMS at the same date, then highest id first. */
+  private static final List<Message> MESSAGES = Arrays.asList(new Message(300, true,  7),
+                                                              new Message(300, true,  2),
+                                                              new Message(300, false, 9),
+                                                              new Message(200, false, 8),
+                                                              new Message(200, false, 3),
+                                                              new Message(100, true,  5),
+                                                              new Message(100, false, 6),
+                                                              new Message(100, false, 1));
+
+  @Test
+  public void start_includes_everything() {
+    assertEquals(MESSAGES, after(MessageSearchPosition.START));
+  }
+
+  @Test
+  public void after_mms_includes_older_mms_and_all_sms_at_same_date() {
+    assertEquals(MESSAGES.subList(1, MESSAGES.size()), after(MESSAGES.get(0).position()));
+    assertEquals(MESSAGES.subList(2, MESSAGES.size()), after(MESSAGES.get(1).position()));
+    assertEquals(MESSAGES.subList(6, MESSAGES.size()), after(MESSAGES.get(5).position()));
+  }
+
+  @Test
+  public void after_sms_excludes_mms_at_same_date() {
+    assertEquals(MESSAGES.subList(3, MESSAGES.size()), after(MESSAGES.get(2).position()));
+    assertEquals(MESSAGES.subList(7, MESSAGES.size()), after(MESSAGES.get(6).position()));
+  }
+
+  @Test
+  public void after_last_includes_nothing() {
+    assertEquals(0, after(MESSAGES.get(MESSAGES.size() - 1).position()).size());
+  }
+
+  @Test
+  public void paging_visits_each_message_once_in_order() {
+    for (int pageSize = 1; pageSize <= MESSAGES.size(); pageSize++) {
+      List<Message>         visited  = new ArrayList<>();
+      MessageSearchPosition position = MessageSearchPosition.START;
+
+      while (true) {
+        List<Message> remaining = after(position);
+        List<Message> page      = remaining.subList(0, Math.min(pageSize, remaining.size()));
+
+        visited.addAll(page);
+
+        if (page.size() < pageSize) {
+          break;
+        }
+
+        position = page.get(page.size() - 1).position();
+      }
+
+      assertEquals("Page size " + pageSize, MESSAGES, visited);
+    }
+  }
+
+  /**
+   * Applies the same condition the query applies to each table.
+   */
+  private static List<Message> after(MessageSearchPosition position) {
+    List<Message> after = new ArrayList<>();
+
+    for (Message message : MESSAGES) {
+      long idBound = message.isMms ? position.getMmsIdBound() : position.getSmsIdBound();
+
+      if (message.date < position.getDateReceived() || (message.date == position.getDateReceived() && message.id < idBound)) {
+        after.add(message);
+      }
+    }
+
+    return after;
+  }
+
+  private static final class Message {
+    private final long    date;
+    private final boolean isMms;
+    private final long    id;
+
+    private Message(long date, boolean isMms, long id) {
+      this.date  = date;
+      this.isMms = isMms;
+      this.id    = id;
+    }
+
+    MessageSearchPosition position() {
+      return MessageSearchPosition.after(date, id, isMms);
+    }
+
+    @Override
+    public String toString() {
+      return date + (isMms ? " mms " : " sms ") + id;
+    }
+  }
+}
@@ -0,0 +1,84 @@
+package org.thoughtcrime.securesms.database;
+
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.Collections;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+public final class RecipientSearchQueryTest {
+
+  private static final String[] NAME           = new String[] { "name" };
+  private static final String[] NAME_AND_EMAIL = new String[] { "name", "email" };
+
+  @Test
+  public void build_single_word_is_a_prefix_match() {
+    assertEquals("(name : \"jo\"*)", RecipientSearchQuery.build("jo", NAME, null));
+  }
+
+  @Test
+  public void build_every_word_has_to_match_in_the_same_column() {
+    assertEquals("(name : \"john\"* AND name : \"sm\"*) OR (email : \"john\"* AND email : \"sm\"*)",
+                 RecipientSearchQuery.build("john sm", NAME_AND_EMAIL, null));
+  }
+
+  @Test
+  public void build_splits_on_punctuation_like_the_tokenizer() {
+    assertEquals("(email : \"alice\"* AND email : \"exam\"*)",
+                 RecipientSearchQuery.build("alice@exam", new String[] { "email" }, null));
+  }
+
+  @Test
+  public void build_matches_formatted_numbers_against_phone_digits() {
+    assertEquals("(name : \"555\"* AND name : \"12\"*) OR (phone : \"55512\"*)",
+                 RecipientSearchQuery.build("(555) 12", NAME, "phone"));
+  }
+
+  @Test
+  public void build_leading_plus_is_ignored_for_phone() {
+    assertEquals("(name : \"1555\"*) OR (phone : \"1555\"*)", RecipientSearchQuery.build("+1555", NAME, "phone"));
+  }
+
+  @Test
+  public void build_queries_with_letters_skip_phone() {
+    assertEquals("(name : \"john\"* AND name : \"5\"*)", RecipientSearchQuery.build("john 5", NAME, "phone"));
+  }
+
+  @Test
+  public void build_without_phone_column_skips_phone() {
+    assertEquals("(name : \"555\"*)", RecipientSearchQuery.build("555", NAME, null));
+  }
+
+  @Test
+  public void build_keeps_non_latin_words() {
+    assertEquals("(name : \"Мария\"*)", RecipientSearchQuery.build("Мария", NAME, "phone"));
+  }
+
+  @Test
+  public void build_nothing_indexable_returns_null() {
+    assertNull(RecipientSearchQuery.build("", NAME, "phone"));
+    assertNull(RecipientSearchQuery.build("  ", NAME, "phone"));
+    assertNull(RecipientSearchQuery.build("\"*-)", NAME, "phone"));
+    assertNull(RecipientSearchQuery.build("😀", NAME, "phone"));
+  }
+
+  @Test
+  public void getPhoneDigits_strips_formatting() {
+    assertEquals("15551234", RecipientSearchQuery.getPhoneDigits("+1 (555) 12-34"));
+  }
+
+  @Test
+  public void getPhoneDigits_is_null_for_anything_but_numbers() {
+    assertNull(RecipientSearchQuery.getPhoneDigits("john 5"));
+    assertNull(RecipientSearchQuery.getPhoneDigits("+-()"));
+    assertNull(RecipientSearchQuery.getPhoneDigits(""));
+  }
+
+  @Test
+  public void getWords_splits_on_anything_but_letters_and_digits() {
+    assertEquals(Arrays.asList("o", "brien", "2"), RecipientSearchQuery.getWords("o'brien #2"));
+    assertEquals(Collections.emptyList(), RecipientSearchQuery.getWords("..."));
+  }
+}
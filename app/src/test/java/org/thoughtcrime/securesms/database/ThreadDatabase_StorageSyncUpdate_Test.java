@@ -0,0 +1,47 @@
+package org.thoughtcrime.securesms.database;
+
+import org.junit.Test;
+import org.thoughtcrime.securesms.database.ThreadDatabase.ReadStatus;
+import org.thoughtcrime.securesms.database.ThreadDatabase.StorageSyncUpdate;
+import org.thoughtcrime.securesms.recipients.RecipientId;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.Assert.assertEquals;
+
+public final class ThreadDatabase_StorageSyncUpdate_Test {
+
+  @Test
+  public void getThreadsToCount_skips_recipients_without_threads_and_forced_unread() {
+    List<StorageSyncUpdate> updates = Arrays.asList(new StorageSyncUpdate(RecipientId.from(1), false, false),
+                                                    new StorageSyncUpdate(RecipientId.from(2), true, false),
+                                                    new StorageSyncUpdate(RecipientId.from(3), false, true),
+                                                    new StorageSyncUpdate(RecipientId.from(4), false, false));
+
+    Map<RecipientId, Long> threadIds = new HashMap<>();
+    threadIds.put(RecipientId.from(1), 10L);
+    threadIds.put(RecipientId.from(2), 20L);
+    threadIds.put(RecipientId.from(3), 30L);
+
+    assertEquals(new HashSet<>(Arrays.asList(10L, 20L)), StorageSyncUpdate.getThreadsToCount(updates, threadIds));
+  }
+
+  @Test
+  public void getThreadsToCount_no_threads() {
+    List<StorageSyncUpdate> updates = Collections.singletonList(new StorageSyncUpdate(RecipientId.from(1), false, false));
+
+    assertEquals(Collections.emptySet(), StorageSyncUpdate.getThreadsToCount(updates, Collections.emptyMap()));
+  }
+
+  @Test
+  public void getReadStatus() {
+    assertEquals(ReadStatus.READ, new StorageSyncUpdate(RecipientId.from(1), false, false).getReadStatus(0));
+    assertEquals(ReadStatus.UNREAD, new StorageSyncUpdate(RecipientId.from(1), false, false).getReadStatus(3));
+    assertEquals(ReadStatus.FORCED_UNREAD, new StorageSyncUpdate(RecipientId.from(1), false, true).getReadStatus(0));
+  }
+}
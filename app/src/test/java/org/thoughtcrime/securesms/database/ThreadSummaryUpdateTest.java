@@ -0,0 +1,79 @@
+package org.thoughtcrime.securesms.database;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.thoughtcrime.securesms.database.ThreadSummaryUpdate.Action.DECREMENT_COUNT;
+import static org.thoughtcrime.securesms.database.ThreadSummaryUpdate.Action.FULL_UPDATE;
+import static org.thoughtcrime.securesms.database.ThreadSummaryUpdate.Action.INCREMENT_COUNT;
+import static org.thoughtcrime.securesms.database.ThreadSummaryUpdate.Action.INCREMENT_COUNT_AND_REPLACE_SNIPPET;
+import static org.thoughtcrime.securesms.database.ThreadSummaryUpdate.Action.NONE;
+
+public final class ThreadSummaryUpdateTest {
+
+  @Test
+  public void insert_newest_message_replaces_snippet() {
+    assertEquals(INCREMENT_COUNT_AND_REPLACE_SNIPPET, ThreadSummaryUpdate.forInsert(1000, true, false, false));
+  }
+
+  @Test
+  public void insert_silent_message_keeps_snippet() {
+    assertEquals(INCREMENT_COUNT, ThreadSummaryUpdate.forInsert(1000, true, false, true));
+  }
+
+  @Test
+  public void insert_out_of_order_message_keeps_newer_snippet() {
+    assertEquals(INCREMENT_COUNT, ThreadSummaryUpdate.forInsert(1000, true, true, false));
+  }
+
+  @Test
+  public void insert_out_of_order_silent_message_keeps_newer_snippet() {
+    assertEquals(INCREMENT_COUNT, ThreadSummaryUpdate.forInsert(1000, true, true, true));
+  }
+
+  @Test
+  public void insert_that_does_not_change_count_by_one_recounts() {
+    assertEquals(FULL_UPDATE, ThreadSummaryUpdate.forInsert(1000, false, false, false));
+    assertEquals(FULL_UPDATE, ThreadSummaryUpdate.forInsert(1000, false, true, false));
+  }
+
+  @Test
+  public void insert_without_received_date_recounts() {
+    assertEquals(FULL_UPDATE, ThreadSummaryUpdate.forInsert(-1, true, false, false));
+  }
+
+  @Test
+  public void delete_older_message_decrements_count() {
+    assertEquals(DECREMENT_COUNT, ThreadSummaryUpdate.forDelete(1000, true, true));
+  }
+
+  @Test
+  public void delete_possible_snippet_recounts() {
+    assertEquals(FULL_UPDATE, ThreadSummaryUpdate.forDelete(1000, true, false));
+  }
+
+  @Test
+  public void delete_that_does_not_change_count_by_one_recounts() {
+    assertEquals(FULL_UPDATE, ThreadSummaryUpdate.forDelete(1000, false, true));
+  }
+
+  @Test
+  public void delete_without_received_date_recounts() {
+    assertEquals(FULL_UPDATE, ThreadSummaryUpdate.forDelete(-1, true, true));
+  }
+
+  @Test
+  public void change_to_older_message_keeps_summary() {
+    assertEquals(NONE, ThreadSummaryUpdate.forChange(1000, true));
+  }
+
+  @Test
+  public void change_to_possible_snippet_recounts() {
+    assertEquals(FULL_UPDATE, ThreadSummaryUpdate.forChange(1000, false));
+  }
+
+  @Test
+  public void change_without_received_date_recounts() {
+    assertEquals(FULL_UPDATE, ThreadSummaryUpdate.forChange(-1, true));
+  }
+}
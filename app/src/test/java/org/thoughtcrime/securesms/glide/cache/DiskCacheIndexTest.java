@@ -0,0 +1,140 @@
+package org.thoughtcrime.securesms.glide.cache;
+
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public final class DiskCacheIndexTest {
+
+  @Test
+  public void get_counts_hits_and_misses() {
+    DiskCacheIndex index = new DiskCacheIndex(1000);
+
+    index.put("a", 100);
+
+    assertTrue(index.get("a"));
+    assertTrue(index.get("a"));
+    assertFalse(index.get("b"));
+
+    DiskCacheIndex.Metrics metrics = index.getMetrics();
+
+    assertEquals(2, metrics.getHits());
+    assertEquals(1, metrics.getMisses());
+    assertEquals(200, metrics.getBytesHit());
+    assertEquals(100, metrics.getBytesWritten());
+    assertEquals(2 / 3d, metrics.getHitRate(), 0.001);
+  }
+
+  @Test
+  public void removeMissing_turns_hit_into_miss() {
+    DiskCacheIndex index = new DiskCacheIndex(1000);
+
+    index.put("a", 100);
+
+    assertTrue(index.get("a"));
+    index.removeMissing("a");
+
+    DiskCacheIndex.Metrics metrics = index.getMetrics();
+
+    assertFalse(index.contains("a"));
+    assertEquals(0, index.getSize());
+    assertEquals(0, metrics.getHits());
+    assertEquals(1, metrics.getMisses());
+    assertEquals(0, metrics.getBytesHit());
+  }
+
+  @Test
+  public void put_evicts_least_recently_used_of_equal_size() {
+    DiskCacheIndex index = new DiskCacheIndex(300);
+
+    index.put("a", 100);
+    index.put("b", 100);
+    index.put("c", 100);
+    index.get("a");
+
+    assertEquals(Collections.singletonList("b"), index.put("d", 100));
+    assertEquals(300, index.getSize());
+    assertTrue(index.contains("a"));
+    assertFalse(index.contains("b"));
+  }
+
+  @Test
+  public void put_evicts_large_entries_before_small_ones() {
+    DiskCacheIndex index = new DiskCacheIndex(10_000);
+
+    index.put("large", 6_000);
+    index.put("small1", 1_000);
+    index.put("small2", 1_000);
+
+    assertEquals(Collections.singletonList("large"), index.put("small3", 3_000));
+    assertEquals(5_000, index.getSize());
+  }
+
+  @Test
+  public void put_ages_out_entries_that_are_not_used() {
+    DiskCacheIndex index = new DiskCacheIndex(2_000);
+
+    index.put("small", 100);
+
+    for (int i = 0; i < 50; i++) {
+      index.put("large" + i, 1_000);
+    }
+
+    assertFalse(index.contains("small"));
+  }
+
+  @Test
+  public void put_keeps_entry_larger_than_cache() {
+    DiskCacheIndex index = new DiskCacheIndex(100);
+
+    index.put("a", 50);
+
+    assertEquals(Collections.singletonList("a"), index.put("b", 500));
+    assertTrue(index.contains("b"));
+    assertEquals(500, index.getSize());
+  }
+
+  @Test
+  public void put_replaces_existing_entry() {
+    DiskCacheIndex index = new DiskCacheIndex(1000);
+
+    index.put("a", 100);
+    index.put("a", 300);
+
+    assertEquals(300, index.getSize());
+    assertEquals(1, index.getMetrics().getEntryCount());
+  }
+
+  @Test
+  public void load_evicts_oldest_entries_first() {
+    DiskCacheIndex index   = new DiskCacheIndex(250);
+    List<String>   evicted = index.load(Arrays.asList("old", "middle", "new"), Arrays.asList(100L, 100L, 100L));
+
+    assertEquals(Collections.singletonList("old"), evicted);
+    assertTrue(index.contains("middle"));
+    assertTrue(index.contains("new"));
+  }
+
+  @Test
+  public void remove_and_clear_release_size() {
+    DiskCacheIndex index = new DiskCacheIndex(1000);
+
+    index.put("a", 100);
+    index.put("b", 200);
+
+    assertTrue(index.remove("a"));
+    assertFalse(index.remove("a"));
+    assertEquals(200, index.getSize());
+
+    index.clear();
+
+    assertEquals(0, index.getSize());
+    assertFalse(index.contains("b"));
+  }
+}
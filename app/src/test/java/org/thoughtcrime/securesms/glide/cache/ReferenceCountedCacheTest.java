@@ -0,0 +1,98 @@
+package org.thoughtcrime.securesms.glide.cache;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+public final class ReferenceCountedCacheTest {
+
+  @Test
+  public void acquire_shares_value_for_same_key() {
+    ReferenceCountedCache<String, Object> cache = new ReferenceCountedCache<>(1000);
+
+    Object first  = cache.acquire("a", 100, Object::new);
+    Object second = cache.acquire("a", 100, Object::new);
+
+    assertSame(first, second);
+    assertEquals(2, cache.getReferenceCount("a"));
+    assertEquals(100, cache.getSize());
+  }
+
+  @Test
+  public void acquire_creates_value_per_key() {
+    ReferenceCountedCache<String, Object> cache = new ReferenceCountedCache<>(1000);
+
+    assertNotSame(cache.acquire("a", 100, Object::new), cache.acquire("b", 100, Object::new));
+    assertEquals(200, cache.getSize());
+  }
+
+  @Test
+  public void release_reports_last_reference() {
+    ReferenceCountedCache<String, Object> cache = new ReferenceCountedCache<>(1000);
+
+    cache.acquire("a", 100, Object::new);
+    cache.acquire("a", 100, Object::new);
+
+    assertFalse(cache.release("a"));
+    assertTrue(cache.release("a"));
+    assertEquals(0, cache.getReferenceCount("a"));
+  }
+
+  @Test
+  public void idle_value_is_reused_while_within_budget() {
+    ReferenceCountedCache<String, Object> cache = new ReferenceCountedCache<>(1000);
+
+    Object value = cache.acquire("a", 100, Object::new);
+    cache.release("a");
+
+    assertSame(value, cache.acquire("a", 100, Object::new));
+  }
+
+  @Test
+  public void over_budget_evicts_longest_idle_first() {
+    ReferenceCountedCache<String, Object> cache = new ReferenceCountedCache<>(300);
+
+    cache.acquire("a", 100, Object::new);
+    cache.acquire("b", 100, Object::new);
+    cache.acquire("c", 100, Object::new);
+    cache.release("b");
+    cache.release("a");
+
+    cache.acquire("d", 100, Object::new);
+
+    assertNull(cache.get("b"));
+    assertEquals(300, cache.getSize());
+
+    cache.acquire("e", 100, Object::new);
+
+    assertNull(cache.get("a"));
+    assertEquals(300, cache.getSize());
+  }
+
+  @Test
+  public void referenced_values_are_never_evicted() {
+    ReferenceCountedCache<String, Object> cache = new ReferenceCountedCache<>(100);
+
+    Object a = cache.acquire("a", 100, Object::new);
+    Object b = cache.acquire("b", 100, Object::new);
+
+    assertSame(a, cache.get("a"));
+    assertSame(b, cache.get("b"));
+    assertEquals(200, cache.getSize());
+
+    cache.release("a");
+
+    assertNull(cache.get("a"));
+    assertEquals(100, cache.getSize());
+  }
+
+  @Test(expected = IllegalStateException.class)
+  public void release_without_reference_throws() {
+    new ReferenceCountedCache<String, Object>(100).release("a");
+  }
+}
@@ -0,0 +1,203 @@
+package org.thoughtcrime.securesms.groups.v2.processing;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.signal.storageservice.protos.groups.local.DecryptedGroup;
+import org.signal.storageservice.protos.groups.local.DecryptedGroupChange;
+import org.signal.storageservice.protos.groups.local.DecryptedString;
+import org.thoughtcrime.securesms.logging.Log;
+import org.thoughtcrime.securesms.testutil.LogRecorder;
+import org.whispersystems.signalservice.api.util.UuidUtil;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Queue;
+import java.util.UUID;
+
+import static java.util.Arrays.asList;
+import static java.util.Collections.emptyList;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.fail;
+import static org.thoughtcrime.securesms.groups.v2.processing.GroupStateMapper.LATEST;
+
+public final class GroupHistoryApplierTest {
+
+  private static final UUID KNOWN_EDITOR = UUID.randomUUID();
+
+  private FakePageSource       pageSource;
+  private List<Integer>        writtenRevisions;
+  private List<DecryptedGroup> committed;
+  private GroupHistoryApplier  applier;
+
+  @Before
+  public void setup() {
+    Log.initialize(new LogRecorder());
+
+    pageSource       = new FakePageSource();
+    writtenRevisions = new ArrayList<>();
+    committed        = new ArrayList<>();
+    applier          = new GroupHistoryApplier(pageSource,
+                                               (input, newLocalState, entries, timestamp, placeholder) -> {
+                                                 writtenRevisions.add(newLocalState.getRevision());
+                                                 return timestamp + entries.size();
+                                               },
+                                               (initialState, currentState) -> {
+                                                 committed.add(initialState);
+                                                 committed.add(currentState);
+                                               });
+  }
+
+  @Test
+  public void single_page() throws IOException {
+    DecryptedGroup local = state(0);
+
+    GroupHistoryApplier.Result result = applier.apply(HistoryPage.last(page(local, 1, 2)), LATEST, 0, false);
+
+    assertEquals(2, result.getNewState().getRevision());
+    assertEquals(GroupHistoryApplier.NO_REMAINING_REVISION, result.getRemainingRevision());
+    assertEquals(asList(2), writtenRevisions);
+    assertEquals(emptyList(), pageSource.requestedRevisions);
+    assertCommitted(local, 2);
+  }
+
+  @Test
+  public void multiple_pages_are_each_written_once() throws IOException {
+    DecryptedGroup local = state(0);
+
+    pageSource.pages.add(new HistoryPage(page(null, 3, 4), 5));
+    pageSource.pages.add(HistoryPage.last(page(null, 5, 6)));
+
+    GroupHistoryApplier.Result result = applier.apply(new HistoryPage(page(local, 1, 2), 3), LATEST, 0, false);
+
+    assertEquals(6, result.getNewState().getRevision());
+    assertEquals(GroupHistoryApplier.NO_REMAINING_REVISION, result.getRemainingRevision());
+    assertEquals(asList(2, 4, 6), writtenRevisions);
+    assertEquals(asList(3, 5), pageSource.requestedRevisions);
+    assertCommitted(local, 6);
+  }
+
+  @Test
+  public void failure_mid_way_keeps_and_follows_up_on_committed_pages() {
+    DecryptedGroup local = state(0);
+
+    pageSource.pages.add(new HistoryPage(page(null, 3, 4), 5));
+
+    try {
+      applier.apply(new HistoryPage(page(local, 1, 2), 3), LATEST, 0, false);
+      fail();
+    } catch (IOException e) {
+      // Expected
+    }
+
+    assertEquals(asList(2, 4), writtenRevisions);
+    assertEquals(asList(3, 5), pageSource.requestedRevisions);
+    assertCommitted(local, 4);
+  }
+
+  @Test
+  public void failure_on_second_page_follows_up_on_first() {
+    DecryptedGroup local = state(0);
+
+    try {
+      applier.apply(new HistoryPage(page(local, 1, 2), 3), LATEST, 0, false);
+      fail();
+    } catch (IOException e) {
+      // Expected
+    }
+
+    assertEquals(asList(2), writtenRevisions);
+    assertCommitted(local, 2);
+  }
+
+  @Test
+  public void stops_at_requested_revision_without_fetching_more() throws IOException {
+    DecryptedGroup local = state(0);
+
+    GroupHistoryApplier.Result result = applier.apply(new HistoryPage(page(local, 1, 2, 3), 4), 2, 0, false);
+
+    assertEquals(2, result.getNewState().getRevision());
+    assertEquals(LATEST, result.getRemainingRevision());
+    assertEquals(asList(2), writtenRevisions);
+    assertEquals(emptyList(), pageSource.requestedRevisions);
+    assertCommitted(local, 2);
+  }
+
+  @Test
+  public void stops_at_requested_revision_on_last_page() throws IOException {
+    GroupHistoryApplier.Result result = applier.apply(HistoryPage.last(page(state(0), 1, 2, 3)), 2, 0, false);
+
+    assertEquals(2, result.getNewState().getRevision());
+    assertEquals(3, result.getRemainingRevision());
+  }
+
+  @Test
+  public void nothing_to_apply() throws IOException {
+    GroupHistoryApplier.Result result = applier.apply(HistoryPage.last(page(state(2))), LATEST, 0, false);
+
+    assertNull(result.getNewState());
+    assertEquals(emptyList(), writtenRevisions);
+    assertEquals(emptyList(), committed);
+  }
+
+  private void assertCommitted(@NonNull DecryptedGroup initialState, int revision) {
+    assertEquals(2, committed.size());
+    assertSame(initialState, committed.get(0));
+    assertEquals(revision, committed.get(1).getRevision());
+  }
+
+  private static @NonNull GlobalGroupState page(@Nullable DecryptedGroup localState, int... revisions) {
+    List<ServerGroupLogEntry> entries = new ArrayList<>(revisions.length);
+
+    for (int revision : revisions) {
+      entries.add(new ServerGroupLogEntry(state(revision), change(revision)));
+    }
+
+    return new GlobalGroupState(localState, entries);
+  }
+
+  private static DecryptedGroup state(int revision) {
+    return DecryptedGroup.newBuilder()
+                         .setRevision(revision)
+                         .setTitle("Group Revision " + revision)
+                         .build();
+  }
+
+  private static DecryptedGroupChange change(int revision) {
+    return DecryptedGroupChange.newBuilder()
+                               .setRevision(revision)
+                               .setEditor(UuidUtil.toByteString(KNOWN_EDITOR))
+                               .setNewTitle(DecryptedString.newBuilder().setValue("Group Revision " + revision))
+                               .build();
+  }
+
+  /**
+   * Serves the queued pages in order, then fails like a dropped connection would.
+   */
+  private static final class FakePageSource implements GroupHistoryApplier.PageSource {
+
+    private final Queue<HistoryPage> pages              = new LinkedList<>();
+    private final List<Integer>      requestedRevisions = new ArrayList<>();
+
+    @Override
+    public @NonNull HistoryPage getPage(int fromRevision, @Nullable DecryptedGroup localState) throws IOException {
+      requestedRevisions.add(fromRevision);
+
+      HistoryPage page = pages.poll();
+
+      if (page == null) {
+        throw new IOException("Connection dropped");
+      }
+
+      GlobalGroupState groupState = new GlobalGroupState(localState, new ArrayList<>(page.getGroupState().getServerHistory()));
+
+      return page.hasMore() ? new HistoryPage(groupState, page.getNextPageRevision()) : HistoryPage.last(groupState);
+    }
+  }
+}
@@ -0,0 +1,158 @@
+package org.thoughtcrime.securesms.keyvalue;
+
+import androidx.annotation.NonNull;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+public final class KeyValueStoreTest {
+
+  private ExecutorService executor;
+  private FakeStorage     storage;
+  private KeyValueStore   store;
+
+  @Before
+  public void setUp() {
+    executor = Executors.newSingleThreadExecutor();
+    storage  = new FakeStorage();
+    store    = new KeyValueStore(executor, storage);
+  }
+
+  @After
+  public void tearDown() {
+    executor.shutdownNow();
+  }
+
+  @Test
+  public void reads_load_from_storage_once() {
+    storage.initial.putLong("a", 1);
+
+    assertEquals(1, store.getLong("a", 0));
+    assertEquals(1, store.getLong("a", 0));
+    assertEquals(1, storage.loads);
+  }
+
+  @Test
+  public void writes_are_visible_immediately() {
+    store.beginWrite().putString("a", "x").putBoolean("b", true).apply();
+
+    assertEquals("x", store.getString("a", null));
+    assertTrue(store.getBoolean("b", false));
+  }
+
+  @Test
+  public void beginRead_is_a_stable_snapshot() {
+    store.beginWrite().putInteger("a", 1).apply();
+
+    KeyValueReader reader = store.beginRead();
+
+    store.beginWrite().putInteger("a", 2).remove("missing").apply();
+
+    assertEquals(1, reader.getInteger("a", 0));
+    assertEquals(2, store.getInteger("a", 0));
+  }
+
+  @Test
+  public void beginRead_does_not_copy_without_writes() {
+    assertSame(store.beginRead(), store.beginRead());
+  }
+
+  @Test
+  public void writes_made_while_busy_are_coalesced() throws InterruptedException {
+    CountDownLatch blocker = new CountDownLatch(1);
+
+    executor.execute(() -> {
+      try {
+        blocker.await();
+      } catch (InterruptedException e) {
+        throw new AssertionError(e);
+      }
+    });
+
+    store.beginWrite().putLong("a", 1).apply();
+    store.beginWrite().putLong("a", 2).putLong("b", 3).apply();
+    store.beginWrite().remove("b").apply();
+    store.beginWrite().putLong("c", 4).apply();
+
+    blocker.countDown();
+    store.blockUntilAllWritesFinished();
+
+    assertEquals(1, storage.writes.size());
+    assertEquals(2L, storage.writes.get(0).getLong("a", 0));
+    assertEquals(4L, storage.writes.get(0).getLong("c", 0));
+    assertFalse(storage.writes.get(0).containsKey("b"));
+    assertEquals(Collections.singleton("b"), storage.removes.get(0));
+  }
+
+  @Test
+  public void put_after_remove_is_not_removed() {
+    CountDownLatch blocker = new CountDownLatch(1);
+
+    executor.execute(() -> {
+      try {
+        blocker.await();
+      } catch (InterruptedException e) {
+        throw new AssertionError(e);
+      }
+    });
+
+    store.beginWrite().remove("a").apply();
+    store.beginWrite().putLong("a", 5).apply();
+
+    blocker.countDown();
+    store.blockUntilAllWritesFinished();
+
+    assertEquals(5L, storage.writes.get(0).getLong("a", 0));
+    assertTrue(storage.removes.get(0).isEmpty());
+    assertEquals(5L, store.getLong("a", 0));
+  }
+
+  @Test
+  public void writes_after_a_flush_are_written_separately() {
+    store.beginWrite().putLong("a", 1).commit();
+    store.beginWrite().putLong("a", 2).commit();
+
+    assertEquals(2, storage.writes.size());
+    assertEquals(2L, storage.writes.get(1).getLong("a", 0));
+  }
+
+  private static final class FakeStorage implements KeyValuePersistentStorage {
+
+    private final KeyValueDataSet       initial = new KeyValueDataSet();
+    private final List<KeyValueDataSet> writes  = new ArrayList<>();
+    private final List<Set<String>>     removes = new ArrayList<>();
+
+    private int loads;
+
+    @Override
+    public synchronized void writeDataSet(@NonNull KeyValueDataSet dataSet, @NonNull Collection<String> removes) {
+      this.writes.add(dataSet);
+      this.removes.add(new HashSet<>(removes));
+    }
+
+    @Override
+    public synchronized @NonNull KeyValueDataSet getDataSet() {
+      loads++;
+
+      KeyValueDataSet copy = new KeyValueDataSet();
+      copy.putAll(initial);
+      return copy;
+    }
+  }
+}
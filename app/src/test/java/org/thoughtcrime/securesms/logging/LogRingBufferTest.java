@@ -0,0 +1,100 @@
+package org.thoughtcrime.securesms.logging;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public final class LogRingBufferTest {
+
+  @Test(expected = IllegalArgumentException.class)
+  public void constructor_nonPowerOfTwo() {
+    new LogRingBuffer(100);
+  }
+
+  @Test
+  public void offer_fullBuffer_rejects() {
+    LogRingBuffer buffer = new LogRingBuffer(4);
+
+    for (int i = 0; i < 4; i++) {
+      assertTrue(buffer.offer("V", "Tag", "message " + i, null, i));
+    }
+
+    assertFalse(buffer.offer("V", "Tag", "overflow", null, 4));
+  }
+
+  @Test
+  public void drain_preservesOrderAndFreesSlots() {
+    LogRingBuffer buffer   = new LogRingBuffer(4);
+    List<String>  messages = new ArrayList<>();
+
+    for (int round = 0; round < 3; round++) {
+      for (int i = 0; i < 4; i++) {
+        assertTrue(buffer.offer("V", "Tag", round + ":" + i, null, i));
+      }
+
+      assertEquals(4, buffer.drain(entry -> messages.add(entry.message), 10));
+      assertTrue(buffer.isEmpty());
+    }
+
+    assertEquals(12, messages.size());
+    assertEquals("0:0", messages.get(0));
+    assertEquals("2:3", messages.get(11));
+  }
+
+  @Test
+  public void drain_respectsMaxEntries() {
+    LogRingBuffer buffer = new LogRingBuffer(8);
+
+    for (int i = 0; i < 5; i++) {
+      buffer.offer("V", "Tag", "message", null, i);
+    }
+
+    assertEquals(2, buffer.drain(entry -> {}, 2));
+    assertEquals(3, buffer.drain(entry -> {}, 10));
+  }
+
+  @Test
+  public void drain_multipleProducers_perProducerOrderPreserved() throws InterruptedException {
+    final int producers = 4;
+    final int perThread = 20_000;
+
+    LogRingBuffer buffer  = new LogRingBuffer(64);
+    long[]        next    = new long[producers];
+    Thread[]      threads = new Thread[producers];
+
+    for (int p = 0; p < producers; p++) {
+      String tag = String.valueOf(p);
+
+      threads[p] = new Thread(() -> {
+        for (int i = 0; i < perThread; i++) {
+          while (!buffer.offer("V", tag, null, null, i)) {
+            Thread.yield();
+          }
+        }
+      });
+      threads[p].start();
+    }
+
+    int total = 0;
+    while (total < producers * perThread) {
+      total += buffer.drain(entry -> {
+        int producer = Integer.parseInt(entry.tag);
+        assertEquals(next[producer], entry.timestamp);
+        next[producer]++;
+      }, 100);
+    }
+
+    for (Thread thread : threads) {
+      thread.join();
+    }
+
+    for (long count : next) {
+      assertEquals(perThread, count);
+    }
+  }
+}
@@ -0,0 +1,56 @@
+package org.thoughtcrime.securesms.logging;
+
+import org.junit.Test;
+
+import java.text.SimpleDateFormat;
+import java.util.Date;
+import java.util.Locale;
+import java.util.Random;
+import java.util.TimeZone;
+
+import static org.junit.Assert.assertEquals;
+
+public final class LogTimestampFormatterTest {
+
+  @Test
+  public void format_matchesSimpleDateFormat_acrossDstTransitions() {
+    assertMatches(TimeZone.getTimeZone("America/Los_Angeles"), 1583661600000L);
+  }
+
+  @Test
+  public void format_matchesSimpleDateFormat_halfHourOffset() {
+    assertMatches(TimeZone.getTimeZone("Asia/Kolkata"), 1600000000000L);
+  }
+
+  @Test
+  public void format_handlesClockGoingBackwards() {
+    TimeZone              timeZone  = TimeZone.getTimeZone("UTC");
+    LogTimestampFormatter formatter = new LogTimestampFormatter(timeZone);
+
+    assertEquals(format(timeZone, 1600000000000L), format(formatter, 1600000000000L));
+    assertEquals(format(timeZone, 1500000000000L), format(formatter, 1500000000000L));
+  }
+
+  private static void assertMatches(TimeZone timeZone, long start) {
+    LogTimestampFormatter formatter = new LogTimestampFormatter(timeZone);
+    Random                random    = new Random(42);
+    long                  timestamp = start - 12 * 60 * 60 * 1000;
+
+    for (int i = 0; i < 10_000; i++) {
+      timestamp += random.nextInt(10_000);
+      assertEquals(format(timeZone, timestamp), format(formatter, timestamp));
+    }
+  }
+
+  private static String format(LogTimestampFormatter formatter, long timestamp) {
+    StringBuilder builder = new StringBuilder();
+    formatter.format(timestamp, builder);
+    return builder.toString();
+  }
+
+  private static String format(TimeZone timeZone, long timestamp) {
+    SimpleDateFormat format = new SimpleDateFormat("yyyy-MM-dd HH:mm:ss.SSS zzz", Locale.US);
+    format.setTimeZone(timeZone);
+    return format.format(new Date(timestamp));
+  }
+}
@@ -0,0 +1,199 @@
+package org.thoughtcrime.securesms.notifications;
+
+import android.content.Context;
+
+import androidx.annotation.NonNull;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public final class NotificationStateCacheTest {
+
+  private FakeSource             source;
+  private NotificationStateCache cache;
+
+  @Before
+  public void setUp() {
+    source = new FakeSource();
+    cache  = new NotificationStateCache(source);
+  }
+
+  @Test
+  public void getSnapshot_first_use_loads_everything() {
+    source.put(item(1, 10, 100), item(2, 20, 200));
+
+    assertEquals(Arrays.asList(1L, 2L), getIds(cache.getSnapshot(null)));
+    assertEquals(1, source.fullReads);
+    assertEquals(0, source.threadReads.size());
+  }
+
+  @Test
+  public void getSnapshot_without_changes_is_served_from_cache() {
+    source.put(item(1, 10, 100));
+
+    cache.getSnapshot(null);
+    source.put(item(1, 10, 100), item(2, 10, 200));
+
+    assertEquals(Collections.singletonList(1L), getIds(cache.getSnapshot(null)));
+    assertEquals(1, source.fullReads);
+    assertEquals(0, source.threadReads.size());
+  }
+
+  @Test
+  public void invalidateThread_reloads_only_that_thread() {
+    source.put(item(1, 10, 100), item(2, 20, 200));
+    cache.getSnapshot(null);
+
+    source.put(item(1, 10, 100), item(2, 20, 200), item(3, 20, 300), item(4, 30, 400));
+    cache.invalidateThread(20);
+
+    assertEquals(Arrays.asList(1L, 2L, 3L), getIds(cache.getSnapshot(null)));
+    assertEquals(1, source.fullReads);
+    assertEquals(Collections.singletonList(20L), source.threadReads);
+  }
+
+  @Test
+  public void invalidateThread_removes_threads_without_unread_items() {
+    source.put(item(1, 10, 100), item(2, 20, 200));
+    cache.getSnapshot(null);
+
+    source.put(item(2, 20, 200));
+    cache.invalidateThread(10);
+
+    NotificationStateCache.Snapshot snapshot = cache.getSnapshot(null);
+
+    assertEquals(Collections.singletonList(2L), getIds(snapshot));
+    assertTrue(snapshot.hasUnread());
+
+    source.put();
+    cache.invalidateThread(20);
+
+    assertFalse(cache.getSnapshot(null).hasUnread());
+  }
+
+  @Test
+  public void getSnapshot_orders_items_by_received_time_across_threads() {
+    source.put(item(1, 10, 100), item(2, 20, 200));
+    cache.getSnapshot(null);
+
+    source.put(item(1, 10, 100), item(2, 20, 200), item(3, 10, 300));
+    cache.invalidateThread(10);
+
+    NotificationState state = cache.getSnapshot(null).getState();
+
+    assertEquals(Arrays.asList(3L, 2L, 1L), getIds(state.getNotifications()));
+  }
+
+  @Test
+  public void invalidateAll_reloads_everything() {
+    source.put(item(1, 10, 100));
+    cache.getSnapshot(null);
+
+    source.put(item(2, 20, 200));
+    cache.invalidateAll();
+
+    assertEquals(Collections.singletonList(2L), getIds(cache.getSnapshot(null)));
+    assertEquals(2, source.fullReads);
+  }
+
+  @Test
+  public void lock_state_change_reloads_everything() {
+    source.put(item(1, 10, 100));
+    cache.getSnapshot(null);
+
+    source.locked = true;
+    cache.getSnapshot(null);
+
+    assertEquals(2, source.fullReads);
+  }
+
+  @Test
+  public void markNotified_updates_cached_items() {
+    source.put(item(1, 10, 100), item(2, 20, 200));
+
+    List<NotificationItem> items = cache.getSnapshot(null).getState().getNotifications();
+    cache.markNotified(Collections.singletonList(items.get(0)), 500);
+
+    Map<Long, Long> notified = new HashMap<>();
+    for (NotificationItem item : cache.getSnapshot(null).getState().getNotifications()) {
+      notified.put(item.getId(), item.getNotifiedTimestamp());
+    }
+
+    assertEquals(Long.valueOf(500), notified.get(items.get(0).getId()));
+    assertEquals(Long.valueOf(0), notified.get(items.get(1).getId()));
+  }
+
+  private static @NonNull List<Long> getIds(@NonNull NotificationStateCache.Snapshot snapshot) {
+    List<Long> ids = getIds(snapshot.getState().getNotifications());
+    Collections.sort(ids);
+    return ids;
+  }
+
+  private static @NonNull List<Long> getIds(@NonNull List<NotificationItem> items) {
+    List<Long> ids = new ArrayList<>(items.size());
+
+    for (NotificationItem item : items) {
+      ids.add(item.getId());
+    }
+
+    return ids;
+  }
+
+  private static @NonNull NotificationItem item(long id, long threadId, long timestamp) {
+    return new NotificationItem(id, false, null, null, null, threadId, "message " + id, timestamp, timestamp, null, false, false, true, 0);
+  }
+
+  private static final class FakeSource implements NotificationStateCache.Source {
+
+    private final List<Long> threadReads = new LinkedList<>();
+
+    private List<NotificationItem> items = Collections.emptyList();
+    private boolean                locked;
+    private int                    fullReads;
+
+    void put(NotificationItem... items) {
+      this.items = Arrays.asList(items);
+    }
+
+    @Override
+    public boolean isLocked(@NonNull Context context) {
+      return locked;
+    }
+
+    @Override
+    public @NonNull List<NotificationStateCache.Entry> readAll(@NonNull Context context) {
+      fullReads++;
+      return read(-1);
+    }
+
+    @Override
+    public @NonNull List<NotificationStateCache.Entry> readThread(@NonNull Context context, long threadId) {
+      threadReads.add(threadId);
+      return read(threadId);
+    }
+
+    private @NonNull List<NotificationStateCache.Entry> read(long threadId) {
+      List<NotificationStateCache.Entry> entries = new ArrayList<>();
+
+      for (NotificationItem item : items) {
+        if (threadId == -1 || item.getThreadId() == threadId) {
+          entries.add(new NotificationStateCache.Entry(item, false, false));
+        }
+      }
+
+      return entries;
+    }
+  }
+}
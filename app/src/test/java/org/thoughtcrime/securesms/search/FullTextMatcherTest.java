@@ -0,0 +1,74 @@
+package org.thoughtcrime.securesms.search;
+
+import org.junit.Test;
+
+import java.util.Arrays;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+public final class FullTextMatcherTest {
+
+  @Test
+  public void tokenize_splitsOnNonAlphanumerics_andFoldsCaseAndDiacritics() {
+    assertEquals(Arrays.asList("hello", "jose", "it", "s", "42"), FullTextMatcher.tokenize("Hello, José! It's 42."));
+  }
+
+  @Test
+  public void forQuery_returnsNull_whenQueryHasNoTokens() {
+    assertNull(FullTextMatcher.forQuery(""));
+    assertNull(FullTextMatcher.forQuery("   "));
+    assertNull(FullTextMatcher.forQuery("hello 😀"));
+  }
+
+  @Test
+  public void matches_wordPrefix() {
+    FullTextMatcher matcher = FullTextMatcher.forQuery("hel");
+
+    assertTrue(matcher.matches("Oh, hello there"));
+    assertFalse(matcher.matches("Oh, shell there"));
+    assertFalse(matcher.matches(null));
+  }
+
+  @Test
+  public void matches_requiresEveryWord() {
+    FullTextMatcher matcher = FullTextMatcher.forQuery("hello th");
+
+    assertTrue(matcher.matches("there, hello"));
+    assertFalse(matcher.matches("hello world"));
+  }
+
+  @Test
+  public void matches_wordWithSeveralTokensAsPhrase() {
+    FullTextMatcher matcher = FullTextMatcher.forQuery("hello¿wor");
+
+    assertTrue(matcher.matches("hello world"));
+    assertFalse(matcher.matches("world hello"));
+    assertFalse(matcher.matches("hello big world"));
+  }
+
+  @Test
+  public void matches_ignoresCaseAndDiacritics() {
+    assertTrue(FullTextMatcher.forQuery("JOSE").matches("josé"));
+    assertTrue(FullTextMatcher.forQuery("josé").matches("JOSE"));
+  }
+
+  @Test
+  public void indexIn_returnsOffsetOfEarliestMatch() {
+    FullTextMatcher matcher = FullTextMatcher.forQuery("wor hel");
+
+    assertEquals(4, matcher.indexIn("Oh, hello world"));
+    assertEquals(10, matcher.indexIn("Something world"));
+    assertEquals(-1, matcher.indexIn("Nothing here"));
+    assertEquals(-1, matcher.indexIn(null));
+  }
+
+  @Test
+  public void indexIn_countsOffsetsInOriginalText() {
+    FullTextMatcher matcher = FullTextMatcher.forQuery("cafe");
+
+    assertEquals(10, matcher.indexIn("Ce\u0301lu\u0301 au Café"));
+  }
+}
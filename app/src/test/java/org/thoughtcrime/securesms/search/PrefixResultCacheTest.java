@@ -0,0 +1,140 @@
+package org.thoughtcrime.securesms.search;
+
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+public final class PrefixResultCacheTest {
+
+  private static final PrefixResultCache.Filter<String> CONTAINS_FILTER = query -> value -> value.contains(query);
+
+  @Test
+  public void get_returnsExactMatch_evenIfIncomplete() {
+    PrefixResultCache<String> cache = new PrefixResultCache<>(5);
+
+    cache.put("ab", Arrays.asList("abc", "abd"), false);
+
+    assertEquals(Arrays.asList("abc", "abd"), cache.get("ab", null));
+  }
+
+  @Test
+  public void get_returnsNull_whenNothingCached() {
+    PrefixResultCache<String> cache = new PrefixResultCache<>(5);
+
+    assertNull(cache.get("ab", CONTAINS_FILTER));
+  }
+
+  @Test
+  public void get_returnsEmpty_whenCompletePrefixIsEmpty() {
+    PrefixResultCache<String> cache = new PrefixResultCache<>(5);
+
+    cache.put("ab", Collections.emptyList(), true);
+
+    assertEquals(Collections.emptyList(), cache.get("abc", null));
+  }
+
+  @Test
+  public void get_filtersCompletePrefix() {
+    PrefixResultCache<String> cache = new PrefixResultCache<>(5);
+
+    cache.put("ab", Arrays.asList("abc", "abd", "xab"), true);
+
+    assertEquals(Collections.singletonList("abc"), cache.get("abc", CONTAINS_FILTER));
+  }
+
+  @Test
+  public void get_returnsNull_whenPrefixNotComplete() {
+    PrefixResultCache<String> cache = new PrefixResultCache<>(5);
+
+    cache.put("ab", Collections.emptyList(), false);
+
+    assertNull(cache.get("abc", CONTAINS_FILTER));
+  }
+
+  @Test
+  public void get_returnsNull_whenNoFilter() {
+    PrefixResultCache<String> cache = new PrefixResultCache<>(5);
+
+    cache.put("ab", Arrays.asList("abc", "abd"), true);
+
+    assertNull(cache.get("abc", null));
+  }
+
+  @Test
+  public void get_returnsNull_whenFilterCannotEvaluateQuery() {
+    PrefixResultCache<String> cache = new PrefixResultCache<>(5);
+
+    cache.put("ab", Arrays.asList("abc", "abd"), true);
+
+    assertNull(cache.get("abc", query -> null));
+  }
+
+  @Test
+  public void get_ignoresPrefixWithoutLetterOrDigit() {
+    PrefixResultCache<String> cache = new PrefixResultCache<>(5);
+
+    cache.put("!", Collections.emptyList(), true);
+
+    assertNull(cache.get("!a", CONTAINS_FILTER));
+  }
+
+  @Test
+  public void get_usesLongestCompletePrefix() {
+    PrefixResultCache<String> cache = new PrefixResultCache<>(5);
+
+    cache.put("a", Arrays.asList("abc", "abd", "acd"), true);
+    cache.put("ab", Collections.singletonList("abd"), true);
+
+    assertEquals(Collections.singletonList("abd"), cache.get("abd", CONTAINS_FILTER));
+  }
+
+  @Test
+  public void get_cachesFilteredResults() {
+    PrefixResultCache<String> cache = new PrefixResultCache<>(5);
+    int[]                     calls = new int[1];
+
+    cache.put("ab", Arrays.asList("abc", "abd"), true);
+
+    PrefixResultCache.Filter<String> countingFilter = query -> {
+      calls[0]++;
+      return value -> value.contains(query);
+    };
+
+    List<String> first  = cache.get("abc", countingFilter);
+    List<String> second = cache.get("abc", countingFilter);
+
+    assertEquals(Collections.singletonList("abc"), first);
+    assertEquals(first, second);
+    assertEquals(1, calls[0]);
+  }
+
+  @Test
+  public void put_evictsLeastRecentlyUsed() {
+    PrefixResultCache<String> cache = new PrefixResultCache<>(2);
+
+    cache.put("a", Collections.singletonList("a"), false);
+    cache.put("b", Collections.singletonList("b"), false);
+    cache.get("a", null);
+    cache.put("c", Collections.singletonList("c"), false);
+
+    assertEquals(Collections.singletonList("a"), cache.get("a", null));
+    assertNull(cache.get("b", null));
+    assertEquals(Collections.singletonList("c"), cache.get("c", null));
+  }
+
+  @Test
+  public void clear_removesAllEntries() {
+    PrefixResultCache<String> cache = new PrefixResultCache<>(5);
+
+    cache.put("ab", Collections.emptyList(), true);
+    cache.clear();
+
+    assertNull(cache.get("ab", null));
+    assertNull(cache.get("abc", null));
+  }
+}
@@ -26,6 +26,7 @@ import org.whispersystems.signalservice.api.storage.SignalStorageRecord;
 import org.whispersystems.signalservice.api.storage.StorageId;
 import org.whispersystems.signalservice.api.util.UuidUtil;
 
+import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.HashMap;
 import java.util.HashSet;
@@ -106,6 +107,23 @@ public final class StorageSyncHelperTest {
     assertFalse(result.hasTypeMismatches());
   }
 
+  @Test
+  public void findKeyDifference_largeManifest() {
+    List<StorageId> remote = new ArrayList<>(50_000);
+    List<StorageId> local  = new ArrayList<>(50_000);
+
+    for (int i = 0; i < 50_000; i++) {
+      remote.add(StorageId.forContact(byteArray(i, 16)));
+      local.add(StorageId.forContact(byteArray(i + 1_000, 16)));
+    }
+
+    KeyDifferenceResult result = StorageSyncHelper.findKeyDifference(remote, local);
+
+    assertContentsEqual(remote.subList(0, 1_000), result.getRemoteOnlyKeys());
+    assertContentsEqual(local.subList(49_000, 50_000), result.getLocalOnlyKeys());
+    assertFalse(result.hasTypeMismatches());
+  }
+
   @Test
   public void findKeyDifference_typeMismatch_allOverlap() {
     KeyDifferenceResult result = StorageSyncHelper.findKeyDifference(keyListOf(new HashMap<Integer, Integer>() {{
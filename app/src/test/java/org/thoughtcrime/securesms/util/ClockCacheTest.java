@@ -0,0 +1,161 @@
+package org.thoughtcrime.securesms.util;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicReference;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+public final class ClockCacheTest {
+
+  @Test
+  public void get_returnsPutValue() {
+    ClockCache<String, Integer> cache = new ClockCache<>(3);
+
+    cache.put("a", 1);
+
+    assertEquals(Integer.valueOf(1), cache.get("a"));
+    assertNull(cache.get("b"));
+  }
+
+  @Test
+  public void put_replacesExistingValue() {
+    ClockCache<String, Integer> cache = new ClockCache<>(3);
+
+    cache.put("a", 1);
+    cache.put("a", 2);
+
+    assertEquals(Integer.valueOf(2), cache.get("a"));
+    assertEquals(1, cache.size());
+  }
+
+  @Test
+  public void putIfAbsent_keepsExistingValue() {
+    ClockCache<String, Integer> cache = new ClockCache<>(3);
+
+    assertNull(cache.putIfAbsent("a", 1));
+    assertEquals(Integer.valueOf(1), cache.putIfAbsent("a", 2));
+    assertEquals(Integer.valueOf(1), cache.get("a"));
+  }
+
+  @Test
+  public void put_evictsOldestUnreferencedEntry_whenFull() {
+    ClockCache<String, Integer> cache = new ClockCache<>(3);
+
+    cache.put("a", 1);
+    cache.put("b", 2);
+    cache.put("c", 3);
+    cache.put("d", 4);
+
+    assertNull(cache.get("a"));
+    assertEquals(Integer.valueOf(2), cache.get("b"));
+    assertEquals(Integer.valueOf(3), cache.get("c"));
+    assertEquals(Integer.valueOf(4), cache.get("d"));
+    assertEquals(3, cache.size());
+  }
+
+  @Test
+  public void put_givesReferencedEntriesASecondChance() {
+    ClockCache<String, Integer> cache = new ClockCache<>(3);
+
+    cache.put("a", 1);
+    cache.put("b", 2);
+    cache.put("c", 3);
+
+    cache.get("a");
+
+    cache.put("d", 4);
+
+    assertEquals(Integer.valueOf(1), cache.get("a"));
+    assertNull(cache.get("b"));
+  }
+
+  @Test
+  public void remove_freesSlotWithoutEvicting() {
+    ClockCache<String, Integer> cache = new ClockCache<>(3);
+
+    cache.put("a", 1);
+    cache.put("b", 2);
+    cache.put("c", 3);
+
+    assertEquals(Integer.valueOf(2), cache.remove("b"));
+
+    cache.put("d", 4);
+
+    assertEquals(Integer.valueOf(1), cache.get("a"));
+    assertNull(cache.get("b"));
+    assertEquals(Integer.valueOf(3), cache.get("c"));
+    assertEquals(Integer.valueOf(4), cache.get("d"));
+  }
+
+  @Test
+  public void clear_removesAllEntries() {
+    ClockCache<String, Integer> cache = new ClockCache<>(3);
+
+    cache.put("a", 1);
+    cache.put("b", 2);
+    cache.clear();
+
+    assertEquals(0, cache.size());
+    assertNull(cache.get("a"));
+
+    cache.put("c", 3);
+    cache.put("d", 4);
+    cache.put("e", 5);
+
+    assertEquals(3, cache.size());
+  }
+
+  @Test
+  public void concurrentAccess_neverExceedsMaxSize() throws InterruptedException {
+    int                         maxSize = 64;
+    ClockCache<Integer, String> cache   = new ClockCache<>(maxSize);
+    CountDownLatch              start   = new CountDownLatch(1);
+    AtomicReference<Throwable>  error   = new AtomicReference<>();
+    List<Thread>                threads = new ArrayList<>();
+
+    for (int t = 0; t < 8; t++) {
+      final int seed = t;
+
+      Thread thread = new Thread(() -> {
+        try {
+          start.await();
+
+          for (int i = 0; i < 20_000; i++) {
+            int    key   = (i * 31 + seed) % (maxSize * 2);
+            String value = cache.get(key);
+
+            if (value == null) {
+              cache.putIfAbsent(key, String.valueOf(key));
+            } else if (!value.equals(String.valueOf(key))) {
+              throw new AssertionError("Wrong value for " + key + ": " + value);
+            }
+
+            if (i % 100 == 0) {
+              cache.remove(key);
+            }
+          }
+        } catch (Throwable e) {
+          error.compareAndSet(null, e);
+        }
+      });
+
+      threads.add(thread);
+      thread.start();
+    }
+
+    start.countDown();
+
+    for (Thread thread : threads) {
+      thread.join();
+    }
+
+    assertNull(error.get());
+    assertTrue(cache.size() <= maxSize);
+  }
+}
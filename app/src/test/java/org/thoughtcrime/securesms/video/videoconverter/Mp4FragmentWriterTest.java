@@ -0,0 +1,384 @@
+package org.thoughtcrime.securesms.video.videoconverter;
+
+import org.junit.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+public final class Mp4FragmentWriterTest {
+
+  private static final byte[] SPS = { 0x67, 0x42, (byte) 0xC0, 0x1F, 1, 2, 3 };
+  private static final byte[] PPS = { 0x68, (byte) 0xCE, 0x3C, (byte) 0x80 };
+  private static final byte[] ASC = { 0x12, 0x10 };
+
+  private static final long VIDEO_FRAME_US = 33_333;
+
+  @Test
+  public void header_describes_both_tracks() throws IOException {
+    ByteArrayOutputStream out    = new ByteArrayOutputStream();
+    Mp4FragmentWriter     writer = newWriter(out, null, null);
+
+    writer.start();
+
+    ByteBuffer file = ByteBuffer.wrap(out.toByteArray());
+
+    assertEquals("ftyp", boxType(file, 0));
+
+    int moov = boxSize(file, 0);
+    assertEquals("moov", boxType(file, moov));
+    assertEquals(out.size(), moov + boxSize(file, moov));
+
+    List<Integer> traks = children(file, moov, "trak");
+    assertEquals(2, traks.size());
+
+    int avcC = find(file, moov, "avcC");
+    assertEquals(1, file.get(avcC + 8));
+    assertEquals(0x42, file.get(avcC + 9));
+    assertEquals(0xE1, file.get(avcC + 13) & 0xFF);
+    assertEquals(SPS.length, file.getShort(avcC + 14));
+
+    int mvex = find(file, moov, "mvex");
+    assertEquals(2, children(file, mvex, "trex").size());
+    assertEquals(1, children(file, mvex, "mehd").size());
+
+    assertTrue(find(file, moov, "esds") > 0);
+  }
+
+  @Test
+  public void fragments_start_at_key_frames_and_hold_every_sample() throws IOException {
+    ByteArrayOutputStream out     = new ByteArrayOutputStream();
+    Mp4FragmentWriter     writer  = newWriter(out, null, null);
+    List<Sample>          samples = samples(10_000_000);
+
+    writer.start();
+    write(writer, samples, samples.size());
+    writer.finish();
+
+    assertEquals(out.size(), writer.getLength());
+
+    List<Fragment> fragments = parseFragments(ByteBuffer.wrap(out.toByteArray()));
+
+    assertTrue(fragments.size() >= 9);
+
+    int  videoSamples     = 0;
+    int  audioSamples     = 0;
+    long nextVideoDecode  = 0;
+
+    for (int i = 0; i < fragments.size(); i++) {
+      Fragment fragment = fragments.get(i);
+
+      assertEquals(i + 1, fragment.sequenceNumber);
+      assertTrue(fragment.video.syncs.get(0));
+      assertEquals(nextVideoDecode, fragment.video.decodeTime);
+
+      for (int duration : fragment.video.durations) {
+        assertTrue(Math.abs(duration - 3000) <= 1);
+        nextVideoDecode += duration;
+      }
+
+      videoSamples += fragment.video.durations.size();
+      audioSamples += fragment.audio.durations.size();
+    }
+
+    assertEquals(count(samples, 0), videoSamples);
+    assertEquals(count(samples, 1), audioSamples);
+  }
+
+  @Test
+  public void fragment_data_matches_samples() throws IOException {
+    ByteArrayOutputStream out     = new ByteArrayOutputStream();
+    Mp4FragmentWriter     writer  = newWriter(out, null, null);
+    List<Sample>          samples = samples(3_000_000);
+
+    writer.start();
+    write(writer, samples, samples.size());
+    writer.finish();
+
+    byte[]         file      = out.toByteArray();
+    List<Fragment> fragments = parseFragments(ByteBuffer.wrap(file));
+    List<byte[]>   video     = new ArrayList<>();
+
+    for (Fragment fragment : fragments) {
+      int offset = fragment.moofOffset + fragment.video.dataOffset;
+
+      for (int size : fragment.video.sizes) {
+        video.add(Arrays.copyOfRange(file, offset, offset + size));
+        offset += size;
+      }
+    }
+
+    List<byte[]> expected = new ArrayList<>();
+
+    for (Sample sample : samples) {
+      if (sample.track == 0) expected.add(sample.data);
+    }
+
+    assertEquals(expected.size(), video.size());
+
+    for (int i = 0; i < expected.size(); i++) {
+      assertArrayEquals(expected.get(i), video.get(i));
+    }
+  }
+
+  @Test
+  public void resuming_from_a_checkpoint_reproduces_the_same_file() throws IOException {
+    List<Sample>                       samples     = samples(8_000_000);
+    ByteArrayOutputStream              complete    = new ByteArrayOutputStream();
+    List<Mp4FragmentWriter.Checkpoint> checkpoints = new ArrayList<>();
+    Mp4FragmentWriter                  writer      = newWriter(complete, checkpoints::add, null);
+
+    writer.start();
+    write(writer, samples, samples.size());
+    writer.finish();
+
+    assertTrue(checkpoints.size() >= 5);
+
+    Mp4FragmentWriter.Checkpoint checkpoint = Mp4FragmentWriter.Checkpoint.deserialize(checkpoints.get(3).serialize());
+
+    ByteArrayOutputStream resumed = new ByteArrayOutputStream();
+    resumed.write(complete.toByteArray(), 0, (int) checkpoint.getLength());
+
+    Mp4FragmentWriter resumedWriter = newWriter(resumed, null, checkpoint);
+
+    resumedWriter.start();
+
+    for (Sample sample : samples) {
+      if (sample.timeUs >= checkpoint.getResumeTimeUs() - 100_000) {
+        resumedWriter.writeSample(sample.track, sample.data, 0, sample.data.length, sample.timeUs, sample.sync);
+      }
+    }
+
+    resumedWriter.finish();
+
+    assertArrayEquals(complete.toByteArray(), resumed.toByteArray());
+    assertEquals(complete.size(), resumedWriter.getLength());
+  }
+
+  @Test
+  public void resuming_with_different_tracks_fails() throws IOException {
+    ByteArrayOutputStream              out         = new ByteArrayOutputStream();
+    List<Mp4FragmentWriter.Checkpoint> checkpoints = new ArrayList<>();
+    Mp4FragmentWriter                  writer      = newWriter(out, checkpoints::add, null);
+    List<Sample>                       samples     = samples(3_000_000);
+
+    writer.start();
+    write(writer, samples, samples.size());
+
+    Mp4FragmentWriter resumedWriter = new Mp4FragmentWriter(new ByteArrayOutputStream(), 10_000_000, null, checkpoints.get(0));
+    resumedWriter.addVideoTrack(1280, 720, Collections.singletonList(SPS), Collections.singletonList(PPS));
+
+    try {
+      resumedWriter.start();
+      fail();
+    } catch (IOException e) {
+      // expected
+    }
+  }
+
+  @Test
+  public void large_fragments_are_split() throws IOException {
+    ByteArrayOutputStream out    = new ByteArrayOutputStream();
+    Mp4FragmentWriter     writer = new Mp4FragmentWriter(out, 0, null, null);
+    byte[]                frame  = new byte[Mp4FragmentWriter.MAX_FRAGMENT_BYTES / 10 + 1];
+
+    writer.addVideoTrack(1280, 720, Collections.singletonList(SPS), Collections.singletonList(PPS));
+    writer.start();
+
+    for (int i = 0; i < 30; i++) {
+      writer.writeSample(0, frame, 0, frame.length, i * VIDEO_FRAME_US, i == 0);
+    }
+
+    writer.finish();
+
+    List<Fragment> fragments = parseFragments(ByteBuffer.wrap(out.toByteArray()));
+
+    assertEquals(4, fragments.size());
+
+    for (Fragment fragment : fragments) {
+      assertTrue(fragment.video.sizes.size() <= 9);
+    }
+  }
+
+  private static Mp4FragmentWriter newWriter(ByteArrayOutputStream out, Mp4FragmentWriter.Listener listener, Mp4FragmentWriter.Checkpoint resumeFrom) {
+    Mp4FragmentWriter writer = new Mp4FragmentWriter(out, 10_000_000, listener, resumeFrom);
+
+    writer.addVideoTrack(1280, 720, Collections.singletonList(SPS), Collections.singletonList(PPS));
+    writer.addAudioTrack(44100, 2, 128000, ASC);
+
+    return writer;
+  }
+
+  /**
+   * 30fps video with a key frame every second, and 44.1kHz AAC, interleaved by time starting a
+   * little after zero as they do from the encoders.
+   */
+  private static List<Sample> samples(long durationUs) {
+    List<Sample> samples    = new ArrayList<>();
+    long         videoTime  = 0;
+    long         audioTime  = 0;
+    int          videoFrame = 0;
+    int          audioFrame = 0;
+    long         startUs    = 1234;
+
+    while (videoTime < durationUs || audioTime < durationUs) {
+      if (videoTime <= audioTime && videoTime < durationUs) {
+        byte[] data = new byte[100 + (videoFrame % 30 == 0 ? 900 : videoFrame % 17)];
+        Arrays.fill(data, (byte) videoFrame);
+        samples.add(new Sample(0, data, startUs + videoTime, videoFrame % 30 == 0));
+        videoFrame++;
+        videoTime = videoFrame * VIDEO_FRAME_US;
+      } else {
+        byte[] data = new byte[200 + audioFrame % 13];
+        Arrays.fill(data, (byte) audioFrame);
+        samples.add(new Sample(1, data, startUs + audioTime, false));
+        audioFrame++;
+        audioTime = audioFrame * 1024 * 1_000_000L / 44100;
+      }
+    }
+
+    return samples;
+  }
+
+  private static void write(Mp4FragmentWriter writer, List<Sample> samples, int count) throws IOException {
+    for (int i = 0; i < count; i++) {
+      Sample sample = samples.get(i);
+      writer.writeSample(sample.track, sample.data, 0, sample.data.length, sample.timeUs, sample.sync);
+    }
+  }
+
+  private static int count(List<Sample> samples, int track) {
+    int count = 0;
+    for (Sample sample : samples) {
+      if (sample.track == track) count++;
+    }
+    return count;
+  }
+
+  private static List<Fragment> parseFragments(ByteBuffer file) {
+    List<Fragment> fragments = new ArrayList<>();
+    int            position  = 0;
+
+    while (position < file.limit()) {
+      String type = boxType(file, position);
+
+      if (type.equals("moof")) {
+        Fragment fragment = new Fragment();
+        fragment.moofOffset     = position;
+        fragment.sequenceNumber = file.getInt(find(file, position, "mfhd") + 12);
+
+        for (int traf : children(file, position, "traf")) {
+          int  tfhd    = find(file, traf, "tfhd");
+          int  tfdt    = find(file, traf, "tfdt");
+          int  trun    = find(file, traf, "trun");
+          int  trackId = file.getInt(tfhd + 12);
+          Run  run     = trackId == 1 ? fragment.video : fragment.audio;
+          int  count   = file.getInt(trun + 12);
+
+          run.decodeTime = file.getLong(tfdt + 12);
+          run.dataOffset = file.getInt(trun + 16);
+
+          for (int s = 0; s < count; s++) {
+            int entry = trun + 20 + s * 12;
+            run.durations.add(file.getInt(entry));
+            run.sizes.add(file.getInt(entry + 4));
+            run.syncs.add(file.getInt(entry + 8) == 0x02000000);
+          }
+        }
+
+        fragments.add(fragment);
+      } else if (type.equals("mdat")) {
+        Fragment fragment = fragments.get(fragments.size() - 1);
+        int      total    = 0;
+
+        for (int size : fragment.video.sizes) total += size;
+        for (int size : fragment.audio.sizes) total += size;
+
+        assertEquals(total + 8, boxSize(file, position));
+      }
+
+      position += boxSize(file, position);
+    }
+
+    assertEquals(file.limit(), position);
+
+    return fragments;
+  }
+
+  private static int boxSize(ByteBuffer file, int position) {
+    return file.getInt(position);
+  }
+
+  private static String boxType(ByteBuffer file, int position) {
+    byte[] type = new byte[4];
+    for (int i = 0; i < 4; i++) type[i] = file.get(position + 4 + i);
+    return new String(type);
+  }
+
+  private static List<Integer> children(ByteBuffer file, int parent, String type) {
+    List<Integer> children = new ArrayList<>();
+    int           end      = parent + boxSize(file, parent);
+
+    for (int position = parent + 8; position < end; position += boxSize(file, position)) {
+      if (boxType(file, position).equals(type)) {
+        children.add(position);
+      }
+    }
+
+    return children;
+  }
+
+  /**
+   * Finds a box anywhere inside the parent by scanning for its type, which is good enough for the
+   * boxes written here.
+   */
+  private static int find(ByteBuffer file, int parent, String type) {
+    int end = parent + boxSize(file, parent);
+
+    for (int position = parent + 8; position + 8 <= end; position++) {
+      if (boxType(file, position).equals(type)) {
+        return position;
+      }
+    }
+
+    return -1;
+  }
+
+  private static final class Sample {
+    final int     track;
+    final byte[]  data;
+    final long    timeUs;
+    final boolean sync;
+
+    Sample(int track, byte[] data, long timeUs, boolean sync) {
+      this.track  = track;
+      this.data   = data;
+      this.timeUs = timeUs;
+      this.sync   = sync;
+    }
+  }
+
+  private static final class Fragment {
+    int moofOffset;
+    int sequenceNumber;
+    Run video = new Run();
+    Run audio = new Run();
+  }
+
+  private static final class Run {
+    long           decodeTime;
+    int            dataOffset;
+    List<Integer>  durations = new ArrayList<>();
+    List<Integer>  sizes     = new ArrayList<>();
+    List<Boolean>  syncs     = new ArrayList<>();
+  }
+}
@@ -0,0 +1,61 @@
+package org.thoughtcrime.securesms.video.videoconverter;
+
+import org.junit.Test;
+
+import java.nio.ByteBuffer;
+import java.util.List;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+
+public final class NalUnitsTest {
+
+  @Test
+  public void split_handles_three_and_four_byte_start_codes() {
+    ByteBuffer annexB = bytes(0, 0, 0, 1, 0x67, 1, 2, 3, 0, 0, 1, 0x68, 4, 5);
+
+    List<byte[]> units = NalUnits.split(annexB);
+
+    assertEquals(2, units.size());
+    assertArrayEquals(new byte[] { 0x67, 1, 2, 3 }, units.get(0));
+    assertArrayEquals(new byte[] { 0x68, 4, 5 }, units.get(1));
+    assertEquals(NalUnits.NAL_TYPE_SPS, NalUnits.getType(units.get(0)));
+    assertEquals(NalUnits.NAL_TYPE_PPS, NalUnits.getType(units.get(1)));
+    assertEquals(0, annexB.position());
+  }
+
+  @Test
+  public void split_treats_data_without_start_codes_as_one_unit() {
+    List<byte[]> units = NalUnits.split(bytes(0x65, 0, 0, 2, 9));
+
+    assertEquals(1, units.size());
+    assertArrayEquals(new byte[] { 0x65, 0, 0, 2, 9 }, units.get(0));
+  }
+
+  @Test
+  public void toLengthPrefixed_replaces_start_codes_with_lengths() {
+    byte[] output = NalUnits.toLengthPrefixed(bytes(0, 0, 0, 1, 0x65, (byte) 0x88, 0, 0, 1, 0x41, 7));
+
+    assertArrayEquals(new byte[] { 0, 0, 0, 2, 0x65, (byte) 0x88, 0, 0, 0, 2, 0x41, 7 }, output);
+  }
+
+  @Test
+  public void toLengthPrefixed_drops_trailing_zeros_and_respects_position() {
+    ByteBuffer annexB = bytes(9, 9, 0, 0, 1, 0x65, 3, 0, 0, 0, 0, 1, 0x41, (byte) 0xFF);
+    annexB.position(2);
+
+    byte[] output = NalUnits.toLengthPrefixed(annexB);
+
+    assertArrayEquals(new byte[] { 0, 0, 0, 2, 0x65, 3, 0, 0, 0, 2, 0x41, (byte) 0xFF }, output);
+  }
+
+  private static ByteBuffer bytes(int... values) {
+    byte[] bytes = new byte[values.length];
+
+    for (int i = 0; i < values.length; i++) {
+      bytes[i] = (byte) values[i];
+    }
+
+    return ByteBuffer.wrap(bytes);
+  }
+}
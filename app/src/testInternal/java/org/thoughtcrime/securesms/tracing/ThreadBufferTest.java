@@ -0,0 +1,212 @@
+package org.thoughtcrime.securesms.tracing;
+
+import androidx.annotation.Nullable;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public final class ThreadBufferTest {
+
+  @Test
+  public void writeTo_withinCapacity_writesEverythingInOrder() {
+    ThreadBuffer buffer = new ThreadBuffer(Thread.currentThread(), 8, 1f);
+
+    buffer.record(ThreadBuffer.TYPE_BEGIN, 10, 1, "key", "value");
+    buffer.record(ThreadBuffer.TYPE_BEGIN, 20, 2, null, null);
+    buffer.record(ThreadBuffer.TYPE_END, 30, 2, null, null);
+    buffer.record(ThreadBuffer.TYPE_END, 40, 1, null, null);
+
+    assertEquals(Arrays.asList("B10:1:key=value", "B20:2", "E30:2", "E40:1"), snapshot(buffer, Long.MIN_VALUE));
+  }
+
+  /**
+   * Once the buffer is full, the oldest slot is the one the owning thread writes next, so it is
+   * never read.
+   */
+  @Test
+  public void writeTo_afterWraparound_keepsNewestEvents() {
+    ThreadBuffer buffer = new ThreadBuffer(Thread.currentThread(), 5, 1f);
+
+    for (int i = 0; i < 5; i++) {
+      buffer.record(ThreadBuffer.TYPE_BEGIN, i * 10, i, null, null);
+      buffer.record(ThreadBuffer.TYPE_END, i * 10 + 1, i, null, null);
+    }
+
+    assertEquals(Arrays.asList("B30:3", "E31:3", "B40:4", "E41:4"), snapshot(buffer, Long.MIN_VALUE));
+  }
+
+  @Test
+  public void writeTo_afterWraparound_dropsEndWhoseBeginWasOverwritten() {
+    ThreadBuffer buffer = new ThreadBuffer(Thread.currentThread(), 4, 1f);
+
+    buffer.record(ThreadBuffer.TYPE_BEGIN, 10, 1, null, null);
+    buffer.record(ThreadBuffer.TYPE_BEGIN, 20, 2, null, null);
+    buffer.record(ThreadBuffer.TYPE_END, 30, 2, null, null);
+    buffer.record(ThreadBuffer.TYPE_END, 40, 1, null, null);
+    buffer.record(ThreadBuffer.TYPE_BEGIN, 50, 3, null, null);
+    buffer.record(ThreadBuffer.TYPE_END, 60, 3, null, null);
+
+    assertEquals(Arrays.asList("B50:3", "E60:3"), snapshot(buffer, Long.MIN_VALUE));
+  }
+
+  @Test
+  public void writeTo_dropsEventsBeforeStartTime_andTheirEnds() {
+    ThreadBuffer buffer = new ThreadBuffer(Thread.currentThread(), 8, 1f);
+
+    buffer.record(ThreadBuffer.TYPE_BEGIN, 10, 1, null, null);
+    buffer.record(ThreadBuffer.TYPE_BEGIN, 20, 2, null, null);
+    buffer.record(ThreadBuffer.TYPE_END, 30, 2, null, null);
+    buffer.record(ThreadBuffer.TYPE_END, 40, 1, null, null);
+
+    assertEquals(Arrays.asList("B20:2", "E30:2"), snapshot(buffer, 15));
+  }
+
+  @Test
+  public void writeTo_empty_writesNothing() {
+    ThreadBuffer buffer = new ThreadBuffer(Thread.currentThread(), 8, 1f);
+
+    assertTrue(snapshot(buffer, Long.MIN_VALUE).isEmpty());
+  }
+
+  @Test
+  public void sampling_fullRate_recordsEverything() {
+    ThreadBuffer buffer = new ThreadBuffer(Thread.currentThread(), 8, 1f, 1234);
+
+    for (int i = 0; i < 100; i++) {
+      assertTrue(buffer.shouldRecordStart());
+      assertTrue(buffer.shouldRecordEnd());
+    }
+  }
+
+  @Test
+  public void sampling_zeroRate_recordsNothing() {
+    ThreadBuffer buffer = new ThreadBuffer(Thread.currentThread(), 8, 0f, 1234);
+
+    for (int i = 0; i < 100; i++) {
+      assertFalse(buffer.shouldRecordStart());
+      assertFalse(buffer.shouldRecordStart());
+      assertFalse(buffer.shouldRecordEnd());
+      assertFalse(buffer.shouldRecordEnd());
+    }
+  }
+
+  @Test
+  public void sampling_nestedSlicesFollowTopLevelSlice() {
+    ThreadBuffer buffer  = new ThreadBuffer(Thread.currentThread(), 8, 0.5f, 1234);
+    int          sampled = 0;
+
+    for (int i = 0; i < 10_000; i++) {
+      boolean outer = buffer.shouldRecordStart();
+
+      assertEquals(outer, buffer.shouldRecordStart());
+      assertEquals(outer, buffer.shouldRecordStart());
+      assertEquals(outer, buffer.shouldRecordEnd());
+      assertEquals(outer, buffer.shouldRecordEnd());
+      assertEquals(outer, buffer.shouldRecordEnd());
+
+      if (outer) {
+        sampled++;
+      }
+    }
+
+    assertTrue("Sampled " + sampled, sampled > 4_500 && sampled < 5_500);
+  }
+
+  @Test
+  public void sampling_unbalancedEnd_isIgnored() {
+    ThreadBuffer buffer = new ThreadBuffer(Thread.currentThread(), 8, 1f, 1234);
+
+    assertFalse(buffer.shouldRecordEnd());
+    assertTrue(buffer.shouldRecordStart());
+    assertTrue(buffer.shouldRecordEnd());
+  }
+
+  /**
+   * Snapshots taken while the owning thread keeps writing must only contain complete slices, even
+   * though the buffer wraps around many times while they are being taken.
+   */
+  @Test
+  public void writeTo_whileWriting_onlyWritesCompleteSlices() throws InterruptedException {
+    ThreadBuffer[] holder  = new ThreadBuffer[1];
+    AtomicBoolean  running = new AtomicBoolean(true);
+    Thread         writer  = new Thread(() -> {
+      ThreadBuffer buffer = holder[0];
+      int          slice  = 0;
+
+      while (running.get()) {
+        buffer.record(ThreadBuffer.TYPE_BEGIN, 2L * slice, slice, null, null);
+        buffer.record(ThreadBuffer.TYPE_END, 2L * slice + 1, slice, null, null);
+        slice++;
+      }
+    });
+
+    holder[0] = new ThreadBuffer(writer, 16, 1f);
+    writer.start();
+
+    try {
+      for (int i = 0; i < 10_000; i++) {
+        List<long[]> events = new ArrayList<>();
+
+        holder[0].writeTo(new ThreadBuffer.EventWriter() {
+          @Override
+          public void begin(long time, int nameId, @Nullable String key, @Nullable String value) {
+            events.add(new long[] { ThreadBuffer.TYPE_BEGIN, time, nameId });
+          }
+
+          @Override
+          public void end(long time, int nameId) {
+            events.add(new long[] { ThreadBuffer.TYPE_END, time, nameId });
+          }
+        }, Long.MIN_VALUE);
+
+        for (int j = 0; j < events.size(); j++) {
+          long[] event = events.get(j);
+
+          if (j % 2 == 0) {
+            assertEquals(ThreadBuffer.TYPE_BEGIN, event[0]);
+            assertEquals(2 * event[2], event[1]);
+          } else {
+            long[] begin = events.get(j - 1);
+
+            assertEquals(ThreadBuffer.TYPE_END, event[0]);
+            assertEquals(begin[2], event[2]);
+            assertEquals(begin[1] + 1, event[1]);
+          }
+
+          if (j > 0) {
+            assertTrue(event[1] > events.get(j - 1)[1]);
+          }
+        }
+      }
+    } finally {
+      running.set(false);
+      writer.join();
+    }
+  }
+
+  private static List<String> snapshot(ThreadBuffer buffer, long startTimeNanos) {
+    List<String> events = new ArrayList<>();
+
+    buffer.writeTo(new ThreadBuffer.EventWriter() {
+      @Override
+      public void begin(long time, int nameId, @Nullable String key, @Nullable String value) {
+        events.add("B" + time + ":" + nameId + (key != null ? ":" + key + "=" + value : ""));
+      }
+
+      @Override
+      public void end(long time, int nameId) {
+        events.add("E" + time + ":" + nameId);
+      }
+    }, startTimeNanos);
+
+    return events;
+  }
+}
@@ -63,7 +63,6 @@ import org.whispersystems.signalservice.internal.push.VerifyAccountResponse;
 import org.whispersystems.signalservice.internal.push.http.ProfileCipherOutputStreamFactory;
 import org.whispersystems.signalservice.internal.storage.protos.ManifestRecord;
 import org.whispersystems.signalservice.internal.storage.protos.ReadOperation;
-import org.whispersystems.signalservice.internal.storage.protos.StorageItem;
 import org.whispersystems.signalservice.internal.storage.protos.StorageItems;
 import org.whispersystems.signalservice.internal.storage.protos.StorageManifest;
 import org.whispersystems.signalservice.internal.storage.protos.WriteOperation;
@@ -470,15 +469,14 @@ public class SignalServiceAccountManager {
     String       authToken = this.pushServiceSocket.getStorageAuth();
     StorageItems items     = this.pushServiceSocket.readStorageItems(authToken, operation.build());
 
-    for (StorageItem item : items.getItemsList()) {
-      Integer type = typeMap.get(item.getKey());
-      if (type != null) {
-        result.add(SignalStorageModels.remoteToLocalStorageRecord(item, type, storageKey));
-      } else {
-        Log.w(TAG, "No type found! Skipping.");
-      }
+    List<SignalStorageRecord> records = SignalStorageModels.remoteToLocalStorageRecords(items.getItemsList(), typeMap, storageKey);
+
+    if (records.size() != items.getItemsCount()) {
+      Log.w(TAG, "No type found for " + (items.getItemsCount() - records.size()) + " items! Skipping.");
     }
 
+    result.addAll(records);
+
     return result;
   }
   /**
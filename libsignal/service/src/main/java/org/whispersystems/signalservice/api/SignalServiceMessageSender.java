@@ -83,6 +83,7 @@ import org.whispersystems.signalservice.internal.push.exceptions.StaleDevicesExc
 import org.whispersystems.signalservice.internal.push.http.AttachmentCipherOutputStreamFactory;
 import org.whispersystems.signalservice.internal.push.http.CancelationSignal;
 import org.whispersystems.signalservice.internal.push.http.ResumableUploadSpec;
+import org.whispersystems.signalservice.internal.push.http.StreamingAttachmentUpload;
 import org.whispersystems.signalservice.internal.util.StaticCredentialsProvider;
 import org.whispersystems.signalservice.internal.util.Util;
 import org.whispersystems.util.Base64;
@@ -97,6 +98,7 @@ import java.util.LinkedList;
 import java.util.List;
 import java.util.UUID;
 import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
 import java.util.concurrent.Future;
@@ -462,6 +464,62 @@ public class SignalServiceMessageSender {
     return socket.getResumableUploadSpec(v3UploadAttributes);
   }
 
+  /**
+   * Starts uploading an attachment that is still being written. See {@link StreamingAttachmentUpload}.
+   */
+  public StreamingAttachmentUpload startStreamingAttachmentUpload(ResumableUploadSpec resumableUploadSpec,
+                                                                  Executor executor,
+                                                                  CancelationSignal cancelationSignal)
+      throws IOException
+  {
+    String resumeLocation = resumableUploadSpec.getResumeLocation();
+
+    return new StreamingAttachmentUpload(resumableUploadSpec, new StreamingAttachmentUpload.ChunkUploader() {
+      @Override
+      public long uploadChunk(byte[] data, int offset, int length, long contentStart, long contentLength) throws IOException {
+        return socket.uploadChunkToCdn2(resumeLocation, data, offset, length, contentStart, contentLength);
+      }
+
+      @Override
+      public long getCommittedLength(long contentLength) throws IOException {
+        return socket.getCdn2CommittedLength(resumeLocation, contentLength);
+      }
+    }, executor, cancelationSignal);
+  }
+
+  /**
+   * Finishes a streaming upload, describing it with the metadata of the given attachment, whose
+   * length must match what was written.
+   */
+  public SignalServiceAttachmentPointer finishStreamingAttachmentUpload(ResumableUploadSpec resumableUploadSpec,
+                                                                        StreamingAttachmentUpload upload,
+                                                                        SignalServiceAttachmentStream attachment)
+      throws IOException
+  {
+    if (upload.getLength() != attachment.getLength()) {
+      upload.cancel();
+      throw new IOException("Streamed " + upload.getLength() + " bytes, but attachment is " + attachment.getLength());
+    }
+
+    byte[] digest = upload.finish();
+
+    return new SignalServiceAttachmentPointer(resumableUploadSpec.getCdnNumber(),
+                                              new SignalServiceAttachmentRemoteId(resumableUploadSpec.getCdnKey()),
+                                              attachment.getContentType(),
+                                              resumableUploadSpec.getSecretKey(),
+                                              Optional.of(Util.toIntExact(attachment.getLength())),
+                                              attachment.getPreview(),
+                                              attachment.getWidth(),
+                                              attachment.getHeight(),
+                                              Optional.of(digest),
+                                              attachment.getFileName(),
+                                              attachment.getVoiceNote(),
+                                              attachment.isBorderless(),
+                                              attachment.getCaption(),
+                                              attachment.getBlurHash(),
+                                              attachment.getUploadTimestamp());
+  }
+
   private SignalServiceAttachmentPointer uploadAttachmentV3(SignalServiceAttachmentStream attachment, byte[] attachmentKey, PushAttachmentData attachmentData) throws IOException {
     byte[] digest = socket.uploadAttachment(attachmentData);
     return new SignalServiceAttachmentPointer(attachmentData.getResumableUploadSpec().getCdnNumber(),
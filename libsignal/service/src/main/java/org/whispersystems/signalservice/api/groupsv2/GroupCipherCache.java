@@ -0,0 +1,71 @@
+package org.whispersystems.signalservice.api.groupsv2;
+
+import com.google.protobuf.ByteString;
+
+import org.signal.zkgroup.profiles.ProfileKey;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.UUID;
+
+/**
+ * Remembers the results of decrypting member ciphertexts for a single group, so that decrypting
+ * another revision of the group does not have to repeat the zkgroup operations for members that
+ * have not changed.
+ * <p>
+ * Only successful decryptions are cached, keyed by the serialized ciphertext.
+ */
+final class GroupCipherCache {
+
+  private static final int MAX_UUIDS        = 2048;
+  private static final int MAX_PROFILE_KEYS = 1024;
+
+  private final Map<ByteString, UUID>            uuids       = new LruMap<>(MAX_UUIDS);
+  private final Map<ByteString, CachedProfileKey> profileKeys = new LruMap<>(MAX_PROFILE_KEYS);
+
+  synchronized UUID getUuid(ByteString uuidCiphertext) {
+    return uuids.get(uuidCiphertext);
+  }
+
+  synchronized void putUuid(ByteString uuidCiphertext, UUID uuid) {
+    uuids.put(uuidCiphertext, uuid);
+  }
+
+  /**
+   * @return The profile key, or null if it is not cached or was decrypted for a different UUID.
+   */
+  synchronized ProfileKey getProfileKey(ByteString profileKeyCiphertext, UUID uuid) {
+    CachedProfileKey cached = profileKeys.get(profileKeyCiphertext);
+
+    return cached != null && cached.uuid.equals(uuid) ? cached.profileKey : null;
+  }
+
+  synchronized void putProfileKey(ByteString profileKeyCiphertext, UUID uuid, ProfileKey profileKey) {
+    profileKeys.put(profileKeyCiphertext, new CachedProfileKey(uuid, profileKey));
+  }
+
+  private static final class CachedProfileKey {
+    private final UUID       uuid;
+    private final ProfileKey profileKey;
+
+    private CachedProfileKey(UUID uuid, ProfileKey profileKey) {
+      this.uuid       = uuid;
+      this.profileKey = profileKey;
+    }
+  }
+
+  static final class LruMap<K, V> extends LinkedHashMap<K, V> {
+
+    private final int maxEntries;
+
+    LruMap(int maxEntries) {
+      super(16, 0.75f, true);
+      this.maxEntries = maxEntries;
+    }
+
+    @Override
+    protected boolean removeEldestEntry(Map.Entry<K, V> eldest) {
+      return size() > maxEntries;
+    }
+  }
+}
@@ -0,0 +1,37 @@
+package org.whispersystems.signalservice.api.groupsv2;
+
+import java.util.List;
+
+/**
+ * A single page of a group's decrypted history, as returned by the server.
+ */
+public final class GroupHistoryPage {
+
+  private final List<DecryptedGroupHistoryEntry> results;
+  private final boolean                          hasMore;
+  private final int                              nextPageRevision;
+
+  GroupHistoryPage(List<DecryptedGroupHistoryEntry> results, boolean hasMore, int nextPageRevision) {
+    this.results          = results;
+    this.hasMore          = hasMore;
+    this.nextPageRevision = nextPageRevision;
+  }
+
+  public List<DecryptedGroupHistoryEntry> getResults() {
+    return results;
+  }
+
+  public boolean hasMore() {
+    return hasMore;
+  }
+
+  /**
+   * Valid iff {@link #hasMore()}.
+   */
+  public int getNextPageRevision() {
+    if (!hasMore) {
+      throw new IllegalStateException("No more pages");
+    }
+    return nextPageRevision;
+  }
+}
@@ -38,15 +38,17 @@ import org.signal.zkgroup.profiles.ProfileKeyCredentialPresentation;
 import org.signal.zkgroup.util.UUIDUtil;
 import org.whispersystems.libsignal.logging.Log;
 import org.whispersystems.libsignal.util.guava.Optional;
+import org.whispersystems.signalservice.api.util.ParallelDecryption;
 import org.whispersystems.signalservice.api.util.UuidUtil;
 
 import java.security.SecureRandom;
-import java.util.ArrayList;
 import java.util.Collections;
 import java.util.List;
 import java.util.Locale;
+import java.util.Map;
 import java.util.Set;
 import java.util.UUID;
+import java.util.concurrent.ExecutionException;
 
 /**
  * Contains operations to create, modify and validate groups and group changes.
@@ -61,16 +63,34 @@ public final class GroupsV2Operations {
   /** Highest change epoch this class knows now to decrypt */
   public static final int HIGHEST_KNOWN_EPOCH = 1;
 
-  private final ServerPublicParams        serverPublicParams;
-  private final ClientZkProfileOperations clientZkProfileOperations;
-  private final ClientZkAuthOperations    clientZkAuthOperations;
-  private final SecureRandom              random;
+  /** Number of groups to keep decrypted member ciphertexts for */
+  private static final int MAX_CACHED_GROUPS = 4;
+
+  /** Below this many members per thread it is not worth handing decryption to another thread */
+  private static final int MIN_MEMBERS_PER_THREAD = 16;
+
+  private final ServerPublicParams                serverPublicParams;
+  private final ClientZkProfileOperations         clientZkProfileOperations;
+  private final ClientZkAuthOperations            clientZkAuthOperations;
+  private final SecureRandom                      random;
+  private final int                               decryptionParallelism;
+  private final Map<ByteString, GroupCipherCache> cipherCaches;
 
   public GroupsV2Operations(ClientZkOperations clientZkOperations) {
+    this(clientZkOperations, Runtime.getRuntime().availableProcessors());
+  }
+
+  /**
+   * @param decryptionParallelism The maximum number of threads to decrypt the members of a single
+   *                              group on, including the calling thread.
+   */
+  public GroupsV2Operations(ClientZkOperations clientZkOperations, int decryptionParallelism) {
     this.serverPublicParams        = clientZkOperations.getServerPublicParams();
     this.clientZkProfileOperations = clientZkOperations.getProfileOperations();
     this.clientZkAuthOperations    = clientZkOperations.getAuthOperations();
     this.random                    = new SecureRandom();
+    this.decryptionParallelism     = Math.max(1, decryptionParallelism);
+    this.cipherCaches              = new GroupCipherCache.LruMap<>(MAX_CACHED_GROUPS);
   }
 
   /**
@@ -119,7 +139,22 @@ public final class GroupsV2Operations {
   }
 
   public GroupOperations forGroup(final GroupSecretParams groupSecretParams) {
-    return new GroupOperations(groupSecretParams);
+    return new GroupOperations(groupSecretParams, getCipherCache(groupSecretParams));
+  }
+
+  private GroupCipherCache getCipherCache(GroupSecretParams groupSecretParams) {
+    ByteString key = ByteString.copyFrom(groupSecretParams.serialize());
+
+    synchronized (cipherCaches) {
+      GroupCipherCache cache = cipherCaches.get(key);
+
+      if (cache == null) {
+        cache = new GroupCipherCache();
+        cipherCaches.put(key, cache);
+      }
+
+      return cache;
+    }
   }
 
   public ClientZkProfileOperations getProfileOperations() {
@@ -137,10 +172,12 @@ public final class GroupsV2Operations {
 
     private final GroupSecretParams   groupSecretParams;
     private final ClientZkGroupCipher clientZkGroupCipher;
+    private final GroupCipherCache    cipherCache;
 
-    private GroupOperations(GroupSecretParams groupSecretParams) {
+    private GroupOperations(GroupSecretParams groupSecretParams, GroupCipherCache cipherCache) {
       this.groupSecretParams   = groupSecretParams;
       this.clientZkGroupCipher = new ClientZkGroupCipher(groupSecretParams);
+      this.cipherCache         = cipherCache;
     }
 
     public GroupChange.Actions.Builder createModifyGroupTitle(final String title) {
@@ -356,28 +393,16 @@ public final class GroupsV2Operations {
     public DecryptedGroup decryptGroup(Group group)
         throws VerificationFailedException, InvalidGroupStateException
     {
-      List<Member>                    membersList                = group.getMembersList();
-      List<PendingMember>             pendingMembersList         = group.getPendingMembersList();
-      List<RequestingMember>          requestingMembersList      = group.getRequestingMembersList();
-      List<DecryptedMember>           decryptedMembers           = new ArrayList<>(membersList.size());
-      List<DecryptedPendingMember>    decryptedPendingMembers    = new ArrayList<>(pendingMembersList.size());
-      List<DecryptedRequestingMember> decryptedRequestingMembers = new ArrayList<>(requestingMembersList.size());
-
-      for (Member member : membersList) {
+      List<DecryptedMember> decryptedMembers = decryptAll(group.getMembersList(), member -> {
         try {
-          decryptedMembers.add(decryptMember(member).build());
+          return decryptMember(member).build();
         } catch (InvalidInputException e) {
           throw new InvalidGroupStateException(e);
         }
-      }
+      });
 
-      for (PendingMember member : pendingMembersList) {
-        decryptedPendingMembers.add(decryptMember(member));
-      }
-
-      for (RequestingMember member : requestingMembersList) {
-        decryptedRequestingMembers.add(decryptRequestingMember(member));
-      }
+      List<DecryptedPendingMember>    decryptedPendingMembers    = decryptAll(group.getPendingMembersList(), this::decryptMember);
+      List<DecryptedRequestingMember> decryptedRequestingMembers = decryptAll(group.getRequestingMembersList(), this::decryptRequestingMember);
 
       return DecryptedGroup.newBuilder()
                            .setTitle(decryptTitle(group.getTitle()))
@@ -392,6 +417,22 @@ public final class GroupsV2Operations {
                            .build();
     }
 
+    private <I, O> List<O> decryptAll(List<I> inputs, ParallelDecryption.Decryptor<I, O> decryptor)
+        throws VerificationFailedException, InvalidGroupStateException
+    {
+      try {
+        return ParallelDecryption.decryptAll(decryptionParallelism, MIN_MEMBERS_PER_THREAD, inputs, decryptor);
+      } catch (ExecutionException e) {
+        if (e.getCause() instanceof VerificationFailedException) {
+          throw (VerificationFailedException) e.getCause();
+        } else if (e.getCause() instanceof InvalidGroupStateException) {
+          throw (InvalidGroupStateException) e.getCause();
+        } else {
+          throw new AssertionError(e);
+        }
+      }
+    }
+
     /**
      * @param verifySignature You might want to avoid verification if you already know it's correct, or you
      *                        are not going to pass to other clients.
@@ -461,12 +502,12 @@ public final class GroupsV2Operations {
           ProfileKeyCredentialPresentation presentation = new ProfileKeyCredentialPresentation(modifyMemberProfileKeyAction.getPresentation().toByteArray());
           presentation.getProfileKeyCiphertext();
 
-          UUID uuid = decryptUuid(ByteString.copyFrom(presentation.getUuidCiphertext().serialize()));
+          UUID uuid = decryptUuid(presentation.getUuidCiphertext());
           builder.addModifiedProfileKeys(DecryptedMember.newBuilder()
                                                         .setRole(Member.Role.UNKNOWN)
                                                         .setJoinedAtRevision(-1)
                                                         .setUuid(UuidUtil.toByteString(uuid))
-                                                        .setProfileKey(ByteString.copyFrom(decryptProfileKey(ByteString.copyFrom(presentation.getProfileKeyCiphertext().serialize()), uuid).serialize())));
+                                                        .setProfileKey(ByteString.copyFrom(decryptProfileKey(presentation.getProfileKeyCiphertext(), uuid).serialize())));
         } catch (InvalidInputException e) {
           throw new InvalidGroupStateException(e);
         }
@@ -505,8 +546,8 @@ public final class GroupsV2Operations {
         } catch (InvalidInputException e) {
           throw new InvalidGroupStateException(e);
         }
-        UUID       uuid       = clientZkGroupCipher.decryptUuid(profileKeyCredentialPresentation.getUuidCiphertext());
-        ProfileKey profileKey = clientZkGroupCipher.decryptProfileKey(profileKeyCredentialPresentation.getProfileKeyCiphertext(), uuid);
+        UUID       uuid       = decryptUuid(profileKeyCredentialPresentation.getUuidCiphertext());
+        ProfileKey profileKey = decryptProfileKey(profileKeyCredentialPresentation.getProfileKeyCiphertext(), uuid);
         builder.addPromotePendingMembers(DecryptedMember.newBuilder()
                                                         .setJoinedAtRevision(-1)
                                                         .setRole(Member.Role.DEFAULT)
@@ -592,8 +633,8 @@ public final class GroupsV2Operations {
                               .setRole(member.getRole());
       } else {
         ProfileKeyCredentialPresentation profileKeyCredentialPresentation = new ProfileKeyCredentialPresentation(member.getPresentation().toByteArray());
-        UUID                             uuid                             = clientZkGroupCipher.decryptUuid(profileKeyCredentialPresentation.getUuidCiphertext());
-        ProfileKey                       profileKey                       = clientZkGroupCipher.decryptProfileKey(profileKeyCredentialPresentation.getProfileKeyCiphertext(), uuid);
+        UUID                             uuid                             = decryptUuid(profileKeyCredentialPresentation.getUuidCiphertext());
+        ProfileKey                       profileKey                       = decryptProfileKey(profileKeyCredentialPresentation.getProfileKeyCiphertext(), uuid);
 
         return DecryptedMember.newBuilder()
                               .setUuid(UuidUtil.toByteString(uuid))
@@ -644,8 +685,8 @@ public final class GroupsV2Operations {
           throw new InvalidGroupStateException(e);
         }
 
-        UUID       uuid       = clientZkGroupCipher.decryptUuid(profileKeyCredentialPresentation.getUuidCiphertext());
-        ProfileKey profileKey = clientZkGroupCipher.decryptProfileKey(profileKeyCredentialPresentation.getProfileKeyCiphertext(), uuid);
+        UUID       uuid       = decryptUuid(profileKeyCredentialPresentation.getUuidCiphertext());
+        ProfileKey profileKey = decryptProfileKey(profileKeyCredentialPresentation.getProfileKeyCiphertext(), uuid);
 
         return DecryptedRequestingMember.newBuilder()
                                         .setUuid(UuidUtil.toByteString(uuid))
@@ -656,8 +697,17 @@ public final class GroupsV2Operations {
 
     private ProfileKey decryptProfileKey(ByteString profileKey, UUID uuid) throws VerificationFailedException, InvalidGroupStateException {
       try {
+        ProfileKey cached = cipherCache.getProfileKey(profileKey, uuid);
+
+        if (cached != null) {
+          return cached;
+        }
+
         ProfileKeyCiphertext profileKeyCiphertext = new ProfileKeyCiphertext(profileKey.toByteArray());
-        return clientZkGroupCipher.decryptProfileKey(profileKeyCiphertext, uuid);
+        ProfileKey           decrypted            = clientZkGroupCipher.decryptProfileKey(profileKeyCiphertext, uuid);
+
+        cipherCache.putProfileKey(profileKey, uuid, decrypted);
+        return decrypted;
       } catch (InvalidInputException e) {
         throw new InvalidGroupStateException(e);
       }
@@ -675,9 +725,26 @@ public final class GroupsV2Operations {
       return ByteString.copyFrom(clientZkGroupCipher.encryptUuid(uuid).serialize());
     }
 
+    private ProfileKey decryptProfileKey(ProfileKeyCiphertext profileKeyCiphertext, UUID uuid) throws VerificationFailedException, InvalidGroupStateException {
+      return decryptProfileKey(ByteString.copyFrom(profileKeyCiphertext.serialize()), uuid);
+    }
+
+    private UUID decryptUuid(UuidCiphertext uuidCiphertext) throws InvalidGroupStateException, VerificationFailedException {
+      return decryptUuid(ByteString.copyFrom(uuidCiphertext.serialize()));
+    }
+
     private UUID decryptUuid(ByteString userId) throws InvalidGroupStateException, VerificationFailedException {
+      UUID cached = cipherCache.getUuid(userId);
+
+      if (cached != null) {
+        return cached;
+      }
+
       try {
-        return clientZkGroupCipher.decryptUuid(new UuidCiphertext(userId.toByteArray()));
+        UUID uuid = clientZkGroupCipher.decryptUuid(new UuidCiphertext(userId.toByteArray()));
+
+        cipherCache.putUuid(userId, uuid);
+        return uuid;
       } catch (InvalidInputException e) {
         throw new InvalidGroupStateException(e);
       }
@@ -688,8 +755,8 @@ public final class GroupsV2Operations {
      */
     private UUID decryptUuidOrUnknown(ByteString userId) {
       try {
-        return clientZkGroupCipher.decryptUuid(new UuidCiphertext(userId.toByteArray()));
-      } catch (InvalidInputException | VerificationFailedException e) {
+        return decryptUuid(userId);
+      } catch (InvalidGroupStateException | VerificationFailedException e) {
         return UNKNOWN_UUID;
       }
     }
@@ -4,6 +4,7 @@ import com.google.protobuf.ByteString;
 
 import org.signal.zkgroup.groups.GroupMasterKey;
 import org.whispersystems.libsignal.InvalidKeyException;
+import org.whispersystems.signalservice.api.util.ParallelDecryption;
 import org.whispersystems.signalservice.internal.storage.protos.ManifestRecord;
 import org.whispersystems.signalservice.internal.storage.protos.StorageItem;
 import org.whispersystems.signalservice.internal.storage.protos.StorageManifest;
@@ -12,9 +13,14 @@ import org.whispersystems.signalservice.internal.storage.protos.StorageRecord;
 import java.io.IOException;
 import java.util.ArrayList;
 import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutionException;
 
 public final class SignalStorageModels {
 
+  /** Below this many items per thread it is not worth handing work to another thread. */
+  private static final int MIN_ITEMS_PER_THREAD = 64;
+
   public static SignalStorageManifest remoteToLocalStorageManifest(StorageManifest manifest, StorageKey storageKey) throws IOException, InvalidKeyException {
     byte[]          rawRecord      = SignalStorageCipher.decrypt(storageKey.deriveManifestKey(manifest.getVersion()), manifest.getValue().toByteArray());
     ManifestRecord  manifestRecord = ManifestRecord.parseFrom(rawRecord);
@@ -46,6 +52,39 @@ public final class SignalStorageModels {
     }
   }
 
+  /**
+   * Decrypts many storage items, spreading the work across the available processors.
+   *
+   * @param types The type of each item, by key. Items with no type are skipped.
+   * @return The records, in the same order as the items.
+   */
+  public static List<SignalStorageRecord> remoteToLocalStorageRecords(List<StorageItem> items, Map<ByteString, Integer> types, StorageKey storageKey)
+      throws IOException, InvalidKeyException
+  {
+    List<StorageItem> typedItems = new ArrayList<>(items.size());
+
+    for (StorageItem item : items) {
+      if (types.containsKey(item.getKey())) {
+        typedItems.add(item);
+      }
+    }
+
+    try {
+      return ParallelDecryption.decryptAll(Runtime.getRuntime().availableProcessors(),
+                                           MIN_ITEMS_PER_THREAD,
+                                           typedItems,
+                                           item -> remoteToLocalStorageRecord(item, types.get(item.getKey()), storageKey));
+    } catch (ExecutionException e) {
+      if (e.getCause() instanceof IOException) {
+        throw (IOException) e.getCause();
+      } else if (e.getCause() instanceof InvalidKeyException) {
+        throw (InvalidKeyException) e.getCause();
+      } else {
+        throw new AssertionError(e);
+      }
+    }
+  }
+
   public static StorageItem localToRemoteStorageRecord(SignalStorageRecord record, StorageKey storageKey) {
     StorageRecord.Builder builder = StorageRecord.newBuilder();
 
@@ -0,0 +1,157 @@
+package org.whispersystems.signalservice.api.util;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * Decrypts a list of items across several threads, keeping the results in order.
+ * <p>
+ * The calling thread takes part in the work, and items are claimed one at a time, so a busy or
+ * saturated executor only slows the work down rather than blocking it. All callers share a single
+ * small pool of daemon threads.
+ */
+public final class ParallelDecryption {
+
+  private ParallelDecryption() {
+  }
+
+  public interface Decryptor<I, O> {
+    O decrypt(I input) throws Exception;
+  }
+
+  /**
+   * @param parallelism       The maximum number of threads to use, including the calling thread.
+   * @param minItemsPerThread Below this many items per thread it is not worth handing work to
+   *                          another thread.
+   * @throws ExecutionException Wrapping the first checked exception thrown by the decryptor.
+   *                            Runtime exceptions are rethrown as is.
+   */
+  public static <I, O> List<O> decryptAll(int parallelism, int minItemsPerThread, List<I> inputs, Decryptor<I, O> decryptor)
+      throws ExecutionException
+  {
+    if (Math.min(parallelism, inputs.size() / minItemsPerThread) <= 1) {
+      return decryptAll(Runnable::run, 1, minItemsPerThread, inputs, decryptor);
+    } else {
+      return decryptAll(SharedExecutor.INSTANCE, parallelism, minItemsPerThread, inputs, decryptor);
+    }
+  }
+
+  static <I, O> List<O> decryptAll(Executor executor, int parallelism, int minItemsPerThread, List<I> inputs, Decryptor<I, O> decryptor)
+      throws ExecutionException
+  {
+    int helpers = Math.min(parallelism, inputs.size() / minItemsPerThread) - 1;
+
+    if (helpers <= 0) {
+      List<O> outputs = new ArrayList<>(inputs.size());
+
+      try {
+        for (I input : inputs) {
+          outputs.add(decryptor.decrypt(input));
+        }
+      } catch (RuntimeException e) {
+        throw e;
+      } catch (Exception e) {
+        throw new ExecutionException(e);
+      }
+
+      return outputs;
+    }
+
+    Object[]                   outputs   = new Object[inputs.size()];
+    AtomicInteger              next      = new AtomicInteger();
+    AtomicReference<Exception> failure   = new AtomicReference<>();
+    CountDownLatch             remaining = new CountDownLatch(inputs.size());
+    Runnable                   worker    = () -> work(inputs, outputs, next, failure, remaining, decryptor);
+
+    for (int i = 0; i < helpers; i++) {
+      try {
+        executor.execute(worker);
+      } catch (RejectedExecutionException e) {
+        break;
+      }
+    }
+
+    worker.run();
+    awaitUninterruptibly(remaining);
+
+    Exception exception = failure.get();
+
+    if (exception instanceof RuntimeException) {
+      throw (RuntimeException) exception;
+    } else if (exception != null) {
+      throw new ExecutionException(exception);
+    }
+
+    //noinspection unchecked
+    return (List<O>) Arrays.asList(outputs);
+  }
+
+  /**
+   * Claims and decrypts items until there are none left. Once any item fails, the rest are claimed
+   * without being decrypted so that the caller is released as soon as possible.
+   */
+  private static <I, O> void work(List<I> inputs,
+                                  Object[] outputs,
+                                  AtomicInteger next,
+                                  AtomicReference<Exception> failure,
+                                  CountDownLatch remaining,
+                                  Decryptor<I, O> decryptor)
+  {
+    int i;
+
+    while ((i = next.getAndIncrement()) < inputs.size()) {
+      try {
+        if (failure.get() == null) {
+          outputs[i] = decryptor.decrypt(inputs.get(i));
+        }
+      } catch (Exception e) {
+        failure.compareAndSet(null, e);
+      } finally {
+        remaining.countDown();
+      }
+    }
+  }
+
+  private static void awaitUninterruptibly(CountDownLatch latch) {
+    boolean interrupted = false;
+
+    while (true) {
+      try {
+        latch.await();
+        break;
+      } catch (InterruptedException e) {
+        interrupted = true;
+      }
+    }
+
+    if (interrupted) {
+      Thread.currentThread().interrupt();
+    }
+  }
+
+  private static final class SharedExecutor {
+    private static final Executor INSTANCE = createExecutor();
+
+    private static Executor createExecutor() {
+      int                threads  = Math.max(1, Runtime.getRuntime().availableProcessors() - 1);
+      ThreadPoolExecutor executor = new ThreadPoolExecutor(threads, threads, 30, TimeUnit.SECONDS, new LinkedBlockingQueue<>(), runnable -> {
+        Thread thread = new Thread(runnable, "ParallelDecryption");
+        thread.setDaemon(true);
+        return thread;
+      });
+
+      executor.allowCoreThreadTimeOut(true);
+      return executor;
+    }
+  }
+}
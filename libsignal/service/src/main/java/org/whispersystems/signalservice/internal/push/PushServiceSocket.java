@@ -1210,6 +1210,80 @@ public class PushServiceSocket {
     }
   }
 
+  /**
+   * Sends part of a resumable upload whose total length may not be known yet.
+   *
+   * @param contentLength The total length, or -1 if more chunks are to follow.
+   * @return The number of bytes the CDN has committed.
+   */
+  public long uploadChunkToCdn2(String resumableUrl, byte[] data, int offset, int length, long contentStart, long contentLength) throws IOException {
+    String total        = contentLength >= 0 ? String.valueOf(contentLength) : "*";
+    String contentRange = length > 0 ? String.format(Locale.US, "bytes %d-%d/%s", contentStart, contentStart + length - 1, total)
+                                     : String.format(Locale.US, "bytes */%s", total);
+
+    return putToCdn2(resumableUrl, RequestBody.create(null, data, offset, length), contentRange, contentLength);
+  }
+
+  /**
+   * @param contentLength The total length, or -1 if not yet known.
+   * @return The number of bytes of a resumable upload the CDN has committed.
+   */
+  public long getCdn2CommittedLength(String resumableUrl, long contentLength) throws IOException {
+    String total = contentLength >= 0 ? String.valueOf(contentLength) : "*";
+
+    return putToCdn2(resumableUrl, RequestBody.create(null, ""), "bytes */" + total, contentLength);
+  }
+
+  private long putToCdn2(String resumableUrl, RequestBody body, String contentRange, long contentLength) throws IOException {
+    ConnectionHolder connectionHolder = getRandom(cdnClientsMap.get(2), random);
+    OkHttpClient     okHttpClient     = connectionHolder.getClient()
+                                                        .newBuilder()
+                                                        .connectTimeout(soTimeoutMillis, TimeUnit.MILLISECONDS)
+                                                        .readTimeout(soTimeoutMillis, TimeUnit.MILLISECONDS)
+                                                        .build();
+
+    Request.Builder request = new Request.Builder().url(buildConfiguredUrl(connectionHolder, resumableUrl))
+                                                   .put(body)
+                                                   .addHeader("Content-Range", contentRange);
+
+    if (connectionHolder.getHostHeader().isPresent()) {
+      request.header("host", connectionHolder.getHostHeader().get());
+    }
+
+    Call call = okHttpClient.newCall(request.build());
+
+    synchronized (connections) {
+      connections.add(call);
+    }
+
+    try {
+      Response response;
+
+      try {
+        response = call.execute();
+      } catch (IOException e) {
+        throw new PushNetworkException(e);
+      }
+
+      if (response.isSuccessful() && contentLength >= 0) {
+        return contentLength;
+      } else if (response.code() == 308) {
+        String rangeCompleted = response.header("Range");
+
+        if (rangeCompleted == null) return 0;
+        else                        return Long.parseLong(rangeCompleted.split("-")[1]) + 1;
+      } else if (response.code() == 404) {
+        throw new ResumeLocationInvalidException();
+      } else {
+        throw new NonSuccessfulResponseCodeException("Response: " + response);
+      }
+    } finally {
+      synchronized (connections) {
+        connections.remove(call);
+      }
+    }
+  }
+
   private ResumeInfo getResumeInfo(String resumableUrl, long contentLength) throws IOException {
     ConnectionHolder connectionHolder = getRandom(cdnClientsMap.get(2), random);
     OkHttpClient     okHttpClient     = connectionHolder.getClient()
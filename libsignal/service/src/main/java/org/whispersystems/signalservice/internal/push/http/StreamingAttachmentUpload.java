@@ -0,0 +1,237 @@
+package org.whispersystems.signalservice.internal.push.http;
+
+import org.whispersystems.libsignal.logging.Log;
+import org.whispersystems.signalservice.api.crypto.AttachmentCipherOutputStream;
+import org.whispersystems.signalservice.api.crypto.DigestingOutputStream;
+import org.whispersystems.signalservice.api.push.exceptions.PushNetworkException;
+import org.whispersystems.signalservice.api.push.exceptions.ResumeLocationInvalidException;
+import org.whispersystems.signalservice.internal.crypto.PaddingInputStream;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.io.OutputStream;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.FutureTask;
+
+/**
+ * Uploads an attachment to a resumable CDN2 location while it is still being written, without
+ * knowing its length up front.
+ * <p>
+ * Plaintext written to {@link #getOutputStream()} is encrypted as it arrives and queued in a
+ * bounded {@link UploadChunkPipe}. An upload task on the given executor sends the ciphertext one
+ * chunk at a time, telling the CDN the total length only with the last chunk. Padding is appended
+ * in {@link #finish()}, once the length is known.
+ * <p>
+ * A chunk that fails to send is retried from wherever the CDN says it has got to, as with any
+ * other resumable upload.
+ */
+public final class StreamingAttachmentUpload {
+
+  private static final String TAG = StreamingAttachmentUpload.class.getSimpleName();
+
+  /**
+   * Chunks other than the last must be a multiple of 256 KiB.
+   */
+  static final int CHUNK_SIZE         = 1024 * 1024;
+  static final int MAX_QUEUED_CHUNKS  = 4;
+  static final int MAX_CHUNK_ATTEMPTS = 3;
+
+  private final ChunkUploader         uploader;
+  private final CancelationSignal     cancelationSignal;
+  private final UploadChunkPipe       pipe;
+  private final DigestingOutputStream cipherOutputStream;
+  private final FutureTask<Long>      uploadTask;
+  private final OutputStream          plaintextOutputStream;
+
+  private long    plaintextLength;
+  private boolean finished;
+
+  public StreamingAttachmentUpload(ResumableUploadSpec resumableUploadSpec,
+                                   ChunkUploader uploader,
+                                   Executor executor,
+                                   CancelationSignal cancelationSignal)
+      throws IOException
+  {
+    this(resumableUploadSpec, uploader, executor, cancelationSignal, CHUNK_SIZE);
+  }
+
+  StreamingAttachmentUpload(ResumableUploadSpec resumableUploadSpec,
+                            ChunkUploader uploader,
+                            Executor executor,
+                            CancelationSignal cancelationSignal,
+                            int chunkSize)
+      throws IOException
+  {
+    if (resumableUploadSpec.getExpirationTimestamp() < System.currentTimeMillis()) {
+      throw new ResumeLocationInvalidException();
+    }
+
+    this.uploader              = uploader;
+    this.cancelationSignal     = cancelationSignal;
+    this.pipe                  = new UploadChunkPipe(chunkSize, MAX_QUEUED_CHUNKS);
+    this.cipherOutputStream    = new AttachmentCipherOutputStream(resumableUploadSpec.getSecretKey(), resumableUploadSpec.getIV(), pipe);
+    this.uploadTask            = new FutureTask<>(this::uploadChunks);
+    this.plaintextOutputStream = new PlaintextOutputStream();
+
+    executor.execute(uploadTask);
+  }
+
+  /**
+   * @return Where to write the attachment. Closing it does nothing, call {@link #finish()} instead.
+   */
+  public OutputStream getOutputStream() {
+    return plaintextOutputStream;
+  }
+
+  /**
+   * @return The number of plaintext bytes written so far.
+   */
+  public long getLength() {
+    return plaintextLength;
+  }
+
+  /**
+   * Pads and seals the attachment, then waits for the remaining chunks to be sent.
+   *
+   * @return The digest of the uploaded ciphertext.
+   */
+  public byte[] finish() throws IOException {
+    if (finished) {
+      throw new IllegalStateException("Already finished");
+    }
+
+    finished = true;
+
+    try {
+      byte[] padding          = new byte[8192];
+      long   paddingRemaining = PaddingInputStream.getPaddedSize(plaintextLength) - plaintextLength;
+
+      while (paddingRemaining > 0) {
+        int count = (int) Math.min(padding.length, paddingRemaining);
+        cipherOutputStream.write(padding, 0, count);
+        paddingRemaining -= count;
+      }
+
+      cipherOutputStream.flush();
+      pipe.close();
+    } catch (IOException e) {
+      cancel();
+      throw e;
+    }
+
+    try {
+      long uploaded = uploadTask.get();
+      Log.i(TAG, "Uploaded " + uploaded + " bytes for " + plaintextLength + " bytes of plaintext");
+    } catch (ExecutionException e) {
+      if (e.getCause() instanceof IOException) throw (IOException) e.getCause();
+      else                                     throw new IOException(e.getCause());
+    } catch (InterruptedException e) {
+      cancel();
+      throw new InterruptedIOException("Interrupted while waiting for the upload");
+    }
+
+    return cipherOutputStream.getTransmittedDigest();
+  }
+
+  /**
+   * Gives up on the upload. The upload task stops once it has finished sending its current chunk.
+   */
+  public void cancel() {
+    finished = true;
+    pipe.fail();
+  }
+
+  private long uploadChunks() throws IOException {
+    try {
+      while (true) {
+        UploadChunkPipe.Chunk chunk = pipe.take();
+
+        if (cancelationSignal != null && cancelationSignal.isCanceled()) {
+          throw new IOException("Canceled!");
+        }
+
+        long contentLength = chunk.isLast() ? chunk.getOffset() + chunk.getLength() : -1;
+
+        uploadChunk(chunk, contentLength);
+
+        if (chunk.isLast()) {
+          return contentLength;
+        }
+      }
+    } catch (IOException e) {
+      Log.w(TAG, "Upload failed", e);
+      pipe.abort(e);
+      throw e;
+    }
+  }
+
+  private void uploadChunk(UploadChunkPipe.Chunk chunk, long contentLength) throws IOException {
+    long chunkEnd = chunk.getOffset() + chunk.getLength();
+    long start    = chunk.getOffset();
+    int  attempts = 0;
+
+    while (true) {
+      long committed;
+
+      try {
+        committed = uploader.uploadChunk(chunk.getData(), (int) (start - chunk.getOffset()), (int) (chunkEnd - start), start, contentLength);
+      } catch (PushNetworkException e) {
+        if (++attempts >= MAX_CHUNK_ATTEMPTS) {
+          throw e;
+        }
+
+        Log.w(TAG, "Chunk at " + start + " failed, checking what was committed", e);
+        committed = uploader.getCommittedLength(contentLength);
+      }
+
+      if (committed >= chunkEnd) {
+        return;
+      } else if (committed < chunk.getOffset()) {
+        throw new IOException("CDN lost data already committed, have " + committed + " but expected at least " + chunk.getOffset());
+      }
+
+      start = committed;
+    }
+  }
+
+  /**
+   * Sends ciphertext to a resumable upload location.
+   */
+  public interface ChunkUploader {
+
+    /**
+     * @param contentLength The total length, or -1 if more chunks are to follow.
+     * @return The number of bytes the CDN has committed.
+     */
+    long uploadChunk(byte[] data, int offset, int length, long contentStart, long contentLength) throws IOException;
+
+    /**
+     * @param contentLength The total length, or -1 if not yet known.
+     * @return The number of bytes the CDN has committed.
+     */
+    long getCommittedLength(long contentLength) throws IOException;
+  }
+
+  private final class PlaintextOutputStream extends OutputStream {
+
+    @Override
+    public void write(int b) throws IOException {
+      write(new byte[] { (byte) b }, 0, 1);
+    }
+
+    @Override
+    public void write(byte[] b, int off, int len) throws IOException {
+      if (finished) {
+        throw new IOException("Upload already finished");
+      }
+
+      cipherOutputStream.write(b, off, len);
+      plaintextLength += len;
+    }
+
+    @Override
+    public void close() {
+    }
+  }
+}
@@ -0,0 +1,187 @@
+package org.whispersystems.signalservice.internal.push.http;
+
+import org.whispersystems.libsignal.util.guava.Preconditions;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.io.OutputStream;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Hands what is written to it over to a consumer thread in fixed size chunks.
+ * <p>
+ * At most a fixed number of chunks are queued, after which writes block until the consumer has
+ * taken one, so a slow consumer slows the producer down rather than letting memory grow.
+ * <p>
+ * Either side can give up: {@link #abort(IOException)} makes the producer's writes fail, and
+ * {@link #fail()} makes the consumer's {@link #take()} fail.
+ */
+public final class UploadChunkPipe extends OutputStream {
+
+  private static final long POLL_INTERVAL_MILLIS = 250;
+
+  private final int                  chunkSize;
+  private final BlockingQueue<Chunk> queue;
+
+  private byte[]  buffer;
+  private int     bufferLength;
+  private long    offset;
+  private boolean closed;
+
+  private volatile IOException consumerFailure;
+  private volatile boolean     producerFailed;
+
+  public UploadChunkPipe(int chunkSize, int maxQueuedChunks) {
+    Preconditions.checkArgument(chunkSize > 0);
+    Preconditions.checkArgument(maxQueuedChunks > 0);
+
+    this.chunkSize = chunkSize;
+    this.queue     = new ArrayBlockingQueue<>(maxQueuedChunks);
+  }
+
+  @Override
+  public void write(int b) throws IOException {
+    write(new byte[] { (byte) b }, 0, 1);
+  }
+
+  @Override
+  public void write(byte[] b, int off, int len) throws IOException {
+    if (closed) {
+      throw new IOException("Closed");
+    }
+
+    throwIfConsumerFailed();
+
+    while (len > 0) {
+      if (buffer == null) {
+        buffer       = new byte[chunkSize];
+        bufferLength = 0;
+      }
+
+      int count = Math.min(len, chunkSize - bufferLength);
+
+      System.arraycopy(b, off, buffer, bufferLength, count);
+      bufferLength += count;
+      off          += count;
+      len          -= count;
+
+      if (bufferLength == chunkSize) {
+        put(new Chunk(buffer, bufferLength, offset, false));
+        offset += bufferLength;
+        buffer  = null;
+      }
+    }
+  }
+
+  /**
+   * Queues whatever is buffered as the last chunk, blocking if the queue is full.
+   */
+  @Override
+  public void close() throws IOException {
+    if (closed) {
+      return;
+    }
+
+    put(new Chunk(buffer != null ? buffer : new byte[0], buffer != null ? bufferLength : 0, offset, true));
+    offset += buffer != null ? bufferLength : 0;
+    buffer  = null;
+    closed  = true;
+  }
+
+  /**
+   * @return The number of bytes written so far.
+   */
+  public long getLength() {
+    return offset + (buffer != null ? bufferLength : 0);
+  }
+
+  /**
+   * Called by the producer when it will not finish writing.
+   */
+  public void fail() {
+    producerFailed = true;
+  }
+
+  /**
+   * Called by the consumer when it will not take any more chunks. Further writes throw.
+   */
+  public void abort(IOException cause) {
+    consumerFailure = cause;
+    queue.clear();
+  }
+
+  /**
+   * Takes the next chunk, blocking until the producer has filled one or closed the pipe.
+   */
+  public Chunk take() throws IOException {
+    try {
+      while (true) {
+        Chunk chunk = queue.poll(POLL_INTERVAL_MILLIS, TimeUnit.MILLISECONDS);
+
+        if (chunk != null) {
+          return chunk;
+        } else if (producerFailed) {
+          throw new IOException("Producer failed");
+        }
+      }
+    } catch (InterruptedException e) {
+      throw new InterruptedIOException("Interrupted while waiting for a chunk");
+    }
+  }
+
+  private void put(Chunk chunk) throws IOException {
+    try {
+      while (!queue.offer(chunk, POLL_INTERVAL_MILLIS, TimeUnit.MILLISECONDS)) {
+        throwIfConsumerFailed();
+      }
+    } catch (InterruptedException e) {
+      throw new InterruptedIOException("Interrupted while waiting for the consumer");
+    }
+
+    throwIfConsumerFailed();
+  }
+
+  private void throwIfConsumerFailed() throws IOException {
+    IOException failure = consumerFailure;
+
+    if (failure != null) {
+      throw new IOException("Consumer failed", failure);
+    }
+  }
+
+  public static final class Chunk {
+
+    private final byte[]  data;
+    private final int     length;
+    private final long    offset;
+    private final boolean last;
+
+    private Chunk(byte[] data, int length, long offset, boolean last) {
+      this.data   = data;
+      this.length = length;
+      this.offset = offset;
+      this.last   = last;
+    }
+
+    public byte[] getData() {
+      return data;
+    }
+
+    public int getLength() {
+      return length;
+    }
+
+    /**
+     * @return Where the chunk starts in the stream.
+     */
+    public long getOffset() {
+      return offset;
+    }
+
+    public boolean isLast() {
+      return last;
+    }
+  }
+}
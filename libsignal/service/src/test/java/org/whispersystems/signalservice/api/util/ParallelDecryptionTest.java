@@ -0,0 +1,146 @@
+package org.whispersystems.signalservice.api.util;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.locks.LockSupport;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+public final class ParallelDecryptionTest {
+
+  private static final int MIN_ITEMS_PER_THREAD = 16;
+
+  private ExecutorService executor;
+
+  @Before
+  public void setup() {
+    executor = Executors.newFixedThreadPool(3);
+  }
+
+  @After
+  public void tearDown() {
+    executor.shutdownNow();
+  }
+
+  @Test
+  public void decryptAll_keeps_order() throws Exception {
+    List<Integer> inputs = range(1000);
+
+    List<String> outputs = ParallelDecryption.decryptAll(executor, 4, MIN_ITEMS_PER_THREAD, inputs, String::valueOf);
+
+    assertEquals(inputs.size(), outputs.size());
+    for (int i = 0; i < inputs.size(); i++) {
+      assertEquals(String.valueOf(i), outputs.get(i));
+    }
+  }
+
+  @Test
+  public void decryptAll_uses_several_threads() throws Exception {
+    Set<Thread> threads = Collections.newSetFromMap(new ConcurrentHashMap<>());
+
+    ParallelDecryption.decryptAll(executor, 4, MIN_ITEMS_PER_THREAD, range(1000), i -> {
+      threads.add(Thread.currentThread());
+      LockSupport.parkNanos(1_000_000);
+      return i;
+    });
+
+    assertTrue(threads.size() > 1);
+    assertTrue(threads.contains(Thread.currentThread()));
+  }
+
+  @Test
+  public void decryptAll_stays_on_calling_thread_for_small_lists() throws Exception {
+    Set<Thread> threads = Collections.newSetFromMap(new ConcurrentHashMap<>());
+
+    ParallelDecryption.decryptAll(executor, 4, MIN_ITEMS_PER_THREAD, range(MIN_ITEMS_PER_THREAD), i -> {
+      threads.add(Thread.currentThread());
+      return i;
+    });
+
+    assertEquals(Collections.singleton(Thread.currentThread()), threads);
+  }
+
+  @Test
+  public void decryptAll_completes_when_executor_is_shut_down() throws Exception {
+    executor.shutdown();
+
+    List<Integer> outputs = ParallelDecryption.decryptAll(executor, 4, MIN_ITEMS_PER_THREAD, range(100), i -> i * 2);
+
+    assertEquals(Integer.valueOf(198), outputs.get(99));
+  }
+
+  @Test
+  public void decryptAll_wraps_checked_exceptions() throws Exception {
+    IOException failure = new IOException();
+
+    try {
+      ParallelDecryption.decryptAll(executor, 4, MIN_ITEMS_PER_THREAD, range(1000), i -> {
+        if (i == 500) throw failure;
+        return i;
+      });
+      fail();
+    } catch (ExecutionException e) {
+      assertSame(failure, e.getCause());
+    }
+  }
+
+  @Test
+  public void decryptAll_wraps_checked_exceptions_on_calling_thread() throws Exception {
+    IOException failure = new IOException();
+
+    try {
+      ParallelDecryption.decryptAll(executor, 4, MIN_ITEMS_PER_THREAD, range(10), i -> {
+        if (i == 5) throw failure;
+        return i;
+      });
+      fail();
+    } catch (ExecutionException e) {
+      assertSame(failure, e.getCause());
+    }
+  }
+
+  @Test
+  public void decryptAll_rethrows_runtime_exceptions() throws Exception {
+    try {
+      ParallelDecryption.decryptAll(executor, 4, MIN_ITEMS_PER_THREAD, range(1000), i -> {
+        if (i == 999) throw new IllegalStateException();
+        return i;
+      });
+      fail();
+    } catch (IllegalStateException e) {
+      // expected
+    }
+  }
+
+  @Test
+  public void decryptAll_on_shared_executor_keeps_order() throws Exception {
+    List<Integer> outputs = ParallelDecryption.decryptAll(4, MIN_ITEMS_PER_THREAD, range(1000), i -> i * 2);
+
+    assertEquals(1000, outputs.size());
+    assertEquals(Integer.valueOf(1998), outputs.get(999));
+  }
+
+  private static List<Integer> range(int size) {
+    List<Integer> list = new ArrayList<>(size);
+
+    for (int i = 0; i < size; i++) {
+      list.add(i);
+    }
+
+    return list;
+  }
+}
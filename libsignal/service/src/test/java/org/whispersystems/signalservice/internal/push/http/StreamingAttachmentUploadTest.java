@@ -0,0 +1,143 @@
+package org.whispersystems.signalservice.internal.push.http;
+
+import org.junit.Test;
+import org.whispersystems.signalservice.api.crypto.AttachmentCipherOutputStream;
+import org.whispersystems.signalservice.api.push.exceptions.PushNetworkException;
+import org.whispersystems.signalservice.internal.crypto.PaddingInputStream;
+import org.whispersystems.signalservice.internal.util.Util;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+public class StreamingAttachmentUploadTest {
+
+  private static final int CHUNK_SIZE     = 1024;
+  private static final int CONTENT_LENGTH = 70000;
+
+  private final byte[] attachmentKey = Util.getSecretBytes(64);
+  private final byte[] attachmentIV  = Util.getSecretBytes(16);
+  private final byte[] input         = Util.getSecretBytes(CONTENT_LENGTH);
+
+  private final ResumableUploadSpec spec     = new ResumableUploadSpec(attachmentKey, attachmentIV, "key", 2, "https://cdn/upload", System.currentTimeMillis() + 60_000);
+  private final ExecutorService     executor = Executors.newSingleThreadExecutor();
+
+  @Test
+  public void givenStreamedInput_whenIFinish_thenIExpectSameCiphertextAndDigestAsWholeUpload() throws Exception {
+    FakeCdn                   cdn    = new FakeCdn();
+    StreamingAttachmentUpload upload = new StreamingAttachmentUpload(spec, cdn, executor, () -> false, CHUNK_SIZE);
+
+    writeInPieces(upload.getOutputStream());
+
+    byte[] digest = upload.finish();
+
+    ByteArrayOutputStream        expected     = new ByteArrayOutputStream();
+    AttachmentCipherOutputStream cipherStream = new AttachmentCipherOutputStream(attachmentKey, attachmentIV, expected);
+    byte[]                       padded       = new byte[(int) PaddingInputStream.getPaddedSize(CONTENT_LENGTH)];
+
+    System.arraycopy(input, 0, padded, 0, input.length);
+    cipherStream.write(padded);
+    cipherStream.flush();
+
+    assertEquals(CONTENT_LENGTH, upload.getLength());
+    assertArrayEquals(expected.toByteArray(), cdn.received.toByteArray());
+    assertArrayEquals(cipherStream.getTransmittedDigest(), digest);
+    assertEquals(cdn.received.size(), cdn.finalLength);
+  }
+
+  @Test
+  public void givenChunksAreOnlyPartlyCommitted_whenIFinish_thenIExpectTheRestToBeResent() throws Exception {
+    FakeCdn cdn = new FakeCdn();
+    cdn.partialCommits = true;
+
+    StreamingAttachmentUpload upload = new StreamingAttachmentUpload(spec, cdn, executor, () -> false, CHUNK_SIZE);
+
+    writeInPieces(upload.getOutputStream());
+    upload.finish();
+
+    assertEquals(AttachmentCipherOutputStream.getCiphertextLength(PaddingInputStream.getPaddedSize(CONTENT_LENGTH)), cdn.received.size());
+  }
+
+  @Test
+  public void givenChunkFailsAfterCommitting_whenIFinish_thenIExpectUploadToResumeFromCommittedLength() throws Exception {
+    FakeCdn cdn = new FakeCdn();
+    cdn.failAfterCommitEvery = 3;
+
+    StreamingAttachmentUpload upload = new StreamingAttachmentUpload(spec, cdn, executor, () -> false, CHUNK_SIZE);
+
+    writeInPieces(upload.getOutputStream());
+    upload.finish();
+
+    assertEquals(AttachmentCipherOutputStream.getCiphertextLength(PaddingInputStream.getPaddedSize(CONTENT_LENGTH)), cdn.received.size());
+    assertTrue(cdn.committedLengthQueries > 0);
+  }
+
+  @Test
+  public void givenCdnKeepsFailing_whenIWrite_thenIExpectWritesToFail() throws Exception {
+    FakeCdn cdn = new FakeCdn();
+    cdn.alwaysFail = true;
+
+    StreamingAttachmentUpload upload = new StreamingAttachmentUpload(spec, cdn, executor, () -> false, CHUNK_SIZE);
+
+    try {
+      writeInPieces(upload.getOutputStream());
+      upload.finish();
+      fail();
+    } catch (IOException e) {
+      // Expected
+    }
+  }
+
+  private void writeInPieces(OutputStream outputStream) throws IOException {
+    for (int offset = 0; offset < input.length; offset += 777) {
+      outputStream.write(input, offset, Math.min(777, input.length - offset));
+    }
+  }
+
+  private static final class FakeCdn implements StreamingAttachmentUpload.ChunkUploader {
+
+    private final ByteArrayOutputStream received = new ByteArrayOutputStream();
+
+    private boolean partialCommits;
+    private boolean alwaysFail;
+    private int     failAfterCommitEvery;
+    private int     uploads;
+    private int     committedLengthQueries;
+    private long    finalLength = -1;
+
+    @Override
+    public synchronized long uploadChunk(byte[] data, int offset, int length, long contentStart, long contentLength) throws IOException {
+      if (alwaysFail) {
+        throw new PushNetworkException(new IOException("Network down"));
+      }
+
+      assertEquals(received.size(), contentStart);
+
+      int commit = partialCommits && contentLength < 0 && length > 1 ? length / 2 : length;
+      received.write(data, offset, commit);
+
+      if (contentLength >= 0 && commit == length) {
+        finalLength = contentLength;
+      }
+
+      if (failAfterCommitEvery > 0 && ++uploads % failAfterCommitEvery == 0) {
+        throw new PushNetworkException(new IOException("Connection reset"));
+      }
+
+      return received.size();
+    }
+
+    @Override
+    public synchronized long getCommittedLength(long contentLength) {
+      committedLengthQueries++;
+      return received.size();
+    }
+  }
+}